@@ -0,0 +1,67 @@
+package me.matoosh.blockmetadata.benchmark;
+
+import me.matoosh.blockmetadata.async.AsyncFiles;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the asynchronous file reads and writes used for region files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncFilesBenchmark {
+
+    /**
+     * Size of the file, in bytes.
+     */
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    /**
+     * Size of the read buffer, in bytes.
+     */
+    @Param({"1024", "65536"})
+    public int bufferSize;
+
+    private Path directory;
+    private Path readFile;
+    private Path writeFile;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("block-metadata-benchmark");
+        readFile = directory.resolve("read.yml");
+        writeFile = directory.resolve("write.yml");
+        content = new byte[size];
+        Arrays.fill(content, (byte) 'a');
+        Files.write(readFile, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(readFile);
+        Files.deleteIfExists(writeFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public byte[] readAllBytes() {
+        return AsyncFiles.readAllBytes(readFile, bufferSize).join();
+    }
+
+    @Benchmark
+    public Integer writeBytes() throws IOException {
+        // region files are always recreated when saved
+        Files.deleteIfExists(writeFile);
+        return AsyncFiles.writeBytes(writeFile, content,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW).join();
+    }
+}
@@ -0,0 +1,68 @@
+package me.matoosh.blockmetadata.benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving a region to disk, unloading it and loading it back,
+ * for regions holding different numbers of blocks with metadata.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegionRoundTripBenchmark {
+
+    /**
+     * Number of blocks with metadata in the region.
+     */
+    @Param({"256", "4096", "65536"})
+    public int entries;
+
+    private BlockMetadataStorage<String> storage;
+    private ChunkInfo chunk;
+    private BlockChunkCoordinates block;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ServerMock server = MockBukkit.mock();
+        server.addSimpleWorld("benchmark-world");
+        storage = new BlockMetadataStorage<>(MockBukkit.createMockPlugin(),
+                Files.createTempDirectory("block-metadata-benchmark"));
+        chunk = new ChunkInfo("benchmark-world", new ChunkCoordinates(0, 0));
+        block = new BlockChunkCoordinates(0, 0, 0);
+
+        // spread the entries over the chunks of a single region, 4096 per chunk
+        for (int i = 0; i < entries; i++) {
+            int chunkIndex = i / 4096;
+            ChunkInfo target = new ChunkInfo("benchmark-world",
+                    new ChunkCoordinates(chunkIndex % 16, chunkIndex / 16));
+            int blockIndex = i % 4096;
+            storage.setMetadata(target, new BlockChunkCoordinates(
+                    blockIndex % 16, blockIndex / 256, (blockIndex / 16) % 16), "value-" + i).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public String saveAndLoadRegion() {
+        // modify the region, so it's written on every save
+        storage.setMetadata(chunk, block, "modified").join();
+        storage.saveChunk(chunk, true).join();
+
+        // load the region back
+        return storage.getMetadata(chunk, block).join();
+    }
+}
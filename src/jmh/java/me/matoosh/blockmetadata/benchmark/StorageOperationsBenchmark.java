@@ -0,0 +1,80 @@
+package me.matoosh.blockmetadata.benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single block operations on a region which is resident in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StorageOperationsBenchmark {
+
+    /**
+     * Number of blocks with metadata in the benchmarked chunk.
+     */
+    private static final int BLOCKS = 4096;
+
+    private BlockMetadataStorage<String> storage;
+    private ChunkInfo chunk;
+    private BlockChunkCoordinates[] blocks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ServerMock server = MockBukkit.mock();
+        WorldMock world = server.addSimpleWorld("benchmark-world");
+        storage = new BlockMetadataStorage<>(MockBukkit.createMockPlugin(),
+                Files.createTempDirectory("block-metadata-benchmark"));
+        chunk = ChunkInfo.fromChunk(world.getChunkAt(0, 0));
+
+        // fill the chunk, which also loads its region
+        blocks = new BlockChunkCoordinates[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            blocks[i] = new BlockChunkCoordinates(i % 16, i / 256, (i / 16) % 16);
+            storage.setMetadata(chunk, blocks[i], "value-" + i).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public String getMetadata() {
+        return storage.getMetadata(chunk, randomBlock()).join();
+    }
+
+    @Benchmark
+    public void setMetadata() {
+        storage.setMetadata(chunk, randomBlock(), "value").join();
+    }
+
+    @Benchmark
+    public String removeAndRestoreMetadata() {
+        // restore the metadata, so the chunk keeps its density
+        BlockChunkCoordinates block = randomBlock();
+        String removed = storage.removeMetadata(chunk, block).join();
+        storage.setMetadata(chunk, block, removed).join();
+        return removed;
+    }
+
+    /**
+     * Picks a random block with metadata.
+     * @return Coordinates of the block within the chunk.
+     */
+    private BlockChunkCoordinates randomBlock() {
+        return blocks[ThreadLocalRandom.current().nextInt(BLOCKS)];
+    }
+}
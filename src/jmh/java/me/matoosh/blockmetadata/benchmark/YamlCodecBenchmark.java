@@ -0,0 +1,76 @@
+package me.matoosh.blockmetadata.benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding region contents with the storage's YAML mapper,
+ * without any disk access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YamlCodecBenchmark {
+
+    /**
+     * Type of the region contents.
+     */
+    private static final TypeReference<Map<ChunkCoordinates, Map<BlockChunkCoordinates, String>>> REGION_TYPE =
+            new TypeReference<Map<ChunkCoordinates, Map<BlockChunkCoordinates, String>>>(){};
+
+    /**
+     * Number of blocks with metadata in the region.
+     */
+    @Param({"256", "4096", "65536"})
+    public int entries;
+
+    private ObjectMapper mapper;
+    private Map<ChunkCoordinates, Map<BlockChunkCoordinates, String>> region;
+    private String encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MockBukkit.mock();
+        BlockMetadataStorage<String> storage = new BlockMetadataStorage<>(MockBukkit.createMockPlugin(),
+                Files.createTempDirectory("block-metadata-benchmark"));
+        mapper = storage.getMapper();
+
+        // spread the entries over the chunks of a region, 4096 per chunk
+        region = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            int chunkIndex = i / 4096;
+            int blockIndex = i % 4096;
+            region.computeIfAbsent(new ChunkCoordinates(chunkIndex % 16, chunkIndex / 16), c -> new HashMap<>())
+                    .put(new BlockChunkCoordinates(blockIndex % 16, blockIndex / 256, (blockIndex / 16) % 16),
+                            "value-" + i);
+        }
+        encoded = mapper.writeValueAsString(region);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public String encode() throws JsonProcessingException {
+        return mapper.writeValueAsString(region);
+    }
+
+    @Benchmark
+    public Map<ChunkCoordinates, Map<BlockChunkCoordinates, String>> decode() throws JsonProcessingException {
+        return mapper.readValue(encoded, REGION_TYPE);
+    }
+}
@@ -0,0 +1,14 @@
+package me.matoosh.blockmetadata.loadtest;
+
+/**
+ * Entry point of the synthetic load test.
+ * Takes the options of {@link LoadTestConfig} as {@code key=value} arguments.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        LoadTestReport report = new LoadTestRunner(config).run();
+        System.out.print(report.format());
+    }
+}
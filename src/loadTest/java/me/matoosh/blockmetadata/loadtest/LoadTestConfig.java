@@ -0,0 +1,110 @@
+package me.matoosh.blockmetadata.loadtest;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Parameters of a synthetic load test.
+ * Rates are totals across all players, per tick.
+ */
+@Value
+@Builder
+public class LoadTestConfig {
+
+    /**
+     * Number of simulated players.
+     */
+    @Builder.Default
+    int players = 20;
+    /**
+     * Number of ticks to simulate.
+     */
+    @Builder.Default
+    int ticks = 1200;
+    /**
+     * Radius of loaded chunks around each player, in chunks.
+     */
+    @Builder.Default
+    int viewDistance = 6;
+    /**
+     * Distance each player moves per tick, in blocks.
+     */
+    @Builder.Default
+    double playerSpeed = 0.5;
+    /**
+     * Maximum distance of players from the world origin, in blocks.
+     */
+    @Builder.Default
+    int worldRadius = 4096;
+    /**
+     * Metadata reads per tick.
+     */
+    @Builder.Default
+    int readsPerTick = 200;
+    /**
+     * Metadata writes per tick.
+     */
+    @Builder.Default
+    int writesPerTick = 50;
+    /**
+     * Blocks broken per tick.
+     */
+    @Builder.Default
+    int breaksPerTick = 5;
+    /**
+     * Piston moves per tick.
+     */
+    @Builder.Default
+    int pistonMovesPerTick = 2;
+    /**
+     * Number of blocks pushed by each piston move.
+     */
+    @Builder.Default
+    int pistonBlocks = 3;
+    /**
+     * Seed of the workload, the same seed generates the same sequence of operations.
+     */
+    @Builder.Default
+    long seed = 42;
+    /**
+     * Whether regions should be prefetched in front of moving players.
+     */
+    @Builder.Default
+    boolean playerPrefetchEnabled = false;
+
+    /**
+     * Parses a config from {@code key=value} arguments, keys named like the options.
+     * @param args The arguments.
+     * @return The parsed config.
+     */
+    public static LoadTestConfig parse(String... args) {
+        LoadTestConfigBuilder builder = builder();
+        for (String arg : args) {
+            if (arg.isEmpty()) {
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "players": builder.players(Integer.parseInt(value)); break;
+                case "ticks": builder.ticks(Integer.parseInt(value)); break;
+                case "viewDistance": builder.viewDistance(Integer.parseInt(value)); break;
+                case "playerSpeed": builder.playerSpeed(Double.parseDouble(value)); break;
+                case "worldRadius": builder.worldRadius(Integer.parseInt(value)); break;
+                case "readsPerTick": builder.readsPerTick(Integer.parseInt(value)); break;
+                case "writesPerTick": builder.writesPerTick(Integer.parseInt(value)); break;
+                case "breaksPerTick": builder.breaksPerTick(Integer.parseInt(value)); break;
+                case "pistonMovesPerTick": builder.pistonMovesPerTick(Integer.parseInt(value)); break;
+                case "pistonBlocks": builder.pistonBlocks(Integer.parseInt(value)); break;
+                case "seed": builder.seed(Long.parseLong(value)); break;
+                case "playerPrefetchEnabled": builder.playerPrefetchEnabled(Boolean.parseBoolean(value)); break;
+                default: throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        return builder.build();
+    }
+}
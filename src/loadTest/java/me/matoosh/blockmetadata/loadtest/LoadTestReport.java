@@ -0,0 +1,84 @@
+package me.matoosh.blockmetadata.loadtest;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.metrics.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a synthetic load test.
+ */
+@Value
+public class LoadTestReport {
+    /**
+     * Parameters of the load test.
+     */
+    LoadTestConfig config;
+    /**
+     * Wall time of the simulation, including waiting for outstanding operations, in milliseconds.
+     */
+    long durationMillis;
+    /**
+     * Latencies of each kind of operation, until its future completed.
+     */
+    Map<String, LatencyHistogram> latencies;
+    /**
+     * Number of chunk load events.
+     */
+    long chunkLoads;
+    /**
+     * Number of chunk unload events.
+     */
+    long chunkUnloads;
+    /**
+     * Peak heap usage during the simulation, in bytes.
+     */
+    long heapPeakBytes;
+    /**
+     * Number of region files written.
+     */
+    long regionFiles;
+    /**
+     * Total size of the region files, in bytes.
+     */
+    long regionBytes;
+    /**
+     * Size of the largest region file, in bytes.
+     */
+    long largestRegionBytes;
+
+    /**
+     * Get the number of operations completed per second, across all kinds.
+     * @return The throughput.
+     */
+    public double getThroughput() {
+        long operations = latencies.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+        return durationMillis == 0 ? 0 : operations * 1000.0 / durationMillis;
+    }
+
+    /**
+     * Formats the report as a human readable table.
+     * @return The formatted report.
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%d players, %d ticks, seed %d, finished in %dms%n",
+                config.getPlayers(), config.getTicks(), config.getSeed(), durationMillis));
+        report.append(String.format(Locale.ROOT, "throughput: %.0f ops/s%n", getThroughput()));
+        report.append(String.format(Locale.ROOT, "%-12s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)"));
+        latencies.forEach((operation, histogram) -> report.append(String.format(Locale.ROOT,
+                "%-12s %10d %10d %10d %10d %10d%n", operation, histogram.getCount(),
+                histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+                histogram.getValueAtPercentile(90, TimeUnit.MICROSECONDS),
+                histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getMax()))));
+        report.append(String.format(Locale.ROOT, "chunk loads: %d, unloads: %d%n", chunkLoads, chunkUnloads));
+        report.append(String.format(Locale.ROOT, "heap peak: %.1f MiB%n", heapPeakBytes / 1048576.0));
+        report.append(String.format(Locale.ROOT, "region files: %d, total %.1f KiB, largest %.1f KiB%n",
+                regionFiles, regionBytes / 1024.0, largestRegionBytes / 1024.0));
+        return report.toString();
+    }
+}
@@ -0,0 +1,445 @@
+package me.matoosh.blockmetadata.loadtest;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataConfig;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.metrics.LatencyHistogram;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Simulates players moving across a world of an in-memory server, driving a storage
+ * with chunk loads and unloads, block breaks, piston moves and metadata reads and writes.
+ * The sequence of operations only depends on the seed, their timing on the machine.
+ */
+@RequiredArgsConstructor
+public class LoadTestRunner {
+
+    /**
+     * Name of the simulated world.
+     */
+    private static final String WORLD = "load-test-world";
+    /**
+     * Number of recently written blocks which are broken and pushed by pistons.
+     */
+    private static final int RECENT_WRITES = 1024;
+    /**
+     * Number of blocks above the ground level at which metadata is placed.
+     */
+    private static final int HEIGHT = 64;
+    /**
+     * How long to wait for outstanding operations once the simulation is over, in seconds.
+     */
+    private static final long DRAIN_TIMEOUT = 60;
+
+    /**
+     * Parameters of the load test.
+     */
+    private final LoadTestConfig config;
+
+    /**
+     * Latencies of each kind of operation.
+     */
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    /**
+     * Number of operations whose futures haven't completed yet.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Blocks whose metadata was recently written, as x, y and z.
+     */
+    private final int[][] recentWrites = new int[RECENT_WRITES][];
+    /**
+     * Number of writes so far.
+     */
+    private long writes;
+    /**
+     * Peak heap usage sampled so far.
+     */
+    private long heapPeak;
+
+    /**
+     * Runs the load test.
+     * @return The results.
+     */
+    public LoadTestReport run() throws IOException, InterruptedException {
+        if (config.getPlayers() <= 0) {
+            throw new IllegalArgumentException("At least one player is required");
+        }
+        for (String operation : new String[] {"read", "write", "break", "piston"}) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        Random random = new Random(config.getSeed());
+        ServerMock server = MockBukkit.mock();
+        Path dataPath = Files.createTempDirectory("block-metadata-load-test");
+        try {
+            WorldMock world = server.addSimpleWorld(WORLD);
+            BlockMetadataStorage<String> storage = new BlockMetadataStorage<>(MockBukkit.createMockPlugin(),
+                    dataPath, BlockMetadataConfig.builder()
+                    .playerPrefetchEnabled(config.isPlayerPrefetchEnabled())
+                    .build());
+
+            // spawn the players at random positions
+            List<SimulatedPlayer> players = new ArrayList<>();
+            for (int i = 0; i < config.getPlayers(); i++) {
+                PlayerMock player = server.addPlayer();
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = random.nextDouble() * config.getWorldRadius();
+                players.add(new SimulatedPlayer(player, Math.cos(angle) * distance,
+                        Math.sin(angle) * distance, random.nextDouble() * 2 * Math.PI));
+            }
+
+            long start = System.currentTimeMillis();
+            Set<ChunkCoordinates> loaded = new HashSet<>();
+            long[] chunkEvents = new long[2];
+            for (int tick = 0; tick < config.getTicks(); tick++) {
+                // move the players and load the chunks around them
+                boolean chunksChanged = tick == 0;
+                for (SimulatedPlayer player : players) {
+                    chunksChanged |= player.move(random, world, server);
+                }
+                if (chunksChanged) {
+                    updateLoadedChunks(players, loaded, world, server, chunkEvents);
+                }
+
+                // interact with the blocks around the players
+                for (int i = 0; i < config.getWritesPerTick(); i++) {
+                    write(storage, randomBlock(random, players), tick);
+                }
+                for (int i = 0; i < config.getReadsPerTick(); i++) {
+                    read(storage, randomBlock(random, players));
+                }
+                for (int i = 0; i < config.getBreaksPerTick(); i++) {
+                    breakBlock(random, world, players, server);
+                }
+                for (int i = 0; i < config.getPistonMovesPerTick(); i++) {
+                    pushBlocks(random, world, server);
+                }
+
+                // run the storage's tasks
+                server.getScheduler().performOneTick();
+                sampleHeap();
+            }
+
+            // wait for the outstanding operations and save everything
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(DRAIN_TIMEOUT);
+            while (pending.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            storage.shutdown();
+            long duration = System.currentTimeMillis() - start;
+            sampleHeap();
+
+            // measure the region files
+            List<Long> sizes;
+            try (Stream<Path> files = Files.list(dataPath)) {
+                sizes = files.filter((file) -> file.getFileName().toString().startsWith(WORLD))
+                        .map(LoadTestRunner::size)
+                        .collect(Collectors.toList());
+            }
+            return new LoadTestReport(config, duration, latencies, chunkEvents[0], chunkEvents[1], heapPeak,
+                    sizes.size(),
+                    sizes.stream().mapToLong(Long::longValue).sum(),
+                    sizes.stream().mapToLong(Long::longValue).max().orElse(0));
+        } finally {
+            MockBukkit.unmock();
+            deleteRecursively(dataPath);
+        }
+    }
+
+    /**
+     * Loads the chunks within view distance of any player, and unloads the others.
+     * @param players The players.
+     * @param loaded Currently loaded chunks, updated in place.
+     * @param world The world.
+     * @param server The server.
+     * @param chunkEvents Counts of chunk load and unload events, updated in place.
+     */
+    private void updateLoadedChunks(List<SimulatedPlayer> players, Set<ChunkCoordinates> loaded,
+                                    WorldMock world, ServerMock server, long[] chunkEvents) {
+        Set<ChunkCoordinates> visible = new HashSet<>();
+        int viewDistance = config.getViewDistance();
+        for (SimulatedPlayer player : players) {
+            int chunkX = player.getChunkX();
+            int chunkZ = player.getChunkZ();
+            for (int x = chunkX - viewDistance; x <= chunkX + viewDistance; x++) {
+                for (int z = chunkZ - viewDistance; z <= chunkZ + viewDistance; z++) {
+                    visible.add(new ChunkCoordinates(x, z));
+                }
+            }
+        }
+        for (Iterator<ChunkCoordinates> iterator = loaded.iterator(); iterator.hasNext(); ) {
+            ChunkCoordinates chunk = iterator.next();
+            if (!visible.contains(chunk)) {
+                server.getPluginManager().callEvent(new ChunkUnloadEvent(
+                        world.getChunkAt(chunk.getX(), chunk.getZ()), true));
+                iterator.remove();
+                chunkEvents[1]++;
+            }
+        }
+        for (ChunkCoordinates chunk : visible) {
+            if (loaded.add(chunk)) {
+                server.getPluginManager().callEvent(new ChunkLoadEvent(
+                        world.getChunkAt(chunk.getX(), chunk.getZ()), false));
+                chunkEvents[0]++;
+            }
+        }
+    }
+
+    /**
+     * Writes metadata of a block, recording it for later breaks and piston moves.
+     * @param storage The storage.
+     * @param block The block, as x, y and z.
+     * @param tick The current tick.
+     */
+    private void write(BlockMetadataStorage<String> storage, int[] block, int tick) {
+        recentWrites[(int) (writes++ % RECENT_WRITES)] = block;
+        track("write", storage.setMetadata(getChunk(block), getBlockInChunk(block), "tick-" + tick));
+    }
+
+    /**
+     * Reads metadata of a block.
+     * @param storage The storage.
+     * @param block The block, as x, y and z.
+     */
+    private void read(BlockMetadataStorage<String> storage, int[] block) {
+        track("read", storage.getMetadata(getChunk(block), getBlockInChunk(block)));
+    }
+
+    /**
+     * Breaks a recently written block, measuring the dispatch of the event.
+     * @param random The random generator.
+     * @param world The world.
+     * @param players The players.
+     * @param server The server.
+     */
+    private void breakBlock(Random random, WorldMock world, List<SimulatedPlayer> players, ServerMock server) {
+        int[] position = randomRecentWrite(random);
+        if (position == null) {
+            return;
+        }
+        Block block = world.getBlockAt(position[0], position[1], position[2]);
+        PlayerMock player = players.get(random.nextInt(players.size())).getPlayer();
+        long start = System.nanoTime();
+        server.getPluginManager().callEvent(new BlockBreakEvent(block, player));
+        latencies.get("break").recordSince(start);
+    }
+
+    /**
+     * Pushes a line of blocks starting at a recently written block with a piston,
+     * measuring the dispatch of the event.
+     * @param random The random generator.
+     * @param world The world.
+     * @param server The server.
+     */
+    private void pushBlocks(Random random, WorldMock world, ServerMock server) {
+        int[] position = randomRecentWrite(random);
+        if (position == null) {
+            return;
+        }
+        BlockFace[] directions = {BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST};
+        BlockFace direction = directions[random.nextInt(directions.length)];
+        Block first = world.getBlockAt(position[0], position[1], position[2]);
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < config.getPistonBlocks(); i++) {
+            blocks.add(first.getRelative(direction, i));
+        }
+        Block piston = first.getRelative(direction.getOppositeFace());
+        long start = System.nanoTime();
+        server.getPluginManager().callEvent(new BlockPistonExtendEvent(piston, blocks, direction));
+        latencies.get("piston").recordSince(start);
+    }
+
+    /**
+     * Records the latency of an operation once it completes.
+     * @param operation Kind of the operation.
+     * @param future Future of the operation.
+     */
+    private void track(String operation, CompletableFuture<?> future) {
+        LatencyHistogram histogram = latencies.get(operation);
+        long start = System.nanoTime();
+        pending.incrementAndGet();
+        future.whenComplete((r, e) -> {
+            histogram.recordSince(start);
+            pending.decrementAndGet();
+        });
+    }
+
+    /**
+     * Picks a random block within view distance of a random player.
+     * @param random The random generator.
+     * @param players The players.
+     * @return The block, as x, y and z.
+     */
+    private int[] randomBlock(Random random, List<SimulatedPlayer> players) {
+        SimulatedPlayer player = players.get(random.nextInt(players.size()));
+        int range = config.getViewDistance() * 16;
+        return new int[] {
+                (int) Math.floor(player.getX()) + random.nextInt(2 * range + 1) - range,
+                random.nextInt(HEIGHT),
+                (int) Math.floor(player.getZ()) + random.nextInt(2 * range + 1) - range
+        };
+    }
+
+    /**
+     * Picks a random recently written block.
+     * @param random The random generator.
+     * @return The block, as x, y and z. Null if nothing was written yet.
+     */
+    private int[] randomRecentWrite(Random random) {
+        if (writes == 0) {
+            return null;
+        }
+        return recentWrites[random.nextInt((int) Math.min(writes, RECENT_WRITES))];
+    }
+
+    /**
+     * Samples the current heap usage, keeping the peak.
+     */
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        heapPeak = Math.max(heapPeak, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Get the chunk of a block.
+     * @param block The block, as x, y and z.
+     * @return The chunk.
+     */
+    private static ChunkInfo getChunk(int[] block) {
+        return new ChunkInfo(WORLD, new ChunkCoordinates(block[0] >> 4, block[2] >> 4));
+    }
+
+    /**
+     * Get the coordinates of a block within its chunk.
+     * @param block The block, as x, y and z.
+     * @return The coordinates within the chunk.
+     */
+    private static BlockChunkCoordinates getBlockInChunk(int[] block) {
+        return new BlockChunkCoordinates(block[0] & 15, block[1], block[2] & 15);
+    }
+
+    /**
+     * Get the size of a file.
+     * @param file The file.
+     * @return The size, in bytes. Zero if it couldn't be read.
+     */
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes a directory with all its contents.
+     * @param directory The directory.
+     */
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * A player wandering across the world.
+     */
+    @Getter
+    private class SimulatedPlayer {
+        /**
+         * The mocked player.
+         */
+        private final PlayerMock player;
+        /**
+         * Position of the player.
+         */
+        private double x, z;
+        /**
+         * Direction in which the player moves, in radians.
+         */
+        private double heading;
+
+        /**
+         * Creates a simulated player.
+         * @param player The mocked player.
+         * @param x Initial x coordinate.
+         * @param z Initial z coordinate.
+         * @param heading Initial heading, in radians.
+         */
+        private SimulatedPlayer(PlayerMock player, double x, double z, double heading) {
+            this.player = player;
+            this.x = x;
+            this.z = z;
+            this.heading = heading;
+        }
+
+        /**
+         * Moves the player a single tick, turning back towards the origin at the world's edge.
+         * @param random The random generator.
+         * @param world The world.
+         * @param server The server.
+         * @return Whether the player entered another chunk.
+         */
+        private boolean move(Random random, WorldMock world, ServerMock server) {
+            int chunkX = getChunkX();
+            int chunkZ = getChunkZ();
+            heading += random.nextGaussian() * 0.1;
+            if (x * x + z * z > (double) config.getWorldRadius() * config.getWorldRadius()) {
+                heading = Math.atan2(-z, -x);
+            }
+            Location from = new Location(world, x, HEIGHT, z);
+            x += Math.cos(heading) * config.getPlayerSpeed();
+            z += Math.sin(heading) * config.getPlayerSpeed();
+            Location to = new Location(world, x, HEIGHT, z);
+            player.setLocation(to);
+            server.getPluginManager().callEvent(new PlayerMoveEvent(player, from, to));
+            return chunkX != getChunkX() || chunkZ != getChunkZ();
+        }
+
+        /**
+         * Get the chunk x coordinate of the player.
+         * @return The chunk x coordinate.
+         */
+        private int getChunkX() {
+            return (int) Math.floor(x) >> 4;
+        }
+
+        /**
+         * Get the chunk z coordinate of the player.
+         * @return The chunk z coordinate.
+         */
+        private int getChunkZ() {
+            return (int) Math.floor(z) >> 4;
+        }
+    }
+}
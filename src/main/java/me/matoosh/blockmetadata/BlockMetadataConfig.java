@@ -0,0 +1,161 @@
+package me.matoosh.blockmetadata;
+
+import lombok.Builder;
+import lombok.Value;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.schema.MetadataSchema;
+
+/**
+ * Tunable options of a block metadata storage.
+ * Use {@link #builder()} to override individual options,
+ * every option left unset keeps its default value.
+ */
+@Value
+@Builder
+public class BlockMetadataConfig {
+
+    /**
+     * Whether regions should be prefetched in the direction in which players are moving.
+     */
+    @Builder.Default
+    boolean playerPrefetchEnabled = false;
+    /**
+     * How many chunks ahead of a moving player regions should be prefetched.
+     */
+    @Builder.Default
+    int playerPrefetchDistance = 4;
+    /**
+     * How long a region loaded by prefetching or warm-up stays in memory while none of its chunks are loaded,
+     * in seconds.
+     */
+    @Builder.Default
+    long speculativeIdleTimeout = 60;
+
+    /**
+     * Whether regions should be saved automatically once they have been dirty for too long.
+     * Regions of saved worlds are saved regardless of this option.
+     */
+    @Builder.Default
+    boolean autosaveEnabled = true;
+    /**
+     * How often the autosave task runs, in ticks.
+     */
+    @Builder.Default
+    long autosavePeriod = 20;
+    /**
+     * How much time the autosave task may spend per run, in milliseconds.
+     */
+    @Builder.Default
+    long autosaveTickBudget = 2;
+    /**
+     * How long a region may stay dirty before it's saved automatically, in seconds.
+     */
+    @Builder.Default
+    long maxDirtyAge = 300;
+
+    /**
+     * How long saving the metadata may take when the plugin is disabled, in seconds.
+     * Regions which couldn't be saved in time are written to a fallback journal instead.
+     */
+    @Builder.Default
+    long shutdownTimeout = 30;
+
+    /**
+     * Whether the regions around the spawn of each world and around online players
+     * should be preloaded when the storage is created.
+     */
+    @Builder.Default
+    boolean warmupEnabled = false;
+    /**
+     * Radius around each spawn and player to preload, in chunks.
+     */
+    @Builder.Default
+    int warmupRadius = 8;
+    /**
+     * Maximum number of regions parsed at once while preloading.
+     */
+    @Builder.Default
+    int warmupParallelism = 2;
+
+    /**
+     * Whether blocks with metadata should be indexed spatially,
+     * enabling radius and nearest neighbour queries.
+     */
+    @Builder.Default
+    boolean spatialIndexEnabled = false;
+    /**
+     * Size of each cell of the spatial index grid, in blocks.
+     */
+    @Builder.Default
+    int spatialIndexCellSize = 16;
+
+    /**
+     * How long metadata set without an explicit time to live is kept, in seconds.
+     * Zero keeps such metadata until it's removed.
+     */
+    @Builder.Default
+    long defaultTtl = 0;
+    /**
+     * How often expired metadata is removed in the background, in ticks.
+     */
+    @Builder.Default
+    long expiryPeriod = 20;
+
+    /**
+     * Default maximum number of blocks whose changes are buffered for a change subscriber
+     * between two batches. Once exceeded, the subscriber is asked to resynchronize.
+     */
+    @Builder.Default
+    int changeBufferSize = 10000;
+
+    /**
+     * Whether the metrics of the storage should be exported as a JMX MBean.
+     * The metrics are recorded and queryable through the storage regardless of this option.
+     */
+    @Builder.Default
+    boolean jmxEnabled = false;
+
+    /**
+     * Whether the time and allocations of the storage's listeners on the server thread
+     * should be measured, warning about ticks in which they exceed their budget.
+     */
+    @Builder.Default
+    boolean listenerProfilingEnabled = false;
+    /**
+     * How much time the storage's listeners may spend per tick, in microseconds.
+     */
+    @Builder.Default
+    long listenerTickBudget = 1000;
+    /**
+     * Number of ticks over which the most expensive chunks and regions are reported.
+     */
+    @Builder.Default
+    int listenerProfilerWindow = 1200;
+
+    /**
+     * Format in which region files are written.
+     */
+    @Builder.Default
+    RegionFormat regionFormat = RegionFormat.YAML;
+    /**
+     * Whether regions stored in another format should be loaded, and converted to
+     * the region format the next time they're saved.
+     */
+    @Builder.Default
+    boolean lazyMigrationEnabled = false;
+
+    /**
+     * Schema of the metadata values, upgrading values of regions written with previous versions.
+     * Upgraded regions are rewritten in the current version the next time they're saved.
+     */
+    @Builder.Default
+    MetadataSchema schema = MetadataSchema.initial();
+
+    /**
+     * Creates a config with all the default options.
+     * @return The default config.
+     */
+    public static BlockMetadataConfig defaults() {
+        return builder().build();
+    }
+}
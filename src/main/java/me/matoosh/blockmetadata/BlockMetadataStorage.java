@@ -1,39 +1,90 @@
 package me.matoosh.blockmetadata;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import lombok.Data;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.java.Log;
 import me.matoosh.blockmetadata.async.AsyncFiles;
+import me.matoosh.blockmetadata.async.DaemonThreadFactory;
+import me.matoosh.blockmetadata.change.ChangeBatch;
+import me.matoosh.blockmetadata.change.ChangeStream;
+import me.matoosh.blockmetadata.change.ChangeSubscription;
+import me.matoosh.blockmetadata.clipboard.AreaTransfer;
+import me.matoosh.blockmetadata.clipboard.AreaTransform;
+import me.matoosh.blockmetadata.diagnostics.RegionEviction;
+import me.matoosh.blockmetadata.diagnostics.RegionVerification;
+import me.matoosh.blockmetadata.diagnostics.StorageDiagnostics;
+import me.matoosh.blockmetadata.diagnostics.StorageInspector;
 import me.matoosh.blockmetadata.entity.chunkinfo.*;
 import me.matoosh.blockmetadata.event.RegionUnloadEvent;
+import me.matoosh.blockmetadata.format.CorruptRegionException;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.format.RegionTree;
+import me.matoosh.blockmetadata.format.UnsupportedRegionVersionException;
+import me.matoosh.blockmetadata.index.MetadataIndex;
+import me.matoosh.blockmetadata.index.SpatialIndex;
+import me.matoosh.blockmetadata.index.ValueIndex;
+import me.matoosh.blockmetadata.journal.RegionJournal;
+import me.matoosh.blockmetadata.journal.ShutdownSaver;
 import me.matoosh.blockmetadata.listener.BlockDestroyHandler;
 import me.matoosh.blockmetadata.listener.BlockMoveHandler;
 import me.matoosh.blockmetadata.listener.ChunkLoadHandler;
+import me.matoosh.blockmetadata.listener.PlayerMovePrefetchHandler;
+import me.matoosh.blockmetadata.listener.WorldSaveHandler;
+import me.matoosh.blockmetadata.metrics.StorageMetrics;
+import me.matoosh.blockmetadata.profiler.ListenerProfiler;
+import me.matoosh.blockmetadata.query.AreaQuery;
+import me.matoosh.blockmetadata.query.BulkOperations;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+import me.matoosh.blockmetadata.region.RegionContents;
+import me.matoosh.blockmetadata.region.RegionListener;
+import me.matoosh.blockmetadata.region.RegionPrefetcher;
+import me.matoosh.blockmetadata.snapshot.MetadataSnapshot;
+import me.matoosh.blockmetadata.snapshot.SnapshotTaker;
+import me.matoosh.blockmetadata.task.AutosaveTask;
+import me.matoosh.blockmetadata.task.ChangeFlushTask;
+import me.matoosh.blockmetadata.task.ExpiryTask;
+import me.matoosh.blockmetadata.task.ProfilerTickTask;
+import me.matoosh.blockmetadata.transaction.MetadataTransaction;
+import me.matoosh.blockmetadata.transaction.TransactionCommitter;
+import me.matoosh.blockmetadata.transaction.TransactionOperation;
+import me.matoosh.blockmetadata.ttl.ExpiryScheduler;
 import me.matoosh.blockmetadata.listener.PluginDisableHandler;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.util.BlockVector;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service managing the storage of block metadata.
@@ -43,20 +94,162 @@ import java.util.stream.Collectors;
 @Getter
 public class BlockMetadataStorage<T extends Serializable> {
 
+    /**
+     * Folder of the data folder in which corrupt region files are kept.
+     */
+    private static final String QUARANTINE_FOLDER = "quarantine";
+
+    /**
+     * Plugin owning this storage.
+     */
+    private final JavaPlugin plugin;
+
     /**
      * Path of the data folder.
      */
     private final Path dataPath;
 
+    /**
+     * Options of this storage.
+     */
+    private final BlockMetadataConfig config;
+
     /**
      * Currently loaded regions.
      */
-    private final Map<String, Region> regions = new HashMap<>();
+    private final Map<String, Region<T>> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Listener keeping the indexes and the expiry schedule up to date with the metadata of the regions.
+     */
+    @Getter(AccessLevel.NONE)
+    private final RegionListener<T> regionListener = new StorageRegionListener();
+
+    /**
+     * Access to the regions of the storage, given to the features built on top of it.
+     */
+    @Getter(AccessLevel.NONE)
+    private final RegionAccess<T> regionAccess = new StorageRegionAccess();
+
+    /**
+     * Loads regions speculatively and unloads them again once they're idle.
+     */
+    @Getter(AccessLevel.NONE)
+    private final RegionPrefetcher<T> prefetcher;
+
+    /**
+     * Reads and writes metadata of many blocks at once.
+     */
+    @Getter(AccessLevel.NONE)
+    private final BulkOperations<T> bulkOperations = new BulkOperations<>(regionAccess);
+
+    /**
+     * Queries metadata within cuboids.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AreaQuery<T> areaQuery;
+
+    /**
+     * Copies and moves metadata between areas.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AreaTransfer<T> areaTransfer;
+
+    /**
+     * Takes point-in-time snapshots of the metadata of worlds.
+     */
+    @Getter(AccessLevel.NONE)
+    private final SnapshotTaker<T> snapshotTaker = new SnapshotTaker<>(regionAccess);
+
+    /**
+     * Applies committed transactions atomically.
+     */
+    @Getter(AccessLevel.NONE)
+    private final TransactionCommitter<T> transactionCommitter = new TransactionCommitter<>(regionAccess);
+
+    /**
+     * Inspects, flushes, evicts and verifies regions for diagnostics.
+     */
+    @Getter(AccessLevel.NONE)
+    private final StorageInspector<T> inspector;
+
+    /**
+     * Mapper converting the contents of region files and the journal.
+     */
+    private final ObjectMapper mapper = RegionFileFormat.createMapper();
+
+    /**
+     * Task periodically saving dirty regions.
+     */
+    private final AutosaveTask<T> autosaveTask;
+
+    /**
+     * Task periodically removing expired metadata.
+     */
+    private final ExpiryTask<T> expiryTask;
+
+    /**
+     * Schedules the expiry of metadata in loaded regions.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ExpiryScheduler<T> expiryScheduler;
+
+    /**
+     * Journal of regions which couldn't be saved in time on shutdown.
+     */
+    private final RegionJournal journal;
+
+    /**
+     * Indexes kept up to date with the metadata.
+     */
+    private final List<MetadataIndex<T>> indexes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Spatial index of the metadata. Null if disabled.
+     */
+    private final SpatialIndex<T> spatialIndex;
+
+    /**
+     * Persisted reverse indexes from metadata values to regions.
+     */
+    private final List<ValueIndex<T>> valueIndexes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Stream of metadata changes to subscribers.
+     */
+    private final ChangeStream<T> changeStream = new ChangeStream<>();
 
     /**
-     * YAML data file mapper.
+     * Task delivering the buffered metadata changes to subscribers every tick.
      */
-    private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private final ChangeFlushTask<T> changeFlushTask;
+
+    /**
+     * Executor service on which regions are loaded.
+     */
+    private final ExecutorService regionExecutor = Executors.newCachedThreadPool(
+            new DaemonThreadFactory("block-metadata-region", Thread.NORM_PRIORITY));
+
+    /**
+     * Future completed once the regions around spawns and online players are preloaded.
+     * Already completed if warm-up is disabled.
+     */
+    private final CompletableFuture<Void> warmupFuture;
+
+    /**
+     * Metrics of the storage's region loading and saving.
+     */
+    private final StorageMetrics metrics = new StorageMetrics();
+
+    /**
+     * Profiler measuring the storage's listeners. Null if disabled.
+     */
+    private final ListenerProfiler listenerProfiler;
+
+    /**
+     * Task closing the ticks of the listener profiler. Null if profiling is disabled.
+     */
+    private final ProfilerTickTask profilerTickTask;
 
     /**
      * Instantiates a new block metadata storage with automatic loading/saving.
@@ -64,6 +257,19 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @param dataPath Path where the metadata should be stored on disk.
      */
     public BlockMetadataStorage(JavaPlugin plugin, Path dataPath) {
+        this(plugin, dataPath, BlockMetadataConfig.defaults());
+    }
+
+    /**
+     * Instantiates a new block metadata storage with automatic loading/saving.
+     * @param plugin Instance of the plugin.
+     * @param dataPath Path where the metadata should be stored on disk.
+     * @param config Options of the storage.
+     */
+    public BlockMetadataStorage(JavaPlugin plugin, Path dataPath, @NonNull BlockMetadataConfig config) {
+        this.plugin = plugin;
+        this.config = config;
+
         // set data path
         try {
             Files.createDirectories(dataPath);
@@ -71,36 +277,100 @@ public class BlockMetadataStorage<T extends Serializable> {
             exception.printStackTrace();
         }
         this.dataPath = dataPath;
+        this.prefetcher = new RegionPrefetcher<>(regionAccess,
+                TimeUnit.SECONDS.toMillis(config.getSpeculativeIdleTimeout()));
+        this.areaQuery = new AreaQuery<>(regionAccess, regionExecutor);
+        this.areaTransfer = new AreaTransfer<>(regionAccess, areaQuery);
+        this.inspector = new StorageInspector<>(regionAccess, dataPath, metrics, regionExecutor);
+        this.expiryScheduler = new ExpiryScheduler<>(regionAccess,
+                TimeUnit.SECONDS.toMillis(config.getDefaultTtl()));
+
+        // sample the state of the regions when metrics are queried
+        metrics.registerRegionGauges(regionAccess);
+        if (config.isJmxEnabled()) {
+            metrics.registerMBean(dataPath);
+        }
+
+        // index metadata spatially
+        if (config.isSpatialIndexEnabled()) {
+            spatialIndex = new SpatialIndex<>(config.getSpatialIndexCellSize());
+            addIndex(spatialIndex);
+        } else {
+            spatialIndex = null;
+        }
 
-        // add custom key serializers to the json mapper
-        SimpleModule module = new SimpleModule();
-        // configure chunk coordinate key mapping
-        module.addKeySerializer(ChunkCoordinates.class, new ChunkCoordinatesSerializer());
-        module.addKeyDeserializer(ChunkCoordinates.class, new ChunkCoordinatesDeserializer());
-        // configure block coordinate key mapping
-        module.addKeySerializer(BlockChunkCoordinates.class, new BlockChunkCoordinatesSerializer());
-        module.addKeyDeserializer(BlockChunkCoordinates.class, new BlockChunkCoordinatesDeserializer());
-        mapper.registerModule(module);
+        // restore regions which couldn't be saved on last shutdown
+        journal = new RegionJournal(dataPath.resolve("journal.yml"), mapper);
+        try {
+            journal.replay(this::getRegionFile);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+
+        // measure the listeners on the server thread
+        if (config.isListenerProfilingEnabled()) {
+            listenerProfiler = new ListenerProfiler(
+                    TimeUnit.MICROSECONDS.toNanos(config.getListenerTickBudget()),
+                    config.getListenerProfilerWindow());
+            profilerTickTask = new ProfilerTickTask(listenerProfiler);
+            profilerTickTask.runTaskTimer(plugin, 1, 1);
+        } else {
+            listenerProfiler = null;
+            profilerTickTask = null;
+        }
 
         // automatically manage metadata loading/saving
-        Bukkit.getPluginManager().registerEvents(
-                new ChunkLoadHandler<>(this), plugin);
+        registerEvents(new ChunkLoadHandler<>(this));
 
         // automatically manage blocks moved by pistons
-        Bukkit.getPluginManager().registerEvents(
-                new BlockMoveHandler<>(this), plugin);
+        registerEvents(new BlockMoveHandler<>(this));
 
         // automatically manage blocks that get destroyed
-        Bukkit.getPluginManager().registerEvents(
-                new BlockDestroyHandler<>(this), plugin);
+        registerEvents(new BlockDestroyHandler<>(this));
+
+        // save metadata when worlds are saved
+        registerEvents(new WorldSaveHandler<>(this));
 
         // automatically manage metadata saving when plugin disabled
-        Bukkit.getPluginManager().registerEvents(
-                new PluginDisableHandler<>(this), plugin);
+        registerEvents(new PluginDisableHandler<>(this));
+
+        // prefetch regions in front of moving players
+        if (config.isPlayerPrefetchEnabled()) {
+            registerEvents(new PlayerMovePrefetchHandler<>(this, config.getPlayerPrefetchDistance()));
+        }
+
+        // periodically save dirty regions
+        autosaveTask = new AutosaveTask<>(this, regionAccess);
+        autosaveTask.runTaskTimer(plugin, config.getAutosavePeriod(), config.getAutosavePeriod());
+
+        // periodically remove expired metadata
+        expiryTask = new ExpiryTask<>(this);
+        expiryTask.runTaskTimer(plugin, config.getExpiryPeriod(), config.getExpiryPeriod());
+
+        // deliver metadata changes to subscribers once per tick
+        changeFlushTask = new ChangeFlushTask<>(changeStream);
+        changeFlushTask.runTaskTimer(plugin, 1, 1);
+
+        // preload regions which are likely to be queried soon
+        warmupFuture = config.isWarmupEnabled()
+                ? prefetcher.warmup(config.getWarmupRadius(), config.getWarmupParallelism())
+                : CompletableFuture.completedFuture(null);
 
         log.info("Block Metadata storage registered at: " + dataPath);
     }
 
+    /**
+     * Registers a listener of the storage, through the listener profiler if enabled.
+     * @param listener The listener.
+     */
+    private void registerEvents(@NonNull Listener listener) {
+        if (listenerProfiler != null) {
+            listenerProfiler.registerEvents(listener, plugin);
+        } else {
+            Bukkit.getPluginManager().registerEvents(listener, plugin);
+        }
+    }
+
     /**
      * Get metadata of a block.
      * @param block The block.
@@ -119,16 +389,8 @@ public class BlockMetadataStorage<T extends Serializable> {
      */
     public CompletableFuture<T> getMetadata(@NonNull ChunkInfo chunkInfo,
                                             @NonNull BlockChunkCoordinates blockChunkCoordinates) {
-        // get chunk
-        return getMetadataInChunk(chunkInfo).thenApply((metadata) -> {
-            if (metadata == null) {
-                // no data for this chunk
-                return null;
-            }
-
-            // get block metadata
-            return metadata.get(blockChunkCoordinates);
-        });
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(
+                () -> region.get(chunkInfo.getCoordinates(), blockChunkCoordinates)));
     }
 
     /**
@@ -156,19 +418,65 @@ public class BlockMetadataStorage<T extends Serializable> {
                     .thenApply((s) -> null);
         } else {
             // set metadata
-            return getMetadataInChunk(chunkInfo)
-            .thenApply((d) -> {
-                // make sure there's a map to put data in
-                if (d == null) {
-                    d = new HashMap<>();
-                }
+            long expiresAt = expiryScheduler.getDefaultExpiry();
+            return getRegion(chunkInfo).thenAccept((region) -> region.locked(() -> {
+                region.put(chunkInfo.getCoordinates(), blockChunkCoordinates, data);
+                region.setExpiry(chunkInfo.getCoordinates(), blockChunkCoordinates, expiresAt);
+                return null;
+            }));
+        }
+    }
 
-                // insert data
-                d.put(blockChunkCoordinates, data);
+    /**
+     * Set metadata of a block, which is removed automatically once its time to live passes.
+     * @param block The block.
+     * @param data Metadata to set to the block.
+     * @param ttl How long the metadata should be kept.
+     */
+    public CompletableFuture<Void> setMetadata(@NonNull Block block, @NonNull T data, @NonNull Duration ttl) {
+        return setMetadata(ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), data, ttl);
+    }
 
-                return d;
-            }).thenCompose((d) -> setMetadataInChunk(chunkInfo, d));
-        }
+    /**
+     * Set metadata of a block, which is removed automatically once its time to live passes.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param data Metadata to set to the block.
+     * @param ttl How long the metadata should be kept.
+     */
+    public CompletableFuture<Void> setMetadata(@NonNull ChunkInfo chunkInfo,
+                                               @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                               @NonNull T data, @NonNull Duration ttl) {
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        return getRegion(chunkInfo).thenAccept((region) -> region.locked(() -> {
+            region.put(chunkInfo.getCoordinates(), blockChunkCoordinates, data);
+            region.setExpiry(chunkInfo.getCoordinates(), blockChunkCoordinates, expiresAt);
+            return null;
+        }));
+    }
+
+    /**
+     * Get the time at which metadata of a block expires.
+     * @param block The block.
+     * @return The expiry time in milliseconds since the epoch. Null if the metadata doesn't expire.
+     */
+    public CompletableFuture<Long> getExpiry(@NonNull Block block) {
+        return getExpiry(ChunkInfo.fromChunk(block.getChunk()), BlockChunkCoordinates.fromBlock(block));
+    }
+
+    /**
+     * Get the time at which metadata of a block expires.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @return The expiry time in milliseconds since the epoch. Null if the metadata doesn't expire.
+     */
+    public CompletableFuture<Long> getExpiry(@NonNull ChunkInfo chunkInfo,
+                                             @NonNull BlockChunkCoordinates blockChunkCoordinates) {
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(() -> {
+            long expiresAt = region.getExpiry(chunkInfo.getCoordinates(), blockChunkCoordinates);
+            return expiresAt != 0 ? expiresAt : null;
+        }));
     }
 
     /**
@@ -190,24 +498,516 @@ public class BlockMetadataStorage<T extends Serializable> {
     public CompletableFuture<T> removeMetadata(@NonNull ChunkInfo chunkInfo,
                                                @NonNull BlockChunkCoordinates blockChunkCoordinates) {
         // get and remove value from the metadata
-        CompletableFuture<T> valueFuture = getMetadataInChunk(chunkInfo)
-        .thenApply((metadata) -> {
-            // no metadata in chunk
-            if (metadata == null) {
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(
+                () -> region.remove(chunkInfo.getCoordinates(), blockChunkCoordinates)));
+    }
+
+    /**
+     * Atomically computes new metadata of a block from its current metadata.
+     * No other modification of the block's region can happen in between.
+     * @param block The block.
+     * @param remapping Computes the new metadata from the block coordinates and the current metadata,
+     *                  which is null if no data is stored. Returning null removes the metadata.
+     * @return The new metadata of the block.
+     */
+    public CompletableFuture<T> computeMetadata(@NonNull Block block,
+                                                @NonNull BiFunction<BlockChunkCoordinates, ? super T, ? extends T> remapping) {
+        return computeMetadata(ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), remapping);
+    }
+
+    /**
+     * Atomically computes new metadata of a block from its current metadata.
+     * No other modification of the block's region can happen in between.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param remapping Computes the new metadata from the block coordinates and the current metadata,
+     *                  which is null if no data is stored. Returning null removes the metadata.
+     * @return The new metadata of the block.
+     */
+    public CompletableFuture<T> computeMetadata(@NonNull ChunkInfo chunkInfo,
+                                                @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                                @NonNull BiFunction<BlockChunkCoordinates, ? super T, ? extends T> remapping) {
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(() -> region.compute(
+                chunkInfo.getCoordinates(), blockChunkCoordinates, remapping,
+                expiryScheduler.getDefaultExpiry())));
+    }
+
+    /**
+     * Atomically merges metadata into the current metadata of a block.
+     * Sets the metadata if none is stored, otherwise combines both with the merge function.
+     * @param block The block.
+     * @param data Metadata to merge.
+     * @param merge Combines the current and the given metadata. Returning null removes the metadata.
+     * @return The new metadata of the block.
+     */
+    public CompletableFuture<T> mergeMetadata(@NonNull Block block, @NonNull T data,
+                                              @NonNull BiFunction<? super T, ? super T, ? extends T> merge) {
+        return mergeMetadata(ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), data, merge);
+    }
+
+    /**
+     * Atomically merges metadata into the current metadata of a block.
+     * Sets the metadata if none is stored, otherwise combines both with the merge function.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param data Metadata to merge.
+     * @param merge Combines the current and the given metadata. Returning null removes the metadata.
+     * @return The new metadata of the block.
+     */
+    public CompletableFuture<T> mergeMetadata(@NonNull ChunkInfo chunkInfo,
+                                              @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                              @NonNull T data,
+                                              @NonNull BiFunction<? super T, ? super T, ? extends T> merge) {
+        return computeMetadata(chunkInfo, blockChunkCoordinates,
+                (coordinates, current) -> current == null ? data : merge.apply(current, data));
+    }
+
+    /**
+     * Atomically sets metadata of a block, if it has no metadata yet.
+     * @param block The block.
+     * @param data Metadata to set to the block.
+     * @return The current metadata of the block. Null if the given metadata was set.
+     */
+    public CompletableFuture<T> putIfAbsent(@NonNull Block block, @NonNull T data) {
+        return putIfAbsent(ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), data);
+    }
+
+    /**
+     * Atomically sets metadata of a block, if it has no metadata yet.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param data Metadata to set to the block.
+     * @return The current metadata of the block. Null if the given metadata was set.
+     */
+    public CompletableFuture<T> putIfAbsent(@NonNull ChunkInfo chunkInfo,
+                                            @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                            @NonNull T data) {
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(() -> {
+            T current = region.get(chunkInfo.getCoordinates(), blockChunkCoordinates);
+            if (current == null) {
+                region.put(chunkInfo.getCoordinates(), blockChunkCoordinates, data);
+                region.setExpiry(chunkInfo.getCoordinates(), blockChunkCoordinates,
+                        expiryScheduler.getDefaultExpiry());
+            }
+            return current;
+        }));
+    }
+
+    /**
+     * Atomically sets metadata of a block, if its current metadata equals the expected metadata.
+     * @param block The block.
+     * @param expected The expected current metadata. Null if no metadata is expected.
+     * @param data Metadata to set to the block. Null removes the metadata.
+     * @return Whether the metadata was set.
+     */
+    public CompletableFuture<Boolean> compareAndSet(@NonNull Block block, T expected, T data) {
+        return compareAndSet(ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), expected, data);
+    }
+
+    /**
+     * Atomically sets metadata of a block, if its current metadata equals the expected metadata.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param expected The expected current metadata. Null if no metadata is expected.
+     * @param data Metadata to set to the block. Null removes the metadata.
+     * @return Whether the metadata was set.
+     */
+    public CompletableFuture<Boolean> compareAndSet(@NonNull ChunkInfo chunkInfo,
+                                                    @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                                    T expected, T data) {
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(() -> {
+            T current = region.get(chunkInfo.getCoordinates(), blockChunkCoordinates);
+            if (!Objects.equals(current, expected)) {
+                return false;
+            }
+            region.compute(chunkInfo.getCoordinates(), blockChunkCoordinates,
+                    (coordinates, value) -> data, expiryScheduler.getDefaultExpiry());
+            return true;
+        }));
+    }
+
+    /**
+     * Begins a transaction, staging operations which are committed atomically.
+     * @return The transaction.
+     */
+    public MetadataTransaction<T> beginTransaction() {
+        return new MetadataTransaction<>(this);
+    }
+
+    /**
+     * Commits the operations of a transaction.
+     * All affected regions are locked in the order of their keys, then the operations are applied in order.
+     * If any operation fails, the metadata of all affected blocks is restored.
+     * Committed changes are persisted with the next save of their regions.
+     * @param transaction The transaction.
+     * @return Future completed once all the operations are applied,
+     *         or completed exceptionally once they're rolled back.
+     */
+    public CompletableFuture<Void> commit(@NonNull MetadataTransaction<T> transaction) {
+        return transactionCommitter.commit(transaction.getOperations());
+    }
+
+    /**
+     * Get metadata of multiple blocks at once.
+     * @param blocks The blocks.
+     * @return Current metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<Block, T>> getMetadataBulk(@NonNull Collection<Block> blocks) {
+        return bulkOperations.getMetadataBulk(blocks);
+    }
+
+    /**
+     * Get metadata of multiple blocks at once.
+     * Each region is resolved once, regardless of the number of blocks in it.
+     * @param blocks Locations of the blocks.
+     * @return Current metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataBulkAt(@NonNull Collection<BlockInfo> blocks) {
+        return bulkOperations.getMetadataBulkAt(blocks);
+    }
+
+    /**
+     * Set metadata of multiple blocks at once.
+     * @param data Metadata to set to each block. Null values clear the metadata of a block.
+     */
+    public CompletableFuture<Void> setMetadataBulk(@NonNull Map<Block, T> data) {
+        return bulkOperations.setMetadataBulk(data);
+    }
+
+    /**
+     * Set metadata of multiple blocks at once.
+     * Each region is resolved once and all its blocks are updated together.
+     * @param data Metadata to set to each block. Null values clear the metadata of a block.
+     */
+    public CompletableFuture<Void> setMetadataBulkAt(@NonNull Map<BlockInfo, T> data) {
+        return bulkOperations.setMetadataBulkAt(data);
+    }
+
+    /**
+     * Removes metadata of multiple blocks at once.
+     * @param blocks The blocks.
+     * @return The removed metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<Block, T>> removeMetadataBulk(@NonNull Collection<Block> blocks) {
+        return bulkOperations.removeMetadataBulk(blocks);
+    }
+
+    /**
+     * Removes metadata of multiple blocks at once.
+     * Each region is resolved once and all its blocks are updated together.
+     * @param blocks Locations of the blocks.
+     * @return The removed metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> removeMetadataBulkAt(@NonNull Collection<BlockInfo> blocks) {
+        return bulkOperations.removeMetadataBulkAt(blocks);
+    }
+
+    /**
+     * Get metadata of all blocks within a cuboid.
+     * @param world The world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @return Metadata of each block with metadata within the cuboid.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataInArea(@NonNull World world,
+                                                                 @NonNull BlockVector min,
+                                                                 @NonNull BlockVector max) {
+        return areaQuery.getMetadataInArea(world, min, max);
+    }
+
+    /**
+     * Get metadata of all blocks within a cuboid.
+     * @param world Name of the world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @return Metadata of each block with metadata within the cuboid.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataInArea(@NonNull String world,
+                                                                 @NonNull BlockVector min,
+                                                                 @NonNull BlockVector max) {
+        return areaQuery.getMetadataInArea(world, min, max);
+    }
+
+    /**
+     * Streams metadata of all blocks within a cuboid to a consumer.
+     * Only regions and chunks holding metadata are visited, blocks without metadata are never visited.
+     * Regions are scanned in parallel, so the consumer may be called from multiple threads at once.
+     * @param world Name of the world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @param consumer Consumer receiving each block with metadata and its metadata.
+     * @return Future completed once every block within the cuboid has been visited.
+     */
+    public CompletableFuture<Void> forEachMetadataInArea(@NonNull String world,
+                                                         @NonNull BlockVector min,
+                                                         @NonNull BlockVector max,
+                                                         @NonNull BiConsumer<BlockInfo, T> consumer) {
+        return areaQuery.forEachMetadataInArea(world, min, max, consumer);
+    }
+
+    /**
+     * Copies metadata of all blocks within a cuboid to another area.
+     * Metadata of destination blocks is replaced only where the source blocks have metadata.
+     * @param world Name of the source world.
+     * @param min One corner of the source cuboid.
+     * @param max The opposite corner of the source cuboid.
+     * @param targetWorld Name of the destination world.
+     * @param targetMin Minimum corner of the destination area.
+     * @param transform Rotation and mirroring applied to the area.
+     * @return The number of copied blocks.
+     */
+    public CompletableFuture<Integer> copyArea(@NonNull String world, @NonNull BlockVector min,
+                                               @NonNull BlockVector max, @NonNull String targetWorld,
+                                               @NonNull BlockVector targetMin, @NonNull AreaTransform transform) {
+        return areaTransfer.copyArea(world, min, max, targetWorld, targetMin, transform);
+    }
+
+    /**
+     * Moves metadata of all blocks within a cuboid to another area.
+     * Metadata of destination blocks is replaced only where the source blocks have metadata.
+     * The source and destination areas may overlap.
+     * @param world Name of the source world.
+     * @param min One corner of the source cuboid.
+     * @param max The opposite corner of the source cuboid.
+     * @param targetWorld Name of the destination world.
+     * @param targetMin Minimum corner of the destination area.
+     * @param transform Rotation and mirroring applied to the area.
+     * @return The number of moved blocks.
+     */
+    public CompletableFuture<Integer> moveArea(@NonNull String world, @NonNull BlockVector min,
+                                               @NonNull BlockVector max, @NonNull String targetWorld,
+                                               @NonNull BlockVector targetMin, @NonNull AreaTransform transform) {
+        return areaTransfer.moveArea(world, min, max, targetWorld, targetMin, transform);
+    }
+
+    /**
+     * Finds all blocks with metadata within a radius of a location.
+     * Requires the spatial index to be enabled, only blocks in loaded regions are found.
+     * @param center Center of the search.
+     * @param radius The radius, in blocks.
+     * @return Metadata of each block within the radius.
+     */
+    public Map<BlockInfo, T> findWithinRadius(@NonNull Location center, double radius) {
+        return requireSpatialIndex().findWithinRadius(Objects.requireNonNull(center.getWorld()).getName(),
+                center.getX(), center.getY(), center.getZ(), radius);
+    }
+
+    /**
+     * Finds the block with metadata nearest to a location.
+     * Requires the spatial index to be enabled, only blocks in loaded regions are found.
+     * @param center Center of the search.
+     * @param maxRadius Maximum distance of the block from the location, in blocks.
+     * @return The nearest block and its metadata. Null if there's no block within the maximum distance.
+     */
+    public Map.Entry<BlockInfo, T> findNearest(@NonNull Location center, double maxRadius) {
+        return requireSpatialIndex().findNearest(Objects.requireNonNull(center.getWorld()).getName(),
+                center.getX(), center.getY(), center.getZ(), maxRadius);
+    }
+
+    /**
+     * Get the spatial index, ensuring it's enabled.
+     * @return The spatial index.
+     */
+    private SpatialIndex<T> requireSpatialIndex() {
+        if (spatialIndex == null) {
+            throw new IllegalStateException("The spatial index is not enabled for this storage");
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Adds a persisted reverse index from a key derived from metadata values to the blocks with that key.
+     * The index is stored next to the region files and updated as metadata changes.
+     * Regions stored before the index was first added are only indexed once they load,
+     * use {@link #rebuildValueIndex(ValueIndex)} to index them all at once.
+     * @param name Name of the index, unique within this storage.
+     * @param keyExtractor Extracts the indexed key from a metadata value, e.g. the owner of a block.
+     * @return The added index.
+     */
+    public ValueIndex<T> addValueIndex(@NonNull String name, @NonNull Function<? super T, String> keyExtractor) {
+        ValueIndex<T> index = new ValueIndex<>(name, keyExtractor,
+                dataPath.resolve("index").resolve(name + ".yml"), mapper);
+        try {
+            index.load();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        valueIndexes.add(index);
+        addIndex(index);
+
+        // reconcile with the regions which are already loaded
+        for (Region<T> region : regions.values()) {
+            region.getLoadFuture().thenRun(() -> region.locked(() -> {
+                index.onRegionLoad(region.getKey(), region.getWorld(), region.getBuffer());
                 return null;
+            }));
+        }
+        return index;
+    }
+
+    /**
+     * Get metadata of all blocks whose metadata has a key within a reverse index.
+     * Only the regions containing matching blocks are loaded.
+     * Regions loaded just for the lookup are unloaded again once they've stayed idle.
+     * @param index The reverse index.
+     * @param key The key to look for.
+     * @return Metadata of each matching block. Expired metadata is left out.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataByValue(@NonNull ValueIndex<T> index,
+                                                                  @NonNull String key) {
+        Map<BlockInfo, T> result = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] tasks = index.getRegions(key).stream()
+                .map((regionKey) -> {
+                    boolean loaded = regions.containsKey(regionKey);
+                    return getRegion(getRegionChunk(regionKey)).thenAccept((region) -> {
+                        region.locked(() -> {
+                            if (region.getBuffer() == null) {
+                                return null;
+                            }
+
+                            // find the matching blocks first, as reading them removes expired metadata
+                            List<BlockInfo> matching = new ArrayList<>();
+                            region.getBuffer().forEach((chunk, blocks) -> {
+                                ChunkInfo chunkInfo = new ChunkInfo(region.getWorld(), chunk);
+                                blocks.forEach((block, data) -> {
+                                    if (key.equals(index.getKeyExtractor().apply(data))) {
+                                        matching.add(new BlockInfo(chunkInfo, block));
+                                    }
+                                });
+                            });
+                            for (BlockInfo block : matching) {
+                                T data = region.get(block.getChunk().getCoordinates(), block.getCoordinates());
+                                if (data != null) {
+                                    result.put(block, data);
+                                }
+                            }
+                            return null;
+                        });
+
+                        // regions loaded only for the lookup are unloaded by the autosave once idle
+                        if (!loaded) {
+                            prefetcher.markSpeculative(region);
+                        }
+                    });
+                })
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(tasks).thenApply((s) -> result);
+    }
+
+    /**
+     * Rebuilds a reverse index from every region stored on disk.
+     * Regions which weren't loaded before are unloaded again afterwards.
+     * @param index The reverse index.
+     * @return Future completed once every region has been indexed.
+     */
+    public CompletableFuture<Void> rebuildValueIndex(@NonNull ValueIndex<T> index) {
+        CompletableFuture<?>[] tasks = listRegionKeys().stream()
+                .map((regionKey) -> {
+                    boolean loaded = regions.containsKey(regionKey);
+                    return getRegion(getRegionChunk(regionKey)).thenCompose((region) -> {
+                        region.locked(() -> {
+                            index.onRegionLoad(region.getKey(), region.getWorld(), region.getBuffer());
+                            return null;
+                        });
+                        return loaded || !region.getActiveChunks().isEmpty()
+                                ? CompletableFuture.completedFuture(null)
+                                : saveRegion(region, true);
+                    });
+                })
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(tasks).thenRunAsync(() -> {
+            try {
+                index.save();
+            } catch (IOException exception) {
+                exception.printStackTrace();
             }
+        }, regionExecutor);
+    }
 
-            // get metadata value from the map
-            return metadata.remove(blockChunkCoordinates);
-        });
-        // if no metadata remaining in chunk, remove chunk section
-        CompletableFuture<Void> removeChunkFuture = valueFuture.thenCompose((s) -> getMetadataInChunk(chunkInfo))
-                .thenApply((data) -> data != null && data.size() == 0)
-                .thenCompose((removeChunk) -> removeChunk
-                        ? removeMetadataForChunk(chunkInfo).thenApply((s) -> null)
-                        : CompletableFuture.completedFuture(null));
-        // wait until chunk section is removed before continuing
-        return valueFuture.thenCombine(removeChunkFuture, (val, n) -> val);
+    /**
+     * Saves the modified reverse indexes to disk.
+     * @return Future completed once the indexes are saved.
+     */
+    public CompletableFuture<Void> saveIndexes() {
+        return CompletableFuture.runAsync(() -> {
+            for (ValueIndex<T> index : valueIndexes) {
+                try {
+                    index.save();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }, regionExecutor);
+    }
+
+    /**
+     * Takes a consistent point-in-time snapshot of the metadata of a world.
+     * @param world The world.
+     * @return The snapshot.
+     */
+    public CompletableFuture<MetadataSnapshot<T>> snapshot(@NonNull World world) {
+        return snapshot(world.getName());
+    }
+
+    /**
+     * Takes a consistent point-in-time snapshot of the metadata of a world.
+     * All regions of the world are loaded, then locked together only for as long as it takes
+     * to share their chunk maps with the snapshot. Regions loaded just for the snapshot are unloaded again.
+     * @param world Name of the world.
+     * @return The snapshot.
+     */
+    public CompletableFuture<MetadataSnapshot<T>> snapshot(@NonNull String world) {
+        return snapshotTaker.takeSnapshot(world);
+    }
+
+    /**
+     * Subscribes to changes of the metadata, buffering up to the configured number of changed blocks.
+     * @param listener Receives the batches of changes.
+     * @param executor Executor on which the batches are delivered.
+     * @return The subscription.
+     */
+    public ChangeSubscription<T> subscribe(@NonNull Consumer<ChangeBatch<T>> listener, @NonNull Executor executor) {
+        return subscribe(listener, executor, config.getChangeBufferSize());
+    }
+
+    /**
+     * Subscribes to changes of the metadata.
+     * The changes made during a tick are coalesced by block and delivered as a single batch.
+     * Subscribers which fall behind lose their buffered changes and are asked to resynchronize,
+     * so they never slow down modifications of the metadata.
+     * @param listener Receives the batches of changes.
+     * @param executor Executor on which the batches are delivered.
+     * @param maxBufferedChanges Maximum number of blocks whose changes are buffered between batches.
+     * @return The subscription.
+     */
+    public synchronized ChangeSubscription<T> subscribe(@NonNull Consumer<ChangeBatch<T>> listener,
+                                                       @NonNull Executor executor, int maxBufferedChanges) {
+        // only stream changes once there's a subscriber
+        if (!indexes.contains(changeStream)) {
+            addIndex(changeStream);
+        }
+        return changeStream.subscribe(listener, executor, maxBufferedChanges);
+    }
+
+    /**
+     * Adds an index which is kept up to date with the metadata.
+     * The index is only notified about regions loaded after it's added.
+     * @param index The index.
+     */
+    public void addIndex(@NonNull MetadataIndex<T> index) {
+        indexes.add(index);
+    }
+
+    /**
+     * Removes an index.
+     * @param index The index.
+     */
+    public void removeIndex(@NonNull MetadataIndex<T> index) {
+        indexes.remove(index);
     }
 
     /**
@@ -217,8 +1017,7 @@ public class BlockMetadataStorage<T extends Serializable> {
      */
     public CompletableFuture<Boolean> hasMetadataForChunk(@NonNull ChunkInfo chunkInfo) {
         return getRegion(chunkInfo).thenApply((
-                region -> region != null && region.getBuffer() != null
-                        && region.getBuffer().containsKey(chunkInfo.getCoordinates())));
+                region -> region != null && region.getChunk(chunkInfo.getCoordinates()) != null));
     }
 
     /**
@@ -226,39 +1025,21 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @param chunkInfo Information about the chunk.
      */
     public CompletableFuture<Map<BlockChunkCoordinates, T>> removeMetadataForChunk(@NonNull ChunkInfo chunkInfo) {
-        CompletableFuture<Map<BlockChunkCoordinates, T>> valueFuture = getRegion(chunkInfo).thenApply((region) -> {
-            // check if buffer exists
-            if (region.getBuffer() == null) {
-                return null;
-            }
-            // remove metadata
-            Map<BlockChunkCoordinates, T> metadata = region.getBuffer().remove(chunkInfo.getCoordinates());
-            if (metadata != null) {
-                // set region as dirty
-                region.setDirty(true);
-                return metadata;
-            } else {
-                return null;
-            }
-        });
-        CompletableFuture<Void> removeRegionFuture = valueFuture.thenCompose((s) -> getRegion(chunkInfo))
-            .thenAccept((region) -> {
-                if (region != null && region.getBuffer().size() == 0) {
-                    region.setBuffer(null);
-                }
-            });
-        return valueFuture.thenCombine(removeRegionFuture, (val, n) -> val);
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(
+                () -> region.removeChunk(chunkInfo.getCoordinates())));
     }
 
     /**
      * Gets metadata of blocks in a chunk.
+     * The map is an unmodifiable copy, use {@link #setMetadataInChunk(ChunkInfo, Map)} to modify the chunk.
      * @param chunkInfo Information about the chunk.
-     * @return Map of metadata.
+     * @return Map of metadata. Null if the chunk has no metadata.
      */
     public CompletableFuture<Map<BlockChunkCoordinates, T>> getMetadataInChunk(@NonNull ChunkInfo chunkInfo) {
-        return getRegion(chunkInfo).thenApply((region) -> region.getBuffer() != null
-                ? region.getBuffer().get(chunkInfo.getCoordinates())
-                : null);
+        return getRegion(chunkInfo).thenApply((region) -> region.locked(() -> {
+            Map<BlockChunkCoordinates, T> metadata = region.getChunk(chunkInfo.getCoordinates());
+            return metadata != null ? Collections.unmodifiableMap(new HashMap<>(metadata)) : null;
+        }));
     }
 
     /**
@@ -266,28 +1047,75 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @param chunkInfo Information about the chunk.
      * @return The region data future.
      */
-    public CompletableFuture<Region> getRegion(@NonNull ChunkInfo chunkInfo) {
-        // get region
-        String regionKey = getRegionKey(chunkInfo);
-        Region region = regions.get(regionKey);
-        if (region == null) {
+    public CompletableFuture<Region<T>> getRegion(@NonNull ChunkInfo chunkInfo) {
+        return getRegion(chunkInfo, regionExecutor);
+    }
+
+    /**
+     * Resolves a region asynchronously.
+     * @param chunkInfo Information about the chunk.
+     * @param executorService Executor service to load the region on, if it's not loaded yet.
+     * @return The region data future.
+     */
+    private CompletableFuture<Region<T>> getRegion(@NonNull ChunkInfo chunkInfo,
+                                                   @NonNull ExecutorService executorService) {
+        // get region, creating it if not loaded yet
+        boolean[] created = new boolean[1];
+        Region<T> region = regions.computeIfAbsent(getRegionKey(chunkInfo), (regionKey) -> {
             // create region object
             Path regionPath = getRegionFile(chunkInfo);
-            Region newRegion = new Region(regionKey, chunkInfo.getWorld(), regionPath);
+            Region<T> newRegion = new Region<>(regionKey, chunkInfo.getWorld(), regionPath, regionListener);
+            newRegion.setLoadFuture(new CompletableFuture<>());
+            created[0] = true;
+            return newRegion;
+        });
 
-            // load region
-            ExecutorService regionExeService = Executors.newSingleThreadExecutor();
-            CompletableFuture<Void> loadFuture = loadRegion(newRegion.getFilePath(), regionExeService)
-                    .thenAccept(newRegion::setBuffer);
-            newRegion.setLoadFuture(loadFuture);
-            regions.put(newRegion.getKey(), newRegion);
+        // load region outside of the mapping function, so a failed load can remove it from the map
+        if (created[0]) {
+            String regionKey = region.getKey();
+            CompletableFuture<Void> loadFuture = region.getLoadFuture();
+            loadRegion(region, executorService)
+                    .thenAccept((contents) -> {
+                        // regions loaded from another format or schema version are rewritten on their next save
+                        if (contents != null && contents.isUpgraded()) {
+                            metrics.getRegionsUpgraded().increment();
+                        }
+                        if (region.getLegacyFilePath() != null || (contents != null
+                                && (contents.isUpgraded() || !contents.getCorruptChunks().isEmpty()))) {
+                            region.setDirty(true);
+                        }
+                        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer = contents != null
+                                ? contents.getBuffer()
+                                : null;
+                        region.setBuffer(buffer);
+                        if (contents != null && contents.getExpiries() != null) {
+                            region.setExpiries(contents.getExpiries());
+                            expiryScheduler.scheduleAll(region);
+                        }
+                        indexes.forEach((index) -> index.onRegionLoad(regionKey, region.getWorld(), buffer));
+                    })
+                    .whenComplete((s, e) -> {
+                        if (e != null) {
+                            // retry loading a failed region on its next access
+                            regions.remove(regionKey, region);
+                            loadFuture.completeExceptionally(e);
+                        } else {
+                            loadFuture.complete(null);
+                        }
+                    });
+        }
 
-            // wait until region loads
-            return newRegion.getLoadFuture().thenApply((d) -> newRegion);
-        } else {
-            // wait until region loads
-            return region.getLoadFuture().thenApply((d) -> region);
+        // wait until region loads
+        metrics.getRegionRequests().increment();
+        if (!region.getLoadFuture().isDone()) {
+            metrics.getRegionWaits().increment();
+            long start = System.nanoTime();
+            return region.getLoadFuture().thenApply((d) -> {
+                metrics.getRegionWaitLatency().recordSince(start);
+                return region;
+            });
         }
+        return region.getLoadFuture().thenApply((d) -> region);
     }
 
 
@@ -297,35 +1125,55 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @param data The metadata map.
      */
     public CompletableFuture<Void> setMetadataInChunk(@NonNull ChunkInfo chunkInfo, Map<BlockChunkCoordinates, T> data) {
-        return getRegion(chunkInfo).thenAccept((region) -> {
+        return getRegion(chunkInfo).thenAccept((region) -> region.locked(() -> {
             // update the data
             if (data == null || data.size() == 0) {
                 // remove the chunk data
-                Map<BlockChunkCoordinates, T> removed = region.getBuffer().remove(
-                        chunkInfo.getCoordinates());
-                if (removed != null) {
-                    // set region as dirty
-                    region.setDirty(true);
-                }
+                return region.removeChunk(chunkInfo.getCoordinates());
             } else {
-                // ensure buffer exists
-                if (region.getBuffer() == null) {
-                    region.setBuffer(new HashMap<>());
-                }
-                region.getBuffer().put(chunkInfo.getCoordinates(), data);
-
-                // set region as dirty
-                region.setDirty(true);
+                // replace the chunk data
+                region.replaceChunk(chunkInfo.getCoordinates(), data, expiryScheduler.getDefaultExpiry());
+                return null;
             }
-        });
+        }));
+    }
+
+    /**
+     * Removes the metadata of loaded regions whose time to live has passed.
+     * Only the entries due on the expiry timing wheel are checked, so no region is scanned.
+     * @return The number of removed metadata values.
+     */
+    public int expireMetadata() {
+        return expiryScheduler.expire();
+    }
+
+    /**
+     * Notifies the indexes about a change of metadata of a block.
+     * @param region The region in which the block lies.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param previous Previous metadata of the block. Null if there was none.
+     * @param data New metadata of the block. Null if it was removed.
+     */
+    private void notifyIndexes(@NonNull Region<T> region, @NonNull ChunkCoordinates chunk,
+                               @NonNull BlockChunkCoordinates block, T previous, T data) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        BlockInfo blockInfo = new BlockInfo(new ChunkInfo(region.getWorld(), chunk), block);
+        for (MetadataIndex<T> index : indexes) {
+            index.onChange(region.getKey(), blockInfo, previous, data);
+        }
     }
 
     /**
      * Reads metadata stored for a region.
      * @param regionFile Path to the region file.
+     * @param executorService Executor service to parse the region file on.
      * @return Map of region metadata.
      */
-    private CompletableFuture<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>> readRegionData(Path regionFile) {
+    private CompletableFuture<RegionContents<T>> readRegionData(
+            Path regionFile, @NonNull ExecutorService executorService) {
         // no file to read
         if (regionFile == null) {
             return CompletableFuture.completedFuture(null);
@@ -337,46 +1185,113 @@ public class BlockMetadataStorage<T extends Serializable> {
         }
 
         // read file text
-        return AsyncFiles.readAll(regionFile, 1024)
-            .thenApply(content -> {
+        return AsyncFiles.readAllBytes(regionFile, 1024)
+            .thenApplyAsync(bytes -> {
+                metrics.getBytesRead().add(bytes.length);
                 try {
-                    // parse file
-                    return mapper.readValue(content,
-                            new TypeReference<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>>(){});
-                } catch (JsonProcessingException e) {
+                    // parse file in the format matching its extension
+                    RegionTree tree;
+                    try {
+                        tree = RegionFormat.of(regionFile).getCodec().decode(bytes);
+                    } catch (UnsupportedRegionVersionException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        throw new CorruptRegionException(regionFile, e);
+                    }
+
+                    // bring values of previous schema versions up to date
+                    boolean upgraded = config.getSchema().upgrade(tree);
+                    if (tree.getChunks().isEmpty() && tree.getExpiry() == null) {
+                        // empty region file
+                        return new RegionContents<>(null, null, upgraded, tree.getCorruptChunks());
+                    }
+                    return new RegionContents<>(
+                            mapper.convertValue(tree.getChunks(),
+                                    new TypeReference<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>>(){}),
+                            tree.getExpiry() != null
+                                    ? mapper.convertValue(tree.getExpiry(),
+                                            new TypeReference<Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>>>(){})
+                                    : null,
+                            upgraded,
+                            tree.getCorruptChunks());
+                } catch (IOException e) {
                     throw new CompletionException(e);
                 }
-            });
+            }, executorService);
+    }
+
+    /**
+     * Get the contents of a region file for a region, as a copy which can be encoded without the region's lock.
+     * The chunk maps are shared with the copy, and copied by the next write to them.
+     * The metadata is only wrapped with a header and expiry times if the schema is past
+     * its initial version or the region has expiring metadata, so other regions keep the plain format.
+     * Must be called while holding the region's lock.
+     * @param region The region.
+     * @return The region file contents. Null if the region has no metadata.
+     */
+    private Object getRegionFileContents(@NonNull Region<T> region) {
+        // share the chunk maps with the copy, the same way as with snapshots
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer = region.shareBuffer();
+        if (buffer == null) {
+            return null;
+        }
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> expiries = region.copyExpiries();
+
+        int schemaVersion = config.getSchema().getVersion();
+        if (expiries == null && schemaVersion == 0) {
+            return buffer;
+        }
+        Map<String, Object> contents = new LinkedHashMap<>();
+        if (schemaVersion != 0) {
+            contents.put(RegionFileFormat.HEADER_FIELD, RegionFileFormat.createHeader(schemaVersion));
+        }
+        contents.put(RegionFileFormat.CHUNKS_FIELD, buffer);
+        if (expiries != null) {
+            contents.put(RegionFileFormat.EXPIRY_FIELD, expiries);
+        }
+        return contents;
     }
 
     /**
      * Writes region data to disk.
+     * The data is written to a temporary file first, which then replaces the region file,
+     * so a failed save never leaves the region without a file.
      * @param regionFile Path to the region file.
-     * @return The number of bytes that were written to disk.
+     * @param data Contents of the region file. Null removes the region file.
      */
-    private CompletableFuture<Void> writeRegionData(
-            @NonNull Path regionFile, Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> data) {
-        // remove old file to overwrite
+    private CompletableFuture<Void> writeRegionData(@NonNull Path regionFile, Object data) {
+        long start = System.nanoTime();
+
+        // remove empty region files
+        if (data == null) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    Files.deleteIfExists(regionFile);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }).whenComplete((s, e) -> metrics.getWriteLatency().recordSince(start));
+        }
+
+        // serialize in the format matching the file extension
+        Path tempFile = regionFile.resolveSibling(regionFile.getFileName() + ".tmp");
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return Files.deleteIfExists(regionFile);
-            } catch (IOException ignored) {
-                return false;
+                return RegionFormat.of(regionFile).getCodec().encode(mapper, data);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
-        }).thenApply((s) -> {
-            // remove empty region files
-            if (data == null) return null;
-
-            // serialize to yaml
+        }).thenCompose((bytes) -> AsyncFiles.writeBytes(tempFile, bytes,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+        ).thenAccept((length) -> {
+            // replace the old file only once the new one is complete
             try {
-                return mapper.writeValueAsString(data);
-            } catch (JsonProcessingException e) {
+                Files.move(tempFile, regionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
                 throw new CompletionException(e);
             }
-        }).thenCompose((content) -> content != null
-            ? AsyncFiles.writeBytes(regionFile, content.getBytes(),
-            StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW).thenApply((s) -> null)
-            : CompletableFuture.completedFuture(null));
+            metrics.getBytesWritten().add(length);
+        }).whenComplete((s, e) -> metrics.getWriteLatency().recordSince(start));
     }
 
     /**
@@ -389,6 +1304,24 @@ public class BlockMetadataStorage<T extends Serializable> {
         return getRegion(chunkInfo).thenAccept((region) -> region.addActiveChunk(chunkInfo.getCoordinates()));
     }
 
+    /**
+     * Starts loading the region in which a chunk lies, without marking the chunk as active.
+     * Does nothing if the region is already loaded or loading.
+     * @param chunkInfo Information about the chunk.
+     */
+    public CompletableFuture<Void> prefetchRegion(@NonNull ChunkInfo chunkInfo) {
+        return prefetcher.prefetch(chunkInfo);
+    }
+
+    /**
+     * Unloads the regions which were loaded speculatively and have stayed idle for too long,
+     * saving them first if needed. Regions with loaded chunks are kept.
+     * @return The number of regions unloaded.
+     */
+    public int unloadIdleRegions() {
+        return prefetcher.unloadIdleRegions();
+    }
+
     /**
      * Loads chunk metadata for each specified chunk.
      * @param chunks Chunks to load metadata for.
@@ -414,7 +1347,7 @@ public class BlockMetadataStorage<T extends Serializable> {
         }
 
         // get the region
-        Region region = regions.get(regionKey);
+        Region<T> region = regions.get(regionKey);
 
         // remove active chunk from region
         return region.getLoadFuture()
@@ -457,7 +1390,7 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @return Whether the chunk is busy.
      */
     public boolean isChunkSaving(@NonNull ChunkInfo chunkInfo) {
-        Region region = regions.get(getRegionKey(chunkInfo));
+        Region<T> region = regions.get(getRegionKey(chunkInfo));
         return region != null && region.getSaveFuture() != null && !region.getSaveFuture().isDone();
     }
 
@@ -467,7 +1400,7 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @return Whether the chunk is loading.
      */
     public boolean isChunkLoading(@NonNull ChunkInfo chunkInfo) {
-        Region region = regions.get(getRegionKey(chunkInfo));
+        Region<T> region = regions.get(getRegionKey(chunkInfo));
         return region != null && !region.getLoadFuture().isDone();
     }
 
@@ -477,7 +1410,7 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @return Whether the chunk is loaded.
      */
     public boolean isChunkLoaded(@NonNull ChunkInfo chunkInfo) {
-        Region region = regions.get(getRegionKey(chunkInfo));
+        Region<T> region = regions.get(getRegionKey(chunkInfo));
         return region != null && region.getLoadFuture().isDone();
     }
 
@@ -488,37 +1421,105 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @return Whether the chunk is dirty.
      */
     public boolean isChunkDirty(@NonNull ChunkInfo chunkInfo) {
-        Region region = regions.get(getRegionKey(chunkInfo));
+        Region<T> region = regions.get(getRegionKey(chunkInfo));
         return region != null && region.isDirty();
     }
 
     /**
      * Loads region metadata into memory synchronously.
-     * @param regionPath Path to the region file.
+     * @param region The region to load.
      * @param executorService Executor service to use.
      */
-    private CompletableFuture<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>> loadRegion(
-            @NonNull Path regionPath, @NonNull ExecutorService executorService) {
-        return CompletableFuture.supplyAsync(() -> regionPath, executorService)
-            // read region file
-            .thenCompose(this::readRegionData)
-            // if there was an error reading, print it
-            .exceptionally((e) -> {
-                e.printStackTrace();
-                return null;
+    private CompletableFuture<RegionContents<T>> loadRegion(
+            @NonNull Region<T> region, @NonNull ExecutorService executorService) {
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+                Path path = findRegionFile(region.getKey());
+                if (!path.equals(region.getFilePath())) {
+                    // region is stored in another format, remove that file once converted
+                    region.setLegacyFilePath(path);
+                }
+                return path;
+            }, executorService)
+            // read region file, setting corrupt files aside
+            .thenCompose((path) -> readRegionData(path, executorService)
+                    .handle((contents, e) -> quarantineCorrupt(path, contents, e)))
+            .whenComplete((contents, e) -> {
+                long duration = System.nanoTime() - start;
+                metrics.getLoadLatency().record(duration);
+                metrics.getSlowestLoads().record(region.getFilePath().getFileName().toString(), duration);
+
+                // the region can't be loaded, so it mustn't be saved over its file either
+                if (e != null) {
+                    metrics.getLoadFailures().increment();
+                    log.log(Level.SEVERE, "Couldn't load region " + region.getKey(), e);
+                }
             });
     }
 
+    /**
+     * Sets aside a corrupt region file in the quarantine folder, where it's kept for inspection.
+     * Files with corrupt chunks are copied, and the intact chunks are served and saved without the corrupt ones.
+     * Files which can't be decoded at all are moved, and the region starts out empty.
+     * Any other error fails the load, so the region file is never overwritten.
+     * @param regionFile The region file.
+     * @param contents Contents read from the region file. Null if reading failed.
+     * @param error Error reading the region file. Null if read.
+     * @return The contents to serve.
+     */
+    private RegionContents<T> quarantineCorrupt(@NonNull Path regionFile, RegionContents<T> contents, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause != null && !(cause instanceof CorruptRegionException)) {
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        }
+        boolean corruptFile = cause != null;
+        if (!corruptFile && (contents == null || contents.getCorruptChunks().isEmpty())) {
+            return contents;
+        }
+
+        Path quarantinePath = dataPath.resolve(QUARANTINE_FOLDER)
+                .resolve(regionFile.getFileName() + "." + System.currentTimeMillis());
+        try {
+            Files.createDirectories(quarantinePath.getParent());
+            if (corruptFile) {
+                Files.move(regionFile, quarantinePath);
+            } else {
+                Files.copy(regionFile, quarantinePath);
+            }
+        } catch (IOException exception) {
+            // keep the region unavailable rather than risk overwriting the corrupt file
+            throw new CompletionException(exception);
+        }
+        metrics.getRegionsQuarantined().increment();
+        if (corruptFile) {
+            log.severe(cause.getMessage() + ", moved it to " + quarantinePath);
+            return null;
+        }
+        metrics.getCorruptChunks().add(contents.getCorruptChunks().size());
+        log.severe("Corrupt chunks " + contents.getCorruptChunks() + " in region file " + regionFile
+                + ", copied it to " + quarantinePath);
+        return contents;
+    }
+
     /**
      * Saves region metadata on disk.
      * Unloads the region from memory if specified.
      * @param region The region to save.
      * @param unload Whether the region metadata should be unloaded.
      */
-    public CompletableFuture<Void> saveRegion(@NonNull Region region, boolean unload) {
+    public CompletableFuture<Void> saveRegion(@NonNull Region<T> region, boolean unload) {
         // check if chunk is already being persisted
         if (region.getSaveFuture() != null && !region.getSaveFuture().isDone()) {
-            return region.getSaveFuture();
+            if (!unload) {
+                return region.getSaveFuture();
+            }
+
+            // unload once the running save is done, saving the changes made in the meantime
+            return region.getSaveFuture()
+                    .handle((s, e) -> null)
+                    .thenCompose((s) -> regions.get(region.getKey()) == region && region.getActiveChunks().isEmpty()
+                            ? saveRegion(region, true)
+                            : CompletableFuture.completedFuture(null));
         }
 
         // ensure region is dirty
@@ -526,33 +1527,128 @@ public class BlockMetadataStorage<T extends Serializable> {
             // not dirty, nothing to save to disk
             if (unload) {
                 regions.remove(region.getKey());
+                region.getLoadFuture().thenRun(() -> indexes.forEach((index) -> index.onRegionUnload(
+                        region.getKey(), region.getWorld(), region.getBuffer())));
             }
             region.setSaveFuture(region.getLoadFuture());
             return region.getSaveFuture();
         }
 
         // save region asynchronously
+        long start = System.nanoTime();
         CompletableFuture<Void> saveFuture = region.getLoadFuture()
-                .thenCompose((s) -> writeRegionData(region.getFilePath(), region.getBuffer()))
+                .thenCompose((s) -> {
+                    // copy the contents, changes made from now on need another save
+                    Object contents = region.locked(() -> {
+                        region.setDirty(false);
+                        return getRegionFileContents(region);
+                    });
+                    return writeRegionData(region.getFilePath(), contents)
+                            .thenRun(() -> deleteLegacyFile(region));
+                })
+                .whenComplete((s, e) -> {
+                    metrics.getSaveLatency().recordSince(start);
+                    if (e != null) {
+                        // the changes weren't persisted, retry on the next save
+                        metrics.getSaveFailures().increment();
+                        region.setDirty(true);
+                    }
+                })
                 .thenRun(unload ? () -> {
                     // remove region from memory
-                    Region r = regions.remove(region.getKey());
+                    Region<T> r = regions.remove(region.getKey());
+                    indexes.forEach((index) -> index.onRegionUnload(r.getKey(), r.getWorld(), r.getBuffer()));
 
                     // run unload event
                     Bukkit.getPluginManager().callEvent(new RegionUnloadEvent(
                             r.getWorld(),
-                            r.getBuffer().keySet()
+                            r.getBuffer() != null ? r.getBuffer().keySet() : Collections.emptySet()
                     ));
                 } : () -> {});
         region.setSaveFuture(saveFuture);
         return region.getSaveFuture();
     }
 
+    /**
+     * Deletes the file of another format from which a region was loaded, now that it's saved in the current format.
+     * @param region The saved region.
+     */
+    private void deleteLegacyFile(@NonNull Region<T> region) {
+        Path legacyFile = region.getLegacyFilePath();
+        if (legacyFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(legacyFile);
+            region.setLegacyFilePath(null);
+            metrics.getRegionsMigrated().increment();
+        } catch (IOException exception) {
+            // the file of the current format takes precedence, so the old file is only stale
+            log.warning("Couldn't delete migrated region file " + legacyFile + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Saves the regions which have been dirty for too long, oldest changes first.
+     * Stops starting new saves once the time budget is used up,
+     * the remaining regions are saved on subsequent calls.
+     * @param worlds Worlds whose dirty regions should be saved regardless of their dirty age.
+     * @param maxDirtyAge How long a region may stay dirty before it's saved, in milliseconds.
+     * @param timeBudget How much time may be spent starting saves, in nanoseconds.
+     * @return The number of regions that are due but weren't saved within the time budget.
+     */
+    public int saveDirtyRegions(@NonNull Set<String> worlds, long maxDirtyAge, long timeBudget) {
+        return autosaveTask.saveDirtyRegions(worlds, maxDirtyAge, timeBudget);
+    }
+
+    /**
+     * Saves all dirty regions of a world over the next ticks, without blocking.
+     * @param world Name of the world.
+     */
+    public void requestWorldSave(@NonNull String world) {
+        autosaveTask.requestWorldSave(world);
+    }
+
+    /**
+     * Saves all the metadata before the plugin is disabled.
+     * Dirty regions are saved in parallel, waiting at most for the configured shutdown timeout.
+     * Regions which couldn't be saved in time are written to the fallback journal,
+     * which is replayed the next time the storage is created.
+     */
+    public void shutdown() throws InterruptedException {
+        // stop saving and expiring in the background
+        if (!autosaveTask.isCancelled()) {
+            autosaveTask.cancel();
+        }
+        if (!expiryTask.isCancelled()) {
+            expiryTask.cancel();
+        }
+
+        // deliver the last changes
+        if (!changeFlushTask.isCancelled()) {
+            changeFlushTask.cancel();
+        }
+        changeStream.flush();
+
+        // stop exporting the metrics
+        metrics.unregisterMBean();
+        if (profilerTickTask != null && !profilerTickTask.isCancelled()) {
+            profilerTickTask.cancel();
+        }
+
+        // save the regions, journaling the ones which can't be saved in time
+        ShutdownSaver<T> saver = new ShutdownSaver<>(regionAccess, journal,
+                TimeUnit.SECONDS.toMillis(config.getShutdownTimeout()));
+        if (saver.saveAll()) {
+            saveIndexes().join();
+        }
+    }
+
     /**
      * Get the currently loading regions.
      * @return List of all currently loading regions.
      */
-    public Set<Region> getLoadingRegions() {
+    public Set<Region<T>> getLoadingRegions() {
         return regions.values().stream()
                 .filter((region) -> !region.getLoadFuture().isDone())
                 .collect(Collectors.toSet());
@@ -562,20 +1658,95 @@ public class BlockMetadataStorage<T extends Serializable> {
      * Get the currently saving regions.
      * @return List of all currently saving regions.
      */
-    public Set<Region> getSavingRegions() {
+    public Set<Region<T>> getSavingRegions() {
         return regions.values().stream()
                 .filter((region -> region.getSaveFuture() != null && !region.getSaveFuture().isDone()))
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Get the keys of the regions in memory.
+     * @return Keys of the loaded and loading regions.
+     */
+    public Set<String> getLoadedRegionKeys() {
+        return new HashSet<>(regions.keySet());
+    }
+
+    /**
+     * Gathers the state of the storage, off the main thread.
+     * @return Future completed with the diagnostics.
+     */
+    public CompletableFuture<StorageDiagnostics> getDiagnostics() {
+        return inspector.getDiagnostics();
+    }
+
+    /**
+     * Saves all dirty regions of a world immediately.
+     * @param world Name of the world. Null saves the dirty regions of all worlds.
+     * @return Future completed with the number of saved regions, once they're saved.
+     */
+    public CompletableFuture<Integer> flushRegions(String world) {
+        return inspector.flushRegions(world);
+    }
+
+    /**
+     * Saves a region and removes it from memory.
+     * The region is loaded again the next time its metadata is accessed.
+     * Regions with loaded chunks are kept, they're unloaded along with the last of their chunks.
+     * @param regionKey Key of the region.
+     * @return Future completed with the result, once the region is evicted.
+     */
+    public CompletableFuture<RegionEviction> evictRegion(@NonNull String regionKey) {
+        return inspector.evictRegion(regionKey);
+    }
+
+    /**
+     * Reads a region file and checks it against the region in memory.
+     * @param regionKey Key of the region.
+     * @return Future completed with the result of the verification.
+     */
+    public CompletableFuture<RegionVerification> verifyRegion(@NonNull String regionKey) {
+        return inspector.verifyRegion(regionKey);
+    }
+
     /**
      * Get a key unique to a region in which a chunk is located.
      * @param chunkInfo Information about the chunk.
      * @return The region key.
      */
-    private static String getRegionKey(@NonNull ChunkInfo chunkInfo) {
-        return chunkInfo.getWorld() + "_" + (chunkInfo.getCoordinates().getX() / 16)
-                + "_" + (chunkInfo.getCoordinates().getZ() / 16);
+    public static String getRegionKey(@NonNull ChunkInfo chunkInfo) {
+        return RegionFileFormat.getRegionKey(chunkInfo);
+    }
+
+    /**
+     * Get a chunk lying within a region.
+     * @param regionKey Key of the region.
+     * @return Information about a chunk of the region.
+     */
+    private static ChunkInfo getRegionChunk(@NonNull String regionKey) {
+        return RegionFileFormat.getRegionChunk(regionKey);
+    }
+
+    /**
+     * Lists the keys of all regions stored on disk.
+     * Regions stored in other formats are only included with lazy migration enabled.
+     * @return Keys of the stored regions.
+     */
+    private List<String> listRegionKeys() {
+        try (Stream<Path> files = Files.list(dataPath)) {
+            return files.filter((file) -> {
+                        RegionFormat format = RegionFormat.of(file);
+                        return format == config.getRegionFormat()
+                                || (format != null && config.isLazyMigrationEnabled());
+                    })
+                    .map(RegionFileFormat::getRegionKey)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return Collections.emptyList();
+        }
     }
 
     /**
@@ -584,66 +1755,113 @@ public class BlockMetadataStorage<T extends Serializable> {
      * @return The file name.
      */
     private Path getRegionFile(@NonNull ChunkInfo chunkInfo) {
-        return dataPath.resolve(getRegionKey(chunkInfo) + ".yml");
-    }
-
-    /**
-     * Represents a metadata task on a region.
-     */
-    @Data
-    private class Region {
-        /**
-         * Region key.
-         */
-        private final String key;
-        /**
-         * World in which the region is located.
-         */
-        private final String world;
-        /**
-         * Region file path.
-         */
-        private final Path filePath;
-        /**
-         * Currently active chunks in this region.
-         */
-        private final Set<ChunkCoordinates> activeChunks = new HashSet<>();
-
-        /**
-         * Future loading the current region.
-         */
-        private CompletableFuture<Void> loadFuture;
-        /**
-         * Future saving the current region.
-         */
-        private CompletableFuture<Void> saveFuture;
-        /**
-         * The buffer of this region.
-         */
-        private Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer;
-        /**
-         * Whether the metadata for this region has been modified.
-         */
-        private boolean dirty;
-
-        /**
-         * Adds an active chunk.
-         * @param coordinates Coordinates of the chunk.
-         * @return The number of active chunks.
-         */
-        public int addActiveChunk(@NonNull ChunkCoordinates coordinates) {
-            activeChunks.add(coordinates);
-            return activeChunks.size();
-        }
-
-        /**
-         * Removes an active chunk.
-         * @param coordinates Coordinates of the chunk.
-         * @return The number of active chunks.
-         */
-        public int removeActiveChunk(@NonNull ChunkCoordinates coordinates) {
-            activeChunks.remove(coordinates);
-            return activeChunks.size();
+        return getRegionFile(getRegionKey(chunkInfo));
+    }
+
+    /**
+     * Get file name under which a region file should be saved.
+     * @param regionKey Key of the region.
+     * @return The file name.
+     */
+    private Path getRegionFile(@NonNull String regionKey) {
+        return dataPath.resolve(RegionFileFormat.getFileName(regionKey, config.getRegionFormat()));
+    }
+
+    /**
+     * Get the file in which a region is currently stored.
+     * With lazy migration enabled, regions not yet stored in the current format
+     * are read from a file of another format.
+     * @param regionKey Key of the region.
+     * @return The region file. The file of the current format if the region isn't stored at all.
+     */
+    private Path findRegionFile(@NonNull String regionKey) {
+        Path regionFile = getRegionFile(regionKey);
+        if (!config.isLazyMigrationEnabled() || Files.exists(regionFile)) {
+            return regionFile;
+        }
+        for (RegionFormat format : RegionFormat.values()) {
+            Path legacyFile = dataPath.resolve(RegionFileFormat.getFileName(regionKey, format));
+            if (format != config.getRegionFormat() && Files.exists(legacyFile)) {
+                return legacyFile;
+            }
+        }
+        return regionFile;
+    }
+
+    /**
+     * Keeps the indexes and the expiry schedule up to date with the metadata of the regions.
+     */
+    private class StorageRegionListener implements RegionListener<T> {
+        @Override
+        public void onChange(Region<T> region, ChunkCoordinates chunk, BlockChunkCoordinates block,
+                             T previous, T data) {
+            notifyIndexes(region, chunk, block, previous, data);
+        }
+
+        @Override
+        public void onExpiry(Region<T> region, ChunkCoordinates chunk, BlockChunkCoordinates block,
+                             long expiresAt) {
+            expiryScheduler.schedule(new BlockInfo(new ChunkInfo(region.getWorld(), chunk), block), expiresAt);
+        }
+    }
+
+    /**
+     * Gives the features of the storage access to its regions.
+     */
+    private class StorageRegionAccess implements RegionAccess<T> {
+        @Override
+        public CompletableFuture<Region<T>> getRegion(ChunkInfo chunkInfo) {
+            return BlockMetadataStorage.this.getRegion(chunkInfo);
+        }
+
+        @Override
+        public CompletableFuture<Region<T>> getRegion(ChunkInfo chunkInfo, ExecutorService executorService) {
+            return BlockMetadataStorage.this.getRegion(chunkInfo, executorService);
+        }
+
+        @Override
+        public boolean isRegionStored(String regionKey) {
+            return regions.containsKey(regionKey) || Files.exists(findRegionFile(regionKey));
+        }
+
+        @Override
+        public List<String> listRegionKeys() {
+            return BlockMetadataStorage.this.listRegionKeys();
+        }
+
+        @Override
+        public Path findRegionFile(String regionKey) {
+            return BlockMetadataStorage.this.findRegionFile(regionKey);
+        }
+
+        @Override
+        public CompletableFuture<RegionContents<T>> readRegionFile(Path regionFile) {
+            return readRegionData(regionFile, regionExecutor);
+        }
+
+        @Override
+        public Region<T> getLoadedRegion(String regionKey) {
+            return regions.get(regionKey);
+        }
+
+        @Override
+        public Collection<Region<T>> getLoadedRegions() {
+            return regions.values();
+        }
+
+        @Override
+        public CompletableFuture<Void> saveRegion(Region<T> region, boolean unload) {
+            return BlockMetadataStorage.this.saveRegion(region, unload);
+        }
+
+        @Override
+        public Object getRegionFileContents(Region<T> region) {
+            return BlockMetadataStorage.this.getRegionFileContents(region);
+        }
+
+        @Override
+        public long getDefaultExpiry() {
+            return expiryScheduler.getDefaultExpiry();
         }
     }
 }
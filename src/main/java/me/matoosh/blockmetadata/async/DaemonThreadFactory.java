@@ -0,0 +1,32 @@
+package me.matoosh.blockmetadata.async;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates background daemon threads, which don't keep the server running.
+ */
+@RequiredArgsConstructor
+public class DaemonThreadFactory implements ThreadFactory {
+
+    /**
+     * Name of the created threads.
+     */
+    @NonNull
+    private final String name;
+
+    /**
+     * Priority of the created threads.
+     */
+    private final int priority;
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
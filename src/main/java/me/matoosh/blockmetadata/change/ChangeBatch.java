@@ -0,0 +1,22 @@
+package me.matoosh.blockmetadata.change;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Batch of metadata changes delivered to a subscriber.
+ * @param <T> Type of the metadata.
+ */
+@Value
+public class ChangeBatch<T> {
+    /**
+     * The changes, in the order in which the blocks first changed.
+     */
+    List<MetadataChange<T>> changes;
+    /**
+     * Whether changes were dropped since the previous batch, because the subscriber fell behind.
+     * Subscribers mirroring the metadata should then resynchronize from the storage.
+     */
+    boolean resync;
+}
@@ -0,0 +1,87 @@
+package me.matoosh.blockmetadata.change;
+
+import lombok.NonNull;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.index.MetadataIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Stream of metadata changes of a storage, delivered to subscribers in batches.
+ * Changes are only buffered on the write path, batches are delivered when the stream is flushed,
+ * so slow subscribers never hold up modifications of the metadata.
+ * Loading and unloading regions doesn't change the metadata, so it isn't streamed.
+ * @param <T> Type of the metadata.
+ */
+public class ChangeStream<T> implements MetadataIndex<T> {
+
+    /**
+     * Active subscriptions.
+     */
+    private final List<ChangeSubscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Subscribes to the changes.
+     * @param listener Receives the batches of changes.
+     * @param executor Executor on which the batches are delivered.
+     * @param maxBufferedChanges Maximum number of blocks whose changes are buffered between batches.
+     * @return The subscription.
+     */
+    public ChangeSubscription<T> subscribe(@NonNull Consumer<ChangeBatch<T>> listener,
+                                           @NonNull Executor executor, int maxBufferedChanges) {
+        ChangeSubscription<T> subscription = new ChangeSubscription<>(listener, executor, maxBufferedChanges);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Delivers the buffered changes to each subscriber.
+     * Removes cancelled subscriptions.
+     */
+    public void flush() {
+        for (ChangeSubscription<T> subscription : subscriptions) {
+            if (subscription.isCancelled()) {
+                subscriptions.remove(subscription);
+            } else {
+                subscription.flush();
+            }
+        }
+    }
+
+    /**
+     * Checks whether there are any active subscriptions.
+     * @return Whether there are active subscriptions.
+     */
+    public boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    @Override
+    public void onChange(String regionKey, BlockInfo block, T previous, T data) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        MetadataChange<T> change = new MetadataChange<>(block, previous, data);
+        for (ChangeSubscription<T> subscription : subscriptions) {
+            if (!subscription.isCancelled()) {
+                subscription.offer(change);
+            }
+        }
+    }
+
+    @Override
+    public void onRegionLoad(String regionKey, String world,
+                             Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+    }
+
+    @Override
+    public void onRegionUnload(String regionKey, String world,
+                               Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+    }
+}
@@ -0,0 +1,168 @@
+package me.matoosh.blockmetadata.change;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Subscription to the changes of a {@link ChangeStream}.
+ * Changes are buffered and coalesced by block until the next flush, up to a bounded number of blocks.
+ * Once the buffer is full, for example because the previous batch is still being delivered,
+ * buffered changes are dropped and the next batch asks the subscriber to resynchronize.
+ * @param <T> Type of the metadata.
+ */
+@Log
+public class ChangeSubscription<T> {
+
+    /**
+     * Receives the batches of changes.
+     */
+    private final Consumer<ChangeBatch<T>> listener;
+    /**
+     * Executor on which the batches are delivered.
+     */
+    private final Executor executor;
+    /**
+     * Maximum number of blocks whose changes are buffered.
+     */
+    @Getter
+    private final int maxBufferedChanges;
+
+    /**
+     * Buffered changes by block.
+     */
+    private Map<BlockInfo, MetadataChange<T>> buffer = new LinkedHashMap<>();
+    /**
+     * Whether changes were dropped since the last delivered batch.
+     */
+    private boolean overflowed;
+    /**
+     * Number of changes dropped since the subscription was created.
+     */
+    @Getter
+    private long droppedChanges;
+    /**
+     * Whether a batch is being delivered at the moment.
+     */
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    /**
+     * Whether the subscription has been cancelled.
+     */
+    @Getter
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a subscription.
+     * @param listener Receives the batches of changes.
+     * @param executor Executor on which the batches are delivered.
+     * @param maxBufferedChanges Maximum number of blocks whose changes are buffered.
+     */
+    ChangeSubscription(@NonNull Consumer<ChangeBatch<T>> listener, @NonNull Executor executor,
+                       int maxBufferedChanges) {
+        if (maxBufferedChanges <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.listener = listener;
+        this.executor = executor;
+        this.maxBufferedChanges = maxBufferedChanges;
+    }
+
+    /**
+     * Stops delivering changes to the subscriber.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffers a change, coalescing it with the buffered change of the same block.
+     * Never blocks on the subscriber.
+     * @param change The change.
+     */
+    synchronized void offer(@NonNull MetadataChange<T> change) {
+        // the subscriber will resynchronize anyway
+        if (overflowed) {
+            droppedChanges++;
+            return;
+        }
+
+        // coalesce with the previous change of the block
+        MetadataChange<T> buffered = buffer.get(change.getBlock());
+        if (buffered != null) {
+            if (Objects.equals(buffered.getPrevious(), change.getData())) {
+                // the changes cancel out
+                buffer.remove(change.getBlock());
+            } else {
+                buffer.put(change.getBlock(), new MetadataChange<>(
+                        change.getBlock(), buffered.getPrevious(), change.getData()));
+            }
+            return;
+        }
+
+        // drop the buffered changes once the buffer is full
+        if (buffer.size() >= maxBufferedChanges) {
+            droppedChanges += buffer.size() + 1;
+            buffer.clear();
+            overflowed = true;
+            return;
+        }
+        buffer.put(change.getBlock(), change);
+    }
+
+    /**
+     * Delivers the buffered changes as a batch, unless the previous batch is still being delivered.
+     */
+    void flush() {
+        if (cancelled || !delivering.compareAndSet(false, true)) {
+            return;
+        }
+
+        // take the buffered changes
+        ChangeBatch<T> batch;
+        synchronized (this) {
+            if (buffer.isEmpty() && !overflowed) {
+                delivering.set(false);
+                return;
+            }
+            batch = new ChangeBatch<>(new ArrayList<>(buffer.values()), overflowed);
+            buffer = new LinkedHashMap<>();
+            overflowed = false;
+        }
+
+        // deliver on the subscriber's executor
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!cancelled) {
+                        listener.accept(batch);
+                    }
+                } catch (Exception exception) {
+                    log.log(Level.WARNING, "Metadata change listener failed", exception);
+                } finally {
+                    delivering.set(false);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // the batch is lost, the subscriber has to resynchronize
+            synchronized (this) {
+                droppedChanges += batch.getChanges().size();
+                overflowed = true;
+            }
+            delivering.set(false);
+        }
+    }
+}
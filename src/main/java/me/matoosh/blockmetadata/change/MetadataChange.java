@@ -0,0 +1,25 @@
+package me.matoosh.blockmetadata.change;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+
+/**
+ * Change of metadata of a single block.
+ * Consecutive changes of a block within a batch are coalesced into one.
+ * @param <T> Type of the metadata.
+ */
+@Value
+public class MetadataChange<T> {
+    /**
+     * Location of the block, including its world and chunk.
+     */
+    BlockInfo block;
+    /**
+     * Metadata of the block before the change. Null if there was none.
+     */
+    T previous;
+    /**
+     * Metadata of the block after the change. Null if it was removed.
+     */
+    T data;
+}
@@ -0,0 +1,227 @@
+package me.matoosh.blockmetadata.channel;
+
+import lombok.Getter;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.BlockMetadataConfig;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores several typed, namespaced channels of block metadata in one set of region files.
+ * The values of all channels of a block are kept together in a single map,
+ * so each chunk load or save serves all the channels at once.
+ */
+public class ChannelMetadataStorage {
+
+    /**
+     * The underlying storage, holding the channel values of each block by channel name.
+     */
+    @Getter
+    private final BlockMetadataStorage<HashMap<String, Object>> storage;
+    /**
+     * The registered channels by name.
+     */
+    private final Map<String, MetadataChannel<?>> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a channel metadata storage with the default config.
+     * @param plugin The plugin.
+     * @param dataPath Path of the directory in which the region files are stored.
+     */
+    public ChannelMetadataStorage(JavaPlugin plugin, Path dataPath) {
+        this(plugin, dataPath, BlockMetadataConfig.defaults());
+    }
+
+    /**
+     * Creates a channel metadata storage.
+     * @param plugin The plugin.
+     * @param dataPath Path of the directory in which the region files are stored.
+     * @param config Tunable options of the storage.
+     */
+    public ChannelMetadataStorage(JavaPlugin plugin, Path dataPath, @NonNull BlockMetadataConfig config) {
+        this.storage = new BlockMetadataStorage<>(plugin, dataPath, config);
+    }
+
+    /**
+     * Registers a channel whose values are converted with Jackson.
+     * @param name Name of the channel.
+     * @param type Type of the channel values.
+     * @param <V> Type of the channel values.
+     * @return Handle of the channel.
+     */
+    public <V> MetadataChannel<V> registerChannel(@NonNull String name, @NonNull Class<V> type) {
+        return registerChannel(name, MetadataCodec.of(type));
+    }
+
+    /**
+     * Registers a channel.
+     * @param name Name of the channel.
+     * @param codec Codec converting the channel values to and from their stored form.
+     * @param <V> Type of the channel values.
+     * @return Handle of the channel.
+     */
+    public <V> MetadataChannel<V> registerChannel(@NonNull String name, @NonNull MetadataCodec<V> codec) {
+        MetadataChannel<V> channel = new MetadataChannel<>(name, codec);
+        if (channels.putIfAbsent(name, channel) != null) {
+            throw new IllegalArgumentException("Channel " + name + " is already registered");
+        }
+        return channel;
+    }
+
+    /**
+     * Gets the registered channels by name.
+     * @return The registered channels.
+     */
+    public Map<String, MetadataChannel<?>> getChannels() {
+        return Collections.unmodifiableMap(channels);
+    }
+
+    /**
+     * Get metadata of a block within a channel.
+     * @param channel The channel.
+     * @param block The block.
+     * @param <V> Type of the channel values.
+     * @return Metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> getMetadata(@NonNull MetadataChannel<V> channel, @NonNull Block block) {
+        return getMetadata(channel, ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block));
+    }
+
+    /**
+     * Get metadata of a block within a channel.
+     * @param channel The channel.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param <V> Type of the channel values.
+     * @return Metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> getMetadata(@NonNull MetadataChannel<V> channel,
+                                                @NonNull ChunkInfo chunkInfo,
+                                                @NonNull BlockChunkCoordinates blockChunkCoordinates) {
+        return storage.getMetadata(chunkInfo, blockChunkCoordinates)
+                .thenApply((values) -> values != null ? decode(channel, values.get(channel.getName())) : null);
+    }
+
+    /**
+     * Sets metadata of a block within a channel.
+     * Metadata of the block within other channels is kept.
+     * @param channel The channel.
+     * @param block The block.
+     * @param data Metadata to set to the block.
+     * @param <V> Type of the channel values.
+     * @return Previous metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> setMetadata(@NonNull MetadataChannel<V> channel, @NonNull Block block,
+                                                @NonNull V data) {
+        return setMetadata(channel, ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block), data);
+    }
+
+    /**
+     * Sets metadata of a block within a channel.
+     * Metadata of the block within other channels is kept.
+     * @param channel The channel.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param data Metadata to set to the block.
+     * @param <V> Type of the channel values.
+     * @return Previous metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> setMetadata(@NonNull MetadataChannel<V> channel,
+                                                @NonNull ChunkInfo chunkInfo,
+                                                @NonNull BlockChunkCoordinates blockChunkCoordinates,
+                                                @NonNull V data) {
+        return updateChannel(channel, chunkInfo, blockChunkCoordinates, channel.getCodec().encode(data));
+    }
+
+    /**
+     * Removes metadata of a block within a channel.
+     * Metadata of the block within other channels is kept.
+     * @param channel The channel.
+     * @param block The block.
+     * @param <V> Type of the channel values.
+     * @return Removed metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> removeMetadata(@NonNull MetadataChannel<V> channel, @NonNull Block block) {
+        return removeMetadata(channel, ChunkInfo.fromChunk(block.getChunk()),
+                BlockChunkCoordinates.fromBlock(block));
+    }
+
+    /**
+     * Removes metadata of a block within a channel.
+     * Metadata of the block within other channels is kept.
+     * @param channel The channel.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param <V> Type of the channel values.
+     * @return Removed metadata of the block within the channel. Null if no data stored.
+     */
+    public <V> CompletableFuture<V> removeMetadata(@NonNull MetadataChannel<V> channel,
+                                                   @NonNull ChunkInfo chunkInfo,
+                                                   @NonNull BlockChunkCoordinates blockChunkCoordinates) {
+        return updateChannel(channel, chunkInfo, blockChunkCoordinates, null);
+    }
+
+    /**
+     * Removes metadata of a block within all channels.
+     * @param block The block.
+     * @return Whether the block had any metadata.
+     */
+    public CompletableFuture<Boolean> removeAllMetadata(@NonNull Block block) {
+        return storage.removeMetadata(block).thenApply((values) -> values != null);
+    }
+
+    /**
+     * Atomically replaces the stored value of a block within a channel.
+     * The values map of the block is copied, so maps handed out earlier never change.
+     * @param channel The channel.
+     * @param chunkInfo Info about the chunk where the block is located.
+     * @param blockChunkCoordinates Coordinates of the block within a chunk.
+     * @param stored The new stored value. Null removes the value.
+     * @param <V> Type of the channel values.
+     * @return Previous metadata of the block within the channel. Null if no data stored.
+     */
+    private <V> CompletableFuture<V> updateChannel(MetadataChannel<V> channel,
+                                                   ChunkInfo chunkInfo,
+                                                   BlockChunkCoordinates blockChunkCoordinates,
+                                                   Object stored) {
+        Object[] previous = new Object[1];
+        return storage.computeMetadata(chunkInfo, blockChunkCoordinates, (coordinates, values) -> {
+            previous[0] = values != null ? values.get(channel.getName()) : null;
+            if (values == null && stored == null) {
+                return null;
+            }
+
+            // copy the values, so the new map is only published once complete
+            HashMap<String, Object> updated = values != null ? new HashMap<>(values) : new HashMap<>();
+            if (stored != null) {
+                updated.put(channel.getName(), stored);
+            } else {
+                updated.remove(channel.getName());
+            }
+            return updated.isEmpty() ? null : updated;
+        }).thenApply((values) -> decode(channel, previous[0]));
+    }
+
+    /**
+     * Decodes a stored value of a channel.
+     * @param channel The channel.
+     * @param stored The stored value.
+     * @param <V> Type of the channel values.
+     * @return The decoded value. Null if nothing stored.
+     */
+    private <V> V decode(MetadataChannel<V> channel, Object stored) {
+        return stored != null ? channel.getCodec().decode(stored) : null;
+    }
+}
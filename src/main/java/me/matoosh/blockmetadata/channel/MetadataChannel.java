@@ -0,0 +1,20 @@
+package me.matoosh.blockmetadata.channel;
+
+import lombok.Value;
+
+/**
+ * Handle of a namespaced channel of a {@link ChannelMetadataStorage}.
+ * @param <V> Type of the channel values.
+ */
+@Value
+public class MetadataChannel<V> {
+
+    /**
+     * Name of the channel, used as its key within the stored metadata of each block.
+     */
+    String name;
+    /**
+     * Codec converting the channel values to and from their stored form.
+     */
+    MetadataCodec<V> codec;
+}
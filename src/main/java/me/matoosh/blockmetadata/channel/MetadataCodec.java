@@ -0,0 +1,52 @@
+package me.matoosh.blockmetadata.channel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+/**
+ * Converts values of a metadata channel to and from the form in which they are stored.
+ * Stored values are written to the shared region files, so they must consist
+ * of plain types such as strings, numbers, lists and maps.
+ * @param <V> Type of the channel values.
+ */
+public interface MetadataCodec<V> {
+
+    /**
+     * Shared mapper used by the default codecs.
+     */
+    ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Converts a value to its stored form.
+     * @param value The value.
+     * @return The stored form of the value.
+     */
+    Object encode(V value);
+
+    /**
+     * Converts a stored value back to a value.
+     * @param stored The stored form of a value.
+     * @return The value.
+     */
+    V decode(Object stored);
+
+    /**
+     * Creates a codec converting values of a type with Jackson.
+     * @param type Type of the values.
+     * @param <V> Type of the values.
+     * @return The codec.
+     */
+    static <V> MetadataCodec<V> of(@NonNull Class<V> type) {
+        return new MetadataCodec<V>() {
+            @Override
+            public Object encode(V value) {
+                return MAPPER.convertValue(value, Object.class);
+            }
+
+            @Override
+            public V decode(Object stored) {
+                return MAPPER.convertValue(stored, type);
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package me.matoosh.blockmetadata.cli;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline maintenance of a storage's data directory, while the server is stopped.
+ * Commands run read-only unless {@code --write} is given.
+ */
+public class BlockMetadataCli {
+
+    /**
+     * Available commands, by name.
+     */
+    private static final Map<String, MaintenanceCommand> COMMANDS = new LinkedHashMap<>();
+
+    static {
+        COMMANDS.put("stats", new StatsCommand());
+        COMMANDS.put("verify", new VerifyCommand());
+        COMMANDS.put("compact", new CompactCommand());
+        COMMANDS.put("prune", new PruneCommand());
+        COMMANDS.put("convert", new ConvertCommand());
+        COMMANDS.put("migrate", new MigrateCommand());
+    }
+
+    private BlockMetadataCli() {
+    }
+
+    /**
+     * Runs a command and exits with its exit code.
+     * @param args Arguments of the command.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Runs a command.
+     * @param args Arguments: {@code <command> <data dir> [args] [--write] [--threads N]}.
+     * @param out Stream to print the results to.
+     * @return The exit code.
+     */
+    public static int run(String[] args, PrintStream out) {
+        boolean writable = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--write")) {
+                writable = true;
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    return printUsage(out);
+                }
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2 || !COMMANDS.containsKey(positional.get(0))) {
+            return printUsage(out);
+        }
+        MaintenanceCommand command = COMMANDS.get(positional.get(0));
+
+        RegionDirectory directory;
+        try {
+            directory = new RegionDirectory(Paths.get(positional.get(1)), writable, threads);
+        } catch (Exception e) {
+            out.println(e.getMessage());
+            return MaintenanceCommand.USAGE;
+        }
+        try {
+            int result = command.run(directory, positional.subList(2, positional.size()), out);
+            if (result == MaintenanceCommand.USAGE) {
+                out.println("usage: " + positional.get(0) + " <data dir> " + command.getUsage());
+            }
+            return result;
+        } catch (Exception e) {
+            out.println("failed: " + e);
+            return MaintenanceCommand.PROBLEMS;
+        } finally {
+            directory.close();
+        }
+    }
+
+    /**
+     * Prints the usage of every command.
+     * @param out Stream to print to.
+     * @return The usage exit code.
+     */
+    private static int printUsage(PrintStream out) {
+        out.println("usage: <command> <data dir> [args] [--write] [--threads N]");
+        COMMANDS.forEach((name, command) -> out.println("  " + name + " <data dir> " + command.getUsage()));
+        return MaintenanceCommand.USAGE;
+    }
+}
@@ -0,0 +1,58 @@
+package me.matoosh.blockmetadata.cli;
+
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Removes expired metadata, expiry times without metadata and empty chunks,
+ * and deletes region files left without metadata.
+ * Without write access, only reports what would be removed.
+ */
+public class CompactCommand implements MaintenanceCommand {
+
+    @Override
+    public String getUsage() {
+        return "";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        long now = System.currentTimeMillis();
+        List<RegionFile> regions = directory.listRegions();
+        List<int[]> results = directory.processRegions(regions, (region) -> {
+            try {
+                RegionTree tree = directory.read(region);
+                int chunks = tree.getChunks().size();
+                int removed = tree.compact(now);
+                int removedChunks = chunks - tree.getChunks().size();
+                if (removed == 0 && removedChunks == 0) {
+                    return new int[] {0, 0, 0, 0};
+                }
+                if (directory.isWritable()) {
+                    directory.write(region, tree);
+                }
+                return new int[] {removed, removedChunks, tree.toNode() == null ? 1 : 0, 0};
+            } catch (IOException e) {
+                // leave unreadable regions to verify
+                return new int[] {0, 0, 0, 1};
+            }
+        });
+        long removed = 0, removedChunks = 0, emptied = 0, unreadable = 0;
+        for (int[] result : results) {
+            removed += result[0];
+            removedChunks += result[1];
+            emptied += result[2];
+            unreadable += result[3];
+        }
+        out.println((directory.isWritable() ? "removed " : "would remove ") + removed
+                + " expired entries and expiry times, " + removedChunks + " empty chunks and "
+                + emptied + " empty region files");
+        if (unreadable > 0) {
+            out.println("skipped " + unreadable + " unreadable region files, run verify for details");
+        }
+        return unreadable == 0 ? OK : PROBLEMS;
+    }
+}
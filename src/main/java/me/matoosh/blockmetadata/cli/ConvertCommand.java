@@ -0,0 +1,86 @@
+package me.matoosh.blockmetadata.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Copies the region files of a data directory to another directory, optionally as JSON,
+ * e.g. for inspection with other tools. The source directory is never modified.
+ */
+public class ConvertCommand implements MaintenanceCommand {
+
+    /**
+     * Mapper writing YAML region files.
+     */
+    private static final ObjectMapper YAML_MAPPER = RegionFileFormat.createMapper();
+    /**
+     * Mapper writing JSON region files.
+     */
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    @Override
+    public String getUsage() {
+        return "<output dir> [yaml|json]";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        if (args.isEmpty() || args.size() > 2) {
+            return USAGE;
+        }
+        String format = args.size() > 1 ? args.get(1) : "yaml";
+        ObjectMapper mapper;
+        String extension;
+        if (format.equals("yaml")) {
+            mapper = YAML_MAPPER;
+            extension = RegionFileFormat.FILE_EXTENSION;
+        } else if (format.equals("json")) {
+            mapper = JSON_MAPPER;
+            extension = ".json";
+        } else {
+            return USAGE;
+        }
+        Path output = Paths.get(args.get(0));
+        Files.createDirectories(output);
+        if (Files.isSameFile(output, directory.getPath())) {
+            out.println("output directory must differ from the data directory");
+            return USAGE;
+        }
+
+        List<RegionFile> regions = directory.listRegions();
+        List<Boolean> converted = directory.processRegions(regions, (region) -> {
+            RegionTree tree;
+            try {
+                tree = directory.read(region);
+            } catch (IOException e) {
+                return false;
+            }
+            JsonNode root = tree.toNode();
+            if (root == null) {
+                return true;
+            }
+            try {
+                Files.write(output.resolve(region.getKey() + extension), mapper.writeValueAsBytes(root));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        });
+        long failed = converted.stream().filter((success) -> !success).count();
+        out.println("converted " + (regions.size() - failed) + " regions to " + output);
+        if (failed > 0) {
+            out.println("skipped " + failed + " unreadable region files, run verify for details");
+        }
+        return failed == 0 ? OK : PROBLEMS;
+    }
+}
@@ -0,0 +1,38 @@
+package me.matoosh.blockmetadata.cli;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * A maintenance operation on a data directory.
+ */
+public interface MaintenanceCommand {
+
+    /**
+     * Exit code of a command which completed without finding problems.
+     */
+    int OK = 0;
+    /**
+     * Exit code of a command which found or caused problems.
+     */
+    int PROBLEMS = 1;
+    /**
+     * Exit code of a command invoked with invalid arguments.
+     */
+    int USAGE = 2;
+
+    /**
+     * Get the usage of the command's own arguments.
+     * @return The usage, e.g. {@code "<world> <world folder>"}. Empty if the command takes none.
+     */
+    String getUsage();
+
+    /**
+     * Runs the command.
+     * @param directory The data directory.
+     * @param args Arguments of the command, following the data directory.
+     * @param out Stream to print the results to.
+     * @return The exit code.
+     */
+    int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception;
+}
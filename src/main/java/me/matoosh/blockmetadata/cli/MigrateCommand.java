@@ -0,0 +1,114 @@
+package me.matoosh.blockmetadata.cli;
+
+import me.matoosh.blockmetadata.format.RegionCodec;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Converts the region files of a data directory to another format in place.
+ * Each converted region is read back and compared with the original before the original is deleted.
+ * Only as many regions as there are threads are held in memory at once.
+ * An interrupted migration can simply be run again: regions which already exist in the target
+ * format are newer than, or the same as their originals, so only the originals are removed,
+ * once the converted region is read without corrupt chunks.
+ * Without write access, only checks that every region converts without loss.
+ */
+public class MigrateCommand implements MaintenanceCommand {
+
+    @Override
+    public String getUsage() {
+        return "[chunked|yaml]";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        if (args.size() > 1) {
+            return USAGE;
+        }
+        RegionFormat target;
+        try {
+            target = args.isEmpty() ? RegionFormat.CHUNKED : RegionFormat.valueOf(args.get(0).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return USAGE;
+        }
+
+        List<RegionFile> regions = directory.listRegions().stream()
+                .filter((region) -> region.getFormat() != target)
+                .collect(Collectors.toList());
+        List<String> problems = directory.processRegions(regions, (region) -> migrate(directory, region, target));
+        int converted = 0, failed = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            if (problems.get(i) == null) {
+                converted++;
+            } else {
+                out.println(regions.get(i).getKey() + ": " + problems.get(i));
+                failed++;
+            }
+        }
+        out.println((directory.isWritable() ? "migrated " : "can migrate ") + converted + " regions to "
+                + target.name().toLowerCase(Locale.ROOT) + ", " + failed + " failed");
+        return failed == 0 ? OK : PROBLEMS;
+    }
+
+    /**
+     * Migrates a single region file.
+     * @param directory The data directory.
+     * @param region The region file.
+     * @param target Format to migrate to.
+     * @return Description of the problem which prevented the migration. Null if migrated.
+     */
+    static String migrate(RegionDirectory directory, RegionFile region, RegionFormat target) {
+        RegionCodec codec = target.getCodec();
+        Path targetPath = region.getPath().resolveSibling(RegionFileFormat.getFileName(region.getKey(), target));
+        try {
+            // the region was already migrated, but the original wasn't removed yet
+            // keep the original unless the converted region reads back intact
+            if (Files.exists(targetPath)) {
+                directory.read(new RegionFile(targetPath, region.getKey(), region.getWorld(), target));
+                if (directory.isWritable()) {
+                    Files.delete(region.getPath());
+                }
+                return null;
+            }
+
+            // convert the region, making sure it decodes to the same contents
+            RegionTree tree = directory.read(region);
+            if (tree.toNode() == null) {
+                if (directory.isWritable()) {
+                    Files.delete(region.getPath());
+                }
+                return null;
+            }
+            byte[] content = codec.encode(tree);
+            if (!tree.matches(codec.decode(content))) {
+                return "contents changed when converted";
+            }
+            if (!directory.isWritable()) {
+                return null;
+            }
+
+            // write the region and read it back before removing the original
+            Path temp = targetPath.resolveSibling(targetPath.getFileName() + ".tmp");
+            Files.write(temp, content);
+            Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!tree.matches(codec.decode(Files.readAllBytes(targetPath)))) {
+                Files.delete(targetPath);
+                return "contents changed when written";
+            }
+            Files.delete(region.getPath());
+            return null;
+        } catch (IOException e) {
+            return "failed: " + e.getMessage();
+        }
+    }
+}
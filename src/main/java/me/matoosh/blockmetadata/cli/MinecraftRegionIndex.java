@@ -0,0 +1,107 @@
+package me.matoosh.blockmetadata.cli;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Tells which chunks of a Minecraft world have been generated, by reading the location tables
+ * in the headers of the world's Anvil region files. Chunk data itself is never read.
+ */
+public class MinecraftRegionIndex {
+
+    /**
+     * Number of chunks along each side of an Anvil region.
+     */
+    private static final int REGION_SIZE = 32;
+    /**
+     * Size of the location table at the start of each Anvil region file, in bytes.
+     */
+    private static final int LOCATION_TABLE_SIZE = REGION_SIZE * REGION_SIZE * 4;
+
+    /**
+     * Folder holding the Anvil region files.
+     */
+    private final Path regionFolder;
+    /**
+     * Generated chunks of each read region file, by file name.
+     */
+    private final Map<String, boolean[]> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the region folder of a world.
+     * @param worldFolder Folder of the world, containing the {@code region} folder.
+     * @throws IOException If the world has no region files.
+     */
+    public MinecraftRegionIndex(@NonNull Path worldFolder) throws IOException {
+        this.regionFolder = worldFolder.resolve("region");
+        boolean hasRegions;
+        try (Stream<Path> files = Files.list(regionFolder)) {
+            hasRegions = files.anyMatch((file) -> file.getFileName().toString().endsWith(".mca"));
+        } catch (IOException e) {
+            throw new IOException("Not a world folder, no region folder in: " + worldFolder, e);
+        }
+        if (!hasRegions) {
+            throw new IOException("Not a world folder, no region files in: " + regionFolder);
+        }
+    }
+
+    /**
+     * Checks whether a chunk has been generated.
+     * @param chunkX Chunk x coordinate.
+     * @param chunkZ Chunk z coordinate.
+     * @return Whether the chunk exists in the world.
+     */
+    public boolean exists(int chunkX, int chunkZ) {
+        String fileName = "r." + Math.floorDiv(chunkX, REGION_SIZE) + "." + Math.floorDiv(chunkZ, REGION_SIZE) + ".mca";
+        boolean[] chunks = regions.computeIfAbsent(fileName, this::readLocationTable);
+        return chunks[Math.floorMod(chunkX, REGION_SIZE) + Math.floorMod(chunkZ, REGION_SIZE) * REGION_SIZE];
+    }
+
+    /**
+     * Reads which chunks of a region file exist.
+     * @param fileName Name of the region file.
+     * @return Whether each chunk exists, indexed by x + z * 32. All false if the file doesn't exist,
+     *         all true if it can't be read or its location table is incomplete.
+     */
+    private boolean[] readLocationTable(String fileName) {
+        boolean[] chunks = new boolean[REGION_SIZE * REGION_SIZE];
+        Path file = regionFolder.resolve(fileName);
+        if (!Files.exists(file)) {
+            return chunks;
+        }
+        byte[] header = new byte[LOCATION_TABLE_SIZE];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (read < header.length) {
+                int n = in.read(header, read, header.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            // treat unreadable region files as fully generated, so nothing is pruned by mistake
+            Arrays.fill(chunks, true);
+            return chunks;
+        }
+        if (read < LOCATION_TABLE_SIZE) {
+            // files without a complete table, e.g. freshly created ones, are unreadable too
+            Arrays.fill(chunks, true);
+            return chunks;
+        }
+        ByteBuffer table = ByteBuffer.wrap(header);
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = table.getInt() != 0;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,79 @@
+package me.matoosh.blockmetadata.cli;
+
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Removes the metadata of chunks which no longer exist in a world,
+ * e.g. after the world was trimmed or partially regenerated.
+ * Without write access, only reports what would be removed.
+ */
+public class PruneCommand implements MaintenanceCommand {
+
+    @Override
+    public String getUsage() {
+        return "<world> <world folder>";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        if (args.size() != 2) {
+            return USAGE;
+        }
+        String world = args.get(0);
+        MinecraftRegionIndex index;
+        try {
+            index = new MinecraftRegionIndex(Paths.get(args.get(1)));
+        } catch (IOException e) {
+            // never prune against a folder which isn't a world, that would remove everything
+            out.println(e.getMessage());
+            return PROBLEMS;
+        }
+
+        List<RegionFile> regions = directory.listRegions().stream()
+                .filter((region) -> region.getWorld().equals(world))
+                .collect(Collectors.toList());
+        List<int[]> results = directory.processRegions(regions, (region) -> {
+            try {
+                RegionTree tree = directory.read(region);
+                List<String> missing = new ArrayList<>();
+                for (Iterator<String> chunks = tree.getChunks().fieldNames(); chunks.hasNext(); ) {
+                    String chunk = chunks.next();
+                    int[] coordinates = VerifyCommand.parseKey(chunk, 2);
+                    if (coordinates != null && !index.exists(coordinates[0], coordinates[1])) {
+                        missing.add(chunk);
+                    }
+                }
+                int removed = 0;
+                for (String chunk : missing) {
+                    removed += tree.removeChunk(chunk);
+                }
+                if (!missing.isEmpty() && directory.isWritable()) {
+                    directory.write(region, tree);
+                }
+                return new int[] {missing.size(), removed, 0};
+            } catch (IOException e) {
+                return new int[] {0, 0, 1};
+            }
+        });
+        long chunks = 0, entries = 0, unreadable = 0;
+        for (int[] result : results) {
+            chunks += result[0];
+            entries += result[1];
+            unreadable += result[2];
+        }
+        out.println((directory.isWritable() ? "removed " : "would remove ") + entries + " entries of "
+                + chunks + " missing chunks from " + regions.size() + " regions of " + world);
+        if (unreadable > 0) {
+            out.println("skipped " + unreadable + " unreadable region files, run verify for details");
+        }
+        return unreadable == 0 ? OK : PROBLEMS;
+    }
+}
@@ -0,0 +1,151 @@
+package me.matoosh.blockmetadata.cli;
+
+import lombok.Getter;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A data directory of a storage, opened outside of the server.
+ * Region files are processed in parallel on a dedicated fork-join pool.
+ * Writes are only allowed if the directory was opened read-write.
+ */
+@Getter
+public class RegionDirectory {
+
+    /**
+     * Path of the data directory.
+     */
+    private final Path path;
+    /**
+     * Whether region files may be modified.
+     */
+    private final boolean writable;
+    /**
+     * Pool processing the region files.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Opens a data directory.
+     * @param path Path of the data directory.
+     * @param writable Whether region files may be modified.
+     * @param parallelism Number of region files processed at once.
+     * @throws IOException If the path isn't a directory.
+     */
+    public RegionDirectory(@NonNull Path path, boolean writable, int parallelism) throws IOException {
+        if (!Files.isDirectory(path)) {
+            throw new IOException("Not a directory: " + path);
+        }
+        this.path = path;
+        this.writable = writable;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Lists the region files of the directory, in any format.
+     * @return The region files, sorted by key.
+     */
+    public List<RegionFile> listRegions() throws IOException {
+        try (Stream<Path> files = Files.list(path)) {
+            List<RegionFile> regions = new ArrayList<>();
+            files.forEach((file) -> {
+                String key = RegionFileFormat.getRegionKey(file);
+                if (key != null && Files.isRegularFile(file)) {
+                    regions.add(new RegionFile(file, key, RegionFileFormat.getRegionChunk(key).getWorld(),
+                            RegionFormat.of(file)));
+                }
+            });
+            regions.sort(Comparator.comparing(RegionFile::getKey).thenComparing(RegionFile::getFormat));
+            return regions;
+        }
+    }
+
+    /**
+     * Processes region files of the directory in parallel.
+     * @param regions The region files.
+     * @param processor Processes a single region file.
+     * @param <R> Type of the result of each region file.
+     * @return The results, in the order of the region files.
+     */
+    public <R> List<R> processRegions(@NonNull List<RegionFile> regions, @NonNull Function<RegionFile, R> processor)
+            throws IOException, InterruptedException {
+        try {
+            return pool.submit(() -> regions.parallelStream()
+                    .map(processor)
+                    .collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads a region file, refusing regions with corrupt chunks,
+     * so they're never rewritten without the corrupt chunks.
+     * @param region The region file.
+     * @return Contents of the region file.
+     * @throws IOException If the file can't be read, isn't a region or has corrupt chunks.
+     */
+    public RegionTree read(@NonNull RegionFile region) throws IOException {
+        RegionTree tree = decode(region);
+        if (!tree.getCorruptChunks().isEmpty()) {
+            throw new IOException("Region has corrupt chunks: " + tree.getCorruptChunks().keySet());
+        }
+        return tree;
+    }
+
+    /**
+     * Reads a region file, leaving out its corrupt chunks.
+     * @param region The region file.
+     * @return Contents of the region file, listing the corrupt chunks.
+     * @throws IOException If the file can't be read or isn't a region.
+     */
+    public RegionTree decode(@NonNull RegionFile region) throws IOException {
+        byte[] content = Files.readAllBytes(region.getPath());
+        return region.getFormat().getCodec().decode(content);
+    }
+
+    /**
+     * Writes a region file, replacing it atomically. Regions without metadata are deleted.
+     * @param region The region file.
+     * @param tree Contents of the region file.
+     * @throws IOException If the file can't be written, or the directory is read-only.
+     */
+    public void write(@NonNull RegionFile region, @NonNull RegionTree tree) throws IOException {
+        if (!writable) {
+            throw new IOException("Data directory was opened read-only: " + path);
+        }
+        if (tree.toNode() == null) {
+            Files.deleteIfExists(region.getPath());
+            return;
+        }
+        Path temp = region.getPath().resolveSibling(region.getPath().getFileName() + ".tmp");
+        Files.write(temp, region.getFormat().getCodec().encode(tree));
+        Files.move(temp, region.getPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stops the pool processing the region files.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+}
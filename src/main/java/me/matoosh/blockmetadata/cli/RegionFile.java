@@ -0,0 +1,41 @@
+package me.matoosh.blockmetadata.cli;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.format.RegionFormat;
+
+import java.nio.file.Path;
+
+/**
+ * A region file of a data directory.
+ */
+@Value
+public class RegionFile {
+    /**
+     * Path of the file.
+     */
+    Path path;
+    /**
+     * Key of the region.
+     */
+    String key;
+    /**
+     * World of the region.
+     */
+    String world;
+    /**
+     * Format of the file.
+     */
+    RegionFormat format;
+
+    /**
+     * Checks whether a chunk belongs to this region.
+     * @param chunk Coordinates of the chunk.
+     * @return Whether the chunk lies within the region.
+     */
+    public boolean contains(ChunkCoordinates chunk) {
+        return RegionFileFormat.getRegionKey(new ChunkInfo(world, chunk)).equals(key);
+    }
+}
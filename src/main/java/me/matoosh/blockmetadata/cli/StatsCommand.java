@@ -0,0 +1,99 @@
+package me.matoosh.blockmetadata.cli;
+
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Prints the number of regions, chunks and blocks with metadata and the size on disk of each world,
+ * along with the largest region files.
+ */
+public class StatsCommand implements MaintenanceCommand {
+
+    /**
+     * Number of largest region files listed.
+     */
+    private static final int LARGEST_REGIONS = 5;
+
+    @Override
+    public String getUsage() {
+        return "";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        List<RegionFile> regions = directory.listRegions();
+        List<Stats> stats = directory.processRegions(regions, (region) -> {
+            Stats regionStats = new Stats();
+            regionStats.regions = 1;
+            try {
+                regionStats.bytes = Files.size(region.getPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                RegionTree tree = directory.read(region);
+                regionStats.chunks = tree.getChunks().size();
+                regionStats.entries = tree.countEntries();
+                regionStats.expiring = tree.countExpiring();
+            } catch (IOException e) {
+                regionStats.unreadable = 1;
+            }
+            return regionStats;
+        });
+
+        // sum up the regions of each world
+        Map<String, Stats> worlds = new TreeMap<>();
+        for (int i = 0; i < regions.size(); i++) {
+            worlds.computeIfAbsent(regions.get(i).getWorld(), (w) -> new Stats()).add(stats.get(i));
+        }
+        out.printf(Locale.ROOT, "%-20s %8s %8s %10s %10s %12s %10s%n",
+                "world", "regions", "chunks", "entries", "expiring", "bytes", "unreadable");
+        worlds.forEach((world, total) -> out.printf(Locale.ROOT, "%-20s %8d %8d %10d %10d %12d %10d%n",
+                world, total.regions, total.chunks, total.entries, total.expiring, total.bytes, total.unreadable));
+
+        // list the largest regions
+        List<Integer> largest = new ArrayList<>();
+        for (int i = 0; i < regions.size(); i++) {
+            largest.add(i);
+        }
+        largest.sort(Comparator.comparingLong((Integer i) -> stats.get(i).bytes).reversed());
+        if (!largest.isEmpty()) {
+            out.println("largest regions:");
+            for (int i : largest.subList(0, Math.min(LARGEST_REGIONS, largest.size()))) {
+                out.printf(Locale.ROOT, "  %s: %d bytes, %d entries%n",
+                        regions.get(i).getKey(), stats.get(i).bytes, stats.get(i).entries);
+            }
+        }
+        return OK;
+    }
+
+    /**
+     * Statistics of one or more regions.
+     */
+    private static class Stats {
+        private long regions;
+        private long chunks;
+        private long entries;
+        private long expiring;
+        private long bytes;
+        private long unreadable;
+
+        /**
+         * Adds the statistics of other regions.
+         * @param other The other statistics.
+         */
+        private void add(Stats other) {
+            regions += other.regions;
+            chunks += other.chunks;
+            entries += other.entries;
+            expiring += other.expiring;
+            bytes += other.bytes;
+            unreadable += other.unreadable;
+        }
+    }
+}
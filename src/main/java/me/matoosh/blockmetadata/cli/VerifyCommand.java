@@ -0,0 +1,145 @@
+package me.matoosh.blockmetadata.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.format.RegionTree;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that every region file can be read, and that its chunk and block keys are well-formed
+ * and lie within the region. Prints each problem found.
+ * With the {@code checksums} argument, only checks the integrity of the region files,
+ * using their checksums where the format has them, which is much faster.
+ */
+public class VerifyCommand implements MaintenanceCommand {
+
+    @Override
+    public String getUsage() {
+        return "[checksums]";
+    }
+
+    @Override
+    public int run(RegionDirectory directory, List<String> args, PrintStream out) throws Exception {
+        if (args.size() > 1 || (args.size() == 1 && !args.get(0).equals("checksums"))) {
+            return USAGE;
+        }
+        boolean checksumsOnly = !args.isEmpty();
+        List<RegionFile> regions = directory.listRegions();
+        List<List<String>> problems = directory.processRegions(regions, (region) -> checksumsOnly
+                ? verifyChecksums(region)
+                : verify(directory, region));
+        int problemCount = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            for (String problem : problems.get(i)) {
+                out.println(regions.get(i).getKey() + ": " + problem);
+                problemCount++;
+            }
+        }
+        out.println("verified " + regions.size() + " regions, found " + problemCount + " problems");
+        return problemCount == 0 ? OK : PROBLEMS;
+    }
+
+    /**
+     * Checks the integrity of a single region file, without decoding the metadata where possible.
+     * @param region The region file.
+     * @return Descriptions of the problems found.
+     */
+    static List<String> verifyChecksums(RegionFile region) {
+        List<String> problems = new ArrayList<>();
+        try {
+            Map<String, String> corruptChunks = region.getFormat().getCodec()
+                    .verify(Files.readAllBytes(region.getPath()));
+            corruptChunks.forEach((chunk, problem) -> problems.add("corrupt chunk " + chunk + ": " + problem));
+        } catch (IOException e) {
+            problems.add("unreadable: " + e.getMessage());
+        }
+        return problems;
+    }
+
+    /**
+     * Verifies a single region file.
+     * @param directory The data directory.
+     * @param region The region file.
+     * @return Descriptions of the problems found.
+     */
+    static List<String> verify(RegionDirectory directory, RegionFile region) {
+        List<String> problems = new ArrayList<>();
+        RegionTree tree;
+        try {
+            tree = directory.decode(region);
+        } catch (IOException e) {
+            problems.add("unreadable: " + e.getMessage());
+            return problems;
+        }
+        tree.getCorruptChunks().forEach((chunk, problem) -> problems.add("corrupt chunk " + chunk + ": " + problem));
+        for (Iterator<Map.Entry<String, JsonNode>> chunks = tree.getChunks().fields(); chunks.hasNext(); ) {
+            Map.Entry<String, JsonNode> chunk = chunks.next();
+            int[] chunkCoordinates = parseKey(chunk.getKey(), 2);
+            if (chunkCoordinates == null) {
+                problems.add("malformed chunk key " + chunk.getKey());
+                continue;
+            }
+            if (!region.contains(new ChunkCoordinates(chunkCoordinates[0], chunkCoordinates[1]))) {
+                problems.add("chunk " + chunk.getKey() + " lies outside of the region");
+            }
+            if (!chunk.getValue().isObject()) {
+                problems.add("chunk " + chunk.getKey() + " isn't a map");
+                continue;
+            }
+            for (Iterator<String> blocks = chunk.getValue().fieldNames(); blocks.hasNext(); ) {
+                String block = blocks.next();
+                int[] blockCoordinates = parseKey(block, 3);
+                if (blockCoordinates == null || blockCoordinates[0] < 0 || blockCoordinates[0] > 15
+                        || blockCoordinates[2] < 0 || blockCoordinates[2] > 15) {
+                    problems.add("malformed block key " + block + " in chunk " + chunk.getKey());
+                }
+            }
+        }
+        if (tree.getExpiry() != null) {
+            for (Iterator<Map.Entry<String, JsonNode>> chunks = tree.getExpiry().fields(); chunks.hasNext(); ) {
+                Map.Entry<String, JsonNode> chunk = chunks.next();
+                JsonNode chunkData = tree.getChunks().get(chunk.getKey());
+                for (Iterator<Map.Entry<String, JsonNode>> blocks = chunk.getValue().fields(); blocks.hasNext(); ) {
+                    Map.Entry<String, JsonNode> block = blocks.next();
+                    if (!block.getValue().canConvertToLong()) {
+                        problems.add("malformed expiry time of block " + block.getKey()
+                                + " in chunk " + chunk.getKey());
+                    } else if (chunkData == null || !chunkData.has(block.getKey())) {
+                        problems.add("expiry time of block " + block.getKey() + " in chunk "
+                                + chunk.getKey() + " without metadata");
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Parses comma separated integer coordinates.
+     * @param key The key.
+     * @param length Expected number of coordinates.
+     * @return The coordinates. Null if the key is malformed.
+     */
+    static int[] parseKey(String key, int length) {
+        String[] parts = key.split(",", -1);
+        if (parts.length != length) {
+            return null;
+        }
+        int[] coordinates = new int[length];
+        try {
+            for (int i = 0; i < length; i++) {
+                coordinates[i] = Integer.parseInt(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,294 @@
+package me.matoosh.blockmetadata.clipboard;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.query.AreaQuery;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+import org.bukkit.util.BlockVector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Copies and moves metadata of all blocks within a cuboid to another area, applying an {@link AreaTransform}.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class AreaTransfer<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Query collecting the metadata of the source area.
+     */
+    private final AreaQuery<T> areaQuery;
+
+    /**
+     * Copies metadata of all blocks within a cuboid to another area.
+     * Metadata of destination blocks is replaced only where the source blocks have metadata.
+     * @param world Name of the source world.
+     * @param min One corner of the source cuboid.
+     * @param max The opposite corner of the source cuboid.
+     * @param targetWorld Name of the destination world.
+     * @param targetMin Minimum corner of the destination area.
+     * @param transform Rotation and mirroring applied to the area.
+     * @return The number of copied blocks.
+     */
+    public CompletableFuture<Integer> copyArea(@NonNull String world, @NonNull BlockVector min,
+                                               @NonNull BlockVector max, @NonNull String targetWorld,
+                                               @NonNull BlockVector targetMin, @NonNull AreaTransform transform) {
+        return transfer(world, min, max, targetWorld, targetMin, transform, false);
+    }
+
+    /**
+     * Moves metadata of all blocks within a cuboid to another area.
+     * Metadata of destination blocks is replaced only where the source blocks have metadata.
+     * The source and destination areas may overlap.
+     * @param world Name of the source world.
+     * @param min One corner of the source cuboid.
+     * @param max The opposite corner of the source cuboid.
+     * @param targetWorld Name of the destination world.
+     * @param targetMin Minimum corner of the destination area.
+     * @param transform Rotation and mirroring applied to the area.
+     * @return The number of moved blocks.
+     */
+    public CompletableFuture<Integer> moveArea(@NonNull String world, @NonNull BlockVector min,
+                                               @NonNull BlockVector max, @NonNull String targetWorld,
+                                               @NonNull BlockVector targetMin, @NonNull AreaTransform transform) {
+        return transfer(world, min, max, targetWorld, targetMin, transform, true);
+    }
+
+    /**
+     * Copies or moves metadata of all blocks within a cuboid to another area.
+     * The source metadata is collected first without modifying it, then all affected regions are
+     * locked together while the source metadata is removed and the destination metadata is written.
+     * Expiring metadata keeps its expiry time at the destination.
+     * If the area is only shifted by whole chunks, the chunks lying entirely within the area
+     * are transferred as whole chunk maps instead of block by block.
+     * @param world Name of the source world.
+     * @param min One corner of the source cuboid.
+     * @param max The opposite corner of the source cuboid.
+     * @param targetWorld Name of the destination world.
+     * @param targetMin Minimum corner of the destination area.
+     * @param transform Rotation and mirroring applied to the area.
+     * @param move Whether the source metadata should be removed.
+     * @return The number of transferred blocks.
+     */
+    private CompletableFuture<Integer> transfer(String world, BlockVector min, BlockVector max,
+                                                String targetWorld, BlockVector targetMin,
+                                                AreaTransform transform, boolean move) {
+        // normalize the bounds
+        int minX = Math.min(min.getBlockX(), max.getBlockX());
+        int minY = Math.min(min.getBlockY(), max.getBlockY());
+        int minZ = Math.min(min.getBlockZ(), max.getBlockZ());
+        int maxX = Math.max(min.getBlockX(), max.getBlockX());
+        int maxY = Math.max(min.getBlockY(), max.getBlockY());
+        int maxZ = Math.max(min.getBlockZ(), max.getBlockZ());
+        int sizeX = maxX - minX + 1;
+        int sizeZ = maxZ - minZ + 1;
+        int offsetX = targetMin.getBlockX() - minX;
+        int offsetY = targetMin.getBlockY() - minY;
+        int offsetZ = targetMin.getBlockZ() - minZ;
+
+        // chunks lying entirely within the area can be transferred whole, if shifted by whole chunks
+        Set<ChunkCoordinates> wholeChunks = new HashSet<>();
+        if (transform.isIdentity() && offsetY == 0 && (offsetX & 15) == 0 && (offsetZ & 15) == 0) {
+            for (int chunkX = (minX + 15) >> 4; chunkX <= (maxX - 15) >> 4; chunkX++) {
+                for (int chunkZ = (minZ + 15) >> 4; chunkZ <= (maxZ - 15) >> 4; chunkZ++) {
+                    wholeChunks.add(new ChunkCoordinates(chunkX, chunkZ));
+                }
+            }
+        }
+
+        // collect the remaining blocks, keeping their expiry times
+        Map<BlockInfo, T> blocks = new ConcurrentHashMap<>();
+        Map<BlockInfo, Long> expiries = new ConcurrentHashMap<>();
+        CompletableFuture<Void> collectBlocks = areaQuery.forEachMetadataInArea(world, min, max, (block, data) -> {
+            if (!wholeChunks.contains(block.getChunk().getCoordinates())) {
+                blocks.put(block, data);
+            }
+        }, (block, expiresAt) -> {
+            if (!wholeChunks.contains(block.getChunk().getCoordinates())) {
+                expiries.put(block, expiresAt);
+            }
+        });
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> chunkExpiries = new ConcurrentHashMap<>();
+        CompletableFuture<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>> collectChunks =
+                collectChunks(world, wholeChunks, minY, maxY, chunkExpiries);
+
+        return collectBlocks.thenCombine(collectChunks, (s, chunks) -> {
+            // remove the moved blocks, unless they're overwritten anyway
+            Map<BlockInfo, T> blockWrites = new HashMap<>();
+            if (move) {
+                blocks.keySet().forEach((block) -> blockWrites.put(block, null));
+            }
+
+            // transform the blocks to their destination
+            Map<BlockInfo, Long> blockExpiries = new HashMap<>();
+            blocks.forEach((block, data) -> {
+                BlockVector offset = transform.apply(block.getX() - minX, block.getY() - minY,
+                        block.getZ() - minZ, sizeX, sizeZ);
+                BlockInfo target = BlockInfo.fromCoordinates(targetWorld,
+                        targetMin.getBlockX() + offset.getBlockX(),
+                        targetMin.getBlockY() + offset.getBlockY(),
+                        targetMin.getBlockZ() + offset.getBlockZ());
+                blockWrites.put(target, data);
+                blockExpiries.put(target, expiries.getOrDefault(block, 0L));
+            });
+
+            // shift the whole chunks to their destination
+            Map<ChunkInfo, Set<BlockChunkCoordinates>> chunkRemovals = new HashMap<>();
+            Map<ChunkInfo, Map<BlockChunkCoordinates, T>> chunkWrites = new HashMap<>();
+            Map<ChunkInfo, Map<BlockChunkCoordinates, Long>> chunkExpiryWrites = new HashMap<>();
+            int[] transferred = {blocks.size()};
+            chunks.forEach((chunk, data) -> {
+                if (move) {
+                    chunkRemovals.put(new ChunkInfo(world, chunk), new HashSet<>(data.keySet()));
+                }
+                ChunkInfo target = new ChunkInfo(targetWorld, new ChunkCoordinates(
+                        chunk.getX() + (offsetX >> 4), chunk.getZ() + (offsetZ >> 4)));
+                chunkWrites.put(target, data);
+                if (chunkExpiries.containsKey(chunk)) {
+                    chunkExpiryWrites.put(target, chunkExpiries.get(chunk));
+                }
+                transferred[0] += data.size();
+            });
+            return writeTransfer(blockWrites, blockExpiries, chunkRemovals, chunkWrites, chunkExpiryWrites)
+                    .thenApply((v) -> transferred[0]);
+        }).thenCompose((transferred) -> transferred);
+    }
+
+    /**
+     * Collects the metadata of whole chunks within the height range of an area, without modifying it.
+     * @param world Name of the world.
+     * @param chunks Coordinates of the chunks.
+     * @param minY Minimum height of the area.
+     * @param maxY Maximum height of the area.
+     * @param collectedExpiries Receives the expiry times of the expiring collected metadata of each chunk.
+     * @return Copy of the metadata of each chunk with metadata within the height range. Owned by the caller.
+     */
+    private CompletableFuture<Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>>> collectChunks(
+            String world, Set<ChunkCoordinates> chunks, int minY, int maxY,
+            Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> collectedExpiries) {
+        // group chunks by region
+        Map<String, List<ChunkCoordinates>> grouped = new HashMap<>();
+        for (ChunkCoordinates chunk : chunks) {
+            grouped.computeIfAbsent(BlockMetadataStorage.getRegionKey(new ChunkInfo(world, chunk)),
+                    (k) -> new ArrayList<>()).add(chunk);
+        }
+
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> collected = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] tasks = grouped.entrySet().stream()
+                // skip regions without any metadata stored
+                .filter((entry) -> regions.isRegionStored(entry.getKey()))
+                .map((entry) -> regions.getRegion(new ChunkInfo(world, entry.getValue().get(0)))
+                        .thenAccept((region) -> region.locked(() -> {
+                            for (ChunkCoordinates chunk : entry.getValue()) {
+                                Map<BlockChunkCoordinates, T> metadata = region.getChunk(chunk);
+                                if (metadata == null) {
+                                    continue;
+                                }
+
+                                // copy the metadata within the height range, along with its expiry times
+                                Map<BlockChunkCoordinates, T> copy = new HashMap<>();
+                                Map<BlockChunkCoordinates, Long> chunkExpiries = new HashMap<>();
+                                metadata.forEach((block, data) -> {
+                                    if (block.getY() < minY || block.getY() > maxY) {
+                                        return;
+                                    }
+                                    copy.put(block, data);
+                                    long expiresAt = region.getExpiry(chunk, block);
+                                    if (expiresAt != 0) {
+                                        chunkExpiries.put(block, expiresAt);
+                                    }
+                                });
+                                if (!copy.isEmpty()) {
+                                    collected.put(chunk, copy);
+                                }
+                                if (!chunkExpiries.isEmpty()) {
+                                    collectedExpiries.put(chunk, chunkExpiries);
+                                }
+                            }
+                            return null;
+                        })))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(tasks).thenApply((s) -> collected);
+    }
+
+    /**
+     * Writes transferred metadata, locking all the affected regions together.
+     * Every region is loaded before any of them is modified, so a region failing to load leaves the metadata intact.
+     * Removals are applied first, so transferred metadata is never removed by an overlapping move.
+     * @param blockWrites Metadata to set to each block. Null values remove the metadata of a block.
+     * @param blockExpiries Expiry time of the metadata set to each block. Zero if it doesn't expire.
+     * @param chunkRemovals Blocks whose metadata should be removed from each chunk.
+     * @param chunkWrites Metadata to merge into each chunk. The maps are taken over by the storage.
+     * @param chunkExpiries Expiry times of the expiring metadata merged into each chunk.
+     * @return Future completed once all the metadata is written.
+     */
+    private CompletableFuture<Void> writeTransfer(Map<BlockInfo, T> blockWrites, Map<BlockInfo, Long> blockExpiries,
+                                                  Map<ChunkInfo, Set<BlockChunkCoordinates>> chunkRemovals,
+                                                  Map<ChunkInfo, Map<BlockChunkCoordinates, T>> chunkWrites,
+                                                  Map<ChunkInfo, Map<BlockChunkCoordinates, Long>> chunkExpiries) {
+        // find the affected regions
+        Map<String, ChunkInfo> regionChunks = new HashMap<>();
+        for (BlockInfo block : blockWrites.keySet()) {
+            regionChunks.putIfAbsent(BlockMetadataStorage.getRegionKey(block.getChunk()), block.getChunk());
+        }
+        for (ChunkInfo chunk : chunkRemovals.keySet()) {
+            regionChunks.putIfAbsent(BlockMetadataStorage.getRegionKey(chunk), chunk);
+        }
+        for (ChunkInfo chunk : chunkWrites.keySet()) {
+            regionChunks.putIfAbsent(BlockMetadataStorage.getRegionKey(chunk), chunk);
+        }
+
+        // resolve the regions
+        List<CompletableFuture<Region<T>>> resolving = regionChunks.values().stream()
+                .map(regions::getRegion)
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(resolving.toArray(new CompletableFuture[0])).thenAccept((s) -> {
+            Map<String, Region<T>> resolved = new HashMap<>();
+            for (CompletableFuture<Region<T>> region : resolving) {
+                resolved.put(region.join().getKey(), region.join());
+            }
+
+            // write the metadata while holding all the locks
+            Region.lockedAll(resolved.values(), () -> {
+                blockWrites.forEach((block, data) -> {
+                    if (data == null) {
+                        resolved.get(BlockMetadataStorage.getRegionKey(block.getChunk()))
+                                .remove(block.getChunk().getCoordinates(), block.getCoordinates());
+                    }
+                });
+                chunkRemovals.forEach((chunk, blocks) -> {
+                    Region<T> region = resolved.get(BlockMetadataStorage.getRegionKey(chunk));
+                    blocks.forEach((block) -> region.remove(chunk.getCoordinates(), block));
+                });
+                chunkWrites.forEach((chunk, data) -> resolved.get(BlockMetadataStorage.getRegionKey(chunk))
+                        .mergeChunk(chunk.getCoordinates(), data, chunkExpiries.get(chunk)));
+                blockWrites.forEach((block, data) -> {
+                    if (data != null) {
+                        Region<T> region = resolved.get(BlockMetadataStorage.getRegionKey(block.getChunk()));
+                        region.put(block.getChunk().getCoordinates(), block.getCoordinates(), data);
+                        region.setExpiry(block.getChunk().getCoordinates(), block.getCoordinates(),
+                                blockExpiries.getOrDefault(block, 0L));
+                    }
+                });
+                return null;
+            });
+        });
+    }
+}
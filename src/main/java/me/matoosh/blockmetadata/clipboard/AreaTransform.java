@@ -0,0 +1,90 @@
+package me.matoosh.blockmetadata.clipboard;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.bukkit.util.BlockVector;
+
+/**
+ * Rotation and mirroring applied to an area when it's copied or moved.
+ * The area is first mirrored, then rotated clockwise around the vertical axis, as seen from above.
+ * Transformed positions are relative to the minimum corner of the transformed area.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AreaTransform {
+
+    /**
+     * Transform keeping the area as it is.
+     */
+    public static final AreaTransform NONE = new AreaTransform(0, false, false);
+
+    /**
+     * Number of clockwise quarter turns, between 0 and 3.
+     */
+    int quarterTurns;
+    /**
+     * Whether the area is mirrored along the x axis, flipping east and west.
+     */
+    boolean mirrorX;
+    /**
+     * Whether the area is mirrored along the z axis, flipping north and south.
+     */
+    boolean mirrorZ;
+
+    /**
+     * Creates a transform.
+     * @param quarterTurns Number of clockwise quarter turns, may be negative for counterclockwise turns.
+     * @param mirrorX Whether the area is mirrored along the x axis.
+     * @param mirrorZ Whether the area is mirrored along the z axis.
+     * @return The transform.
+     */
+    public static AreaTransform of(int quarterTurns, boolean mirrorX, boolean mirrorZ) {
+        return new AreaTransform(Math.floorMod(quarterTurns, 4), mirrorX, mirrorZ);
+    }
+
+    /**
+     * Creates a transform rotating the area clockwise.
+     * @param quarterTurns Number of clockwise quarter turns, may be negative for counterclockwise turns.
+     * @return The transform.
+     */
+    public static AreaTransform rotate(int quarterTurns) {
+        return of(quarterTurns, false, false);
+    }
+
+    /**
+     * Checks whether this transform keeps the area as it is.
+     * @return Whether this is the identity transform.
+     */
+    public boolean isIdentity() {
+        return quarterTurns == 0 && !mirrorX && !mirrorZ;
+    }
+
+    /**
+     * Transforms a position within an area.
+     * @param x The x offset from the minimum corner of the area.
+     * @param y The y offset from the minimum corner of the area.
+     * @param z The z offset from the minimum corner of the area.
+     * @param sizeX Size of the area along the x axis, in blocks.
+     * @param sizeZ Size of the area along the z axis, in blocks.
+     * @return The offset from the minimum corner of the transformed area.
+     */
+    public BlockVector apply(int x, int y, int z, int sizeX, int sizeZ) {
+        if (mirrorX) {
+            x = sizeX - 1 - x;
+        }
+        if (mirrorZ) {
+            z = sizeZ - 1 - z;
+        }
+        switch (quarterTurns) {
+            case 1:
+                return new BlockVector(sizeZ - 1 - z, y, x);
+            case 2:
+                return new BlockVector(sizeX - 1 - x, y, sizeZ - 1 - z);
+            case 3:
+                return new BlockVector(z, y, sizeX - 1 - x);
+            default:
+                return new BlockVector(x, y, z);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package me.matoosh.blockmetadata.command;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.diagnostics.RegionEviction;
+import me.matoosh.blockmetadata.diagnostics.RegionVerification;
+import me.matoosh.blockmetadata.diagnostics.StorageDiagnostics;
+import me.matoosh.blockmetadata.diagnostics.WorldDiagnostics;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.metrics.SlowOperation;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Admin command showing the internals of a storage and acting on its regions.
+ * All the data is gathered off the main thread, replies are sent from the main thread.
+ * <ul>
+ *     <li>{@code status} - regions, memory and disk usage per world, hit rate and slowest loads</li>
+ *     <li>{@code flush [world]} - saves dirty regions immediately</li>
+ *     <li>{@code evict [region]} - saves a region and removes it from memory</li>
+ *     <li>{@code verify [region]} - reads a region file and checks it against memory</li>
+ * </ul>
+ * Players may leave out the region to act on the region they're standing in.
+ */
+@RequiredArgsConstructor
+public class DiagnosticsCommand implements TabExecutor {
+
+    /**
+     * Permission required to use the command.
+     */
+    public static final String PERMISSION = "blockmetadata.diagnostics";
+    /**
+     * Available sub commands.
+     */
+    private static final List<String> SUB_COMMANDS = Arrays.asList("status", "flush", "evict", "verify");
+
+    /**
+     * Plugin owning the command, whose scheduler delivers the replies.
+     */
+    @NonNull
+    private final Plugin plugin;
+    /**
+     * The inspected storage.
+     */
+    @NonNull
+    private final BlockMetadataStorage<?> storage;
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission(PERMISSION)) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return true;
+        }
+        String subCommand = args.length > 0 ? args[0].toLowerCase(Locale.ROOT) : "status";
+        switch (subCommand) {
+            case "status":
+                reply(sender, storage.getDiagnostics(), this::formatStatus);
+                return true;
+            case "flush": {
+                String world = args.length > 1 ? args[1] : null;
+                reply(sender, storage.flushRegions(world), (saved) -> Collections.singletonList(
+                        "Saved " + saved + " regions" + (world != null ? " of " + world : "") + "."));
+                return true;
+            }
+            case "evict": {
+                String regionKey = getRegionKey(sender, args);
+                if (regionKey == null) {
+                    return false;
+                }
+                reply(sender, storage.evictRegion(regionKey), (eviction) -> Collections.singletonList(
+                        formatEviction(regionKey, eviction)));
+                return true;
+            }
+            case "verify": {
+                String regionKey = getRegionKey(sender, args);
+                if (regionKey == null) {
+                    return false;
+                }
+                reply(sender, storage.verifyRegion(regionKey), this::formatVerification);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (!sender.hasPermission(PERMISSION)) {
+            return Collections.emptyList();
+        }
+        if (args.length == 1) {
+            return filter(SUB_COMMANDS, args[0]);
+        }
+        if (args.length == 2) {
+            switch (args[0].toLowerCase(Locale.ROOT)) {
+                case "flush":
+                    return filter(Bukkit.getWorlds().stream().map((world) -> world.getName())
+                            .collect(Collectors.toList()), args[1]);
+                case "evict":
+                case "verify":
+                    return filter(new ArrayList<>(storage.getLoadedRegionKeys()), args[1]);
+                default:
+                    break;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Sends the result of an operation to a sender, from the main thread.
+     * @param sender The sender.
+     * @param future Future of the operation.
+     * @param formatter Formats the result as message lines.
+     * @param <R> Type of the result.
+     */
+    private <R> void reply(CommandSender sender, CompletableFuture<R> future, Function<R, List<String>> formatter) {
+        future.handle((result, e) -> {
+            List<String> lines;
+            if (e != null) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                lines = Collections.singletonList(ChatColor.RED + "Failed: " + cause.getMessage());
+            } else {
+                lines = formatter.apply(result);
+            }
+            if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, () -> lines.forEach(sender::sendMessage));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Get the region a sub command acts on.
+     * @param sender The sender.
+     * @param args Arguments of the command.
+     * @return Key of the region. Null if none was given and the sender isn't a player.
+     */
+    private static String getRegionKey(CommandSender sender, String[] args) {
+        if (args.length > 1) {
+            return args[1];
+        }
+        if (sender instanceof Player) {
+            return BlockMetadataStorage.getRegionKey(ChunkInfo.fromChunk(((Player) sender).getLocation().getChunk()));
+        }
+        return null;
+    }
+
+    /**
+     * Formats the diagnostics of the storage.
+     * @param diagnostics The diagnostics.
+     * @return The message lines.
+     */
+    private List<String> formatStatus(StorageDiagnostics diagnostics) {
+        List<String> lines = new ArrayList<>();
+        lines.add(ChatColor.GOLD + "Block metadata storage at " + storage.getDataPath());
+        lines.add(String.format(Locale.ROOT, "Region hit rate: %.1f%% (%d requests, %d waited for a load)",
+                diagnostics.getRegionHitRate() * 100, diagnostics.getRegionRequests(), diagnostics.getRegionWaits()));
+        for (WorldDiagnostics world : diagnostics.getWorlds()) {
+            lines.add(ChatColor.YELLOW + world.getWorld() + ChatColor.RESET + String.format(Locale.ROOT,
+                    ": %d regions loaded (%d loading, %d dirty, %d saving), %d entries, ~%s in memory,"
+                            + " %d region files, %s on disk",
+                    world.getLoadedRegions(), world.getLoadingRegions(), world.getDirtyRegions(),
+                    world.getSavingRegions(), world.getEntries(), formatBytes(world.getMemoryEstimate()),
+                    world.getRegionFiles(), formatBytes(world.getDiskBytes())));
+        }
+        if (!diagnostics.getSlowestLoads().isEmpty()) {
+            lines.add("Slowest loads:");
+            for (SlowOperation load : diagnostics.getSlowestLoads()) {
+                lines.add("  " + load.getSubject() + ": "
+                        + TimeUnit.NANOSECONDS.toMillis(load.getDuration()) + "ms");
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Formats the result of a region eviction.
+     * @param regionKey Key of the region.
+     * @param eviction The result of the eviction.
+     * @return The message.
+     */
+    private static String formatEviction(String regionKey, RegionEviction eviction) {
+        switch (eviction) {
+            case EVICTED:
+                return "Evicted region " + regionKey + ".";
+            case ACTIVE:
+                return "Region " + regionKey + " has loaded chunks, it's unloaded along with them.";
+            default:
+                return "Region " + regionKey + " isn't loaded.";
+        }
+    }
+
+    /**
+     * Formats the result of a region verification.
+     * @param verification The verification.
+     * @return The message lines.
+     */
+    private List<String> formatVerification(RegionVerification verification) {
+        String region = "Region " + verification.getRegionKey();
+        if (!verification.isFileExists()) {
+            return Collections.singletonList(region + " has no region file"
+                    + (Boolean.FALSE.equals(verification.getMatchesMemory()) ? ", but has saved metadata in memory." : "."));
+        }
+        if (!verification.isReadable()) {
+            return Collections.singletonList(ChatColor.RED + region + " can't be read: " + verification.getError());
+        }
+        String memory = verification.getMatchesMemory() == null
+                ? "isn't loaded or has unsaved changes"
+                : verification.getMatchesMemory() ? "matches memory" : ChatColor.RED + "doesn't match memory";
+        return Collections.singletonList(region + " is readable, " + verification.getFileEntries() + " entries in "
+                + formatBytes(verification.getFileBytes()) + ", " + memory + ".");
+    }
+
+    /**
+     * Filters completions by the typed prefix.
+     * @param options The completions.
+     * @param prefix The typed prefix.
+     * @return The matching completions.
+     */
+    private static List<String> filter(List<String> options, String prefix) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        return options.stream()
+                .filter((option) -> option.toLowerCase(Locale.ROOT).startsWith(lowerPrefix))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Formats a number of bytes.
+     * @param bytes The number of bytes.
+     * @return The formatted size.
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1fKiB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1fMiB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,20 @@
+package me.matoosh.blockmetadata.diagnostics;
+
+/**
+ * Result of evicting a region from memory.
+ */
+public enum RegionEviction {
+    /**
+     * The region was saved and removed from memory.
+     */
+    EVICTED,
+    /**
+     * The region wasn't loaded.
+     */
+    NOT_LOADED,
+    /**
+     * The region was kept, because some of its chunks are loaded.
+     * It's unloaded along with the last of its chunks.
+     */
+    ACTIVE
+}
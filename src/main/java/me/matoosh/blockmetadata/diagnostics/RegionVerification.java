@@ -0,0 +1,43 @@
+package me.matoosh.blockmetadata.diagnostics;
+
+import lombok.Value;
+
+/**
+ * Result of verifying a region file.
+ */
+@Value
+public class RegionVerification {
+    /**
+     * Key of the verified region.
+     */
+    String regionKey;
+    /**
+     * Whether the region file exists.
+     */
+    boolean fileExists;
+    /**
+     * Size of the region file, in bytes.
+     */
+    long fileBytes;
+    /**
+     * Why the region file couldn't be read. Null if it was read successfully.
+     */
+    String error;
+    /**
+     * Number of blocks with metadata in the region file.
+     */
+    long fileEntries;
+    /**
+     * Whether the region file matches the region in memory.
+     * Null if the region isn't loaded, or has unsaved changes.
+     */
+    Boolean matchesMemory;
+
+    /**
+     * Whether the region file could be read.
+     * @return Whether the region file is readable.
+     */
+    public boolean isReadable() {
+        return error == null;
+    }
+}
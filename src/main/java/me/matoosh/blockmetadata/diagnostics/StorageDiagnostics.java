@@ -0,0 +1,37 @@
+package me.matoosh.blockmetadata.diagnostics;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.metrics.SlowOperation;
+
+import java.util.List;
+
+/**
+ * State of a block metadata storage at a point in time.
+ */
+@Value
+public class StorageDiagnostics {
+    /**
+     * State of each world with metadata in memory or on disk.
+     */
+    List<WorldDiagnostics> worlds;
+    /**
+     * Number of regions requested.
+     */
+    long regionRequests;
+    /**
+     * Number of region requests which had to wait for the region to load.
+     */
+    long regionWaits;
+    /**
+     * The slowest region loads, slowest first.
+     */
+    List<SlowOperation> slowestLoads;
+
+    /**
+     * Get the share of region requests served from memory without waiting for a load.
+     * @return The hit rate, between 0 and 1. One if no region was requested yet.
+     */
+    public double getRegionHitRate() {
+        return regionRequests == 0 ? 1 : 1 - (double) regionWaits / regionRequests;
+    }
+}
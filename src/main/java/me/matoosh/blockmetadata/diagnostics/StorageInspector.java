@@ -0,0 +1,260 @@
+package me.matoosh.blockmetadata.diagnostics;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.metrics.StorageMetrics;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Inspects and maintains the regions of a storage for diagnostics:
+ * gathers their state, flushes and evicts them, and verifies their files.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class StorageInspector<T> {
+
+    /**
+     * Estimated memory held by each block entry of a chunk map, excluding the metadata value, in bytes.
+     */
+    private static final long ENTRY_MEMORY_ESTIMATE = 64;
+    /**
+     * Estimated memory held by each chunk map, excluding its entries, in bytes.
+     */
+    private static final long CHUNK_MEMORY_ESTIMATE = 256;
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Folder in which the region files are stored.
+     */
+    private final Path dataPath;
+
+    /**
+     * Metrics of the storage.
+     */
+    private final StorageMetrics metrics;
+
+    /**
+     * Executor on which the diagnostics are gathered.
+     */
+    private final Executor executor;
+
+    /**
+     * Gathers the state of the storage, off the main thread.
+     * @return Future completed with the diagnostics.
+     */
+    public CompletableFuture<StorageDiagnostics> getDiagnostics() {
+        return CompletableFuture.supplyAsync(() -> {
+            // region files on disk by world
+            Map<String, List<Path>> files = regions.listRegionKeys().stream()
+                    .collect(Collectors.groupingBy((key) -> RegionFileFormat.getRegionChunk(key).getWorld(),
+                            TreeMap::new, Collectors.mapping(regions::findRegionFile, Collectors.toList())));
+
+            // regions in memory by world
+            Map<String, List<Region<T>>> loaded = regions.getLoadedRegions().stream()
+                    .collect(Collectors.groupingBy(Region::getWorld));
+
+            Set<String> worlds = new TreeSet<>(files.keySet());
+            worlds.addAll(loaded.keySet());
+            List<WorldDiagnostics> worldDiagnostics = new ArrayList<>();
+            for (String world : worlds) {
+                List<Region<T>> worldRegions = loaded.getOrDefault(world, Collections.emptyList());
+                int loading = 0, dirty = 0, saving = 0;
+                long entries = 0, memory = 0;
+                for (Region<T> region : worldRegions) {
+                    if (!region.getLoadFuture().isDone()) {
+                        loading++;
+                        continue;
+                    }
+                    if (region.isDirty()) {
+                        dirty++;
+                    }
+                    if (region.getSaveFuture() != null && !region.getSaveFuture().isDone()) {
+                        saving++;
+                    }
+                    long[] counts = region.locked(() -> {
+                        long chunkCount = 0, entryCount = 0;
+                        if (region.getBuffer() != null) {
+                            for (Map<BlockChunkCoordinates, T> chunk : region.getBuffer().values()) {
+                                chunkCount++;
+                                entryCount += chunk.size();
+                            }
+                        }
+                        return new long[] {chunkCount, entryCount};
+                    });
+                    entries += counts[1];
+                    memory += counts[0] * CHUNK_MEMORY_ESTIMATE + counts[1] * ENTRY_MEMORY_ESTIMATE;
+                }
+                List<Path> worldFiles = files.getOrDefault(world, Collections.emptyList());
+                long diskBytes = 0;
+                for (Path file : worldFiles) {
+                    try {
+                        diskBytes += Files.size(file);
+                    } catch (IOException ignored) {
+                        // removed while listing
+                    }
+                }
+                worldDiagnostics.add(new WorldDiagnostics(world, worldRegions.size(), loading, dirty, saving,
+                        entries, memory, worldFiles.size(), diskBytes));
+            }
+            return new StorageDiagnostics(worldDiagnostics, metrics.getRegionRequests().getCount(),
+                    metrics.getRegionWaits().getCount(), metrics.getSlowestLoads().getSlowest());
+        }, executor);
+    }
+
+    /**
+     * Saves all dirty regions of a world immediately.
+     * @param world Name of the world. Null saves the dirty regions of all worlds.
+     * @return Future completed with the number of saved regions, once they're saved.
+     */
+    public CompletableFuture<Integer> flushRegions(String world) {
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (Region<T> region : regions.getLoadedRegions()) {
+            if ((world == null || world.equals(region.getWorld())) && region.isDirty()) {
+                saves.add(regions.saveRegion(region, false));
+            }
+        }
+        return CompletableFuture.allOf(saves.toArray(new CompletableFuture[0]))
+                .thenApply((s) -> saves.size());
+    }
+
+    /**
+     * Saves a region and removes it from memory.
+     * The region is loaded again the next time its metadata is accessed.
+     * Regions with loaded chunks are kept, they're unloaded along with the last of their chunks.
+     * @param regionKey Key of the region.
+     * @return Future completed with the result, once the region is evicted.
+     */
+    public CompletableFuture<RegionEviction> evictRegion(@NonNull String regionKey) {
+        Region<T> region = regions.getLoadedRegion(regionKey);
+        if (region == null) {
+            return CompletableFuture.completedFuture(RegionEviction.NOT_LOADED);
+        }
+        if (!region.getActiveChunks().isEmpty()) {
+            return CompletableFuture.completedFuture(RegionEviction.ACTIVE);
+        }
+
+        // wait for a running save, which doesn't unload the region
+        CompletableFuture<Void> saveFuture = region.getSaveFuture();
+        if (saveFuture != null && !saveFuture.isDone()) {
+            return saveFuture.handle((s, e) -> null)
+                    .thenCompose((s) -> evictRegion(regionKey));
+        }
+        return regions.saveRegion(region, true).thenApply((s) -> RegionEviction.EVICTED);
+    }
+
+    /**
+     * Reads a region file and checks it against the region in memory.
+     * @param regionKey Key of the region.
+     * @return Future completed with the result of the verification.
+     */
+    public CompletableFuture<RegionVerification> verifyRegion(@NonNull String regionKey) {
+        if (!isValidRegionKey(regionKey)) {
+            CompletableFuture<RegionVerification> invalid = new CompletableFuture<>();
+            invalid.completeExceptionally(new IllegalArgumentException("Invalid region key: " + regionKey));
+            return invalid;
+        }
+        Path regionFile = regions.findRegionFile(regionKey);
+        if (!Files.exists(regionFile)) {
+            Region<T> region = regions.getLoadedRegion(regionKey);
+            Boolean matches = region != null && region.getLoadFuture().isDone() && !region.isDirty()
+                    ? region.locked(() -> countEntries(region.getBuffer()) == 0)
+                    : null;
+            return CompletableFuture.completedFuture(new RegionVerification(
+                    regionKey, false, 0, null, 0, matches));
+        }
+        return regions.readRegionFile(regionFile)
+                .handle((contents, e) -> {
+                    long fileBytes;
+                    try {
+                        fileBytes = Files.size(regionFile);
+                    } catch (IOException exception) {
+                        fileBytes = 0;
+                    }
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null
+                                ? e.getCause()
+                                : e;
+                        return new RegionVerification(regionKey, true, fileBytes,
+                                String.valueOf(cause.getMessage()), 0, null);
+                    }
+                    if (contents != null && !contents.getCorruptChunks().isEmpty()) {
+                        return new RegionVerification(regionKey, true, fileBytes,
+                                "corrupt chunks: " + contents.getCorruptChunks().keySet(), 0, null);
+                    }
+
+                    // compare with the region in memory, unless it has unsaved changes
+                    Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> fileBuffer = contents != null
+                            ? contents.getBuffer()
+                            : null;
+                    Region<T> region = regions.getLoadedRegion(regionKey);
+                    Boolean matches = null;
+                    if (region != null && region.getLoadFuture().isDone() && !region.isDirty()) {
+                        matches = region.locked(() -> normalize(region.getBuffer()).equals(normalize(fileBuffer)));
+                    }
+                    return new RegionVerification(regionKey, true, fileBytes, null,
+                            countEntries(fileBuffer), matches);
+                });
+    }
+
+    /**
+     * Checks whether a region key names a region file within the data folder.
+     * @param regionKey The region key.
+     * @return Whether the region key is valid.
+     */
+    private boolean isValidRegionKey(@NonNull String regionKey) {
+        try {
+            return RegionFileFormat.getRegionKey(RegionFileFormat.getRegionChunk(regionKey)).equals(regionKey)
+                    && dataPath.equals(regions.findRegionFile(regionKey).getParent());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the blocks with metadata in a region buffer.
+     * @param buffer The region buffer. May be null.
+     * @return The number of blocks with metadata.
+     */
+    private long countEntries(Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        return buffer == null ? 0 : buffer.values().stream().mapToLong(Map::size).sum();
+    }
+
+    /**
+     * Copies a region buffer without its empty chunks, for comparing buffers.
+     * @param buffer The region buffer. May be null.
+     * @return The non-empty chunks of the buffer.
+     */
+    private Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> normalize(
+            Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> normalized = new HashMap<>();
+        if (buffer != null) {
+            buffer.forEach((chunk, data) -> {
+                if (!data.isEmpty()) {
+                    normalized.put(chunk, data);
+                }
+            });
+        }
+        return normalized;
+    }
+}
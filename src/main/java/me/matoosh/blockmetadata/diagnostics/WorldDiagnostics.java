@@ -0,0 +1,46 @@
+package me.matoosh.blockmetadata.diagnostics;
+
+import lombok.Value;
+
+/**
+ * State of the metadata of a single world.
+ */
+@Value
+public class WorldDiagnostics {
+    /**
+     * Name of the world.
+     */
+    String world;
+    /**
+     * Number of regions in memory, including the loading ones.
+     */
+    int loadedRegions;
+    /**
+     * Number of regions being loaded.
+     */
+    int loadingRegions;
+    /**
+     * Number of regions modified since they were last saved.
+     */
+    int dirtyRegions;
+    /**
+     * Number of regions being saved.
+     */
+    int savingRegions;
+    /**
+     * Number of blocks with metadata in memory.
+     */
+    long entries;
+    /**
+     * Rough estimate of the memory held by the metadata maps, excluding the metadata values, in bytes.
+     */
+    long memoryEstimate;
+    /**
+     * Number of region files on disk.
+     */
+    int regionFiles;
+    /**
+     * Total size of the region files on disk, in bytes.
+     */
+    long diskBytes;
+}
@@ -0,0 +1,67 @@
+package me.matoosh.blockmetadata.entity.chunkinfo;
+
+import lombok.Value;
+import org.bukkit.block.Block;
+
+/**
+ * Location of a block within a world.
+ */
+@Value
+public class BlockInfo {
+    /**
+     * The chunk in which the block lies.
+     */
+    ChunkInfo chunk;
+    /**
+     * Coordinates of the block within its chunk.
+     */
+    BlockChunkCoordinates coordinates;
+
+    /**
+     * Construct a block info object from a block.
+     * Doesn't require the chunk of the block to be loaded.
+     * @param block The block.
+     * @return The constructed block info.
+     */
+    public static BlockInfo fromBlock(Block block) {
+        return fromCoordinates(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Construct a block info object from world coordinates of a block.
+     * @param world Name of the world.
+     * @param x The x coordinate of the block.
+     * @param y The y coordinate of the block.
+     * @param z The z coordinate of the block.
+     * @return The constructed block info.
+     */
+    public static BlockInfo fromCoordinates(String world, int x, int y, int z) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        return new BlockInfo(
+                new ChunkInfo(world, new ChunkCoordinates(chunkX, chunkZ)),
+                new BlockChunkCoordinates(x - chunkX * 16, y, z - chunkZ * 16)
+        );
+    }
+
+    /**
+     * @return The x coordinate of the block within the world.
+     */
+    public int getX() {
+        return chunk.getCoordinates().getX() * 16 + coordinates.getX();
+    }
+
+    /**
+     * @return The y coordinate of the block within the world.
+     */
+    public int getY() {
+        return coordinates.getY();
+    }
+
+    /**
+     * @return The z coordinate of the block within the world.
+     */
+    public int getZ() {
+        return chunk.getCoordinates().getZ() * 16 + coordinates.getZ();
+    }
+}
@@ -0,0 +1,225 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NonNull;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Codec of binary region files, in which each chunk is stored as a separate record.
+ * The file starts with a magic number, the format version and the schema version of the values,
+ * followed by the number of chunks and a CRC-32C checksum of the header.
+ * Each chunk record holds the chunk key, the length of the record, a CRC-32C checksum of the key,
+ * length and payload, and the metadata and expiry times of the chunk as JSON as its payload.
+ * JSON parses considerably faster than YAML, and the framing lets corrupt chunks be detected
+ * and skipped without giving up the rest of the region.
+ */
+public class ChunkedRegionCodec implements RegionCodec {
+
+    /**
+     * Magic number at the start of each region file.
+     */
+    private static final byte[] MAGIC = {'B', 'M', 'R', 'F'};
+    /**
+     * Version of the layout of the region files.
+     */
+    private static final int FORMAT_VERSION = 3;
+    /**
+     * First version of the layout with a schema version in the header.
+     */
+    private static final int SCHEMA_FORMAT_VERSION = 2;
+    /**
+     * First version of the layout with a checksum of the header and of each chunk record.
+     */
+    private static final int CHECKSUM_FORMAT_VERSION = 3;
+    /**
+     * Field of a chunk record holding the metadata of the chunk.
+     */
+    private static final String BLOCKS_FIELD = "blocks";
+
+    /**
+     * Mapper reading and writing the chunk records.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public String getFileExtension() {
+        return ".bmr";
+    }
+
+    @Override
+    public byte[] encode(@NonNull RegionTree tree) throws IOException {
+        // chunks with expiry times but without metadata are kept, so the tree round-trips
+        Set<String> chunkKeys = new LinkedHashSet<>();
+        tree.getChunks().fieldNames().forEachRemaining(chunkKeys::add);
+        if (tree.getExpiry() != null) {
+            tree.getExpiry().fieldNames().forEachRemaining(chunkKeys::add);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(tree.getSchemaVersion());
+        out.writeInt(chunkKeys.size());
+        out.writeInt(Crc32c.compute(bytes.toByteArray(), 0, bytes.size()));
+
+        ByteArrayOutputStream recordHeader = new ByteArrayOutputStream();
+        DataOutputStream recordHeaderOut = new DataOutputStream(recordHeader);
+        for (String chunkKey : chunkKeys) {
+            ObjectNode record = JsonNodeFactory.instance.objectNode();
+            JsonNode blocks = tree.getChunks().get(chunkKey);
+            if (blocks != null) {
+                record.set(BLOCKS_FIELD, blocks);
+            }
+            JsonNode expiry = tree.getExpiry() != null ? tree.getExpiry().get(chunkKey) : null;
+            if (expiry != null) {
+                record.set(RegionFileFormat.EXPIRY_FIELD, expiry);
+            }
+            byte[] payload = mapper.writeValueAsBytes(record);
+
+            // the checksum covers the key and the length too, so a chunk is never served under another key
+            recordHeader.reset();
+            recordHeaderOut.writeUTF(chunkKey);
+            recordHeaderOut.writeInt(payload.length);
+            Crc32c checksum = new Crc32c();
+            checksum.update(recordHeader.toByteArray(), 0, recordHeader.size());
+            checksum.update(payload, 0, payload.length);
+            recordHeader.writeTo(out);
+            out.writeInt((int) checksum.getValue());
+            out.write(payload);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public RegionTree decode(@NonNull byte[] content) throws IOException {
+        ObjectNode chunks = JsonNodeFactory.instance.objectNode();
+        ObjectNode[] expiry = new ObjectNode[1];
+        Map<String, String> corruptChunks = new LinkedHashMap<>();
+        int schemaVersion = readRecords(content, corruptChunks, (chunkKey, payload) -> {
+            JsonNode record;
+            try {
+                record = mapper.readTree(payload);
+            } catch (IOException e) {
+                corruptChunks.put(chunkKey, "malformed record");
+                return;
+            }
+            if (record == null || !record.isObject() || !isObjectOrMissing(record.get(BLOCKS_FIELD))
+                    || !isObjectOrMissing(record.get(RegionFileFormat.EXPIRY_FIELD))) {
+                corruptChunks.put(chunkKey, "malformed record");
+                return;
+            }
+            if (record.has(BLOCKS_FIELD)) {
+                chunks.set(chunkKey, record.get(BLOCKS_FIELD));
+            }
+            if (record.has(RegionFileFormat.EXPIRY_FIELD)) {
+                if (expiry[0] == null) {
+                    expiry[0] = JsonNodeFactory.instance.objectNode();
+                }
+                expiry[0].set(chunkKey, record.get(RegionFileFormat.EXPIRY_FIELD));
+            }
+        });
+        RegionTree tree = new RegionTree(chunks, expiry[0], schemaVersion);
+        tree.getCorruptChunks().putAll(corruptChunks);
+        return tree;
+    }
+
+    /**
+     * Checks the framing and the checksums of the chunk records, without parsing them.
+     * Files written before checksums were added only have their framing checked.
+     * @param content Contents of the region file.
+     * @return Problems of each corrupt chunk, by chunk key.
+     * @throws IOException If the file as a whole is corrupt, or has an unsupported version.
+     */
+    @Override
+    public Map<String, String> verify(@NonNull byte[] content) throws IOException {
+        Map<String, String> corruptChunks = new LinkedHashMap<>();
+        readRecords(content, corruptChunks, (chunkKey, payload) -> {});
+        return corruptChunks;
+    }
+
+    /**
+     * Reads the header and the chunk records of a region file.
+     * @param content Contents of the region file.
+     * @param corruptChunks Receives the chunks whose checksums don't match, by the key read from the file.
+     * @param recordConsumer Receives the key and the payload of each intact chunk.
+     * @return The schema version of the region.
+     * @throws IOException If the file as a whole is corrupt, or has an unsupported version.
+     */
+    private int readRecords(byte[] content, Map<String, String> corruptChunks,
+                            RecordConsumer recordConsumer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a chunked region file");
+        }
+        int version = in.readUnsignedByte();
+        if (version > FORMAT_VERSION) {
+            throw new UnsupportedRegionVersionException("Region file was written with format version " + version
+                    + ", newer than the supported version " + FORMAT_VERSION);
+        }
+        int schemaVersion = version >= SCHEMA_FORMAT_VERSION ? in.readInt() : 0;
+
+        int chunkCount = in.readInt();
+        if (version >= CHECKSUM_FORMAT_VERSION
+                && Crc32c.compute(content, 0, content.length - in.available()) != in.readInt()) {
+            throw new IOException("Corrupt header");
+        }
+
+        for (int i = 0; i < chunkCount; i++) {
+            int recordStart = content.length - in.available();
+            String chunkKey = in.readUTF();
+            int length = in.readInt();
+            int recordHeaderEnd = content.length - in.available();
+            int checksum = version >= CHECKSUM_FORMAT_VERSION ? in.readInt() : 0;
+            if (length < 0 || length > in.available()) {
+                throw new IOException("Truncated record of chunk " + chunkKey);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (version >= CHECKSUM_FORMAT_VERSION) {
+                Crc32c recordChecksum = new Crc32c();
+                recordChecksum.update(content, recordStart, recordHeaderEnd - recordStart);
+                recordChecksum.update(payload, 0, length);
+                if ((int) recordChecksum.getValue() != checksum) {
+                    corruptChunks.put(chunkKey, "checksum mismatch");
+                    continue;
+                }
+            }
+            recordConsumer.accept(chunkKey, payload);
+        }
+        if (in.available() > 0) {
+            throw new IOException("Trailing data after the last chunk");
+        }
+        return schemaVersion;
+    }
+
+    /**
+     * Checks whether a field of a chunk record is either missing or a map.
+     * @param node The field.
+     * @return Whether the field is valid.
+     */
+    private static boolean isObjectOrMissing(JsonNode node) {
+        return node == null || node.isObject();
+    }
+
+    /**
+     * Receives the intact chunk records of a region file.
+     */
+    @FunctionalInterface
+    private interface RecordConsumer {
+        /**
+         * Receives a chunk record.
+         * @param chunkKey Key of the chunk.
+         * @param payload The JSON payload of the record.
+         */
+        void accept(String chunkKey, byte[] payload);
+    }
+}
@@ -0,0 +1,29 @@
+package me.matoosh.blockmetadata.format;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Thrown when a region file as a whole can't be decoded.
+ */
+@Getter
+public class CorruptRegionException extends IOException {
+
+    /**
+     * The corrupt region file.
+     */
+    private final Path regionFile;
+
+    /**
+     * Creates the exception.
+     * @param regionFile The corrupt region file.
+     * @param cause Why the region file couldn't be decoded.
+     */
+    public CorruptRegionException(@NonNull Path regionFile, @NonNull Throwable cause) {
+        super("Corrupt region file " + regionFile + ": " + cause.getMessage(), cause);
+        this.regionFile = regionFile;
+    }
+}
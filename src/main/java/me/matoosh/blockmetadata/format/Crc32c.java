@@ -0,0 +1,71 @@
+package me.matoosh.blockmetadata.format;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, as used by iSCSI and ext4.
+ * Equivalent to {@code java.util.zip.CRC32C}, which is only available from Java 9.
+ */
+public class Crc32c implements Checksum {
+
+    /**
+     * Reversed Castagnoli polynomial.
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+    /**
+     * Remainders of each byte value.
+     */
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * Current checksum, inverted.
+     */
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * Computes the checksum of a byte array.
+     * @param bytes The bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return The checksum.
+     */
+    public static int compute(byte[] bytes, int offset, int length) {
+        Crc32c checksum = new Crc32c();
+        checksum.update(bytes, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int value = crc;
+        for (int i = off; i < off + len; i++) {
+            value = (value >>> 8) ^ TABLE[(value ^ b[i]) & 0xFF];
+        }
+        crc = value;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,59 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes region contents to the bytes of a region file, and decodes them back.
+ * Codecs work on region trees, so they don't depend on the type of the metadata.
+ */
+public interface RegionCodec {
+
+    /**
+     * Get the extension of the region files written by this codec.
+     * @return The file extension, including the dot.
+     */
+    String getFileExtension();
+
+    /**
+     * Encodes a region tree.
+     * @param tree The region tree.
+     * @return Contents of the region file.
+     * @throws IOException If the tree can't be encoded.
+     */
+    byte[] encode(@NonNull RegionTree tree) throws IOException;
+
+    /**
+     * Encodes the contents of a region, as held in memory by a storage.
+     * @param mapper Mapper converting the contents to a tree.
+     * @param contents The metadata of each chunk, or a map of the metadata and the expiry times.
+     * @return Contents of the region file.
+     * @throws IOException If the contents can't be encoded.
+     */
+    default byte[] encode(@NonNull ObjectMapper mapper, @NonNull Object contents) throws IOException {
+        return encode(RegionTree.parse(mapper.valueToTree(contents)));
+    }
+
+    /**
+     * Decodes the contents of a region file.
+     * Chunks which can't be decoded are left out and listed in {@link RegionTree#getCorruptChunks()}.
+     * @param content Contents of the region file.
+     * @return The region tree.
+     * @throws IOException If the contents as a whole aren't a valid region.
+     */
+    RegionTree decode(@NonNull byte[] content) throws IOException;
+
+    /**
+     * Checks the integrity of a region file, as cheaply as the format allows.
+     * By default, the region file is decoded.
+     * @param content Contents of the region file.
+     * @return Problems of each corrupt chunk, by chunk key. Empty if the region is intact.
+     * @throws IOException If the contents as a whole aren't a valid region.
+     */
+    default Map<String, String> verify(@NonNull byte[] content) throws IOException {
+        return decode(content).getCorruptChunks();
+    }
+}
@@ -0,0 +1,144 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.entity.chunkinfo.*;
+
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Layout of the region files of a storage, shared by the storage and the offline tools.
+ * Each region file holds the metadata of 16x16 chunks, keyed by {@code "x,z"} chunk
+ * and {@code "x,y,z"} block coordinates. Regions with expiring metadata wrap the chunks
+ * in a map with the {@link #CHUNKS_FIELD} and {@link #EXPIRY_FIELD} fields.
+ * Regions past the initial schema version also carry a {@link #HEADER_FIELD} with the versions
+ * of the layout and of the schema of the metadata values.
+ * How the contents are encoded on disk depends on the {@link RegionFormat} of the file.
+ */
+public class RegionFileFormat {
+
+    /**
+     * Extension of the YAML region files.
+     */
+    public static final String FILE_EXTENSION = ".yml";
+    /**
+     * Field of a region file holding the metadata, if the region file also holds expiry times.
+     */
+    public static final String CHUNKS_FIELD = "chunks";
+    /**
+     * Field of a region file holding the expiry times of the metadata.
+     */
+    public static final String EXPIRY_FIELD = "expiry";
+    /**
+     * Field of a region file holding the format and schema versions.
+     */
+    public static final String HEADER_FIELD = "header";
+    /**
+     * Field of the header holding the version of the layout of the region file.
+     */
+    public static final String FORMAT_VERSION_FIELD = "format";
+    /**
+     * Field of the header holding the version of the schema of the metadata values.
+     */
+    public static final String SCHEMA_VERSION_FIELD = "schema";
+    /**
+     * Version of the layout of the region files, written to the header.
+     */
+    public static final int FORMAT_VERSION = 1;
+    /**
+     * Number of chunks along each side of a region.
+     */
+    public static final int REGION_SIZE = 16;
+
+    /**
+     * Pattern of region keys, capturing the world and the region coordinates.
+     */
+    private static final Pattern REGION_KEY = Pattern.compile("(.+)_(-?\\d+)_(-?\\d+)");
+
+    private RegionFileFormat() {
+    }
+
+    /**
+     * Creates a mapper reading and writing region files.
+     * @return The mapper.
+     */
+    public static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+
+        // add custom key serializers to the json mapper
+        SimpleModule module = new SimpleModule();
+        // configure chunk coordinate key mapping
+        module.addKeySerializer(ChunkCoordinates.class, new ChunkCoordinatesSerializer());
+        module.addKeyDeserializer(ChunkCoordinates.class, new ChunkCoordinatesDeserializer());
+        // configure block coordinate key mapping
+        module.addKeySerializer(BlockChunkCoordinates.class, new BlockChunkCoordinatesSerializer());
+        module.addKeyDeserializer(BlockChunkCoordinates.class, new BlockChunkCoordinatesDeserializer());
+        mapper.registerModule(module);
+        return mapper;
+    }
+
+    /**
+     * Creates the header of a region file.
+     * @param schemaVersion Version of the schema of the metadata values.
+     * @return The header.
+     */
+    public static ObjectNode createHeader(int schemaVersion) {
+        ObjectNode header = JsonNodeFactory.instance.objectNode();
+        header.put(FORMAT_VERSION_FIELD, FORMAT_VERSION);
+        header.put(SCHEMA_VERSION_FIELD, schemaVersion);
+        return header;
+    }
+
+    /**
+     * Get a key unique to a region in which a chunk is located.
+     * @param chunkInfo Information about the chunk.
+     * @return The region key.
+     */
+    public static String getRegionKey(@NonNull ChunkInfo chunkInfo) {
+        return chunkInfo.getWorld() + "_" + (chunkInfo.getCoordinates().getX() / REGION_SIZE)
+                + "_" + (chunkInfo.getCoordinates().getZ() / REGION_SIZE);
+    }
+
+    /**
+     * Get a chunk lying within a region.
+     * @param regionKey Key of the region.
+     * @return Information about a chunk of the region.
+     */
+    public static ChunkInfo getRegionChunk(@NonNull String regionKey) {
+        int zSeparator = regionKey.lastIndexOf('_');
+        int xSeparator = regionKey.lastIndexOf('_', zSeparator - 1);
+        return new ChunkInfo(regionKey.substring(0, xSeparator), new ChunkCoordinates(
+                Integer.parseInt(regionKey.substring(xSeparator + 1, zSeparator)) * REGION_SIZE,
+                Integer.parseInt(regionKey.substring(zSeparator + 1)) * REGION_SIZE));
+    }
+
+    /**
+     * Get the key of the region stored in a file, in any format.
+     * @param file The file.
+     * @return The region key. Null if the file isn't a region file.
+     */
+    public static String getRegionKey(@NonNull Path file) {
+        RegionFormat format = RegionFormat.of(file);
+        if (format == null) {
+            return null;
+        }
+        String name = file.getFileName().toString();
+        String regionKey = name.substring(0, name.length() - format.getFileExtension().length());
+        return REGION_KEY.matcher(regionKey).matches() ? regionKey : null;
+    }
+
+    /**
+     * Get the name of the file in which a region is stored.
+     * @param regionKey Key of the region.
+     * @param format Format of the region file.
+     * @return The file name.
+     */
+    public static String getFileName(@NonNull String regionKey, @NonNull RegionFormat format) {
+        return regionKey + format.getFileExtension();
+    }
+}
@@ -0,0 +1,54 @@
+package me.matoosh.blockmetadata.format;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * Formats in which region files can be stored.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum RegionFormat {
+    /**
+     * Human-readable YAML files, the original format.
+     */
+    YAML(new YamlRegionCodec()),
+    /**
+     * Binary files holding a JSON record per chunk, which load faster than YAML.
+     */
+    CHUNKED(new ChunkedRegionCodec());
+
+    /**
+     * Codec reading and writing region files of this format.
+     */
+    private final RegionCodec codec;
+
+    /**
+     * Get the extension of the region files of this format.
+     * @return The file extension, including the dot.
+     */
+    public String getFileExtension() {
+        return codec.getFileExtension();
+    }
+
+    /**
+     * Get the format of a region file from its extension.
+     * @param file The region file.
+     * @return The format. Null if the file doesn't have the extension of any format.
+     */
+    public static RegionFormat of(@NonNull Path file) {
+        Path fileName = file.getFileName();
+        if (fileName == null) {
+            return null;
+        }
+        for (RegionFormat format : values()) {
+            if (fileName.toString().endsWith(format.getFileExtension())) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
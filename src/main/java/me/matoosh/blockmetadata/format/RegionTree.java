@@ -0,0 +1,220 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Contents of a region file as a tree, without decoding the metadata values.
+ * Lets region files be converted and maintained regardless of the type of their metadata.
+ */
+@Getter
+public class RegionTree {
+
+    /**
+     * Metadata of each chunk, keyed by {@code "x,z"} and then by {@code "x,y,z"}.
+     */
+    private final ObjectNode chunks;
+    /**
+     * Expiry times of the expiring metadata, keyed like the metadata. Null if nothing expires.
+     */
+    private ObjectNode expiry;
+    /**
+     * Version of the schema of the metadata values.
+     */
+    @Setter
+    private int schemaVersion;
+    /**
+     * Problems of the chunks which couldn't be decoded, by chunk key.
+     * Those chunks are left out of the metadata and expiry times.
+     */
+    private final Map<String, String> corruptChunks = new LinkedHashMap<>();
+
+    /**
+     * Creates a region tree in the initial schema version.
+     * @param chunks Metadata of each chunk.
+     * @param expiry Expiry times of the metadata. Null if nothing expires.
+     */
+    public RegionTree(ObjectNode chunks, ObjectNode expiry) {
+        this(chunks, expiry, 0);
+    }
+
+    /**
+     * Creates a region tree.
+     * @param chunks Metadata of each chunk.
+     * @param expiry Expiry times of the metadata. Null if nothing expires.
+     * @param schemaVersion Version of the schema of the metadata values.
+     */
+    public RegionTree(ObjectNode chunks, ObjectNode expiry, int schemaVersion) {
+        this.chunks = chunks;
+        this.expiry = expiry;
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Reads a region tree from the root node of a region file.
+     * Regions without a header are in the initial schema version.
+     * @param root The root node. Null or missing for an empty region file.
+     * @return The region tree.
+     * @throws IOException If the root node isn't a region, or was written by a newer format version.
+     */
+    public static RegionTree parse(JsonNode root) throws IOException {
+        if (root == null || root.isMissingNode() || root.isNull()) {
+            return new RegionTree(JsonNodeFactory.instance.objectNode(), null);
+        }
+        if (!root.isObject()) {
+            throw new IOException("Region file isn't a map");
+        }
+        if (!root.has(RegionFileFormat.CHUNKS_FIELD) && !root.has(RegionFileFormat.HEADER_FIELD)) {
+            return new RegionTree((ObjectNode) root, null);
+        }
+
+        // read the versions from the header
+        int schemaVersion = 0;
+        JsonNode header = root.get(RegionFileFormat.HEADER_FIELD);
+        if (header != null) {
+            JsonNode formatVersion = header.get(RegionFileFormat.FORMAT_VERSION_FIELD);
+            JsonNode schema = header.get(RegionFileFormat.SCHEMA_VERSION_FIELD);
+            if (formatVersion == null || !formatVersion.canConvertToInt() || schema == null || !schema.canConvertToInt()) {
+                throw new IOException("Region file has a malformed header");
+            }
+            if (formatVersion.asInt() > RegionFileFormat.FORMAT_VERSION) {
+                throw new UnsupportedRegionVersionException("Region file was written with format version "
+                        + formatVersion.asInt() + ", newer than the supported version " + RegionFileFormat.FORMAT_VERSION);
+            }
+            schemaVersion = schema.asInt();
+        }
+
+        JsonNode chunks = root.get(RegionFileFormat.CHUNKS_FIELD);
+        JsonNode expiry = root.get(RegionFileFormat.EXPIRY_FIELD);
+        if ((chunks != null && !chunks.isObject()) || (expiry != null && !expiry.isNull() && !expiry.isObject())) {
+            throw new IOException("Region file has malformed chunks or expiry times");
+        }
+        return new RegionTree(chunks != null ? (ObjectNode) chunks : JsonNodeFactory.instance.objectNode(),
+                expiry != null && expiry.isObject() ? (ObjectNode) expiry : null, schemaVersion);
+    }
+
+    /**
+     * Converts the region tree to the root node of a region file.
+     * The metadata is only wrapped with a header and expiry times if the region is past
+     * the initial schema version or has expiry times, so other regions keep the plain format.
+     * @return The root node. Null if the region has no metadata.
+     */
+    public JsonNode toNode() {
+        if (countEntries() == 0) {
+            return null;
+        }
+        boolean hasExpiry = expiry != null && !expiry.isEmpty();
+        if (!hasExpiry && schemaVersion == 0) {
+            return chunks;
+        }
+        ObjectNode root = JsonNodeFactory.instance.objectNode();
+        if (schemaVersion != 0) {
+            root.set(RegionFileFormat.HEADER_FIELD, RegionFileFormat.createHeader(schemaVersion));
+        }
+        root.set(RegionFileFormat.CHUNKS_FIELD, chunks);
+        if (hasExpiry) {
+            root.set(RegionFileFormat.EXPIRY_FIELD, expiry);
+        }
+        return root;
+    }
+
+    /**
+     * Checks whether another region tree holds the same metadata and expiry times, in the same schema version.
+     * Missing and empty expiry times are considered equal.
+     * @param other The other region tree.
+     * @return Whether the trees hold the same contents.
+     */
+    public boolean matches(RegionTree other) {
+        if (other == null || schemaVersion != other.schemaVersion || !chunks.equals(other.chunks)) {
+            return false;
+        }
+        boolean hasExpiry = expiry != null && !expiry.isEmpty();
+        boolean otherHasExpiry = other.expiry != null && !other.expiry.isEmpty();
+        return hasExpiry ? expiry.equals(other.expiry) : !otherHasExpiry;
+    }
+
+    /**
+     * Counts the blocks with metadata.
+     * @return The number of blocks with metadata.
+     */
+    public long countEntries() {
+        long entries = 0;
+        for (JsonNode chunk : chunks) {
+            entries += chunk.size();
+        }
+        return entries;
+    }
+
+    /**
+     * Counts the blocks with expiring metadata.
+     * @return The number of blocks with expiring metadata.
+     */
+    public long countExpiring() {
+        long expiring = 0;
+        if (expiry != null) {
+            for (JsonNode chunk : expiry) {
+                expiring += chunk.size();
+            }
+        }
+        return expiring;
+    }
+
+    /**
+     * Removes the metadata and expiry times of a chunk.
+     * @param chunkKey Key of the chunk.
+     * @return Number of removed blocks with metadata.
+     */
+    public int removeChunk(String chunkKey) {
+        JsonNode removed = chunks.remove(chunkKey);
+        if (expiry != null) {
+            expiry.remove(chunkKey);
+        }
+        return removed != null ? removed.size() : 0;
+    }
+
+    /**
+     * Removes chunks without metadata, expired metadata and expiry times of missing metadata.
+     * @param now Current time, in milliseconds since the epoch.
+     * @return Number of removed blocks with metadata and expiry times.
+     */
+    public int compact(long now) {
+        int removed = 0;
+        if (expiry != null) {
+            for (Iterator<Map.Entry<String, JsonNode>> chunkIterator = expiry.fields(); chunkIterator.hasNext(); ) {
+                Map.Entry<String, JsonNode> chunk = chunkIterator.next();
+                JsonNode chunkData = chunks.get(chunk.getKey());
+                for (Iterator<Map.Entry<String, JsonNode>> blocks = chunk.getValue().fields(); blocks.hasNext(); ) {
+                    Map.Entry<String, JsonNode> block = blocks.next();
+                    boolean orphaned = chunkData == null || !chunkData.has(block.getKey());
+                    if (orphaned || block.getValue().asLong() <= now) {
+                        if (!orphaned) {
+                            ((ObjectNode) chunkData).remove(block.getKey());
+                        }
+                        blocks.remove();
+                        removed++;
+                    }
+                }
+                if (chunk.getValue().isEmpty()) {
+                    chunkIterator.remove();
+                }
+            }
+            if (expiry.isEmpty()) {
+                expiry = null;
+            }
+        }
+        for (Iterator<JsonNode> chunkIterator = chunks.elements(); chunkIterator.hasNext(); ) {
+            if (chunkIterator.next().isEmpty()) {
+                chunkIterator.remove();
+            }
+        }
+        return removed;
+    }
+}
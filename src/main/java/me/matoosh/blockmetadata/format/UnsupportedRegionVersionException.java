@@ -0,0 +1,18 @@
+package me.matoosh.blockmetadata.format;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a region file was written with a newer format or schema version than is supported.
+ * Such files are intact, so they must be neither read nor overwritten.
+ */
+public class UnsupportedRegionVersionException extends IOException {
+
+    /**
+     * Creates the exception.
+     * @param message Description of the unsupported version.
+     */
+    public UnsupportedRegionVersionException(String message) {
+        super(message);
+    }
+}
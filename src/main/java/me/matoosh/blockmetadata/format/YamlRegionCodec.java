@@ -0,0 +1,40 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Codec of the original YAML region files.
+ */
+public class YamlRegionCodec implements RegionCodec {
+
+    /**
+     * Mapper reading and writing the YAML.
+     */
+    private final ObjectMapper mapper = RegionFileFormat.createMapper();
+
+    @Override
+    public String getFileExtension() {
+        return RegionFileFormat.FILE_EXTENSION;
+    }
+
+    @Override
+    public byte[] encode(@NonNull RegionTree tree) throws IOException {
+        JsonNode root = tree.toNode();
+        return mapper.writeValueAsBytes(root != null ? root : tree.getChunks());
+    }
+
+    @Override
+    public byte[] encode(@NonNull ObjectMapper mapper, @NonNull Object contents) throws IOException {
+        // serialize straight from the buffers, without building a tree first
+        return this.mapper.writeValueAsBytes(contents);
+    }
+
+    @Override
+    public RegionTree decode(@NonNull byte[] content) throws IOException {
+        return RegionTree.parse(mapper.readTree(content));
+    }
+}
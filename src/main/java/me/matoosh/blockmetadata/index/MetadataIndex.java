@@ -0,0 +1,40 @@
+package me.matoosh.blockmetadata.index;
+
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+
+import java.util.Map;
+
+/**
+ * Secondary index kept up to date with the metadata of a storage.
+ * The callbacks are called while the affected region is locked,
+ * possibly from different threads, so they should be quick and thread safe.
+ * @param <T> Type of the indexed metadata.
+ */
+public interface MetadataIndex<T> {
+    /**
+     * Called when metadata of a block changes.
+     * @param regionKey Key of the region in which the block lies.
+     * @param block Location of the block.
+     * @param previous Previous metadata of the block. Null if there was none.
+     * @param data New metadata of the block. Null if it was removed.
+     */
+    void onChange(String regionKey, BlockInfo block, T previous, T data);
+
+    /**
+     * Called when a region is loaded into memory.
+     * @param regionKey Key of the region.
+     * @param world Name of the world in which the region lies.
+     * @param buffer Metadata of the region. Null if the region has no metadata.
+     */
+    void onRegionLoad(String regionKey, String world, Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer);
+
+    /**
+     * Called when a region is unloaded from memory.
+     * @param regionKey Key of the region.
+     * @param world Name of the world in which the region lies.
+     * @param buffer Metadata of the region. Null if the region has no metadata.
+     */
+    void onRegionUnload(String regionKey, String world, Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer);
+}
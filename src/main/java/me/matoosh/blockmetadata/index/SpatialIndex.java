@@ -0,0 +1,285 @@
+package me.matoosh.blockmetadata.index;
+
+import lombok.Getter;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spatial index of blocks with metadata, answering radius and nearest neighbour queries.
+ * Blocks of each world are bucketed into a uniform grid of cubic cells,
+ * so a query only visits the cells around the queried point.
+ * Only blocks in regions loaded into memory are indexed.
+ * @param <T> Type of the indexed metadata.
+ */
+public class SpatialIndex<T> implements MetadataIndex<T> {
+
+    /**
+     * Size of each grid cell, in blocks.
+     */
+    @Getter
+    private final int cellSize;
+
+    /**
+     * Indexed blocks of each world, bucketed by cell.
+     */
+    private final Map<String, Map<Long, Map<BlockInfo, T>>> worlds = new HashMap<>();
+
+    /**
+     * Creates a spatial index.
+     * @param cellSize Size of each grid cell, in blocks.
+     */
+    public SpatialIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public synchronized void onChange(String regionKey, BlockInfo block, T previous, T data) {
+        if (data == null) {
+            remove(block);
+        } else {
+            put(block, data);
+        }
+    }
+
+    @Override
+    public synchronized void onRegionLoad(String regionKey, String world,
+                                          Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        if (buffer == null) {
+            return;
+        }
+        buffer.forEach((chunk, blocks) -> {
+            ChunkInfo chunkInfo = new ChunkInfo(world, chunk);
+            blocks.forEach((block, data) -> put(new BlockInfo(chunkInfo, block), data));
+        });
+    }
+
+    @Override
+    public synchronized void onRegionUnload(String regionKey, String world,
+                                            Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        if (buffer == null) {
+            return;
+        }
+        buffer.forEach((chunk, blocks) -> {
+            ChunkInfo chunkInfo = new ChunkInfo(world, chunk);
+            blocks.keySet().forEach((block) -> remove(new BlockInfo(chunkInfo, block)));
+        });
+    }
+
+    /**
+     * Finds all indexed blocks within a radius of a point.
+     * @param world Name of the world.
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param z The z coordinate of the point.
+     * @param radius The radius, in blocks.
+     * @return Metadata of each block within the radius.
+     */
+    public synchronized Map<BlockInfo, T> findWithinRadius(String world, double x, double y, double z,
+                                                           double radius) {
+        Map<BlockInfo, T> result = new HashMap<>();
+        Map<Long, Map<BlockInfo, T>> cells = worlds.get(world);
+        if (cells == null) {
+            return result;
+        }
+
+        // cells overlapping the bounding box of the sphere
+        int minX = cell(x - radius);
+        int minY = cell(y - radius);
+        int minZ = cell(z - radius);
+        int maxX = cell(x + radius);
+        int maxY = cell(y + radius);
+        int maxZ = cell(z + radius);
+        double radiusSquared = radius * radius;
+
+        long boxCells = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (boxCells > cells.size()) {
+            // fewer occupied cells than cells in the box, visit the occupied ones within the box
+            cells.forEach((cellKey, blocks) -> {
+                if (withinCells(cellKey >>> 42, minX, maxX)
+                        && withinCells(cellKey >>> 21, minY, maxY)
+                        && withinCells(cellKey, minZ, maxZ)) {
+                    collectWithin(blocks, x, y, z, radiusSquared, result);
+                }
+            });
+        } else {
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                for (int cellY = minY; cellY <= maxY; cellY++) {
+                    for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                        Map<BlockInfo, T> blocks = cells.get(cellKey(cellX, cellY, cellZ));
+                        if (blocks != null) {
+                            collectWithin(blocks, x, y, z, radiusSquared, result);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the indexed block nearest to a point.
+     * Searches the cells around the point in growing shells, until no closer block can exist.
+     * @param world Name of the world.
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param z The z coordinate of the point.
+     * @param maxRadius Maximum distance of the block from the point, in blocks.
+     * @return The nearest block and its metadata. Null if there's no block within the maximum distance.
+     */
+    public synchronized Map.Entry<BlockInfo, T> findNearest(String world, double x, double y, double z,
+                                                            double maxRadius) {
+        Map<Long, Map<BlockInfo, T>> cells = worlds.get(world);
+        if (cells == null || cells.isEmpty()) {
+            return null;
+        }
+
+        int centerX = cell(x);
+        int centerY = cell(y);
+        int centerZ = cell(z);
+        int maxShell = (int) Math.ceil(maxRadius / cellSize) + 1;
+        Map.Entry<BlockInfo, T> nearest = null;
+        double nearestSquared = maxRadius * maxRadius;
+        for (int shell = 0; shell <= maxShell; shell++) {
+            // blocks in further shells are at least this far away
+            double shellDistance = (double) (shell - 1) * cellSize;
+            if (shell > 0 && shellDistance * shellDistance > nearestSquared) {
+                break;
+            }
+
+            // visit the cells on the surface of the shell
+            for (int dx = -shell; dx <= shell; dx++) {
+                for (int dy = -shell; dy <= shell; dy++) {
+                    for (int dz = -shell; dz <= shell; dz++) {
+                        if (Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz))) != shell) {
+                            continue;
+                        }
+                        Map<BlockInfo, T> blocks = cells.get(cellKey(centerX + dx, centerY + dy, centerZ + dz));
+                        if (blocks == null) {
+                            continue;
+                        }
+                        for (Map.Entry<BlockInfo, T> entry : blocks.entrySet()) {
+                            double distanceSquared = distanceSquared(entry.getKey(), x, y, z);
+                            if (distanceSquared <= nearestSquared) {
+                                nearestSquared = distanceSquared;
+                                nearest = entry;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return nearest != null ? new AbstractMap.SimpleImmutableEntry<>(nearest) : null;
+    }
+
+    /**
+     * @return The number of indexed blocks.
+     */
+    public synchronized int size() {
+        return worlds.values().stream()
+                .flatMap((cells) -> cells.values().stream())
+                .mapToInt(Map::size)
+                .sum();
+    }
+
+    /**
+     * Adds a block to the index.
+     * @param block Location of the block.
+     * @param data Metadata of the block.
+     */
+    private void put(BlockInfo block, T data) {
+        worlds.computeIfAbsent(block.getChunk().getWorld(), (w) -> new HashMap<>())
+                .computeIfAbsent(cellKey(block), (c) -> new HashMap<>())
+                .put(block, data);
+    }
+
+    /**
+     * Removes a block from the index.
+     * @param block Location of the block.
+     */
+    private void remove(BlockInfo block) {
+        Map<Long, Map<BlockInfo, T>> cells = worlds.get(block.getChunk().getWorld());
+        if (cells == null) {
+            return;
+        }
+        long cellKey = cellKey(block);
+        Map<BlockInfo, T> blocks = cells.get(cellKey);
+        if (blocks == null) {
+            return;
+        }
+        blocks.remove(block);
+
+        // drop empty cells and worlds
+        if (blocks.isEmpty()) {
+            cells.remove(cellKey);
+            if (cells.isEmpty()) {
+                worlds.remove(block.getChunk().getWorld());
+            }
+        }
+    }
+
+    /**
+     * Adds the blocks of a cell within a radius of a point to the result.
+     */
+    private static <T> void collectWithin(Map<BlockInfo, T> blocks, double x, double y, double z,
+                                          double radiusSquared, Map<BlockInfo, T> result) {
+        blocks.forEach((block, data) -> {
+            if (distanceSquared(block, x, y, z) <= radiusSquared) {
+                result.put(block, data);
+            }
+        });
+    }
+
+    /**
+     * Squared distance between the center of a block and a point.
+     */
+    private static double distanceSquared(BlockInfo block, double x, double y, double z) {
+        double dx = block.getX() + 0.5 - x;
+        double dy = block.getY() + 0.5 - y;
+        double dz = block.getZ() + 0.5 - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Get the cell coordinate of a world coordinate.
+     */
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * Get the key of the cell in which a block lies.
+     */
+    private long cellKey(BlockInfo block) {
+        return cellKey(Math.floorDiv(block.getX(), cellSize),
+                Math.floorDiv(block.getY(), cellSize),
+                Math.floorDiv(block.getZ(), cellSize));
+    }
+
+    /**
+     * Checks whether a packed cell coordinate lies within a range of cell coordinates.
+     * Compares on the packed bits, so coordinates wrapped by the key packing still match.
+     * @param packed Key shifted so the coordinate is in its lowest bits.
+     * @param min Minimum cell coordinate.
+     * @param max Maximum cell coordinate.
+     */
+    private static boolean withinCells(long packed, int min, int max) {
+        long span = (long) max - min;
+        return span >= 0x1FFFFF || ((packed - min) & 0x1FFFFF) <= span;
+    }
+
+    /**
+     * Packs cell coordinates into a single key.
+     */
+    private static long cellKey(int cellX, int cellY, int cellZ) {
+        return ((long) (cellX & 0x1FFFFF) << 42) | ((long) (cellY & 0x1FFFFF) << 21) | (cellZ & 0x1FFFFF);
+    }
+}
@@ -0,0 +1,204 @@
+package me.matoosh.blockmetadata.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Reverse index from a key derived from metadata values to the regions containing them.
+ * Keeps the number of blocks with each key in each region, so lookups by key
+ * only need to load the regions containing matching blocks.
+ * The index is persisted next to the region files and reconciled with each region as it loads.
+ * @param <T> Type of the indexed metadata.
+ */
+@RequiredArgsConstructor
+public class ValueIndex<T> implements MetadataIndex<T> {
+
+    /**
+     * Name of the index.
+     */
+    @Getter
+    private final String name;
+    /**
+     * Extracts the indexed key from a metadata value.
+     */
+    @Getter
+    private final Function<? super T, String> keyExtractor;
+    /**
+     * Path of the file in which the index is persisted.
+     */
+    @Getter
+    private final Path filePath;
+    /**
+     * Mapper used to read and write the index file.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Number of blocks with each key, by region key.
+     */
+    private final Map<String, Map<String, Integer>> regionCounts = new HashMap<>();
+    /**
+     * Regions containing blocks with each key.
+     */
+    private final Map<String, Set<String>> keyRegions = new HashMap<>();
+    /**
+     * Whether the index has been modified since it was last saved.
+     */
+    @Getter
+    private boolean dirty;
+
+    @Override
+    public synchronized void onChange(String regionKey, BlockInfo block, T previous, T data) {
+        String previousKey = previous != null ? keyExtractor.apply(previous) : null;
+        String key = data != null ? keyExtractor.apply(data) : null;
+        if (previousKey != null && previousKey.equals(key)) {
+            return;
+        }
+        if (previousKey != null) {
+            count(regionKey, previousKey, -1);
+        }
+        if (key != null) {
+            count(regionKey, key, 1);
+        }
+    }
+
+    @Override
+    public synchronized void onRegionLoad(String regionKey, String world,
+                                          Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        // count the keys within the loaded region
+        Map<String, Integer> counts = new HashMap<>();
+        if (buffer != null) {
+            buffer.values().forEach((blocks) -> blocks.values().forEach((data) -> {
+                String key = keyExtractor.apply(data);
+                if (key != null) {
+                    counts.merge(key, 1, Integer::sum);
+                }
+            }));
+        }
+
+        // replace the counts of the region, if they differ
+        Map<String, Integer> previous = regionCounts.getOrDefault(regionKey, Collections.emptyMap());
+        if (previous.equals(counts)) {
+            return;
+        }
+        previous.keySet().forEach((key) -> unlinkRegion(key, regionKey));
+        if (counts.isEmpty()) {
+            regionCounts.remove(regionKey);
+        } else {
+            regionCounts.put(regionKey, counts);
+            counts.keySet().forEach((key) -> keyRegions.computeIfAbsent(key, (k) -> new HashSet<>()).add(regionKey));
+        }
+        dirty = true;
+    }
+
+    @Override
+    public void onRegionUnload(String regionKey, String world,
+                               Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+        // counts stay valid while the region is unloaded
+    }
+
+    /**
+     * Get the keys of the regions containing blocks with a key.
+     * @param key The key.
+     * @return Keys of the regions containing matching blocks.
+     */
+    public synchronized Set<String> getRegions(@NonNull String key) {
+        Set<String> regions = keyRegions.get(key);
+        return regions != null ? new HashSet<>(regions) : Collections.emptySet();
+    }
+
+    /**
+     * Loads the index from its file, if it exists.
+     */
+    public synchronized void load() throws IOException {
+        regionCounts.clear();
+        keyRegions.clear();
+        if (Files.exists(filePath)) {
+            Map<String, Map<String, Integer>> counts = mapper.readValue(filePath.toFile(),
+                    new TypeReference<Map<String, Map<String, Integer>>>() {});
+            if (counts != null) {
+                regionCounts.putAll(counts);
+            }
+        }
+        regionCounts.forEach((regionKey, counts) -> counts.keySet().forEach((key) ->
+                keyRegions.computeIfAbsent(key, (k) -> new HashSet<>()).add(regionKey)));
+        dirty = false;
+    }
+
+    /**
+     * Saves the index to its file, if it has been modified.
+     */
+    public void save() throws IOException {
+        byte[] content;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            content = mapper.writeValueAsBytes(regionCounts);
+            dirty = false;
+        }
+
+        // write to a temporary file first, so a half written index is never loaded
+        try {
+            Files.createDirectories(filePath.getParent());
+            Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+            Files.write(tempFile, content);
+            Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // retry on next save
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Changes the number of blocks with a key within a region.
+     */
+    private void count(String regionKey, String key, int delta) {
+        Map<String, Integer> counts = regionCounts.computeIfAbsent(regionKey, (r) -> new HashMap<>());
+        int count = counts.getOrDefault(key, 0) + delta;
+        if (count > 0) {
+            counts.put(key, count);
+            keyRegions.computeIfAbsent(key, (k) -> new HashSet<>()).add(regionKey);
+        } else {
+            counts.remove(key);
+            if (counts.isEmpty()) {
+                regionCounts.remove(regionKey);
+            }
+            unlinkRegion(key, regionKey);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Removes a region from the regions containing a key.
+     */
+    private void unlinkRegion(String key, String regionKey) {
+        Set<String> regions = keyRegions.get(key);
+        if (regions != null) {
+            regions.remove(regionKey);
+            if (regions.isEmpty()) {
+                keyRegions.remove(key);
+            }
+        }
+    }
+}
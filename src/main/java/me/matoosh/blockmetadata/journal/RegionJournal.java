@@ -0,0 +1,82 @@
+package me.matoosh.blockmetadata.journal;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.format.RegionFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Fallback journal of region data that couldn't be saved to the region files in time.
+ * All the regions are written to a single file at once,
+ * and written back to their region files the next time the storage starts.
+ */
+@Log
+@Getter
+@RequiredArgsConstructor
+public class RegionJournal {
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path filePath;
+    /**
+     * Mapper used to read and write the journal.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Writes region data to the journal, replacing the previous journal.
+     * @param regions Data of each region to journal, by region key.
+     */
+    public void write(@NonNull Map<String, ?> regions) throws IOException {
+        // write to a temporary file first, so a half written journal is never replayed
+        Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        Files.write(tempFile, mapper.writeValueAsBytes(regions));
+        Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the journaled region data back to the region files and removes the journal.
+     * @param regionFile Resolves the path of a region file from its region key.
+     *                   Regions are written in the format matching the extension of the path.
+     * @return The number of replayed regions.
+     */
+    public int replay(@NonNull Function<String, Path> regionFile) throws IOException {
+        // nothing to replay
+        if (!Files.exists(filePath)) {
+            return 0;
+        }
+
+        // write each region back to its file
+        JsonNode journal = mapper.readTree(filePath.toFile());
+        int replayed = 0;
+        Iterator<Map.Entry<String, JsonNode>> fields = journal.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> region = fields.next();
+            Path regionPath = regionFile.apply(region.getKey());
+            if (region.getValue() == null || region.getValue().isNull()) {
+                // region has no metadata left
+                Files.deleteIfExists(regionPath);
+            } else {
+                Files.write(regionPath, RegionFormat.of(regionPath).getCodec().encode(mapper, region.getValue()));
+            }
+            replayed++;
+        }
+
+        // journal is no longer needed
+        Files.delete(filePath);
+        log.info("Replayed " + replayed + " regions from the journal at: " + filePath);
+        return replayed;
+    }
+}
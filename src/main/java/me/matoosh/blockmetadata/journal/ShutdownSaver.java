@@ -0,0 +1,93 @@
+package me.matoosh.blockmetadata.journal;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the dirty regions of a storage while it's shutting down.
+ * Regions which couldn't be saved in time are written to the fallback journal instead.
+ * @param <T> Type of the metadata.
+ */
+@Log
+@RequiredArgsConstructor
+public class ShutdownSaver<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Journal the regions are written to if they can't be saved in time.
+     */
+    private final RegionJournal journal;
+
+    /**
+     * How long to wait for the regions to be saved, in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * Saves all the dirty regions in parallel, waiting at most for the timeout.
+     * @return Whether all the regions were saved to their region files, false if some were journaled.
+     */
+    public boolean saveAll() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeout;
+        long nextProgressLog = start;
+        int total = (int) regions.getLoadedRegions().stream().filter(Region::isDirty).count();
+        log.info("Saving " + total + " block metadata regions...");
+        while (true) {
+            // save every dirty region which isn't being saved at the moment
+            List<Region<T>> pending = new ArrayList<>();
+            for (Region<T> region : regions.getLoadedRegions()) {
+                boolean saving = region.getSaveFuture() != null && !region.getSaveFuture().isDone();
+                if (region.isDirty() && !saving) {
+                    regions.saveRegion(region, false);
+                    saving = true;
+                }
+                if (saving) {
+                    pending.add(region);
+                }
+            }
+
+            // check if everything has been saved
+            if (pending.isEmpty()) {
+                log.info("Saved " + total + " block metadata regions in "
+                        + (System.currentTimeMillis() - start) + "ms");
+                return true;
+            }
+
+            // out of time, journal the remaining regions
+            long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                log.warning("Couldn't save " + pending.size() + " block metadata regions in time, "
+                        + "writing them to the journal at: " + journal.getFilePath());
+                Map<String, Object> journaled = new HashMap<>();
+                for (Region<T> region : pending) {
+                    journaled.put(region.getKey(), region.locked(() -> regions.getRegionFileContents(region)));
+                }
+                try {
+                    journal.write(journaled);
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+                return false;
+            }
+
+            // log progress
+            if (now >= nextProgressLog) {
+                log.info("Saving block metadata regions... " + (total - Math.min(total, pending.size()))
+                        + "/" + total);
+                nextProgressLog = now + TimeUnit.SECONDS.toMillis(1);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
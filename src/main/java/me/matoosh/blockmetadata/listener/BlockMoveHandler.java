@@ -2,6 +2,7 @@ package me.matoosh.blockmetadata.listener;
 
 import lombok.RequiredArgsConstructor;
 import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.transaction.MetadataTransaction;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.event.EventHandler;
@@ -11,9 +12,9 @@ import org.bukkit.event.block.BlockPistonExtendEvent;
 import org.bukkit.event.block.BlockPistonRetractEvent;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -43,32 +44,23 @@ public class BlockMoveHandler<T extends Serializable> implements Listener {
 
     /**
      * Handles moving a block with a piston.
-     * Preserves blocks' metadata.
+     * Preserves blocks' metadata, moving the metadata of all blocks in a single transaction.
      * @param blocks The blocks that were moved.
      * @param direction The direction in which the blocks were moved.
      */
     private void onBlocksMoveByPiston(List<Block> blocks, BlockFace direction)
             throws ExecutionException, InterruptedException {
-        // cache origin block metadata
-        Map<Block, T> cachedMetadata = new HashMap<>();
-        for (Block origin : blocks) {
-            // remove block metadata
-            T metadata = storage.removeMetadata(origin).get();
+        // move the front blocks first, so no metadata is moved twice
+        List<Block> ordered = new ArrayList<>(blocks);
+        ordered.sort(Comparator.comparingInt((Block block) -> block.getX() * direction.getModX()
+                + block.getY() * direction.getModY()
+                + block.getZ() * direction.getModZ()).reversed());
 
-            // skip if no metadata stored
-            if (metadata == null) {
-                continue;
-            }
-
-            // cache metadata for next step
-            cachedMetadata.put(origin, metadata);
-        }
-
-        // move block metadata over
-        for (Block origin : cachedMetadata.keySet()) {
-            // move metadata in direction of the piston extend
-            Block resulting = origin.getRelative(direction);
-            storage.setMetadata(resulting, cachedMetadata.get(origin));
+        // move block metadata in direction of the piston
+        MetadataTransaction<T> transaction = storage.beginTransaction();
+        for (Block origin : ordered) {
+            transaction.move(origin, origin.getRelative(direction));
         }
+        transaction.commit().get();
     }
 }
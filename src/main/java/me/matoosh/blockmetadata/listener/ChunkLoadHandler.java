@@ -5,6 +5,7 @@ import me.matoosh.blockmetadata.BlockMetadataStorage;
 import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.ChunkUnloadEvent;
 
 import java.io.Serializable;
@@ -18,6 +19,12 @@ public class ChunkLoadHandler<T extends Serializable> implements Listener {
 
     private final BlockMetadataStorage<T> storage;
 
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        // prefetch the region asynchronously, so it's resident before it's queried
+        storage.loadChunk(ChunkInfo.fromChunk(event.getChunk()));
+    }
+
     @EventHandler
     public void onChunkUnload(ChunkUnloadEvent event) {
         storage.saveChunk(ChunkInfo.fromChunk(event.getChunk()), true);
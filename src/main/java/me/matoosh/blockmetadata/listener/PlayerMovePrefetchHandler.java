@@ -0,0 +1,61 @@
+package me.matoosh.blockmetadata.listener;
+
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.util.Vector;
+
+import java.io.Serializable;
+
+/**
+ * Handles prefetching the regions a player is heading into.
+ * Each time a player crosses a chunk border, the player's velocity is projected
+ * a number of chunks ahead and the regions along that path are loaded asynchronously.
+ * @param <T> Type of the saved metadata.
+ */
+@RequiredArgsConstructor
+public class PlayerMovePrefetchHandler<T extends Serializable> implements Listener {
+
+    private final BlockMetadataStorage<T> storage;
+    /**
+     * How many chunks ahead of the player regions should be prefetched.
+     */
+    private final int distance;
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null) {
+            return;
+        }
+
+        // only predict when the player enters a new chunk
+        int chunkX = to.getBlockX() >> 4;
+        int chunkZ = to.getBlockZ() >> 4;
+        if (chunkX == from.getBlockX() >> 4 && chunkZ == from.getBlockZ() >> 4) {
+            return;
+        }
+
+        // horizontal velocity of the player
+        Vector velocity = to.toVector().subtract(from.toVector()).setY(0);
+        if (velocity.lengthSquared() == 0) {
+            return;
+        }
+        velocity.normalize().multiply(16);
+
+        // prefetch regions along the predicted path
+        String world = event.getPlayer().getWorld().getName();
+        for (int i = 1; i <= distance; i++) {
+            int x = (int) Math.floor(to.getX() + velocity.getX() * i) >> 4;
+            int z = (int) Math.floor(to.getZ() + velocity.getZ() * i) >> 4;
+            storage.prefetchRegion(new ChunkInfo(world, new ChunkCoordinates(x, z)));
+        }
+    }
+}
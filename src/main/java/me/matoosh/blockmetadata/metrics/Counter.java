@@ -0,0 +1,38 @@
+package me.matoosh.blockmetadata.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count of events.
+ * Updates from many threads don't contend with each other.
+ */
+public class Counter {
+
+    /**
+     * The current count.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Counts a single event.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Counts a number of events.
+     * @param amount Number of events.
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * Get the number of events counted so far.
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,14 @@
+package me.matoosh.blockmetadata.metrics;
+
+/**
+ * Value sampled at the moment it's queried, e.g. the number of loaded regions.
+ */
+@FunctionalInterface
+public interface Gauge {
+
+    /**
+     * Samples the current value.
+     * @return The current value.
+     */
+    long getValue();
+}
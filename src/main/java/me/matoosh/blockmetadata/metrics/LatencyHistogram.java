@@ -0,0 +1,158 @@
+package me.matoosh.blockmetadata.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with a bounded relative error, in the style of HDR histograms.
+ * Each power of two is split into a fixed number of linear sub-buckets,
+ * so recording is a constant time array update and percentiles are
+ * accurate to within an eighth of the recorded value, from nanoseconds to centuries.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits selecting a sub-bucket within a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Number of sub-buckets of each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Total number of buckets, covering every non-negative long.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Number of recorded durations in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of recorded durations.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Sum of the recorded durations, in nanoseconds.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * Longest recorded duration, in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos The duration, in nanoseconds. Negative durations are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records the time elapsed since a start time.
+     * @param startNanos The start time, as returned by {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the number of recorded durations.
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of the recorded durations.
+     * @return The mean duration, in nanoseconds. Zero if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Get the longest recorded duration.
+     * @return The longest duration, in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the duration below which a given percentage of the recorded durations fall.
+     * @param percentile The percentage, between 0 and 100.
+     * @return The duration, in nanoseconds. Zero if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        // find the bucket containing the requested rank
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the duration below which a given percentage of the recorded durations fall.
+     * @param percentile The percentage, between 0 and 100.
+     * @param unit Unit of the returned duration.
+     * @return The duration in the given unit.
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        return unit.convert(getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the bucket of a value.
+     * @param value The non-negative value.
+     * @return Index of the bucket.
+     */
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Get the largest value falling into a bucket.
+     * @param bucket Index of the bucket.
+     * @return The largest value of the bucket.
+     */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        // wraps around to the largest long for the last bucket
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,96 @@
+package me.matoosh.blockmetadata.metrics;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import javax.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the metrics of a registry as read-only JMX attributes.
+ * Every counter, gauge and histogram summary is a long attribute,
+ * every slow operation log a string array attribute, slowest operation first.
+ */
+@RequiredArgsConstructor
+public class MetricsMBean implements DynamicMBean {
+
+    /**
+     * The exposed registry.
+     */
+    @NonNull
+    private final MetricsRegistry registry;
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        SlowOperationLog slowLog = registry.getSlowLogs().get(attribute);
+        if (slowLog != null) {
+            return formatSlowLog(slowLog);
+        }
+        Long value = registry.getValues().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> values = registry.getValues();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            SlowOperationLog slowLog = registry.getSlowLogs().get(attribute);
+            if (slowLog != null) {
+                list.add(new Attribute(attribute, formatSlowLog(slowLog)));
+            } else if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        // metrics are read-only
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : registry.getValues().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(),
+                    name, true, false, false));
+        }
+        for (String name : registry.getSlowLogs().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, String[].class.getName(),
+                    name + ", slowest first", true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Block metadata storage metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    /**
+     * Formats the operations of a slow operation log.
+     * @param slowLog The log.
+     * @return Description of each operation, slowest first.
+     */
+    private static String[] formatSlowLog(SlowOperationLog slowLog) {
+        return slowLog.getSlowest().stream()
+                .map((operation) -> operation.getSubject() + ": "
+                        + TimeUnit.NANOSECONDS.toMillis(operation.getDuration()) + "ms")
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,140 @@
+package me.matoosh.blockmetadata.metrics;
+
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters, gauges and latency histograms.
+ * Metrics are created on first use and live as long as the registry.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Percentiles of each histogram included in the exported values.
+     */
+    private static final double[] EXPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Registered counters by name.
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    /**
+     * Registered gauges by name.
+     */
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    /**
+     * Registered histograms by name.
+     */
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    /**
+     * Registered slow operation logs by name.
+     */
+    private final Map<String, SlowOperationLog> slowLogs = new ConcurrentHashMap<>();
+
+    /**
+     * Get a counter, creating it if it doesn't exist yet.
+     * @param name Name of the counter.
+     * @return The counter.
+     */
+    public Counter counter(@NonNull String name) {
+        return counters.computeIfAbsent(name, (n) -> new Counter());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     * @param name Name of the gauge.
+     * @param gauge The gauge.
+     */
+    public void gauge(@NonNull String name, @NonNull Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Get a latency histogram, creating it if it doesn't exist yet.
+     * @param name Name of the histogram.
+     * @return The histogram.
+     */
+    public LatencyHistogram histogram(@NonNull String name) {
+        return histograms.computeIfAbsent(name, (n) -> new LatencyHistogram());
+    }
+
+    /**
+     * Get a slow operation log, creating it if it doesn't exist yet.
+     * @param name Name of the log.
+     * @param capacity Maximum number of operations kept by a newly created log.
+     * @return The slow operation log.
+     */
+    public SlowOperationLog slowLog(@NonNull String name, int capacity) {
+        return slowLogs.computeIfAbsent(name, (n) -> new SlowOperationLog(capacity));
+    }
+
+    /**
+     * Get all the registered counters.
+     * @return Unmodifiable view of the counters by name.
+     */
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Get all the registered gauges.
+     * @return Unmodifiable view of the gauges by name.
+     */
+    public Map<String, Gauge> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * Get all the registered histograms.
+     * @return Unmodifiable view of the histograms by name.
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Get all the registered slow operation logs.
+     * @return Unmodifiable view of the slow operation logs by name.
+     */
+    public Map<String, SlowOperationLog> getSlowLogs() {
+        return Collections.unmodifiableMap(slowLogs);
+    }
+
+    /**
+     * Samples every metric as flat named values, e.g. for exporting.
+     * Histograms are summarized by their count, mean, maximum and percentiles,
+     * as e.g. {@code region.load.p99}, all in nanoseconds.
+     * @return The current values, sorted by name.
+     */
+    public Map<String, Long> getValues() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.getCount()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getValue()));
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean", Math.round(histogram.getMean()));
+            values.put(name + ".max", histogram.getMax());
+            for (double percentile : EXPORTED_PERCENTILES) {
+                values.put(name + ".p" + formatPercentile(percentile),
+                        histogram.getValueAtPercentile(percentile));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Formats a percentile for a metric name, e.g. 99.9 as "999".
+     * @param percentile The percentile.
+     * @return The formatted percentile.
+     */
+    private static String formatPercentile(double percentile) {
+        String formatted = percentile == Math.rint(percentile)
+                ? Long.toString((long) percentile)
+                : Double.toString(percentile);
+        return formatted.replace(".", "");
+    }
+}
@@ -0,0 +1,22 @@
+package me.matoosh.blockmetadata.metrics;
+
+import lombok.Value;
+
+/**
+ * A single recorded slow operation.
+ */
+@Value
+public class SlowOperation {
+    /**
+     * What the operation was performed on, e.g. the region file.
+     */
+    String subject;
+    /**
+     * How long the operation took, in nanoseconds.
+     */
+    long duration;
+    /**
+     * When the operation finished, in milliseconds since the epoch.
+     */
+    long timestamp;
+}
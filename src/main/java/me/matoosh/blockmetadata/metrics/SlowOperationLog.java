@@ -0,0 +1,74 @@
+package me.matoosh.blockmetadata.metrics;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the slowest operations recorded so far.
+ * Operations faster than every kept one are rejected without locking.
+ */
+public class SlowOperationLog {
+
+    /**
+     * Maximum number of kept operations.
+     */
+    @Getter
+    private final int capacity;
+    /**
+     * The kept operations, fastest first.
+     */
+    private final PriorityQueue<SlowOperation> slowest = new PriorityQueue<>(
+            Comparator.comparingLong(SlowOperation::getDuration));
+    /**
+     * Duration an operation has to exceed to be kept, in nanoseconds.
+     */
+    private volatile long threshold = -1;
+
+    /**
+     * Creates a slow operation log.
+     * @param capacity Maximum number of kept operations.
+     */
+    public SlowOperationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records an operation, keeping it if it's among the slowest ones.
+     * @param subject What the operation was performed on.
+     * @param duration How long the operation took, in nanoseconds.
+     */
+    public void record(String subject, long duration) {
+        if (duration <= threshold) {
+            return;
+        }
+        synchronized (slowest) {
+            slowest.add(new SlowOperation(subject, duration, System.currentTimeMillis()));
+            if (slowest.size() > capacity) {
+                slowest.poll();
+            }
+            if (slowest.size() == capacity) {
+                threshold = slowest.peek().getDuration();
+            }
+        }
+    }
+
+    /**
+     * Get the slowest operations recorded so far.
+     * @return The operations, slowest first.
+     */
+    public List<SlowOperation> getSlowest() {
+        List<SlowOperation> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        result.sort(Comparator.comparingLong(SlowOperation::getDuration).reversed());
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package me.matoosh.blockmetadata.metrics;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+/**
+ * Metrics of a single block metadata storage.
+ * Hot paths only update counters and histograms, everything else is sampled when queried.
+ */
+@Log
+@Getter
+public class StorageMetrics {
+
+    /**
+     * Domain of the exported JMX MBeans.
+     */
+    public static final String JMX_DOMAIN = "me.matoosh.blockmetadata";
+    /**
+     * Number of slowest region loads kept.
+     */
+    private static final int SLOWEST_LOADS = 10;
+
+    /**
+     * Registry of all the metrics.
+     */
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    /**
+     * Number of regions requested.
+     */
+    private final Counter regionRequests = registry.counter("region.requests");
+    /**
+     * Number of region requests which had to wait for the region to load.
+     */
+    private final Counter regionWaits = registry.counter("region.waits");
+    /**
+     * Time region requests spent waiting for the region to load.
+     */
+    private final LatencyHistogram regionWaitLatency = registry.histogram("region.wait");
+    /**
+     * Time spent loading regions, including reading and parsing their files.
+     */
+    private final LatencyHistogram loadLatency = registry.histogram("region.load");
+    /**
+     * Time spent saving dirty regions, including serializing and writing their files.
+     */
+    private final LatencyHistogram saveLatency = registry.histogram("region.save");
+    /**
+     * Time spent writing region data to disk.
+     */
+    private final LatencyHistogram writeLatency = registry.histogram("region.write");
+    /**
+     * Number of region loads which failed.
+     */
+    private final Counter loadFailures = registry.counter("region.load.failures");
+    /**
+     * Number of region saves which failed.
+     */
+    private final Counter saveFailures = registry.counter("region.save.failures");
+    /**
+     * Number of bytes read from region files.
+     */
+    private final Counter bytesRead = registry.counter("bytes.read");
+    /**
+     * Number of bytes written to region files.
+     */
+    private final Counter bytesWritten = registry.counter("bytes.written");
+    /**
+     * Number of regions converted from another format when saved.
+     */
+    private final Counter regionsMigrated = registry.counter("region.migrated");
+    /**
+     * Number of regions whose metadata values were upgraded to the current schema version when loaded.
+     */
+    private final Counter regionsUpgraded = registry.counter("region.upgraded");
+    /**
+     * Number of corrupt region files moved or copied to the quarantine folder.
+     */
+    private final Counter regionsQuarantined = registry.counter("region.quarantined");
+    /**
+     * Number of corrupt chunks found in otherwise intact region files.
+     */
+    private final Counter corruptChunks = registry.counter("chunk.corrupt");
+    /**
+     * The slowest region loads.
+     */
+    private final SlowOperationLog slowestLoads = registry.slowLog("region.load.slowest", SLOWEST_LOADS);
+
+    /**
+     * Name under which the metrics are exported over JMX. Null if not exported.
+     */
+    private ObjectName objectName;
+
+    /**
+     * Registers gauges sampling the state of the regions of the storage when the metrics are queried.
+     * @param regions Access to the regions of the storage.
+     */
+    public void registerRegionGauges(@NonNull RegionAccess<?> regions) {
+        registry.gauge("regions.loaded", () -> regions.getLoadedRegions().size());
+        registry.gauge("regions.dirty", () -> regions.getLoadedRegions().stream()
+                .filter(Region::isDirty).count());
+        registry.gauge("regions.loading", () -> regions.getLoadedRegions().stream()
+                .filter((region) -> !region.getLoadFuture().isDone()).count());
+        registry.gauge("regions.saving", () -> regions.getLoadedRegions().stream()
+                .filter((region) -> region.getSaveFuture() != null && !region.getSaveFuture().isDone()).count());
+    }
+
+    /**
+     * Exports the metrics as an MBean of the platform MBean server.
+     * @param dataPath Data path of the storage, distinguishing storages of the same server.
+     */
+    public synchronized void registerMBean(@NonNull Path dataPath) {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=BlockMetadataStorage,path="
+                    + ObjectName.quote(dataPath.toAbsolutePath().toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(registry), name);
+            objectName = name;
+        } catch (JMException exception) {
+            log.warning("Couldn't export block metadata metrics over JMX: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Removes the MBean of the metrics from the platform MBean server, if exported.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException exception) {
+            log.warning("Couldn't remove block metadata metrics from JMX: " + exception.getMessage());
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,406 @@
+package me.matoosh.blockmetadata.profiler;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.world.ChunkEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Accounts the wall time and allocations of listener handlers on the server thread, per tick.
+ * Listeners registered through the profiler are invoked through a measuring executor.
+ * Costs are attributed to the handler and to the chunk the event happened in,
+ * the chunk and region costs are kept over a rolling window of ticks.
+ * Each tick exceeding the budget is logged, at most once per {@link #WARNING_INTERVAL} ticks.
+ */
+@Log
+public class ListenerProfiler {
+
+    /**
+     * Minimum number of ticks between two over budget warnings.
+     */
+    public static final int WARNING_INTERVAL = 100;
+    /**
+     * Number of chunks listed in an over budget warning.
+     */
+    private static final int WARNING_CHUNKS = 3;
+
+    /**
+     * Total cost of handlers a tick may have, in nanoseconds.
+     */
+    @Getter
+    private final long tickBudget;
+    /**
+     * Costs of the chunks in each tick of the rolling window. Null for ticks without costs.
+     */
+    private final Map<ChunkInfo, Cost>[] window;
+    /**
+     * Costs of the chunks over the whole rolling window.
+     */
+    private final Map<ChunkInfo, Cost> windowChunks = new HashMap<>();
+    /**
+     * Costs of each handler since the profiler was created.
+     */
+    private final Map<String, Cost> handlers = new HashMap<>();
+    /**
+     * Costs of each handler within the current tick.
+     */
+    private final Map<String, Cost> tickHandlers = new HashMap<>();
+    /**
+     * Costs of each chunk within the current tick.
+     */
+    private Map<ChunkInfo, Cost> tickChunks = new HashMap<>();
+    /**
+     * Bean measuring the allocations of the server thread. Null if not supported.
+     */
+    private final com.sun.management.ThreadMXBean allocationBean;
+    /**
+     * Index of the current tick within the rolling window.
+     */
+    private int windowIndex;
+    /**
+     * Cost of the handlers within the current tick, in nanoseconds.
+     */
+    private long tickNanos;
+    /**
+     * Number of ticks which exceeded the budget.
+     */
+    @Getter
+    private long overBudgetTicks;
+    /**
+     * Number of ticks since the last over budget warning.
+     */
+    private long ticksSinceWarning = WARNING_INTERVAL;
+    /**
+     * Number of over budget ticks which weren't logged.
+     */
+    private int suppressedWarnings;
+
+    /**
+     * Creates a listener profiler.
+     * @param tickBudget Total cost of handlers a tick may have, in nanoseconds.
+     * @param windowTicks Number of ticks over which chunk and region costs are kept.
+     */
+    @SuppressWarnings("unchecked")
+    public ListenerProfiler(long tickBudget, int windowTicks) {
+        if (windowTicks <= 0) {
+            throw new IllegalArgumentException("Window must span at least one tick");
+        }
+        this.tickBudget = tickBudget;
+        this.window = new Map[windowTicks];
+
+        // measure allocations only if the jvm supports it
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean bean = null;
+        try {
+            if (threadBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+                bean = (com.sun.management.ThreadMXBean) threadBean;
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (NoClassDefFoundError | UnsupportedOperationException ignored) {
+            bean = null;
+        }
+        this.allocationBean = bean;
+    }
+
+    /**
+     * Registers all the event handlers of a listener, measuring each invocation.
+     * Replaces {@link org.bukkit.plugin.PluginManager#registerEvents(Listener, Plugin)}.
+     * @param listener The listener.
+     * @param plugin The plugin registering the listener.
+     */
+    public void registerEvents(@NonNull Listener listener, @NonNull Plugin plugin) {
+        for (Method method : listener.getClass().getMethods()) {
+            EventHandler eventHandler = method.getAnnotation(EventHandler.class);
+            if (eventHandler == null || method.getParameterCount() != 1
+                    || !Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                continue;
+            }
+            Class<? extends Event> eventClass = method.getParameterTypes()[0].asSubclass(Event.class);
+            String handler = listener.getClass().getSimpleName() + "." + method.getName();
+            EventExecutor executor = (l, event) -> {
+                // handlers of super classes are called with sub class events only
+                if (!eventClass.isInstance(event)) {
+                    return;
+                }
+                invoke(handler, method, l, event);
+            };
+            Bukkit.getPluginManager().registerEvent(eventClass, listener, eventHandler.priority(),
+                    executor, plugin, eventHandler.ignoreCancelled());
+        }
+    }
+
+    /**
+     * Invokes an event handler, measuring it if it's invoked on the server thread.
+     * @param handler Name of the handler.
+     * @param method The handler method.
+     * @param listener The listener declaring the handler.
+     * @param event The event.
+     */
+    private void invoke(String handler, Method method, Listener listener, Event event) throws EventException {
+        boolean measured = !event.isAsynchronous() && Bukkit.isPrimaryThread();
+        long startBytes = measured ? getAllocatedBytes() : 0;
+        long start = measured ? System.nanoTime() : 0;
+        try {
+            method.invoke(listener, event);
+        } catch (InvocationTargetException e) {
+            throw new EventException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new EventException(e);
+        } finally {
+            if (measured) {
+                long nanos = System.nanoTime() - start;
+                record(handler, getChunk(event), nanos, Math.max(0, getAllocatedBytes() - startBytes));
+            }
+        }
+    }
+
+    /**
+     * Records the cost of a single handler invocation within the current tick.
+     * @param handler Name of the handler.
+     * @param chunk Chunk the event happened in. Null if unknown.
+     * @param nanos Wall time of the invocation, in nanoseconds.
+     * @param allocatedBytes Bytes allocated by the invocation.
+     */
+    public synchronized void record(@NonNull String handler, ChunkInfo chunk, long nanos, long allocatedBytes) {
+        tickNanos += nanos;
+        handlers.computeIfAbsent(handler, (h) -> new Cost()).add(1, nanos, allocatedBytes);
+        tickHandlers.computeIfAbsent(handler, (h) -> new Cost()).add(1, nanos, allocatedBytes);
+        if (chunk != null) {
+            tickChunks.computeIfAbsent(chunk, (c) -> new Cost()).add(1, nanos, allocatedBytes);
+        }
+    }
+
+    /**
+     * Closes the current tick, warning if it exceeded the budget,
+     * and moves the rolling window forward.
+     */
+    public synchronized void endTick() {
+        ticksSinceWarning++;
+        if (tickNanos > tickBudget) {
+            overBudgetTicks++;
+            if (ticksSinceWarning >= WARNING_INTERVAL) {
+                log.warning(formatWarning());
+                ticksSinceWarning = 0;
+                suppressedWarnings = 0;
+            } else {
+                suppressedWarnings++;
+            }
+        }
+
+        // replace the oldest tick of the window with the current one
+        Map<ChunkInfo, Cost> oldest = window[windowIndex];
+        if (oldest != null) {
+            oldest.forEach((chunk, cost) -> {
+                Cost total = windowChunks.get(chunk);
+                total.add(-cost.invocations, -cost.nanos, -cost.allocatedBytes);
+                if (total.invocations <= 0) {
+                    windowChunks.remove(chunk);
+                }
+            });
+        }
+        if (tickChunks.isEmpty()) {
+            window[windowIndex] = null;
+        } else {
+            tickChunks.forEach((chunk, cost) -> windowChunks.computeIfAbsent(chunk, (c) -> new Cost())
+                    .add(cost.invocations, cost.nanos, cost.allocatedBytes));
+            window[windowIndex] = tickChunks;
+            tickChunks = new HashMap<>();
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+
+        tickHandlers.clear();
+        tickNanos = 0;
+    }
+
+    /**
+     * Get the costs of each handler since the profiler was created.
+     * @return The handler costs, most expensive first.
+     */
+    public synchronized List<ProfiledCost> getHandlerCosts() {
+        return toSortedCosts(handlers, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the most expensive chunks within the rolling window.
+     * @param limit Maximum number of chunks to return.
+     * @return The chunk costs, most expensive first, named as {@code world (x, z)}.
+     */
+    public synchronized List<ProfiledCost> getTopChunks(int limit) {
+        Map<String, Cost> chunks = new HashMap<>();
+        windowChunks.forEach((chunk, cost) -> chunks.put(formatChunk(chunk), cost));
+        return toSortedCosts(chunks, limit);
+    }
+
+    /**
+     * Get the most expensive regions within the rolling window.
+     * @param limit Maximum number of regions to return.
+     * @return The region costs, most expensive first, named by the region key.
+     */
+    public synchronized List<ProfiledCost> getTopRegions(int limit) {
+        Map<String, Cost> regions = new HashMap<>();
+        windowChunks.forEach((chunk, cost) -> regions.computeIfAbsent(
+                BlockMetadataStorage.getRegionKey(chunk), (r) -> new Cost())
+                .add(cost.invocations, cost.nanos, cost.allocatedBytes));
+        return toSortedCosts(regions, limit);
+    }
+
+    /**
+     * Whether the allocations of handlers are measured on this JVM.
+     * @return Whether allocations are measured.
+     */
+    public boolean isAllocationProfilingSupported() {
+        return allocationBean != null;
+    }
+
+    /**
+     * Describes the current tick, which exceeded the budget.
+     * @return The warning message.
+     */
+    private String formatWarning() {
+        StringBuilder message = new StringBuilder("Block metadata listeners took ")
+                .append(formatMillis(tickNanos)).append(" this tick, over the budget of ")
+                .append(formatMillis(tickBudget));
+        if (suppressedWarnings > 0) {
+            message.append(" (").append(suppressedWarnings).append(" more ticks over budget since the last warning)");
+        }
+        message.append(":");
+        for (ProfiledCost cost : toSortedCosts(tickHandlers, Integer.MAX_VALUE)) {
+            message.append("\n  ").append(cost.getName()).append(": ").append(formatMillis(cost.getNanos()))
+                    .append(" in ").append(cost.getInvocations()).append(" calls, ")
+                    .append(cost.getAllocatedBytes()).append(" bytes allocated");
+        }
+        Map<String, Cost> chunks = new HashMap<>();
+        tickChunks.forEach((chunk, cost) -> chunks.put(formatChunk(chunk), cost));
+        for (ProfiledCost cost : toSortedCosts(chunks, WARNING_CHUNKS)) {
+            message.append("\n  chunk ").append(cost.getName()).append(": ").append(formatMillis(cost.getNanos()));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far.
+     * @return The allocated bytes. Zero if allocations can't be measured.
+     */
+    private long getAllocatedBytes() {
+        return allocationBean != null
+                ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+                : 0;
+    }
+
+    /**
+     * Get the chunk an event happened in, without loading it.
+     * @param event The event.
+     * @return The chunk. Null if the event isn't tied to a chunk.
+     */
+    static ChunkInfo getChunk(Event event) {
+        if (event instanceof ChunkEvent) {
+            return ChunkInfo.fromChunk(((ChunkEvent) event).getChunk());
+        }
+        Block block = null;
+        if (event instanceof BlockEvent) {
+            block = ((BlockEvent) event).getBlock();
+        } else if (event instanceof EntityChangeBlockEvent) {
+            block = ((EntityChangeBlockEvent) event).getBlock();
+        }
+        if (block != null) {
+            return new ChunkInfo(block.getWorld().getName(),
+                    new ChunkCoordinates(block.getX() >> 4, block.getZ() >> 4));
+        }
+        if (event instanceof PlayerMoveEvent) {
+            Location to = ((PlayerMoveEvent) event).getTo();
+            if (to != null && to.getWorld() != null) {
+                return new ChunkInfo(to.getWorld().getName(),
+                        new ChunkCoordinates(to.getBlockX() >> 4, to.getBlockZ() >> 4));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts costs into profiled costs, most expensive first.
+     * @param costs The costs by name.
+     * @param limit Maximum number of costs to return.
+     * @return The profiled costs.
+     */
+    private static List<ProfiledCost> toSortedCosts(Map<String, Cost> costs, int limit) {
+        return costs.entrySet().stream()
+                .map((entry) -> new ProfiledCost(entry.getKey(), entry.getValue().invocations,
+                        entry.getValue().nanos, entry.getValue().allocatedBytes))
+                .sorted(Comparator.comparingLong(ProfiledCost::getNanos).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Formats a chunk for reporting.
+     * @param chunk The chunk.
+     * @return The formatted chunk.
+     */
+    private static String formatChunk(ChunkInfo chunk) {
+        return chunk.getWorld() + " (" + chunk.getCoordinates().getX()
+                + ", " + chunk.getCoordinates().getZ() + ")";
+    }
+
+    /**
+     * Formats a duration in milliseconds.
+     * @param nanos The duration, in nanoseconds.
+     * @return The formatted duration.
+     */
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Accumulated cost of handler invocations.
+     */
+    private static class Cost {
+        /**
+         * Number of invocations.
+         */
+        private long invocations;
+        /**
+         * Wall time, in nanoseconds.
+         */
+        private long nanos;
+        /**
+         * Allocated bytes.
+         */
+        private long allocatedBytes;
+
+        /**
+         * Adds to the cost.
+         * @param invocations Number of invocations.
+         * @param nanos Wall time, in nanoseconds.
+         * @param allocatedBytes Allocated bytes.
+         */
+        private void add(long invocations, long nanos, long allocatedBytes) {
+            this.invocations += invocations;
+            this.nanos += nanos;
+            this.allocatedBytes += allocatedBytes;
+        }
+    }
+}
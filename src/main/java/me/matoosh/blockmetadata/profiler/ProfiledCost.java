@@ -0,0 +1,26 @@
+package me.matoosh.blockmetadata.profiler;
+
+import lombok.Value;
+
+/**
+ * Time and memory spent by listener handlers on the server thread.
+ */
+@Value
+public class ProfiledCost {
+    /**
+     * What the cost is attributed to, e.g. a handler, a chunk or a region.
+     */
+    String name;
+    /**
+     * Number of handler invocations.
+     */
+    long invocations;
+    /**
+     * Wall time spent, in nanoseconds.
+     */
+    long nanos;
+    /**
+     * Bytes allocated. Zero if allocations can't be measured on this JVM.
+     */
+    long allocatedBytes;
+}
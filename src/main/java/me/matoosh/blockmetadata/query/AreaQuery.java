@@ -0,0 +1,172 @@
+package me.matoosh.blockmetadata.query;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.region.RegionAccess;
+import org.bukkit.World;
+import org.bukkit.util.BlockVector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Queries metadata of all blocks within a cuboid.
+ * Only the regions and chunks overlapping the cuboid which hold metadata are scanned.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class AreaQuery<T> {
+
+    /**
+     * Number of chunks with metadata above which a region is scanned in parallel.
+     */
+    private static final int PARALLEL_SCAN_CHUNKS = 64;
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Executor on which the regions are scanned.
+     */
+    private final Executor executor;
+
+    /**
+     * Get metadata of all blocks within a cuboid.
+     * @param world The world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @return Metadata of each block with metadata within the cuboid.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataInArea(@NonNull World world,
+                                                                 @NonNull BlockVector min,
+                                                                 @NonNull BlockVector max) {
+        return getMetadataInArea(world.getName(), min, max);
+    }
+
+    /**
+     * Get metadata of all blocks within a cuboid.
+     * @param world Name of the world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @return Metadata of each block with metadata within the cuboid.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataInArea(@NonNull String world,
+                                                                 @NonNull BlockVector min,
+                                                                 @NonNull BlockVector max) {
+        Map<BlockInfo, T> result = new ConcurrentHashMap<>();
+        return forEachMetadataInArea(world, min, max, result::put).thenApply((s) -> result);
+    }
+
+    /**
+     * Streams metadata of all blocks within a cuboid to a consumer.
+     * Only regions and chunks holding metadata are visited, blocks without metadata are never visited.
+     * Regions are scanned in parallel, so the consumer may be called from multiple threads at once.
+     * @param world Name of the world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @param consumer Consumer receiving each block with metadata and its metadata.
+     * @return Future completed once every block within the cuboid has been visited.
+     */
+    public CompletableFuture<Void> forEachMetadataInArea(@NonNull String world,
+                                                         @NonNull BlockVector min,
+                                                         @NonNull BlockVector max,
+                                                         @NonNull BiConsumer<BlockInfo, T> consumer) {
+        return forEachMetadataInArea(world, min, max, consumer, null);
+    }
+
+    /**
+     * Visits the metadata of all blocks within a cuboid, along with the expiry times of the expiring metadata.
+     * @param world Name of the world.
+     * @param min One corner of the cuboid.
+     * @param max The opposite corner of the cuboid.
+     * @param consumer Consumer receiving each block with metadata and its metadata.
+     * @param expiryConsumer Consumer receiving each block with expiring metadata and its expiry time. Null to skip.
+     * @return Future completed once every block within the cuboid has been visited.
+     */
+    public CompletableFuture<Void> forEachMetadataInArea(@NonNull String world,
+                                                         @NonNull BlockVector min,
+                                                         @NonNull BlockVector max,
+                                                         @NonNull BiConsumer<BlockInfo, T> consumer,
+                                                         BiConsumer<BlockInfo, Long> expiryConsumer) {
+        // normalize the bounds
+        int minX = Math.min(min.getBlockX(), max.getBlockX());
+        int minY = Math.min(min.getBlockY(), max.getBlockY());
+        int minZ = Math.min(min.getBlockZ(), max.getBlockZ());
+        int maxX = Math.max(min.getBlockX(), max.getBlockX());
+        int maxY = Math.max(min.getBlockY(), max.getBlockY());
+        int maxZ = Math.max(min.getBlockZ(), max.getBlockZ());
+        int minChunkX = minX >> 4;
+        int minChunkZ = minZ >> 4;
+        int maxChunkX = maxX >> 4;
+        int maxChunkZ = maxZ >> 4;
+
+        // scan each region overlapping the cuboid
+        List<CompletableFuture<?>> tasks = new ArrayList<>();
+        for (int regionX = minChunkX / 16; regionX <= maxChunkX / 16; regionX++) {
+            for (int regionZ = minChunkZ / 16; regionZ <= maxChunkZ / 16; regionZ++) {
+                // pick a chunk of the region within the cuboid
+                ChunkInfo chunkInfo = new ChunkInfo(world, new ChunkCoordinates(
+                        Math.min(Math.max(regionX * 16, minChunkX), maxChunkX),
+                        Math.min(Math.max(regionZ * 16, minChunkZ), maxChunkZ)));
+
+                // skip regions without any metadata stored
+                if (!regions.isRegionStored(BlockMetadataStorage.getRegionKey(chunkInfo))) {
+                    continue;
+                }
+
+                tasks.add(regions.getRegion(chunkInfo).thenAcceptAsync((region) -> region.locked(() -> {
+                    // no data in this region
+                    Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer = region.getBuffer();
+                    if (buffer == null) {
+                        return null;
+                    }
+
+                    // scan the chunks within the cuboid, in parallel for large regions
+                    Stream<Map.Entry<ChunkCoordinates, Map<BlockChunkCoordinates, T>>> chunks =
+                            buffer.entrySet().stream();
+                    if (buffer.size() >= PARALLEL_SCAN_CHUNKS) {
+                        chunks = chunks.parallel();
+                    }
+                    chunks.filter((chunk) -> chunk.getKey().getX() >= minChunkX
+                                    && chunk.getKey().getX() <= maxChunkX
+                                    && chunk.getKey().getZ() >= minChunkZ
+                                    && chunk.getKey().getZ() <= maxChunkZ)
+                            .forEach((chunk) -> {
+                                ChunkInfo chunkOfBlocks = new ChunkInfo(world, chunk.getKey());
+                                int chunkX = chunk.getKey().getX() * 16;
+                                int chunkZ = chunk.getKey().getZ() * 16;
+                                chunk.getValue().forEach((block, data) -> {
+                                    // clip the blocks to the cuboid
+                                    int x = chunkX + block.getX();
+                                    int z = chunkZ + block.getZ();
+                                    if (x < minX || x > maxX || block.getY() < minY || block.getY() > maxY
+                                            || z < minZ || z > maxZ) {
+                                        return;
+                                    }
+                                    BlockInfo blockInfo = new BlockInfo(chunkOfBlocks, block);
+                                    consumer.accept(blockInfo, data);
+                                    if (expiryConsumer != null) {
+                                        long expiresAt = region.getExpiry(chunk.getKey(), block);
+                                        if (expiresAt != 0) {
+                                            expiryConsumer.accept(blockInfo, expiresAt);
+                                        }
+                                    }
+                                });
+                            });
+                    return null;
+                }), executor));
+            }
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+}
@@ -0,0 +1,178 @@
+package me.matoosh.blockmetadata.query;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+import org.bukkit.block.Block;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads and writes metadata of many blocks at once.
+ * The blocks are grouped by region, so each region is resolved and locked once.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class BulkOperations<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Get metadata of multiple blocks at once.
+     * @param blocks The blocks.
+     * @return Current metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<Block, T>> getMetadataBulk(@NonNull Collection<Block> blocks) {
+        Map<BlockInfo, Block> blockInfos = toBlockInfos(blocks);
+        return getMetadataBulkAt(blockInfos.keySet()).thenApply((metadata) -> {
+            Map<Block, T> result = new HashMap<>();
+            metadata.forEach((blockInfo, data) -> result.put(blockInfos.get(blockInfo), data));
+            return result;
+        });
+    }
+
+    /**
+     * Get metadata of multiple blocks at once.
+     * Each region is resolved once, regardless of the number of blocks in it.
+     * @param blocks Locations of the blocks.
+     * @return Current metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> getMetadataBulkAt(@NonNull Collection<BlockInfo> blocks) {
+        Map<BlockInfo, T> result = new ConcurrentHashMap<>();
+        return applyByRegion(blocks, (region, chunks) -> chunks.forEach((chunk, chunkBlocks) -> {
+            // no data for this chunk
+            if (region.getChunk(chunk) == null) {
+                return;
+            }
+
+            // get block metadata
+            for (BlockInfo block : chunkBlocks) {
+                T data = region.get(chunk, block.getCoordinates());
+                if (data != null) {
+                    result.put(block, data);
+                }
+            }
+        })).thenApply((s) -> result);
+    }
+
+    /**
+     * Set metadata of multiple blocks at once.
+     * @param data Metadata to set to each block. Null values clear the metadata of a block.
+     */
+    public CompletableFuture<Void> setMetadataBulk(@NonNull Map<Block, T> data) {
+        Map<BlockInfo, T> dataAt = new HashMap<>();
+        data.forEach((block, value) -> dataAt.put(BlockInfo.fromBlock(block), value));
+        return setMetadataBulkAt(dataAt);
+    }
+
+    /**
+     * Set metadata of multiple blocks at once.
+     * Each region is resolved once and all its blocks are updated together.
+     * @param data Metadata to set to each block. Null values clear the metadata of a block.
+     */
+    public CompletableFuture<Void> setMetadataBulkAt(@NonNull Map<BlockInfo, T> data) {
+        long expiresAt = regions.getDefaultExpiry();
+        return applyByRegion(data.keySet(), (region, chunks) -> chunks.forEach((chunk, chunkBlocks) -> {
+            for (BlockInfo block : chunkBlocks) {
+                T value = data.get(block);
+                if (value == null) {
+                    region.remove(chunk, block.getCoordinates());
+                } else {
+                    region.put(chunk, block.getCoordinates(), value);
+                    region.setExpiry(chunk, block.getCoordinates(), expiresAt);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Removes metadata of multiple blocks at once.
+     * @param blocks The blocks.
+     * @return The removed metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<Block, T>> removeMetadataBulk(@NonNull Collection<Block> blocks) {
+        Map<BlockInfo, Block> blockInfos = toBlockInfos(blocks);
+        return removeMetadataBulkAt(blockInfos.keySet()).thenApply((metadata) -> {
+            Map<Block, T> result = new HashMap<>();
+            metadata.forEach((blockInfo, data) -> result.put(blockInfos.get(blockInfo), data));
+            return result;
+        });
+    }
+
+    /**
+     * Removes metadata of multiple blocks at once.
+     * Each region is resolved once and all its blocks are updated together.
+     * @param blocks Locations of the blocks.
+     * @return The removed metadata of each block. Blocks without metadata are left out.
+     */
+    public CompletableFuture<Map<BlockInfo, T>> removeMetadataBulkAt(@NonNull Collection<BlockInfo> blocks) {
+        Map<BlockInfo, T> result = new ConcurrentHashMap<>();
+        return applyByRegion(blocks, (region, chunks) -> chunks.forEach((chunk, chunkBlocks) -> {
+            for (BlockInfo block : chunkBlocks) {
+                T data = region.remove(chunk, block.getCoordinates());
+                if (data != null) {
+                    result.put(block, data);
+                }
+            }
+        })).thenApply((s) -> result);
+    }
+
+    /**
+     * Groups blocks by region and chunk, and applies an operation to each region
+     * once it's loaded, while holding the region's lock.
+     * @param blocks Locations of the blocks.
+     * @param operation Operation receiving a region and the blocks in it, grouped by chunk.
+     * @return Future completed once the operation has been applied to every region.
+     */
+    private CompletableFuture<Void> applyByRegion(
+            @NonNull Collection<BlockInfo> blocks,
+            @NonNull BiConsumer<Region<T>, Map<ChunkCoordinates, List<BlockInfo>>> operation) {
+        // group blocks by region and chunk
+        Map<String, ChunkInfo> regionChunks = new HashMap<>();
+        Map<String, Map<ChunkCoordinates, List<BlockInfo>>> grouped = new HashMap<>();
+        for (BlockInfo block : blocks) {
+            String regionKey = BlockMetadataStorage.getRegionKey(block.getChunk());
+            regionChunks.putIfAbsent(regionKey, block.getChunk());
+            grouped.computeIfAbsent(regionKey, (k) -> new HashMap<>())
+                    .computeIfAbsent(block.getChunk().getCoordinates(), (c) -> new ArrayList<>())
+                    .add(block);
+        }
+
+        // apply the operation once each region is loaded
+        CompletableFuture<?>[] tasks = new CompletableFuture[grouped.size()];
+        int i = 0;
+        for (Map.Entry<String, Map<ChunkCoordinates, List<BlockInfo>>> entry : grouped.entrySet()) {
+            ChunkInfo chunkInfo = regionChunks.get(entry.getKey());
+            tasks[i++] = regions.getRegion(chunkInfo).thenAccept((region) -> region.locked(() -> {
+                operation.accept(region, entry.getValue());
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    /**
+     * Maps each block to its location.
+     * @param blocks The blocks.
+     * @return Map of block locations to the blocks.
+     */
+    private static Map<BlockInfo, Block> toBlockInfos(@NonNull Collection<Block> blocks) {
+        Map<BlockInfo, Block> blockInfos = new HashMap<>();
+        for (Block block : blocks) {
+            blockInfos.put(BlockInfo.fromBlock(block), block);
+        }
+        return blockInfos;
+    }
+}
@@ -0,0 +1,530 @@
+package me.matoosh.blockmetadata.region;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Metadata of a region held in memory, along with the state of its loading and saving.
+ * The metadata is modified through the methods of the region, which keep the expiry times,
+ * the chunk maps shared with snapshots and the dirty flag consistent, and report each change to the listener.
+ * Unless stated otherwise, the methods must be called while holding the region's lock.
+ * @param <T> Type of the metadata.
+ */
+@Data
+public class Region<T> {
+    /**
+     * Region key.
+     */
+    private final String key;
+    /**
+     * World in which the region is located.
+     */
+    private final String world;
+    /**
+     * Region file path.
+     */
+    private final Path filePath;
+    /**
+     * Listener notified about the changes of the metadata of this region.
+     */
+    @Getter(AccessLevel.NONE)
+    private final RegionListener<T> listener;
+    /**
+     * Currently active chunks in this region.
+     * Chunks are added on the region loader threads and removed on the main thread.
+     */
+    private final Set<ChunkCoordinates> activeChunks = ConcurrentHashMap.newKeySet();
+    /**
+     * Time after which the region is unloaded unless one of its chunks has been loaded, in milliseconds.
+     * Zero if the region wasn't loaded speculatively.
+     */
+    private volatile long idleDeadline;
+    /**
+     * Lock guarding modifications of the region buffer.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Future loading the current region.
+     */
+    private CompletableFuture<Void> loadFuture;
+    /**
+     * Future saving the current region.
+     */
+    private CompletableFuture<Void> saveFuture;
+    /**
+     * The buffer of this region.
+     */
+    private volatile Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer;
+    /**
+     * Expiry times of the expiring metadata of this region, in milliseconds since the epoch.
+     * Null if no metadata of this region expires.
+     */
+    private volatile Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> expiries;
+    /**
+     * Chunks whose metadata maps are shared with snapshots and have to be copied before modification.
+     * Null if no chunk map is shared. Guarded by the region lock.
+     */
+    private Set<ChunkCoordinates> sharedChunks;
+    /**
+     * File of another format from which the region was loaded, deleted once the region is saved.
+     * Null if the region was loaded from the file of the current format.
+     */
+    private volatile Path legacyFilePath;
+    /**
+     * Whether the metadata for this region has been modified.
+     */
+    private volatile boolean dirty;
+    /**
+     * Time at which the region last became dirty, in milliseconds.
+     */
+    private volatile long dirtySince;
+
+    /**
+     * Sets whether the region has been modified since it was last saved.
+     * @param dirty Whether the region is dirty.
+     */
+    public void setDirty(boolean dirty) {
+        if (dirty && !this.dirty) {
+            dirtySince = System.currentTimeMillis();
+        }
+        this.dirty = dirty;
+    }
+
+    /**
+     * Runs an operation while holding the lock of this region.
+     * @param operation The operation.
+     * @return The result of the operation.
+     */
+    public <R> R locked(@NonNull Supplier<R> operation) {
+        lock.lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs an operation while holding the locks of multiple regions.
+     * The locks are always taken in the order of the region keys, so concurrent callers can't deadlock.
+     * @param regions The regions to lock.
+     * @param operation The operation.
+     * @return The result of the operation.
+     */
+    public static <R> R lockedAll(@NonNull Collection<? extends Region<?>> regions, @NonNull Supplier<R> operation) {
+        List<Region<?>> sorted = new ArrayList<>(regions);
+        sorted.sort(Comparator.comparing(Region::getKey));
+        int locked = 0;
+        try {
+            for (Region<?> region : sorted) {
+                region.getLock().lock();
+                locked++;
+            }
+            return operation.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                sorted.get(i).getLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds an active chunk.
+     * Doesn't require the region's lock.
+     * @param coordinates Coordinates of the chunk.
+     * @return The number of active chunks.
+     */
+    public int addActiveChunk(@NonNull ChunkCoordinates coordinates) {
+        activeChunks.add(coordinates);
+        return activeChunks.size();
+    }
+
+    /**
+     * Removes an active chunk.
+     * Doesn't require the region's lock.
+     * @param coordinates Coordinates of the chunk.
+     * @return The number of active chunks.
+     */
+    public int removeActiveChunk(@NonNull ChunkCoordinates coordinates) {
+        activeChunks.remove(coordinates);
+        return activeChunks.size();
+    }
+
+    /**
+     * Get metadata of a block, removing it if it has expired.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @return Current metadata of the block. Null if no data stored.
+     */
+    public T get(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block) {
+        T data = read(chunk, block);
+        if (data != null && isExpired(chunk, block, System.currentTimeMillis())) {
+            // expired metadata is removed lazily on access
+            remove(chunk, block);
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * Get metadata of a block, without checking its expiry.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @return Current metadata of the block. Null if no data stored.
+     */
+    public T read(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block) {
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer = this.buffer;
+        Map<BlockChunkCoordinates, T> metadata = buffer != null ? buffer.get(chunk) : null;
+        return metadata != null ? metadata.get(block) : null;
+    }
+
+    /**
+     * Get the metadata map of a chunk, which mustn't be modified.
+     * @param chunk Coordinates of the chunk.
+     * @return The metadata map of the chunk. Null if the chunk has no metadata.
+     */
+    public Map<BlockChunkCoordinates, T> getChunk(@NonNull ChunkCoordinates chunk) {
+        return buffer != null ? buffer.get(chunk) : null;
+    }
+
+    /**
+     * Computes new metadata of a block from its current metadata.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param remapping Computes the new metadata from the current metadata. Returning null removes it.
+     * @param expiresAt Expiry time of the metadata if the block had none, in milliseconds since the epoch.
+     *                  Zero if it shouldn't expire.
+     * @return The new metadata of the block.
+     */
+    public T compute(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block,
+                     @NonNull BiFunction<BlockChunkCoordinates, ? super T, ? extends T> remapping, long expiresAt) {
+        T current = get(chunk, block);
+        T data = remapping.apply(block, current);
+        if (data == null) {
+            if (current != null) {
+                remove(chunk, block);
+            }
+        } else {
+            // stored even if the same instance is returned, as it may have been modified in place
+            put(chunk, block, data);
+            if (current == null) {
+                setExpiry(chunk, block, expiresAt);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Sets metadata of a block.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param data Metadata to set to the block.
+     * @return The previous metadata of the block. Null if no value was stored.
+     */
+    public T put(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block, @NonNull T data) {
+        // insert data, making sure there's a map to put it in
+        T previous = getWritableChunk(chunk, true).put(block, data);
+
+        // set region as dirty
+        setDirty(true);
+        listener.onChange(this, chunk, block, previous, data);
+        return previous;
+    }
+
+    /**
+     * Replaces all metadata of a chunk.
+     * @param chunk Coordinates of the chunk.
+     * @param data Metadata to set to the blocks of the chunk. Taken over by the region.
+     * @param expiresAt Expiry time of the metadata, in milliseconds since the epoch. Zero if it shouldn't expire.
+     */
+    public void replaceChunk(@NonNull ChunkCoordinates chunk, @NonNull Map<BlockChunkCoordinates, T> data,
+                             long expiresAt) {
+        // ensure buffer exists
+        if (buffer == null) {
+            buffer = new HashMap<>();
+        }
+        Map<BlockChunkCoordinates, T> previous = buffer.put(chunk, data);
+        unshareChunk(chunk);
+
+        // set region as dirty
+        setDirty(true);
+
+        // replace expiry times of the chunk
+        removeChunkExpiries(chunk);
+        if (expiresAt != 0) {
+            data.keySet().forEach((block) -> setExpiry(chunk, block, expiresAt));
+        }
+
+        // report removed and replaced blocks
+        if (previous != null) {
+            previous.forEach((block, value) -> {
+                if (!data.containsKey(block)) {
+                    listener.onChange(this, chunk, block, value, null);
+                }
+            });
+        }
+        data.forEach((block, value) -> listener.onChange(this, chunk, block,
+                previous != null ? previous.get(block) : null, value));
+    }
+
+    /**
+     * Merges metadata into a chunk.
+     * If the chunk has no metadata yet, the given map becomes its metadata map without copying.
+     * @param chunk Coordinates of the chunk.
+     * @param data Metadata to set to the blocks of the chunk. Taken over by the region.
+     * @param expiries Expiry times of the expiring metadata, in milliseconds since the epoch.
+     *                 Null if none of the metadata expires.
+     */
+    public void mergeChunk(@NonNull ChunkCoordinates chunk, @NonNull Map<BlockChunkCoordinates, T> data,
+                           Map<BlockChunkCoordinates, Long> expiries) {
+        if (data.isEmpty()) {
+            return;
+        }
+        if (buffer != null && buffer.containsKey(chunk)) {
+            // merge block by block, replacing the expiry times of the overwritten metadata
+            data.forEach((block, value) -> {
+                put(chunk, block, value);
+                setExpiry(chunk, block, expiries != null ? expiries.getOrDefault(block, 0L) : 0);
+            });
+            return;
+        }
+
+        // take over the whole map
+        if (buffer == null) {
+            buffer = new HashMap<>();
+        }
+        buffer.put(chunk, data);
+        unshareChunk(chunk);
+        setDirty(true);
+        data.forEach((block, value) -> {
+            Long expiresAt = expiries != null ? expiries.get(block) : null;
+            if (expiresAt != null) {
+                setExpiry(chunk, block, expiresAt);
+            }
+            listener.onChange(this, chunk, block, null, value);
+        });
+    }
+
+    /**
+     * Removes metadata of a block.
+     * Removes the chunk section if no metadata remains in the chunk.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @return The removed metadata value. Null if no value was stored.
+     */
+    public T remove(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block) {
+        // no metadata in chunk
+        Map<BlockChunkCoordinates, T> metadata = getChunk(chunk);
+        if (metadata == null) {
+            return null;
+        }
+
+        // remove metadata value from the map
+        if (!metadata.containsKey(block)) {
+            return null;
+        }
+        metadata = getWritableChunk(chunk, false);
+        T previous = metadata.remove(block);
+        setExpiry(chunk, block, 0);
+
+        // if no metadata remaining in chunk, remove chunk section
+        if (metadata.isEmpty()) {
+            removeChunk(chunk);
+        }
+
+        // set region as dirty
+        setDirty(true);
+        listener.onChange(this, chunk, block, previous, null);
+        return previous;
+    }
+
+    /**
+     * Removes all metadata of a chunk.
+     * Removes the region buffer if no metadata remains in the region.
+     * @param chunk Coordinates of the chunk.
+     * @return The removed metadata. Null if no metadata was stored.
+     */
+    public Map<BlockChunkCoordinates, T> removeChunk(@NonNull ChunkCoordinates chunk) {
+        // check if buffer exists
+        if (buffer == null) {
+            return null;
+        }
+
+        // remove metadata
+        Map<BlockChunkCoordinates, T> metadata = buffer.remove(chunk);
+        removeChunkExpiries(chunk);
+        if (unshareChunk(chunk) && metadata != null) {
+            // snapshots keep the removed map, callers get their own copy
+            metadata = new HashMap<>(metadata);
+        }
+        if (buffer.isEmpty()) {
+            buffer = null;
+        }
+        if (metadata != null) {
+            // set region as dirty
+            setDirty(true);
+            metadata.forEach((block, previous) -> listener.onChange(this, chunk, block, previous, null));
+        }
+        return metadata;
+    }
+
+    /**
+     * Get the time at which metadata of a block expires.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @return The expiry time in milliseconds since the epoch. Zero if the metadata doesn't expire.
+     */
+    public long getExpiry(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block) {
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> expiries = this.expiries;
+        Map<BlockChunkCoordinates, Long> chunkExpiries = expiries != null ? expiries.get(chunk) : null;
+        Long expiresAt = chunkExpiries != null ? chunkExpiries.get(block) : null;
+        return expiresAt != null ? expiresAt : 0;
+    }
+
+    /**
+     * Checks whether metadata of a block has expired.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param now The current time, in milliseconds.
+     * @return Whether the metadata has expired.
+     */
+    public boolean isExpired(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block, long now) {
+        long expiresAt = getExpiry(chunk, block);
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    /**
+     * Sets the time at which metadata of a block expires.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param expiresAt The expiry time in milliseconds since the epoch. Zero if the metadata shouldn't expire.
+     */
+    public void setExpiry(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block, long expiresAt) {
+        if (expiresAt == 0) {
+            // nothing to clear
+            Map<BlockChunkCoordinates, Long> chunkExpiries = expiries != null ? expiries.get(chunk) : null;
+            if (chunkExpiries == null || chunkExpiries.remove(block) == null) {
+                return;
+            }
+
+            // drop empty maps, so regions without expiring metadata skip the expiry checks
+            if (chunkExpiries.isEmpty()) {
+                removeChunkExpiries(chunk);
+            }
+        } else {
+            if (expiries == null) {
+                expiries = new HashMap<>();
+            }
+            expiries.computeIfAbsent(chunk, (c) -> new HashMap<>()).put(block, expiresAt);
+            listener.onExpiry(this, chunk, block, expiresAt);
+        }
+        setDirty(true);
+    }
+
+    /**
+     * Copies the buffer of this region, sharing the chunk maps with the copy.
+     * The shared chunk maps are copied by the next write to them, so the copy never changes.
+     * @return The copy of the buffer. Null if the region has no metadata.
+     */
+    public Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> shareBuffer() {
+        if (buffer == null) {
+            return null;
+        }
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> copy = new HashMap<>(buffer);
+        if (sharedChunks == null) {
+            sharedChunks = new HashSet<>();
+        }
+        sharedChunks.addAll(copy.keySet());
+        return copy;
+    }
+
+    /**
+     * Copies the expiry times of this region.
+     * The expiry times are modified in place, so they're copied entirely.
+     * @return The copy of the expiry times. Null if no metadata of this region expires.
+     */
+    public Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> copyExpiries() {
+        if (expiries == null) {
+            return null;
+        }
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> copy = new HashMap<>();
+        expiries.forEach((chunk, chunkExpiries) -> copy.put(chunk, new HashMap<>(chunkExpiries)));
+        return copy;
+    }
+
+    /**
+     * Get the metadata map of a chunk for modification.
+     * Chunk maps shared with snapshots are copied first, so the snapshots never change.
+     * @param chunk Coordinates of the chunk.
+     * @param create Whether the map should be created if the chunk has no metadata.
+     * @return The modifiable metadata map of the chunk. Null if the chunk has no metadata and none was created.
+     */
+    private Map<BlockChunkCoordinates, T> getWritableChunk(@NonNull ChunkCoordinates chunk, boolean create) {
+        Map<BlockChunkCoordinates, T> metadata = getChunk(chunk);
+        if (metadata == null) {
+            if (!create) {
+                return null;
+            }
+
+            // ensure buffer exists
+            if (buffer == null) {
+                buffer = new HashMap<>();
+            }
+            metadata = new HashMap<>();
+            buffer.put(chunk, metadata);
+            return metadata;
+        }
+
+        // copy the chunk map on the first write after a snapshot
+        if (unshareChunk(chunk)) {
+            metadata = new HashMap<>(metadata);
+            buffer.put(chunk, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Stops tracking a chunk map as shared with snapshots.
+     * @param chunk Coordinates of the chunk.
+     * @return Whether the chunk map was shared.
+     */
+    private boolean unshareChunk(@NonNull ChunkCoordinates chunk) {
+        if (sharedChunks == null || !sharedChunks.remove(chunk)) {
+            return false;
+        }
+        if (sharedChunks.isEmpty()) {
+            sharedChunks = null;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the expiry times of all metadata of a chunk.
+     * @param chunk Coordinates of the chunk.
+     */
+    private void removeChunkExpiries(@NonNull ChunkCoordinates chunk) {
+        if (expiries != null && expiries.remove(chunk) != null && expiries.isEmpty()) {
+            expiries = null;
+        }
+    }
+}
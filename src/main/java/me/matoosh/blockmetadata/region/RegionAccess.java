@@ -0,0 +1,93 @@
+package me.matoosh.blockmetadata.region;
+
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Internal access to the regions of a storage, used by the features built on top of it.
+ * The metadata of a resolved region is read and modified through the region itself, while holding its lock.
+ * @param <T> Type of the metadata.
+ */
+public interface RegionAccess<T> {
+    /**
+     * Resolves a region, loading it if it's not in memory yet.
+     * @param chunkInfo Information about a chunk of the region.
+     * @return Future completed with the region once it's loaded.
+     */
+    CompletableFuture<Region<T>> getRegion(ChunkInfo chunkInfo);
+
+    /**
+     * Resolves a region, loading it on the given executor if it's not in memory yet.
+     * @param chunkInfo Information about a chunk of the region.
+     * @param executorService Executor service to load the region on.
+     * @return Future completed with the region once it's loaded.
+     */
+    CompletableFuture<Region<T>> getRegion(ChunkInfo chunkInfo, ExecutorService executorService);
+
+    /**
+     * Checks whether a region has metadata in memory or on disk, without loading it.
+     * @param regionKey Key of the region.
+     * @return Whether the region is loaded or has a region file.
+     */
+    boolean isRegionStored(String regionKey);
+
+    /**
+     * Lists the keys of all regions stored on disk.
+     * @return Keys of the stored regions.
+     */
+    List<String> listRegionKeys();
+
+    /**
+     * Get the file in which a region is currently stored.
+     * @param regionKey Key of the region.
+     * @return The region file. The file of the current format if the region isn't stored at all.
+     */
+    Path findRegionFile(String regionKey);
+
+    /**
+     * Reads and parses a region file, without loading the region.
+     * @param regionFile Path to the region file.
+     * @return Future completed with the contents of the file, or with null if the file doesn't exist.
+     */
+    CompletableFuture<RegionContents<T>> readRegionFile(Path regionFile);
+
+    /**
+     * Get a region in memory.
+     * @param regionKey Key of the region.
+     * @return The region, possibly still loading. Null if the region isn't in memory.
+     */
+    Region<T> getLoadedRegion(String regionKey);
+
+    /**
+     * Get the regions in memory.
+     * @return The loaded and loading regions.
+     */
+    Collection<Region<T>> getLoadedRegions();
+
+    /**
+     * Saves a region on disk.
+     * @param region The region.
+     * @param unload Whether the region should be removed from memory once saved.
+     * @return Future completed once the region is saved.
+     */
+    CompletableFuture<Void> saveRegion(Region<T> region, boolean unload);
+
+    /**
+     * Get the contents of a region file for a region, as a copy which can be encoded without the region's lock.
+     * Must be called while holding the region's lock.
+     * @param region The region.
+     * @return The region file contents. Null if the region has no metadata.
+     */
+    Object getRegionFileContents(Region<T> region);
+
+    /**
+     * Get the expiry time of metadata set without an explicit time to live.
+     * @return The expiry time in milliseconds since the epoch. Zero if such metadata doesn't expire.
+     */
+    long getDefaultExpiry();
+}
@@ -0,0 +1,31 @@
+package me.matoosh.blockmetadata.region;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+
+import java.util.Map;
+
+/**
+ * Contents of a region file.
+ * @param <T> Type of the metadata.
+ */
+@Value
+public class RegionContents<T> {
+    /**
+     * Metadata of the region.
+     */
+    Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer;
+    /**
+     * Expiry times of the expiring metadata of the region. Null if no metadata expires.
+     */
+    Map<ChunkCoordinates, Map<BlockChunkCoordinates, Long>> expiries;
+    /**
+     * Whether the metadata values were upgraded from a previous schema version.
+     */
+    boolean upgraded;
+    /**
+     * Problems of the chunks which couldn't be decoded and are left out, by chunk key.
+     */
+    Map<String, String> corruptChunks;
+}
@@ -0,0 +1,31 @@
+package me.matoosh.blockmetadata.region;
+
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+
+/**
+ * Listener notified about the changes of the metadata of regions.
+ * The callbacks are called while the affected region is locked,
+ * possibly from different threads, so they should be quick and thread safe.
+ * @param <T> Type of the metadata.
+ */
+public interface RegionListener<T> {
+    /**
+     * Called when metadata of a block changes.
+     * @param region The region in which the block lies.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param previous Previous metadata of the block. Null if there was none.
+     * @param data New metadata of the block. Null if it was removed.
+     */
+    void onChange(Region<T> region, ChunkCoordinates chunk, BlockChunkCoordinates block, T previous, T data);
+
+    /**
+     * Called when metadata of a block is set to expire.
+     * @param region The region in which the block lies.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @param expiresAt The expiry time in milliseconds since the epoch.
+     */
+    void onExpiry(Region<T> region, ChunkCoordinates chunk, BlockChunkCoordinates block, long expiresAt);
+}
@@ -0,0 +1,133 @@
+package me.matoosh.blockmetadata.region;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.async.DaemonThreadFactory;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads regions speculatively, before any of their chunks is loaded,
+ * and unloads them again if they stay idle for too long.
+ * Regions are loaded speculatively by prefetching in front of moving players and by the warm-up on startup.
+ * @param <T> Type of the metadata.
+ */
+@Log
+@RequiredArgsConstructor
+public class RegionPrefetcher<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Time after which a speculatively loaded region is unloaded unless one of its chunks has been loaded,
+     * in milliseconds.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Preloads the regions around the spawn of each world and around each online player.
+     * The regions are loaded in parallel on low priority threads.
+     * @param radius Radius around each spawn and player to preload, in chunks.
+     * @param parallelism Maximum number of regions to load at once.
+     * @return Future completed once all the regions are loaded.
+     */
+    public CompletableFuture<Void> warmup(int radius, int parallelism) {
+        // find chunks around spawns and online players
+        List<Location> centers = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            centers.add(world.getSpawnLocation());
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            centers.add(player.getLocation());
+        }
+
+        // pick a single chunk for each region to load
+        Map<String, ChunkInfo> toLoad = new HashMap<>();
+        for (Location center : centers) {
+            String world = Objects.requireNonNull(center.getWorld()).getName();
+            int centerX = center.getBlockX() >> 4;
+            int centerZ = center.getBlockZ() >> 4;
+            for (int x = centerX - radius; x <= centerX + radius; x++) {
+                for (int z = centerZ - radius; z <= centerZ + radius; z++) {
+                    ChunkInfo chunkInfo = new ChunkInfo(world, new ChunkCoordinates(x, z));
+                    toLoad.putIfAbsent(BlockMetadataStorage.getRegionKey(chunkInfo), chunkInfo);
+                }
+            }
+        }
+
+        // load the regions on low priority threads
+        ExecutorService warmupExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                new DaemonThreadFactory("block-metadata-warmup", Thread.MIN_PRIORITY));
+        long start = System.currentTimeMillis();
+        CompletableFuture<?>[] tasks = toLoad.values().stream()
+                // regions which fail to load are logged, and loaded again when accessed
+                .map((chunkInfo) -> regions.getRegion(chunkInfo, warmupExecutor)
+                        .thenAccept(this::markSpeculative)
+                        .exceptionally((e) -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(tasks).whenComplete((s, e) -> {
+            warmupExecutor.shutdown();
+            log.info("Preloaded " + tasks.length + " block metadata regions in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        });
+    }
+
+    /**
+     * Starts loading the region in which a chunk lies, without marking the chunk as active.
+     * Does nothing if the region is already loaded or loading.
+     * @param chunkInfo Information about the chunk.
+     * @return Future completed once the region is loaded.
+     */
+    public CompletableFuture<Void> prefetch(@NonNull ChunkInfo chunkInfo) {
+        return regions.getRegion(chunkInfo).thenAccept(this::markSpeculative);
+    }
+
+    /**
+     * Marks a region as loaded speculatively.
+     * Unless one of its chunks is loaded in the meantime, the region is unloaded again
+     * once it's been idle for the configured time.
+     * @param region The region.
+     */
+    public void markSpeculative(@NonNull Region<T> region) {
+        if (region.getActiveChunks().isEmpty()) {
+            region.setIdleDeadline(System.currentTimeMillis() + idleTimeout);
+        }
+    }
+
+    /**
+     * Unloads the regions which were loaded speculatively and have stayed idle for too long,
+     * saving them first if needed. Regions with loaded chunks are kept.
+     * @return The number of regions unloaded.
+     */
+    public int unloadIdleRegions() {
+        long now = System.currentTimeMillis();
+        int unloaded = 0;
+        for (Region<T> region : regions.getLoadedRegions()) {
+            long idleDeadline = region.getIdleDeadline();
+            if (idleDeadline == 0 || idleDeadline > now || !region.getLoadFuture().isDone()) {
+                continue;
+            }
+            region.setIdleDeadline(0);
+            if (region.getActiveChunks().isEmpty()) {
+                regions.saveRegion(region, true);
+                unloaded++;
+            }
+        }
+        return unloaded;
+    }
+}
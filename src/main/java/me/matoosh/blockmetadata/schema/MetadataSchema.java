@@ -0,0 +1,109 @@
+package me.matoosh.blockmetadata.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.format.RegionTree;
+import me.matoosh.blockmetadata.format.UnsupportedRegionVersionException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Version of the schema of the stored metadata values, along with the upgraders
+ * bringing values of each previous version up to date.
+ * Each added upgrader increments the version, so an upgrader exists for every previous version.
+ * <pre>{@code
+ * MetadataSchema schema = MetadataSchema.initial()
+ *         // version 1 wraps the owner names in objects
+ *         .withUpgrader(value -> mapper.createObjectNode().set("owner", value));
+ * }</pre>
+ */
+public class MetadataSchema {
+
+    /**
+     * Upgraders of the schema, the upgrader at index n upgrades values from version n to n + 1.
+     */
+    private final List<ValueUpgrader> upgraders;
+
+    /**
+     * Current version of the schema.
+     */
+    @Getter
+    private final int version;
+
+    /**
+     * Creates a schema.
+     * @param upgraders Upgraders of each previous version.
+     */
+    private MetadataSchema(List<ValueUpgrader> upgraders) {
+        this.upgraders = Collections.unmodifiableList(upgraders);
+        this.version = upgraders.size();
+    }
+
+    /**
+     * Get the initial schema, version 0, in which all region files without a schema version are.
+     * @return The initial schema.
+     */
+    public static MetadataSchema initial() {
+        return new MetadataSchema(Collections.emptyList());
+    }
+
+    /**
+     * Creates the next version of this schema.
+     * @param upgrader Upgrades values from the version of this schema to the next.
+     * @return The next schema.
+     */
+    public MetadataSchema withUpgrader(@NonNull ValueUpgrader upgrader) {
+        List<ValueUpgrader> next = new ArrayList<>(upgraders);
+        next.add(upgrader);
+        return new MetadataSchema(next);
+    }
+
+    /**
+     * Upgrades the values of a region to the current version.
+     * Blocks whose values are upgraded to null lose their metadata and expiry times.
+     * @param tree Contents of the region.
+     * @return Whether the region was in a previous version.
+     * @throws IOException If the region was written with a newer version of the schema.
+     */
+    public boolean upgrade(@NonNull RegionTree tree) throws IOException {
+        int regionVersion = tree.getSchemaVersion();
+        if (regionVersion > version) {
+            throw new UnsupportedRegionVersionException("Region was written with schema version " + regionVersion
+                    + ", newer than the current version " + version);
+        }
+        if (regionVersion == version) {
+            return false;
+        }
+
+        for (Iterator<Map.Entry<String, JsonNode>> chunks = tree.getChunks().fields(); chunks.hasNext(); ) {
+            Map.Entry<String, JsonNode> chunk = chunks.next();
+            if (!chunk.getValue().isObject()) {
+                throw new IOException("Malformed metadata of chunk " + chunk.getKey());
+            }
+            ObjectNode blocks = (ObjectNode) chunk.getValue();
+            for (Iterator<Map.Entry<String, JsonNode>> entries = blocks.fields(); entries.hasNext(); ) {
+                Map.Entry<String, JsonNode> entry = entries.next();
+                JsonNode value = entry.getValue();
+                for (int v = regionVersion; v < version && value != null; v++) {
+                    value = upgraders.get(v).upgrade(value);
+                }
+                if (value != null) {
+                    entry.setValue(value);
+                } else {
+                    entries.remove();
+                }
+            }
+        }
+        // expiry times of removed values are dropped along with empty chunks
+        tree.compact(Long.MIN_VALUE);
+        tree.setSchemaVersion(version);
+        return true;
+    }
+}
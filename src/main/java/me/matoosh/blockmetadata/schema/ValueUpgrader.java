@@ -0,0 +1,20 @@
+package me.matoosh.blockmetadata.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Upgrades a stored metadata value from one schema version to the next.
+ * Values are upgraded in their stored form, before they're converted to the metadata type,
+ * so values written for a previous metadata class can still be read.
+ * Upgraders are called on the threads loading regions, so they must be thread safe.
+ */
+@FunctionalInterface
+public interface ValueUpgrader {
+
+    /**
+     * Upgrades a stored value.
+     * @param value The value in the previous schema version.
+     * @return The value in the next schema version. Null removes the metadata of the block.
+     */
+    JsonNode upgrade(JsonNode value);
+}
@@ -0,0 +1,116 @@
+package me.matoosh.blockmetadata.snapshot;
+
+import lombok.Getter;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable point-in-time view of the metadata of a world.
+ * The chunk maps are shared with the storage, which copies a chunk map
+ * before modifying it, so taking a snapshot doesn't copy any metadata
+ * and reading it never blocks modifications of the storage.
+ * The metadata values themselves are shared as well and shouldn't be mutated.
+ * @param <T> Type of the metadata.
+ */
+public class MetadataSnapshot<T> {
+
+    /**
+     * Name of the world.
+     */
+    @Getter
+    private final String world;
+    /**
+     * Time at which the snapshot was taken, in milliseconds.
+     */
+    @Getter
+    private final long timestamp;
+    /**
+     * Metadata of each chunk with metadata.
+     */
+    private final Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> chunks;
+
+    /**
+     * Creates a snapshot.
+     * @param world Name of the world.
+     * @param timestamp Time at which the snapshot was taken, in milliseconds.
+     * @param chunks Metadata of each chunk with metadata. None of the maps may be modified afterwards.
+     */
+    public MetadataSnapshot(@NonNull String world, long timestamp,
+                            @NonNull Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> chunks) {
+        this.world = world;
+        this.timestamp = timestamp;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Get metadata of a block.
+     * @param chunk Coordinates of the chunk in which the block lies.
+     * @param block Coordinates of the block within the chunk.
+     * @return Metadata of the block. Null if no data stored.
+     */
+    public T getMetadata(@NonNull ChunkCoordinates chunk, @NonNull BlockChunkCoordinates block) {
+        Map<BlockChunkCoordinates, T> metadata = chunks.get(chunk);
+        return metadata != null ? metadata.get(block) : null;
+    }
+
+    /**
+     * Get metadata of a block.
+     * @param block Location of the block.
+     * @return Metadata of the block. Null if no data stored or the block lies in another world.
+     */
+    public T getMetadata(@NonNull BlockInfo block) {
+        if (!world.equals(block.getChunk().getWorld())) {
+            return null;
+        }
+        return getMetadata(block.getChunk().getCoordinates(), block.getCoordinates());
+    }
+
+    /**
+     * Get metadata of blocks in a chunk.
+     * @param chunk Coordinates of the chunk.
+     * @return Metadata of the blocks in the chunk. Empty if the chunk has no metadata.
+     */
+    public Map<BlockChunkCoordinates, T> getMetadataInChunk(@NonNull ChunkCoordinates chunk) {
+        Map<BlockChunkCoordinates, T> metadata = chunks.get(chunk);
+        return metadata != null ? Collections.unmodifiableMap(metadata) : Collections.emptyMap();
+    }
+
+    /**
+     * Get the coordinates of all chunks with metadata.
+     * @return Coordinates of the chunks.
+     */
+    public Set<ChunkCoordinates> getChunks() {
+        return Collections.unmodifiableSet(chunks.keySet());
+    }
+
+    /**
+     * Runs an action for the metadata of each block.
+     * @param action The action.
+     */
+    public void forEach(@NonNull BiConsumer<BlockInfo, T> action) {
+        chunks.forEach((chunk, blocks) -> {
+            ChunkInfo chunkInfo = new ChunkInfo(world, chunk);
+            blocks.forEach((block, data) -> action.accept(new BlockInfo(chunkInfo, block), data));
+        });
+    }
+
+    /**
+     * Counts the blocks with metadata.
+     * @return The number of blocks with metadata.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<BlockChunkCoordinates, T> blocks : chunks.values()) {
+            size += blocks.size();
+        }
+        return size;
+    }
+}
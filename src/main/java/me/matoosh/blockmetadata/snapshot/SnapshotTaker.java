@@ -0,0 +1,80 @@
+package me.matoosh.blockmetadata.snapshot;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.format.RegionFileFormat;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Takes snapshots of the metadata of worlds, sharing the chunk maps of the regions instead of copying them.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class SnapshotTaker<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Takes a consistent point-in-time snapshot of the metadata of a world.
+     * All regions of the world are loaded, then locked together only for as long as it takes
+     * to share their chunk maps with the snapshot. Regions loaded just for the snapshot are unloaded again.
+     * @param world Name of the world.
+     * @return The snapshot.
+     */
+    public CompletableFuture<MetadataSnapshot<T>> takeSnapshot(@NonNull String world) {
+        // find the stored and loaded regions of the world
+        Set<String> regionKeys = new HashSet<>();
+        for (String regionKey : regions.listRegionKeys()) {
+            if (RegionFileFormat.getRegionChunk(regionKey).getWorld().equals(world)) {
+                regionKeys.add(regionKey);
+            }
+        }
+        regions.getLoadedRegions().stream()
+                .filter((region) -> region.getWorld().equals(world))
+                .forEach((region) -> regionKeys.add(region.getKey()));
+        Set<String> loaded = regions.getLoadedRegions().stream()
+                .map(Region::getKey)
+                .collect(Collectors.toSet());
+
+        // resolve the regions
+        List<CompletableFuture<Region<T>>> resolving = regionKeys.stream()
+                .map((regionKey) -> regions.getRegion(RegionFileFormat.getRegionChunk(regionKey)))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(resolving.toArray(new CompletableFuture[0])).thenApply((s) -> {
+            List<Region<T>> resolved = resolving.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+
+            // share the chunk maps of all regions at the same point in time
+            Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> chunks = new HashMap<>();
+            long timestamp = Region.lockedAll(resolved, () -> {
+                for (Region<T> region : resolved) {
+                    Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer = region.shareBuffer();
+                    if (buffer != null) {
+                        chunks.putAll(buffer);
+                    }
+                }
+                return System.currentTimeMillis();
+            });
+
+            // unload the regions which were only loaded for the snapshot
+            for (Region<T> region : resolved) {
+                if (!loaded.contains(region.getKey()) && region.getActiveChunks().isEmpty()) {
+                    regions.saveRegion(region, true);
+                }
+            }
+            return new MetadataSnapshot<>(world, timestamp, chunks);
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package me.matoosh.blockmetadata.task;
+
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataConfig;
+import lombok.NonNull;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically saves dirty regions of a storage, spreading the saves across ticks.
+ * Each run starts saves only within a time budget, oldest changes first.
+ * Also unloads the regions which were loaded speculatively and have stayed idle for too long.
+ * @param <T> Type of the saved metadata.
+ */
+@RequiredArgsConstructor
+public class AutosaveTask<T extends Serializable> extends BukkitRunnable {
+
+    private final BlockMetadataStorage<T> storage;
+
+    /**
+     * Access to the regions of the storage.
+     */
+    private final RegionAccess<T> regions;
+
+    /**
+     * Worlds whose dirty regions should be saved on the next runs.
+     */
+    private final Set<String> pendingWorlds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Time at which the indexes were last saved, in milliseconds.
+     */
+    private long lastIndexSave = System.currentTimeMillis();
+
+    /**
+     * Saves all dirty regions of a world over the next runs.
+     * @param world Name of the world.
+     */
+    public void requestWorldSave(String world) {
+        pendingWorlds.add(world);
+    }
+
+    @Override
+    public void run() {
+        BlockMetadataConfig config = storage.getConfig();
+        long maxDirtyAge = config.isAutosaveEnabled()
+                ? TimeUnit.SECONDS.toMillis(config.getMaxDirtyAge())
+                : Long.MAX_VALUE;
+        long timeBudget = TimeUnit.MILLISECONDS.toNanos(config.getAutosaveTickBudget());
+
+        // save indexes along with world saves, or once they could have been dirty for too long
+        long now = System.currentTimeMillis();
+        if (!pendingWorlds.isEmpty() || now - lastIndexSave >= maxDirtyAge) {
+            storage.saveIndexes();
+            lastIndexSave = now;
+        }
+
+        // save regions that are due
+        int remaining = saveDirtyRegions(pendingWorlds, maxDirtyAge, timeBudget);
+        if (remaining == 0) {
+            // every requested world has been saved
+            pendingWorlds.clear();
+        }
+
+        // unload prefetched regions which weren't needed after all
+        storage.unloadIdleRegions();
+    }
+
+    /**
+     * Saves the regions which have been dirty for too long, oldest changes first.
+     * Stops starting new saves once the time budget is used up,
+     * the remaining regions are saved on subsequent calls.
+     * @param worlds Worlds whose dirty regions should be saved regardless of their dirty age.
+     * @param maxDirtyAge How long a region may stay dirty before it's saved, in milliseconds.
+     * @param timeBudget How much time may be spent starting saves, in nanoseconds.
+     * @return The number of regions that are due but weren't saved within the time budget.
+     */
+    public int saveDirtyRegions(@NonNull Set<String> worlds, long maxDirtyAge, long timeBudget) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+
+        // find regions that are due to be saved
+        List<Region<T>> due = regions.getLoadedRegions().stream()
+                .filter(Region::isDirty)
+                .filter((region) -> region.getSaveFuture() == null || region.getSaveFuture().isDone())
+                .filter((region) -> worlds.contains(region.getWorld())
+                        || now - region.getDirtySince() >= maxDirtyAge)
+                .sorted(Comparator.comparingLong(Region::getDirtySince))
+                .collect(Collectors.toList());
+
+        // save as many as the budget allows
+        int started = 0;
+        for (Region<T> region : due) {
+            if (System.nanoTime() - start >= timeBudget) {
+                break;
+            }
+            regions.saveRegion(region, false);
+            started++;
+        }
+        return due.size() - started;
+    }
+}
@@ -0,0 +1,20 @@
+package me.matoosh.blockmetadata.task;
+
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.change.ChangeStream;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Flushes the buffered metadata changes to the subscribers once per tick.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class ChangeFlushTask<T> extends BukkitRunnable {
+
+    private final ChangeStream<T> changeStream;
+
+    @Override
+    public void run() {
+        changeStream.flush();
+    }
+}
@@ -0,0 +1,23 @@
+package me.matoosh.blockmetadata.task;
+
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.Serializable;
+
+/**
+ * Periodically removes expired metadata of a storage in bulk.
+ * Expired metadata is also removed lazily whenever it's accessed.
+ * @param <T> Type of the expiring metadata.
+ */
+@RequiredArgsConstructor
+public class ExpiryTask<T extends Serializable> extends BukkitRunnable {
+
+    private final BlockMetadataStorage<T> storage;
+
+    @Override
+    public void run() {
+        storage.expireMetadata();
+    }
+}
@@ -0,0 +1,19 @@
+package me.matoosh.blockmetadata.task;
+
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.profiler.ListenerProfiler;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Closes the tick of a listener profiler, once per tick.
+ */
+@RequiredArgsConstructor
+public class ProfilerTickTask extends BukkitRunnable {
+
+    private final ListenerProfiler profiler;
+
+    @Override
+    public void run() {
+        profiler.endTick();
+    }
+}
@@ -0,0 +1,139 @@
+package me.matoosh.blockmetadata.transaction;
+
+import lombok.NonNull;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import org.bukkit.block.Block;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Set of metadata operations across any chunks and regions, committed atomically.
+ * Operations are only staged until the transaction is committed,
+ * then applied in the order in which they were staged while all affected regions are locked.
+ * If any operation fails, all the operations are rolled back.
+ * @param <T> Type of the metadata.
+ */
+public class MetadataTransaction<T extends Serializable> {
+
+    /**
+     * Storage the transaction is committed to.
+     */
+    private final BlockMetadataStorage<T> storage;
+    /**
+     * The staged operations.
+     */
+    private final List<TransactionOperation<T>> operations = new ArrayList<>();
+    /**
+     * Whether the transaction has been committed.
+     */
+    private boolean committed;
+
+    /**
+     * Creates an empty transaction.
+     * @param storage Storage the transaction is committed to.
+     */
+    public MetadataTransaction(@NonNull BlockMetadataStorage<T> storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Stages setting metadata of a block.
+     * @param block The block.
+     * @param data Metadata to set to the block.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> set(@NonNull Block block, @NonNull T data) {
+        return set(BlockInfo.fromBlock(block), data);
+    }
+
+    /**
+     * Stages setting metadata of a block.
+     * @param block Location of the block.
+     * @param data Metadata to set to the block.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> set(@NonNull BlockInfo block, @NonNull T data) {
+        return stage(new TransactionOperation<>(TransactionOperation.Type.SET, null, block, data));
+    }
+
+    /**
+     * Stages removing metadata of a block.
+     * @param block The block.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> remove(@NonNull Block block) {
+        return remove(BlockInfo.fromBlock(block));
+    }
+
+    /**
+     * Stages removing metadata of a block.
+     * @param block Location of the block.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> remove(@NonNull BlockInfo block) {
+        return stage(new TransactionOperation<>(TransactionOperation.Type.REMOVE, null, block, null));
+    }
+
+    /**
+     * Stages moving metadata of a block to another block.
+     * Nothing is moved if the source block has no metadata when the operation is applied.
+     * @param source The block whose metadata is moved.
+     * @param target The block receiving the metadata.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> move(@NonNull Block source, @NonNull Block target) {
+        return move(BlockInfo.fromBlock(source), BlockInfo.fromBlock(target));
+    }
+
+    /**
+     * Stages moving metadata of a block to another block.
+     * Nothing is moved if the source block has no metadata when the operation is applied.
+     * @param source Location of the block whose metadata is moved.
+     * @param target Location of the block receiving the metadata.
+     * @return This transaction.
+     */
+    public MetadataTransaction<T> move(@NonNull BlockInfo source, @NonNull BlockInfo target) {
+        return stage(new TransactionOperation<>(TransactionOperation.Type.MOVE, source, target, null));
+    }
+
+    /**
+     * Get the staged operations.
+     * @return The staged operations, in the order in which they're applied.
+     */
+    public List<TransactionOperation<T>> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Commits the staged operations to the storage.
+     * @return Future completed once all the operations are applied,
+     *         or completed exceptionally once they're rolled back.
+     */
+    public CompletableFuture<Void> commit() {
+        synchronized (this) {
+            if (committed) {
+                throw new IllegalStateException("Transaction has already been committed");
+            }
+            committed = true;
+        }
+        return storage.commit(this);
+    }
+
+    /**
+     * Stages an operation.
+     * @param operation The operation.
+     * @return This transaction.
+     */
+    private synchronized MetadataTransaction<T> stage(TransactionOperation<T> operation) {
+        if (committed) {
+            throw new IllegalStateException("Transaction has already been committed");
+        }
+        operations.add(operation);
+        return this;
+    }
+}
@@ -0,0 +1,149 @@
+package me.matoosh.blockmetadata.transaction;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the operations of transactions to the regions of a storage atomically.
+ * @param <T> Type of the metadata.
+ */
+@RequiredArgsConstructor
+public class TransactionCommitter<T> {
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Commits the operations of a transaction.
+     * All affected regions are locked in the order of their keys, then the operations are applied in order.
+     * If any operation fails, the metadata of all affected blocks is restored.
+     * @param operations The operations of the transaction, in the order in which they were staged.
+     * @return Future completed once all the operations are applied,
+     *         or completed exceptionally once they're rolled back.
+     */
+    public CompletableFuture<Void> commit(@NonNull List<TransactionOperation<T>> operations) {
+        // find the affected regions
+        Map<String, ChunkInfo> regionChunks = new HashMap<>();
+        for (TransactionOperation<T> operation : operations) {
+            if (operation.getSource() != null) {
+                regionChunks.putIfAbsent(BlockMetadataStorage.getRegionKey(operation.getSource().getChunk()),
+                        operation.getSource().getChunk());
+            }
+            regionChunks.putIfAbsent(BlockMetadataStorage.getRegionKey(operation.getTarget().getChunk()),
+                    operation.getTarget().getChunk());
+        }
+
+        // resolve the regions
+        List<CompletableFuture<Region<T>>> resolving = regionChunks.values().stream()
+                .map(regions::getRegion)
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(resolving.toArray(new CompletableFuture[0])).thenAccept((s) -> {
+            Map<String, Region<T>> resolved = new HashMap<>();
+            for (CompletableFuture<Region<T>> region : resolving) {
+                resolved.put(region.join().getKey(), region.join());
+            }
+
+            // apply the operations while holding all the locks
+            Region.lockedAll(resolved.values(), () -> {
+                Map<BlockInfo, T> originals = new HashMap<>();
+                Map<BlockInfo, Long> originalExpiries = new HashMap<>();
+                try {
+                    for (TransactionOperation<T> operation : operations) {
+                        applyOperation(resolved, operation, originals, originalExpiries);
+                    }
+                } catch (RuntimeException exception) {
+                    // restore the affected blocks
+                    originals.forEach((block, data) -> {
+                        Region<T> region = resolved.get(BlockMetadataStorage.getRegionKey(block.getChunk()));
+                        ChunkCoordinates chunk = block.getChunk().getCoordinates();
+                        if (data == null) {
+                            region.remove(chunk, block.getCoordinates());
+                        } else {
+                            region.put(chunk, block.getCoordinates(), data);
+                            region.setExpiry(chunk, block.getCoordinates(), originalExpiries.get(block));
+                        }
+                    });
+                    throw exception;
+                }
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Applies a single operation of a transaction.
+     * Must be called while holding the locks of all affected regions.
+     * @param resolved The affected regions by key.
+     * @param operation The operation.
+     * @param originals Metadata of each block before the transaction, recorded when the block is first modified.
+     * @param originalExpiries Expiry times of each block before the transaction.
+     */
+    private void applyOperation(Map<String, Region<T>> resolved, TransactionOperation<T> operation,
+                                Map<BlockInfo, T> originals, Map<BlockInfo, Long> originalExpiries) {
+        BlockInfo target = operation.getTarget();
+        Region<T> targetRegion = resolved.get(BlockMetadataStorage.getRegionKey(target.getChunk()));
+        ChunkCoordinates targetChunk = target.getChunk().getCoordinates();
+
+        // find the metadata to set
+        T data;
+        long expiresAt = regions.getDefaultExpiry();
+        switch (operation.getType()) {
+            case SET:
+                data = operation.getData();
+                break;
+            case MOVE:
+                BlockInfo source = operation.getSource();
+                Region<T> sourceRegion = resolved.get(BlockMetadataStorage.getRegionKey(source.getChunk()));
+                ChunkCoordinates sourceChunk = source.getChunk().getCoordinates();
+                data = sourceRegion.get(sourceChunk, source.getCoordinates());
+                if (data == null) {
+                    // nothing to move
+                    return;
+                }
+                recordOriginal(sourceRegion, source, originals, originalExpiries);
+                expiresAt = sourceRegion.getExpiry(sourceChunk, source.getCoordinates());
+                sourceRegion.remove(sourceChunk, source.getCoordinates());
+                break;
+            default:
+                data = null;
+                break;
+        }
+
+        // modify the target block
+        recordOriginal(targetRegion, target, originals, originalExpiries);
+        if (data == null) {
+            targetRegion.remove(targetChunk, target.getCoordinates());
+        } else {
+            targetRegion.put(targetChunk, target.getCoordinates(), data);
+            targetRegion.setExpiry(targetChunk, target.getCoordinates(), expiresAt);
+        }
+    }
+
+    /**
+     * Records the metadata of a block before a transaction modifies it for the first time.
+     * @param region The region in which the block lies.
+     * @param block Location of the block.
+     * @param originals Metadata of each block before the transaction.
+     * @param originalExpiries Expiry times of each block before the transaction.
+     */
+    private void recordOriginal(Region<T> region, BlockInfo block,
+                                Map<BlockInfo, T> originals, Map<BlockInfo, Long> originalExpiries) {
+        if (originals.containsKey(block)) {
+            return;
+        }
+        ChunkCoordinates chunk = block.getChunk().getCoordinates();
+        originals.put(block, region.read(chunk, block.getCoordinates()));
+        originalExpiries.put(block, region.getExpiry(chunk, block.getCoordinates()));
+    }
+}
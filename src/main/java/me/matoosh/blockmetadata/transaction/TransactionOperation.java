@@ -0,0 +1,47 @@
+package me.matoosh.blockmetadata.transaction;
+
+import lombok.Value;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+
+/**
+ * Operation staged in a {@link MetadataTransaction}.
+ * @param <T> Type of the metadata.
+ */
+@Value
+public class TransactionOperation<T> {
+
+    /**
+     * Kind of a staged operation.
+     */
+    public enum Type {
+        /**
+         * Sets metadata of the target block.
+         */
+        SET,
+        /**
+         * Removes metadata of the target block.
+         */
+        REMOVE,
+        /**
+         * Moves metadata of the source block to the target block.
+         */
+        MOVE
+    }
+
+    /**
+     * Kind of the operation.
+     */
+    Type type;
+    /**
+     * Block whose metadata is moved. Null unless the operation is a move.
+     */
+    BlockInfo source;
+    /**
+     * Block whose metadata is modified.
+     */
+    BlockInfo target;
+    /**
+     * Metadata to set. Null unless the operation is a set.
+     */
+    T data;
+}
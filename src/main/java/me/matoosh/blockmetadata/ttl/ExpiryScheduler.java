@@ -0,0 +1,113 @@
+package me.matoosh.blockmetadata.ttl;
+
+import lombok.NonNull;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.region.Region;
+import me.matoosh.blockmetadata.region.RegionAccess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules the expiry of metadata with a time to live, and removes it once it's due.
+ * @param <T> Type of the metadata.
+ */
+public class ExpiryScheduler<T> {
+
+    /**
+     * Resolution of the expiry timing wheel, in milliseconds.
+     */
+    private static final long EXPIRY_TICK_DURATION = 1000;
+
+    private final RegionAccess<T> regions;
+
+    /**
+     * Time to live of metadata set without an explicit one, in milliseconds. Zero if such metadata doesn't expire.
+     */
+    private final long defaultTtl;
+
+    /**
+     * Timing wheel scheduling the expiry of metadata in loaded regions.
+     */
+    private final TimingWheel<BlockInfo> expiryWheel = new TimingWheel<>(
+            EXPIRY_TICK_DURATION, System.currentTimeMillis());
+
+    /**
+     * Instantiates a new expiry scheduler.
+     * @param regions Access to the regions of the storage.
+     * @param defaultTtl Time to live of metadata set without an explicit one, in milliseconds.
+     *                   Zero if such metadata shouldn't expire.
+     */
+    public ExpiryScheduler(@NonNull RegionAccess<T> regions, long defaultTtl) {
+        this.regions = regions;
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * Get the expiry time of metadata set now without an explicit time to live.
+     * @return The expiry time in milliseconds since the epoch. Zero if such metadata doesn't expire.
+     */
+    public long getDefaultExpiry() {
+        return defaultTtl > 0 ? System.currentTimeMillis() + defaultTtl : 0;
+    }
+
+    /**
+     * Schedules the metadata of a block to be checked for expiry.
+     * @param block Location of the block.
+     * @param expiresAt The expiry time in milliseconds since the epoch.
+     */
+    public void schedule(@NonNull BlockInfo block, long expiresAt) {
+        expiryWheel.schedule(block, expiresAt);
+    }
+
+    /**
+     * Schedules all the expiring metadata of a region, once it's loaded.
+     * @param region The region.
+     */
+    public void scheduleAll(@NonNull Region<T> region) {
+        region.getExpiries().forEach((chunk, blocks) -> {
+            ChunkInfo chunkInfo = new ChunkInfo(region.getWorld(), chunk);
+            blocks.forEach((block, expiresAt) -> expiryWheel.schedule(new BlockInfo(chunkInfo, block), expiresAt));
+        });
+    }
+
+    /**
+     * Removes the metadata of loaded regions whose time to live has passed.
+     * Only the entries due on the expiry timing wheel are checked, so no region is scanned.
+     * @return The number of removed metadata values.
+     */
+    public int expire() {
+        // collect the due blocks by region
+        long now = System.currentTimeMillis();
+        Map<String, List<BlockInfo>> due = new HashMap<>();
+        expiryWheel.advance(now, (block) -> due.computeIfAbsent(
+                BlockMetadataStorage.getRegionKey(block.getChunk()), (k) -> new ArrayList<>()).add(block));
+
+        // remove the blocks which haven't been updated since
+        int expired = 0;
+        for (Map.Entry<String, List<BlockInfo>> entry : due.entrySet()) {
+            // expiries of unloaded regions are scheduled again once they load
+            Region<T> region = regions.getLoadedRegion(entry.getKey());
+            if (region == null || !region.getLoadFuture().isDone()) {
+                continue;
+            }
+            expired += region.locked(() -> {
+                int removed = 0;
+                for (BlockInfo block : entry.getValue()) {
+                    ChunkCoordinates chunk = block.getChunk().getCoordinates();
+                    if (region.isExpired(chunk, block.getCoordinates(), now)
+                            && region.remove(chunk, block.getCoordinates()) != null) {
+                        removed++;
+                    }
+                }
+                return removed;
+            });
+        }
+        return expired;
+    }
+}
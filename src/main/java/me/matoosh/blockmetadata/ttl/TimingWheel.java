@@ -0,0 +1,177 @@
+package me.matoosh.blockmetadata.ttl;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel scheduling entries to expire at given times.
+ * Each level is a ring of slots, each slot of a level spans a whole ring of the level below.
+ * Entries are placed on the lowest level whose ring covers their deadline and cascade
+ * towards the lowest level as time advances, so neither scheduling nor expiring requires a scan.
+ * Entries can't be cancelled, owners should check whether a fired entry is still current.
+ * @param <E> Type of the scheduled entries.
+ */
+public class TimingWheel<E> {
+
+    /**
+     * Number of bits of a tick addressing a slot within a level.
+     */
+    private static final int SLOT_BITS = 6;
+    /**
+     * Number of slots of each level.
+     */
+    private static final int SLOTS = 1 << SLOT_BITS;
+    /**
+     * Mask selecting the slot bits of a tick.
+     */
+    private static final int SLOT_MASK = SLOTS - 1;
+    /**
+     * Number of levels of the wheel.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Duration of a single tick, in milliseconds.
+     */
+    @Getter
+    private final long tickDuration;
+    /**
+     * Slots of each level, created when first used.
+     */
+    private final List<Entry<E>>[][] wheels;
+    /**
+     * Entries whose deadline lies beyond the range of the highest level.
+     */
+    private List<Entry<E>> overflow = new ArrayList<>();
+    /**
+     * The last tick that has been processed.
+     */
+    private long currentTick;
+    /**
+     * Number of scheduled entries.
+     */
+    @Getter
+    private int size;
+
+    /**
+     * Creates a timing wheel.
+     * @param tickDuration Duration of a single tick, in milliseconds.
+     * @param now The current time, in milliseconds.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, long now) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        this.tickDuration = tickDuration;
+        this.wheels = new List[LEVELS][SLOTS];
+        this.currentTick = now / tickDuration;
+    }
+
+    /**
+     * Schedules an entry to expire.
+     * Entries whose deadline has already passed expire on the next advance.
+     * @param entry The entry.
+     * @param deadline Time at which the entry expires, in milliseconds.
+     */
+    public synchronized void schedule(E entry, long deadline) {
+        // round up, so entries never expire early
+        long tick = Math.max(currentTick + 1, (deadline + tickDuration - 1) / tickDuration);
+        place(new Entry<>(entry, tick));
+        size++;
+    }
+
+    /**
+     * Advances the wheel to the current time, expiring all the entries whose deadline has passed.
+     * @param now The current time, in milliseconds.
+     * @param expired Consumer of the expired entries.
+     */
+    public synchronized void advance(long now, Consumer<E> expired) {
+        long targetTick = now / tickDuration;
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // move entries of higher levels down, once the level below completes a ring
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                if (level == LEVELS - 1) {
+                    // the highest level completed a ring, the overflow may now fit into it
+                    List<Entry<E>> overflowing = overflow;
+                    overflow = new ArrayList<>();
+                    overflowing.forEach(this::place);
+                }
+            }
+
+            // expire entries of the current tick
+            int slot = (int) currentTick & SLOT_MASK;
+            List<Entry<E>> entries = wheels[0][slot];
+            if (entries != null) {
+                wheels[0][slot] = null;
+                size -= entries.size();
+                for (Entry<E> entry : entries) {
+                    expired.accept(entry.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Places an entry into the slot covering its deadline.
+     * @param entry The entry.
+     */
+    private void place(Entry<E> entry) {
+        long delta = entry.tick - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                int slot = (int) (entry.tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+                List<Entry<E>> entries = wheels[level][slot];
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                    wheels[level][slot] = entries;
+                }
+                entries.add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+
+    /**
+     * Moves the entries of a slot to the levels below.
+     * @param level The level of the slot.
+     * @param slot The slot.
+     */
+    private void cascade(int level, int slot) {
+        List<Entry<E>> entries = wheels[level][slot];
+        if (entries != null) {
+            wheels[level][slot] = null;
+            entries.forEach(this::place);
+        }
+    }
+
+    /**
+     * Entry scheduled on the wheel.
+     * @param <E> Type of the entry value.
+     */
+    private static class Entry<E> {
+        /**
+         * The scheduled value.
+         */
+        private final E value;
+        /**
+         * Tick at which the entry expires.
+         */
+        private final long tick;
+
+        private Entry(E value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package me.matoosh.blockmetadata;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Fails when the hot paths of the storage allocate more than their declared budgets,
+ * so that allocation regressions don't go unnoticed.
+ * Budgets are averages per operation, measured after a warm-up.
+ */
+class AllocationBudgetTest {
+
+    /**
+     * Bytes a read of a loaded region may allocate.
+     */
+    private static final long GET_BUDGET = 1024;
+    /**
+     * Bytes a write of a loaded region may allocate.
+     */
+    private static final long SET_BUDGET = 2048;
+    /**
+     * Bytes a removal from a loaded region may allocate.
+     */
+    private static final long REMOVE_BUDGET = 2048;
+    /**
+     * Bytes saving a region may allocate per block with metadata, across all threads.
+     */
+    private static final long SAVE_BUDGET_PER_ENTRY = 8192;
+    /**
+     * Bytes loading a region may allocate per block with metadata, across all threads.
+     */
+    private static final long LOAD_BUDGET_PER_ENTRY = 16384;
+
+    /**
+     * Number of warm-up operations, letting the JIT settle before measuring.
+     */
+    private static final int WARMUP = 20_000;
+    /**
+     * Number of measured operations.
+     */
+    private static final int OPERATIONS = 10_000;
+    /**
+     * Number of blocks with metadata in the measured chunk.
+     */
+    private static final int BLOCKS = 4096;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private BlockMetadataStorage<String> storage;
+    private ChunkInfo chunk;
+    private BlockChunkCoordinates[] blocks;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported(),
+                "Thread allocations can't be measured on this JVM");
+        ((com.sun.management.ThreadMXBean) threadBean).setThreadAllocatedMemoryEnabled(true);
+
+        ServerMock server = MockBukkit.mock();
+        server.addSimpleWorld("test-world");
+        storage = new BlockMetadataStorage<>(MockBukkit.createMockPlugin(),
+                Files.createTempDirectory("block-metadata-temp"));
+        chunk = new ChunkInfo("test-world", new ChunkCoordinates(0, 0));
+
+        // fill a chunk, which also loads its region
+        blocks = new BlockChunkCoordinates[BLOCKS];
+        Map<BlockChunkCoordinates, String> data = new HashMap<>();
+        for (int i = 0; i < BLOCKS; i++) {
+            blocks[i] = new BlockChunkCoordinates(i % 16, i / 256, (i / 16) % 16);
+            data.put(blocks[i], "value-" + i);
+        }
+        storage.setMetadataInChunk(chunk, data).join();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void getMetadataWithinBudget() {
+        Runnable operation = new Runnable() {
+            private int i;
+            @Override
+            public void run() {
+                storage.getMetadata(chunk, blocks[i++ % BLOCKS]).join();
+            }
+        };
+        assertWithinBudget("getMetadata", operation, GET_BUDGET);
+    }
+
+    @Test
+    void setMetadataWithinBudget() {
+        Runnable operation = new Runnable() {
+            private int i;
+            @Override
+            public void run() {
+                storage.setMetadata(chunk, blocks[i++ % BLOCKS], "value").join();
+            }
+        };
+        assertWithinBudget("setMetadata", operation, SET_BUDGET);
+    }
+
+    @Test
+    void removeMetadataWithinBudget() {
+        // restore each removed value, budgeting for both operations
+        Runnable operation = new Runnable() {
+            private int i;
+            @Override
+            public void run() {
+                BlockChunkCoordinates block = blocks[i++ % BLOCKS];
+                String removed = storage.removeMetadata(chunk, block).join();
+                storage.setMetadata(chunk, block, removed).join();
+            }
+        };
+        assertWithinBudget("removeMetadata", operation, REMOVE_BUDGET + SET_BUDGET);
+    }
+
+    @Test
+    void regionSaveAndLoadWithinBudget() {
+        // warm up the serialization
+        for (int i = 0; i < 5; i++) {
+            storage.setMetadata(chunk, blocks[0], "value-" + i).join();
+            storage.saveChunk(chunk, true).join();
+            assertNotNull(storage.getMetadata(chunk, blocks[0]).join());
+        }
+
+        // save the region
+        storage.setMetadata(chunk, blocks[0], "modified").join();
+        long start = getTotalAllocatedBytes();
+        storage.saveChunk(chunk, true).join();
+        long saveBytes = getTotalAllocatedBytes() - start;
+        assertFalse(storage.isChunkLoaded(chunk));
+
+        // load it back
+        start = getTotalAllocatedBytes();
+        assertEquals("modified", storage.getMetadata(chunk, blocks[0]).join());
+        long loadBytes = getTotalAllocatedBytes() - start;
+
+        assertTrue(saveBytes / BLOCKS <= SAVE_BUDGET_PER_ENTRY, "Saving a region allocated "
+                + saveBytes / BLOCKS + " bytes per entry, budget is " + SAVE_BUDGET_PER_ENTRY);
+        assertTrue(loadBytes / BLOCKS <= LOAD_BUDGET_PER_ENTRY, "Loading a region allocated "
+                + loadBytes / BLOCKS + " bytes per entry, budget is " + LOAD_BUDGET_PER_ENTRY);
+    }
+
+    /**
+     * Asserts that an operation allocates at most a given number of bytes on average,
+     * on the calling thread, which runs the whole operation on loaded regions.
+     * @param name Name of the operation.
+     * @param operation The operation.
+     * @param budget Maximum average number of bytes allocated per run.
+     */
+    private void assertWithinBudget(String name, Runnable operation, long budget) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long start = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+        long perOperation = (bean.getThreadAllocatedBytes(thread) - start) / OPERATIONS;
+        assertTrue(perOperation <= budget, name + " allocated " + perOperation
+                + " bytes per operation, budget is " + budget);
+    }
+
+    /**
+     * Get the number of bytes allocated by all live threads so far.
+     * @return The allocated bytes.
+     */
+    private long getTotalAllocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        long total = 0;
+        for (long allocated : bean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+}
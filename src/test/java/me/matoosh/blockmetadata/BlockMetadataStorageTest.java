@@ -1,10 +1,29 @@
 package me.matoosh.blockmetadata;
 
 import be.seeseemelk.mockbukkit.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.matoosh.blockmetadata.change.ChangeBatch;
+import me.matoosh.blockmetadata.change.MetadataChange;
+import me.matoosh.blockmetadata.clipboard.AreaTransform;
+import me.matoosh.blockmetadata.diagnostics.RegionEviction;
+import me.matoosh.blockmetadata.diagnostics.RegionVerification;
+import me.matoosh.blockmetadata.diagnostics.StorageDiagnostics;
+import me.matoosh.blockmetadata.diagnostics.WorldDiagnostics;
 import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
 import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import me.matoosh.blockmetadata.format.ChunkedRegionCodec;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.index.MetadataIndex;
+import me.matoosh.blockmetadata.index.ValueIndex;
+import me.matoosh.blockmetadata.metrics.StorageMetrics;
+import me.matoosh.blockmetadata.schema.MetadataSchema;
+import me.matoosh.blockmetadata.snapshot.MetadataSnapshot;
 import org.bukkit.Chunk;
+import org.bukkit.Location;
 import org.bukkit.block.Block;
+import org.bukkit.util.BlockVector;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,14 +32,18 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 abstract class BlockMetadataStorageTest<T extends Serializable> {
 
+    private MockPlugin mockPlugin;
     private WorldMock world;
     private ChunkMock sampleChunk;
     private ChunkInfo sampleChunkInfo;
@@ -32,7 +55,7 @@ abstract class BlockMetadataStorageTest<T extends Serializable> {
     @BeforeEach
     void setUp() throws ExecutionException, InterruptedException, IOException {
         ServerMock server = MockBukkit.mock();
-        MockPlugin mockPlugin = MockBukkit.createMockPlugin();
+        mockPlugin = MockBukkit.createMockPlugin();
         world = server.addSimpleWorld("test-world");
 
         Path dataDir = Files.createTempDirectory("block-metadata-temp");
@@ -86,6 +109,39 @@ abstract class BlockMetadataStorageTest<T extends Serializable> {
         assertTrue(blockMetadataStorage.isChunkLoaded(sampleChunkInfo));
     }
 
+    @Test
+    void unloadDuringSave() throws ExecutionException, InterruptedException {
+        blockMetadataStorage.setMetadata(sampleBlock, createMetadata()).get();
+
+        // unloading while another save is running should still unload the region
+        CompletableFuture<Void> save = blockMetadataStorage.saveChunk(sampleChunkInfo, false);
+        blockMetadataStorage.saveChunk(sampleChunkInfo, true).get();
+        save.get();
+        assertFalse(blockMetadataStorage.isChunkLoaded(sampleChunkInfo));
+    }
+
+    @Test
+    void unloadIdlePrefetchedRegion() throws ExecutionException, InterruptedException, IOException {
+        BlockMetadataConfig config = BlockMetadataConfig.builder()
+                .speculativeIdleTimeout(0)
+                .build();
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(
+                mockPlugin, Files.createTempDirectory("block-metadata-temp"), config);
+
+        // a prefetched region whose chunks never load should be unloaded
+        ChunkInfo farChunk = new ChunkInfo(world.getName(), new ChunkCoordinates(100, 100));
+        storage.prefetchRegion(farChunk).get();
+        assertTrue(storage.isChunkLoaded(farChunk));
+        assertEquals(1, storage.unloadIdleRegions());
+        assertFalse(storage.isChunkLoaded(farChunk));
+
+        // unless one of its chunks loads in the meantime
+        storage.prefetchRegion(farChunk).get();
+        storage.loadChunk(farChunk).get();
+        assertEquals(0, storage.unloadIdleRegions());
+        assertTrue(storage.isChunkLoaded(farChunk));
+    }
+
     @Test
     void removeMetadata() throws ExecutionException, InterruptedException {
         // set metadata on a block
@@ -175,9 +231,13 @@ abstract class BlockMetadataStorageTest<T extends Serializable> {
         assertEquals(1, retrievedMetadata.size());
         // ensure the block we set metadata for is in the map
         assertTrue(retrievedMetadata.containsKey(BlockChunkCoordinates.fromBlock(sampleBlock)));
+        // the map can't be used to modify the chunk
+        assertThrows(UnsupportedOperationException.class, retrievedMetadata::clear);
 
         // remove metadata from block
         blockMetadataStorage.removeMetadata(sampleBlock).get();
+        // the copy retrieved earlier stays the same
+        assertEquals(1, retrievedMetadata.size());
 
         // make sure there are no blocks with metadata
         assertNull(blockMetadataStorage.getMetadataInChunk(sampleChunkInfo).get());
@@ -262,4 +322,701 @@ abstract class BlockMetadataStorageTest<T extends Serializable> {
         // chunk should not be busy anymore
         assertFalse(blockMetadataStorage.isChunkSaving(chunkInfo));
     }
-}
\ No newline at end of file
+
+    @Test
+    void saveDirtyRegions() throws ExecutionException, InterruptedException {
+        // set metadata on block
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        assertTrue(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+
+        // regions that haven't been dirty for long enough shouldn't be saved
+        assertEquals(0, blockMetadataStorage.saveDirtyRegions(
+                Collections.emptySet(), Long.MAX_VALUE, Long.MAX_VALUE));
+        assertTrue(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+
+        // save the regions of the world
+        assertEquals(0, blockMetadataStorage.saveDirtyRegions(
+                Collections.singleton(world.getName()), Long.MAX_VALUE, Long.MAX_VALUE));
+        while (blockMetadataStorage.isChunkSaving(sampleChunkInfo)) {
+            Thread.sleep(10);
+        }
+
+        // the region should be clean now
+        assertFalse(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+    }
+
+    @Test
+    void shutdownSavesDirtyRegions() throws ExecutionException, InterruptedException {
+        // set metadata on block
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        assertTrue(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+
+        // shut the storage down
+        blockMetadataStorage.shutdown();
+
+        // everything should be saved now
+        assertFalse(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+        assertFalse(blockMetadataStorage.isChunkSaving(sampleChunkInfo));
+    }
+
+    @Test
+    void warmupPreloadsSpawnRegion() throws ExecutionException, InterruptedException, IOException {
+        // create a storage with warm-up enabled
+        BlockMetadataConfig config = BlockMetadataConfig.builder()
+                .warmupEnabled(true)
+                .warmupRadius(1)
+                .build();
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin,
+                Files.createTempDirectory("block-metadata-temp"), config);
+
+        // wait for the warm-up to finish
+        storage.getWarmupFuture().get();
+
+        // the spawn region should be loaded
+        ChunkInfo spawnChunkInfo = ChunkInfo.fromChunk(world.getSpawnLocation().getChunk());
+        assertTrue(storage.isChunkLoaded(spawnChunkInfo));
+    }
+
+    @Test
+    void setGetRemoveMetadataBulk() throws ExecutionException, InterruptedException {
+        // blocks in different chunks and regions
+        List<Block> blocks = Arrays.asList(
+                sampleBlock,
+                world.getBlockAt(1, 0, 1),
+                world.getBlockAt(40, 0, 40),
+                world.getBlockAt(600, 0, 600));
+        Block emptyBlock = world.getBlockAt(2, 0, 2);
+
+        // set metadata on all blocks at once
+        Map<Block, T> metadata = new HashMap<>();
+        for (Block block : blocks) {
+            metadata.put(block, createMetadata());
+        }
+        blockMetadataStorage.setMetadataBulk(metadata).get();
+
+        // each block should have its metadata
+        for (Block block : blocks) {
+            assertEquals(metadata.get(block), blockMetadataStorage.getMetadata(block).get());
+        }
+
+        // retrieve the metadata at once, blocks without metadata should be left out
+        List<Block> queried = new ArrayList<>(blocks);
+        queried.add(emptyBlock);
+        assertEquals(metadata, blockMetadataStorage.getMetadataBulk(queried).get());
+
+        // remove the metadata at once
+        assertEquals(metadata, blockMetadataStorage.removeMetadataBulk(queried).get());
+        for (Block block : blocks) {
+            assertNull(blockMetadataStorage.getMetadata(block).get());
+        }
+        assertNull(blockMetadataStorage.getMetadataInChunk(sampleChunkInfo).get());
+    }
+
+    @Test
+    void getMetadataInArea() throws ExecutionException, InterruptedException {
+        // set metadata inside and outside of the area
+        Map<Block, T> metadata = new HashMap<>();
+        Block inside = world.getBlockAt(-5, 3, 20);
+        Block insideOtherRegion = world.getBlockAt(300, 10, 20);
+        Block outside = world.getBlockAt(-5, 50, 20);
+        metadata.put(inside, createMetadata());
+        metadata.put(insideOtherRegion, createMetadata());
+        metadata.put(outside, createMetadata());
+        blockMetadataStorage.setMetadataBulk(metadata).get();
+
+        // query the area, corners in any order
+        Map<BlockInfo, T> found = blockMetadataStorage.getMetadataInArea(world,
+                new BlockVector(300, 0, 30), new BlockVector(-10, 20, 0)).get();
+
+        // only the blocks within the area should be found
+        assertEquals(2, found.size());
+        assertEquals(metadata.get(inside), found.get(BlockInfo.fromBlock(inside)));
+        assertEquals(metadata.get(insideOtherRegion), found.get(BlockInfo.fromBlock(insideOtherRegion)));
+    }
+
+    @Test
+    void spatialIndexQueries() throws ExecutionException, InterruptedException, IOException {
+        // create a storage with the spatial index enabled
+        BlockMetadataConfig config = BlockMetadataConfig.builder()
+                .spatialIndexEnabled(true)
+                .build();
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin,
+                Files.createTempDirectory("block-metadata-temp"), config);
+
+        // set metadata on a couple of blocks
+        T metadata = createMetadata();
+        Block farBlock = world.getBlockAt(30, 0, 30);
+        storage.setMetadata(sampleBlock, metadata).get();
+        storage.setMetadata(farBlock, metadata).get();
+
+        // query the index
+        Location center = new Location(world, 2, 0, 2);
+        assertEquals(BlockInfo.fromBlock(sampleBlock), storage.findNearest(center, 64).getKey());
+        assertEquals(1, storage.findWithinRadius(center, 10).size());
+        assertEquals(2, storage.findWithinRadius(center, 64).size());
+
+        // removed metadata shouldn't be found anymore
+        storage.removeMetadata(sampleBlock).get();
+        assertEquals(BlockInfo.fromBlock(farBlock), storage.findNearest(center, 64).getKey());
+    }
+
+    @Test
+    void getMetadataByValue() throws ExecutionException, InterruptedException {
+        // index the metadata by its text
+        ValueIndex<T> index = blockMetadataStorage.addValueIndex("text", Object::toString);
+
+        // set the same metadata on blocks in different regions
+        T metadata = createMetadata();
+        Block otherBlock = world.getBlockAt(600, 0, 600);
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.setMetadata(otherBlock, metadata).get();
+
+        // both blocks should be found by value
+        Map<BlockInfo, T> found = blockMetadataStorage.getMetadataByValue(index, metadata.toString()).get();
+        assertEquals(2, found.size());
+        assertEquals(metadata, found.get(BlockInfo.fromBlock(otherBlock)));
+
+        // removed metadata shouldn't be found anymore
+        blockMetadataStorage.removeMetadata(otherBlock).get();
+        assertEquals(1, blockMetadataStorage.getMetadataByValue(index, metadata.toString()).get().size());
+
+        // the index should be persisted
+        blockMetadataStorage.saveIndexes().get();
+        assertTrue(Files.exists(index.getFilePath()));
+    }
+
+    @Test
+    void computeMetadataIsAtomic() throws ExecutionException, InterruptedException {
+        // compute the metadata concurrently, counting the invocations without synchronization
+        T metadata = createMetadata();
+        int[] invocations = new int[1];
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> blockMetadataStorage.computeMetadata(sampleBlock,
+                    (coordinates, current) -> {
+                        invocations[0]++;
+                        return current == null ? metadata : current;
+                    })).thenCompose((future) -> future));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        // no invocation should have been lost
+        assertEquals(100, invocations[0]);
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+
+        // computing null should remove the metadata
+        assertNull(blockMetadataStorage.computeMetadata(sampleBlock, (coordinates, current) -> null).get());
+        assertNull(blockMetadataStorage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void computeMetadataReturningCurrent() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.flushRegions(null).get();
+        assertFalse(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+
+        // the current value may have been modified in place, so it has to be saved again
+        blockMetadataStorage.computeMetadata(sampleBlock, (coordinates, current) -> current).get();
+        assertTrue(blockMetadataStorage.isChunkDirty(sampleChunkInfo));
+    }
+
+    @Test
+    void mergeMetadata() throws ExecutionException, InterruptedException {
+        // merging into a block without metadata should set it
+        T metadata = createMetadata();
+        assertEquals(metadata, blockMetadataStorage.mergeMetadata(sampleBlock, metadata, (a, b) -> b).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+
+        // merging to null should remove the metadata
+        assertNull(blockMetadataStorage.mergeMetadata(sampleBlock, metadata, (a, b) -> null).get());
+        assertNull(blockMetadataStorage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void putIfAbsent() throws ExecutionException, InterruptedException {
+        // the first put should succeed
+        T metadata = createMetadata();
+        assertNull(blockMetadataStorage.putIfAbsent(sampleBlock, metadata).get());
+
+        // the second put should return the existing metadata
+        assertEquals(metadata, blockMetadataStorage.putIfAbsent(sampleBlock, createMetadata()).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void compareAndSet() throws ExecutionException, InterruptedException {
+        // setting should only succeed when no metadata is expected
+        T metadata = createMetadata();
+        assertTrue(blockMetadataStorage.compareAndSet(sampleBlock, null, metadata).get());
+        assertFalse(blockMetadataStorage.compareAndSet(sampleBlock, null, metadata).get());
+
+        // removing should only succeed with the current metadata expected
+        assertTrue(blockMetadataStorage.compareAndSet(sampleBlock, metadata, null).get());
+        assertNull(blockMetadataStorage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void expiredMetadataRemovedOnAccess() throws ExecutionException, InterruptedException {
+        // set metadata which expires right away
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata, Duration.ofMillis(10)).get();
+        Thread.sleep(20);
+
+        // expired metadata shouldn't be found anymore
+        assertNull(blockMetadataStorage.getMetadata(sampleBlock).get());
+        assertNull(blockMetadataStorage.getExpiry(sampleBlock).get());
+        assertFalse(blockMetadataStorage.hasMetadataForChunk(sampleChunkInfo).get());
+    }
+
+    @Test
+    void expireMetadata() throws ExecutionException, InterruptedException {
+        // set expiring and permanent metadata
+        T metadata = createMetadata();
+        Block permanentBlock = world.getBlockAt(1, 0, 0);
+        blockMetadataStorage.setMetadata(sampleBlock, metadata, Duration.ofMillis(10)).get();
+        blockMetadataStorage.setMetadata(permanentBlock, metadata).get();
+
+        // nothing is due yet
+        assertEquals(0, blockMetadataStorage.expireMetadata());
+
+        // once the wheel advances past the deadline, the metadata should be removed in bulk
+        Thread.sleep(1100);
+        assertEquals(1, blockMetadataStorage.expireMetadata());
+        assertNull(blockMetadataStorage.getMetadataInChunk(sampleChunkInfo).get()
+                .get(BlockChunkCoordinates.fromBlock(sampleBlock)));
+        assertEquals(metadata, blockMetadataStorage.getMetadata(permanentBlock).get());
+    }
+
+    @Test
+    void expiryPersisted() throws ExecutionException, InterruptedException {
+        // set expiring metadata
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata, Duration.ofHours(1)).get();
+        Long expiry = blockMetadataStorage.getExpiry(sampleBlock).get();
+        assertNotNull(expiry);
+
+        // unload the region and load it again from disk
+        blockMetadataStorage.saveChunk(sampleChunkInfo, true).get();
+        assertFalse(blockMetadataStorage.isChunkLoaded(sampleChunkInfo));
+
+        // the metadata and its expiry should be restored
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+        assertEquals(expiry, blockMetadataStorage.getExpiry(sampleBlock).get());
+
+        // setting metadata without a time to live should keep it forever
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        assertNull(blockMetadataStorage.getExpiry(sampleBlock).get());
+    }
+
+    @Test
+    void subscribeToChanges() throws ExecutionException, InterruptedException {
+        List<ChangeBatch<T>> batches = new ArrayList<>();
+        blockMetadataStorage.subscribe(batches::add, Runnable::run);
+
+        // change metadata of a block within a tick
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.getChangeStream().flush();
+
+        // the change should be delivered in a batch
+        assertEquals(1, batches.size());
+        MetadataChange<T> change = batches.get(0).getChanges().get(0);
+        assertEquals(BlockInfo.fromBlock(sampleBlock), change.getBlock());
+        assertNull(change.getPrevious());
+        assertEquals(metadata, change.getData());
+    }
+
+    @Test
+    void snapshot() throws ExecutionException, InterruptedException {
+        // set metadata in a loaded and an unloaded region
+        T metadata = createMetadata();
+        Block otherBlock = world.getBlockAt(600, 0, 600);
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.setMetadata(otherBlock, metadata).get();
+        ChunkInfo otherChunkInfo = ChunkInfo.fromChunk(otherBlock.getChunk());
+        blockMetadataStorage.saveChunk(otherChunkInfo, true).get();
+        assertFalse(blockMetadataStorage.isChunkLoaded(otherChunkInfo));
+
+        // the snapshot should contain both regions
+        MetadataSnapshot<T> snapshot = blockMetadataStorage.snapshot(world).get();
+        assertEquals(2, snapshot.size());
+        assertEquals(metadata, snapshot.getMetadata(BlockInfo.fromBlock(sampleBlock)));
+
+        // later modifications shouldn't be visible in the snapshot
+        Block newBlock = world.getBlockAt(1, 0, 0);
+        blockMetadataStorage.setMetadata(newBlock, metadata).get();
+        blockMetadataStorage.removeMetadata(sampleBlock).get();
+        assertEquals(2, snapshot.size());
+        assertEquals(metadata, snapshot.getMetadata(BlockInfo.fromBlock(sampleBlock)));
+        assertNull(snapshot.getMetadata(BlockInfo.fromBlock(newBlock)));
+
+        // but visible in the storage
+        assertNull(blockMetadataStorage.getMetadata(sampleBlock).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(newBlock).get());
+    }
+
+    @Test
+    void copyAreaRotated() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(world.getBlockAt(0, 10, 0), metadata).get();
+        blockMetadataStorage.setMetadata(world.getBlockAt(4, 10, 1), metadata).get();
+
+        // copy a 5x2 area rotated by a quarter turn
+        int copied = blockMetadataStorage.copyArea(world.getName(), new BlockVector(0, 10, 0),
+                new BlockVector(4, 10, 1), world.getName(), new BlockVector(100, 20, 100),
+                AreaTransform.rotate(1)).get();
+        assertEquals(2, copied);
+
+        // the copies should be rotated, the originals kept
+        assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(101, 20, 100)).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(100, 20, 104)).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(0, 10, 0)).get());
+    }
+
+    @Test
+    void moveAreaByChunks() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        Block inside = world.getBlockAt(17, 5, 18);
+        Block edge = world.getBlockAt(40, 5, 20);
+        blockMetadataStorage.setMetadata(inside, metadata).get();
+        blockMetadataStorage.setMetadata(edge, metadata).get();
+
+        // move an area overlapping its destination by whole chunks
+        int moved = blockMetadataStorage.moveArea(world.getName(), new BlockVector(16, 0, 16),
+                new BlockVector(40, 255, 47), world.getName(), new BlockVector(32, 0, 16),
+                AreaTransform.NONE).get();
+        assertEquals(2, moved);
+
+        // the metadata should only be found at the destination
+        assertNull(blockMetadataStorage.getMetadata(inside).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(33, 5, 18)).get());
+        assertNull(blockMetadataStorage.getMetadata(edge).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(56, 5, 20)).get());
+    }
+
+    @Test
+    void moveAreaKeepsExpiry() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        Block inside = world.getBlockAt(17, 5, 18);
+        Block edge = world.getBlockAt(40, 5, 20);
+        blockMetadataStorage.setMetadata(inside, metadata, Duration.ofHours(1)).get();
+        blockMetadataStorage.setMetadata(edge, metadata, Duration.ofHours(2)).get();
+        Long insideExpiry = blockMetadataStorage.getExpiry(inside).get();
+        Long edgeExpiry = blockMetadataStorage.getExpiry(edge).get();
+
+        // both the whole chunks and the single blocks should keep their expiry times
+        blockMetadataStorage.moveArea(world.getName(), new BlockVector(16, 0, 16),
+                new BlockVector(40, 255, 47), world.getName(), new BlockVector(32, 0, 16),
+                AreaTransform.NONE).get();
+        assertEquals(insideExpiry, blockMetadataStorage.getExpiry(world.getBlockAt(33, 5, 18)).get());
+        assertEquals(edgeExpiry, blockMetadataStorage.getExpiry(world.getBlockAt(56, 5, 20)).get());
+        assertNull(blockMetadataStorage.getExpiry(inside).get());
+        assertNull(blockMetadataStorage.getExpiry(edge).get());
+    }
+
+    @Test
+    void moveAreaOverlapping() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        for (int x = 0; x < 3; x++) {
+            blockMetadataStorage.setMetadata(world.getBlockAt(x, 0, 0), metadata).get();
+        }
+
+        // shift a row of blocks by one block
+        blockMetadataStorage.moveArea(world.getName(), new BlockVector(0, 0, 0), new BlockVector(2, 0, 0),
+                world.getName(), new BlockVector(1, 0, 0), AreaTransform.NONE).get();
+
+        assertNull(blockMetadataStorage.getMetadata(world.getBlockAt(0, 0, 0)).get());
+        for (int x = 1; x < 4; x++) {
+            assertEquals(metadata, blockMetadataStorage.getMetadata(world.getBlockAt(x, 0, 0)).get());
+        }
+    }
+
+    @Test
+    void commitTransaction() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        Block origin = world.getBlockAt(511, 0, 0);
+        Block destination = world.getBlockAt(512, 0, 0);
+        Block other = world.getBlockAt(0, 0, 600);
+        blockMetadataStorage.setMetadata(origin, metadata).get();
+
+        // move across a region border and set a block in another region at once
+        blockMetadataStorage.beginTransaction()
+                .move(origin, destination)
+                .set(other, metadata)
+                .remove(sampleBlock)
+                .commit().get();
+
+        assertNull(blockMetadataStorage.getMetadata(origin).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(destination).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(other).get());
+    }
+
+    @Test
+    void failedTransactionRollsBack() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        Block origin = world.getBlockAt(511, 0, 0);
+        Block destination = world.getBlockAt(512, 0, 0);
+        Block failing = world.getBlockAt(0, 0, 600);
+        blockMetadataStorage.setMetadata(origin, metadata).get();
+
+        // fail when the last block is modified
+        BlockInfo failingInfo = BlockInfo.fromBlock(failing);
+        blockMetadataStorage.addIndex(new MetadataIndex<T>() {
+            @Override
+            public void onChange(String regionKey, BlockInfo block, T previous, T data) {
+                if (block.equals(failingInfo) && data != null) {
+                    throw new IllegalStateException("Index failure");
+                }
+            }
+
+            @Override
+            public void onRegionLoad(String regionKey, String world,
+                                     Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+            }
+
+            @Override
+            public void onRegionUnload(String regionKey, String world,
+                                       Map<ChunkCoordinates, Map<BlockChunkCoordinates, T>> buffer) {
+            }
+        });
+        CompletableFuture<Void> commit = blockMetadataStorage.beginTransaction()
+                .move(origin, destination)
+                .set(failing, metadata)
+                .commit();
+        assertThrows(ExecutionException.class, commit::get);
+
+        // none of the operations should have been applied
+        assertEquals(metadata, blockMetadataStorage.getMetadata(origin).get());
+        assertNull(blockMetadataStorage.getMetadata(destination).get());
+        assertNull(blockMetadataStorage.getMetadata(failing).get());
+    }
+
+    @Test
+    void metricsRecorded() throws ExecutionException, InterruptedException {
+        // save a region and load it back
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.saveChunk(sampleChunkInfo, true).get();
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+
+        // the loads, save and file sizes should have been recorded
+        StorageMetrics metrics = blockMetadataStorage.getMetrics();
+        assertTrue(metrics.getRegionRequests().getCount() >= 3);
+        assertTrue(metrics.getLoadLatency().getCount() >= 2);
+        assertEquals(1, metrics.getSaveLatency().getCount());
+        assertEquals(1, metrics.getWriteLatency().getCount());
+        assertTrue(metrics.getBytesWritten().getCount() > 0);
+        assertEquals(metrics.getBytesWritten().getCount(), metrics.getBytesRead().getCount());
+        assertFalse(metrics.getSlowestLoads().getSlowest().isEmpty());
+
+        // gauges should be sampled along with the other metrics
+        Map<String, Long> values = metrics.getRegistry().getValues();
+        assertEquals(1L, values.get("regions.loaded"));
+        assertEquals(0L, values.get("regions.dirty"));
+        assertTrue(values.containsKey("region.load.p99"));
+    }
+
+    @Test
+    void diagnostics() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        blockMetadataStorage.setMetadata(world.getBlockAt(1, 0, 0), metadata).get();
+
+        // the dirty region should be reported in memory only
+        StorageDiagnostics diagnostics = blockMetadataStorage.getDiagnostics().get();
+        assertEquals(1, diagnostics.getWorlds().size());
+        WorldDiagnostics worldDiagnostics = diagnostics.getWorlds().get(0);
+        assertEquals(world.getName(), worldDiagnostics.getWorld());
+        assertEquals(1, worldDiagnostics.getLoadedRegions());
+        assertEquals(1, worldDiagnostics.getDirtyRegions());
+        assertEquals(2, worldDiagnostics.getEntries());
+        assertTrue(worldDiagnostics.getMemoryEstimate() > 0);
+        assertEquals(0, worldDiagnostics.getRegionFiles());
+
+        // flushing should save the region to disk
+        assertEquals(1, blockMetadataStorage.flushRegions(world.getName()).get());
+        worldDiagnostics = blockMetadataStorage.getDiagnostics().get().getWorlds().get(0);
+        assertEquals(0, worldDiagnostics.getDirtyRegions());
+        assertEquals(1, worldDiagnostics.getRegionFiles());
+        assertTrue(worldDiagnostics.getDiskBytes() > 0);
+    }
+
+    @Test
+    void evictAndVerifyRegion() throws ExecutionException, InterruptedException {
+        T metadata = createMetadata();
+        blockMetadataStorage.setMetadata(sampleBlock, metadata).get();
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+
+        // unsaved changes can't be compared
+        RegionVerification verification = blockMetadataStorage.verifyRegion(regionKey).get();
+        assertFalse(verification.isFileExists());
+        assertNull(verification.getMatchesMemory());
+
+        // a saved region should match memory
+        blockMetadataStorage.flushRegions(null).get();
+        verification = blockMetadataStorage.verifyRegion(regionKey).get();
+        assertTrue(verification.isFileExists());
+        assertTrue(verification.isReadable());
+        assertEquals(1, verification.getFileEntries());
+        assertEquals(Boolean.TRUE, verification.getMatchesMemory());
+
+        // regions with loaded chunks should be kept
+        blockMetadataStorage.loadChunk(sampleChunkInfo).get();
+        assertEquals(RegionEviction.ACTIVE, blockMetadataStorage.evictRegion(regionKey).get());
+        assertTrue(blockMetadataStorage.isChunkLoaded(sampleChunkInfo));
+        blockMetadataStorage.unloadChunks(sampleChunkInfo).get();
+
+        // an evicted region should be loaded again on access
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+        assertEquals(RegionEviction.EVICTED, blockMetadataStorage.evictRegion(regionKey).get());
+        assertFalse(blockMetadataStorage.isChunkLoaded(sampleChunkInfo));
+        assertEquals(RegionEviction.NOT_LOADED, blockMetadataStorage.evictRegion(regionKey).get());
+        assertEquals(metadata, blockMetadataStorage.getMetadata(sampleBlock).get());
+
+        // keys outside of the data folder should be rejected
+        assertThrows(ExecutionException.class, () -> blockMetadataStorage.verifyRegion("../test_0_0").get());
+    }
+
+    @Test
+    void lazyMigration() throws ExecutionException, InterruptedException, IOException {
+        // save metadata in the yaml format
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        BlockMetadataStorage<T> yamlStorage = new BlockMetadataStorage<>(mockPlugin, dataDir);
+        T metadata = createMetadata();
+        yamlStorage.setMetadata(sampleBlock, metadata).get();
+        yamlStorage.saveChunk(sampleChunkInfo, true).get();
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+        assertTrue(Files.exists(dataDir.resolve(regionKey + ".yml")));
+
+        // the region should be loaded from the yaml file
+        BlockMetadataConfig config = BlockMetadataConfig.builder()
+                .regionFormat(RegionFormat.CHUNKED)
+                .lazyMigrationEnabled(true)
+                .build();
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin, dataDir, config);
+        assertEquals(metadata, storage.getMetadata(sampleBlock).get());
+        assertTrue(storage.isChunkDirty(sampleChunkInfo));
+
+        // and converted once saved
+        storage.saveChunk(sampleChunkInfo, true).get();
+        assertTrue(Files.exists(dataDir.resolve(regionKey + ".bmr")));
+        assertFalse(Files.exists(dataDir.resolve(regionKey + ".yml")));
+        assertEquals(1, storage.getMetrics().getRegionsMigrated().getCount());
+        assertEquals(metadata, storage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void schemaUpgrade() throws ExecutionException, InterruptedException, IOException {
+        // save metadata in the initial schema version
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        BlockMetadataStorage<T> oldStorage = new BlockMetadataStorage<>(mockPlugin, dataDir);
+        oldStorage.setMetadata(sampleBlock, createMetadata()).get();
+        oldStorage.saveChunk(sampleChunkInfo, true).get();
+
+        // the values should be upgraded when loaded
+        T upgradedMetadata = createMetadata();
+        AtomicInteger upgrades = new AtomicInteger();
+        MetadataSchema schema = MetadataSchema.initial().withUpgrader((value) -> {
+            upgrades.incrementAndGet();
+            return new ObjectMapper().valueToTree(upgradedMetadata);
+        });
+        BlockMetadataConfig config = BlockMetadataConfig.builder().schema(schema).build();
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin, dataDir, config);
+        assertEquals(upgradedMetadata, storage.getMetadata(sampleBlock).get());
+        assertEquals(1, upgrades.get());
+        assertTrue(storage.isChunkDirty(sampleChunkInfo));
+
+        // and rewritten in the current version once saved
+        storage.saveChunk(sampleChunkInfo, true).get();
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+        String content = new String(Files.readAllBytes(dataDir.resolve(regionKey + ".yml")));
+        assertTrue(content.contains("schema: 1"), content);
+        assertEquals(upgradedMetadata, storage.getMetadata(sampleBlock).get());
+        assertEquals(1, upgrades.get());
+        assertFalse(storage.isChunkDirty(sampleChunkInfo));
+    }
+
+    @Test
+    void quarantineCorruptRegion() throws ExecutionException, InterruptedException, IOException {
+        // write a region file which can't be parsed
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+        Path regionFile = dataDir.resolve(regionKey + ".yml");
+        Files.write(regionFile, "{{{ not a region".getBytes());
+
+        // the file should be set aside, and the region served empty
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin, dataDir);
+        assertNull(storage.getMetadata(sampleBlock).get());
+        assertFalse(Files.exists(regionFile));
+        try (Stream<Path> quarantined = Files.list(dataDir.resolve("quarantine"))) {
+            assertEquals(1, quarantined.count());
+        }
+        assertEquals(1, storage.getMetrics().getRegionsQuarantined().getCount());
+
+        // new metadata should be saved normally
+        T metadata = createMetadata();
+        storage.setMetadata(sampleBlock, metadata).get();
+        storage.saveChunk(sampleChunkInfo, true).get();
+        assertEquals(metadata, storage.getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void retryFailedLoad() throws ExecutionException, InterruptedException, IOException {
+        // a region file which can't be read at all
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+        Path regionFile = Files.createDirectory(dataDir.resolve(regionKey + ".yml"));
+
+        // the failed region shouldn't be kept
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin, dataDir);
+        assertThrows(ExecutionException.class, () -> storage.getMetadata(sampleBlock).get());
+        assertFalse(storage.isChunkLoaded(sampleChunkInfo));
+        assertEquals(1, storage.getMetrics().getLoadFailures().getCount());
+
+        // and loaded again once the file can be read
+        Files.delete(regionFile);
+        assertNull(storage.getMetadata(sampleBlock).get());
+        assertTrue(storage.isChunkLoaded(sampleChunkInfo));
+    }
+
+    @Test
+    void quarantineCorruptChunk() throws ExecutionException, InterruptedException, IOException {
+        // save two chunks of a region in the chunked format
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        BlockMetadataConfig config = BlockMetadataConfig.builder()
+                .regionFormat(RegionFormat.CHUNKED)
+                .build();
+        BlockMetadataStorage<T> oldStorage = new BlockMetadataStorage<>(mockPlugin, dataDir, config);
+        Block otherBlock = world.getBlockAt(16, 0, 0);
+        T metadata = createMetadata();
+        oldStorage.setMetadata(sampleBlock, metadata).get();
+        oldStorage.setMetadata(otherBlock, metadata).get();
+        oldStorage.saveChunk(sampleChunkInfo, true).get();
+
+        // flip a byte of the last chunk record
+        String regionKey = BlockMetadataStorage.getRegionKey(sampleChunkInfo);
+        Path regionFile = dataDir.resolve(regionKey + ".bmr");
+        byte[] content = Files.readAllBytes(regionFile);
+        content[content.length - 1] ^= 1;
+        Files.write(regionFile, content);
+
+        // the intact chunk should still be served, and the file copied aside
+        BlockMetadataStorage<T> storage = new BlockMetadataStorage<>(mockPlugin, dataDir, config);
+        T sampleMetadata = storage.getMetadata(sampleBlock).get();
+        T otherMetadata = storage.getMetadata(otherBlock).get();
+        assertTrue(sampleMetadata == null ^ otherMetadata == null);
+        assertEquals(metadata, sampleMetadata != null ? sampleMetadata : otherMetadata);
+        assertTrue(storage.isChunkDirty(sampleChunkInfo));
+        try (Stream<Path> quarantined = Files.list(dataDir.resolve("quarantine"))) {
+            assertEquals(1, quarantined.count());
+        }
+        assertEquals(1, storage.getMetrics().getCorruptChunks().getCount());
+
+        // and the region rewritten without the corrupt chunk once saved
+        storage.saveChunk(sampleChunkInfo, true).get();
+        assertTrue(new ChunkedRegionCodec().verify(Files.readAllBytes(regionFile)).isEmpty());
+    }
+}
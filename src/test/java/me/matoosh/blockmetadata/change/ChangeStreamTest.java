@@ -0,0 +1,111 @@
+package me.matoosh.blockmetadata.change;
+
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeStreamTest {
+
+    private ChangeStream<String> changeStream;
+    private List<ChangeBatch<String>> batches;
+
+    @BeforeEach
+    void setUp() {
+        changeStream = new ChangeStream<>();
+        batches = new ArrayList<>();
+    }
+
+    @Test
+    void deliversBatchOnFlush() {
+        changeStream.subscribe(batches::add, Runnable::run, 10);
+        BlockInfo block = BlockInfo.fromCoordinates("world", 1, 2, 3);
+        changeStream.onChange("world_0_0", block, null, "a");
+
+        // nothing is delivered until flushed
+        assertTrue(batches.isEmpty());
+        changeStream.flush();
+        assertEquals(1, batches.size());
+        assertFalse(batches.get(0).isResync());
+        assertEquals(new MetadataChange<>(block, null, "a"), batches.get(0).getChanges().get(0));
+
+        // empty batches aren't delivered
+        changeStream.flush();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void coalescesChangesOfBlock() {
+        changeStream.subscribe(batches::add, Runnable::run, 10);
+        BlockInfo block = BlockInfo.fromCoordinates("world", 1, 2, 3);
+        BlockInfo otherBlock = BlockInfo.fromCoordinates("world", 4, 5, 6);
+        changeStream.onChange("world_0_0", block, null, "a");
+        changeStream.onChange("world_0_0", block, "a", "b");
+        changeStream.onChange("world_0_0", otherBlock, null, "c");
+        changeStream.onChange("world_0_0", otherBlock, "c", null);
+        changeStream.flush();
+
+        // only the net change of each block is delivered
+        List<MetadataChange<String>> changes = batches.get(0).getChanges();
+        assertEquals(1, changes.size());
+        assertEquals(new MetadataChange<>(block, null, "b"), changes.get(0));
+    }
+
+    @Test
+    void overflowRequestsResync() {
+        ChangeSubscription<String> subscription = changeStream.subscribe(batches::add, Runnable::run, 2);
+        for (int i = 0; i < 5; i++) {
+            changeStream.onChange("world_0_0", BlockInfo.fromCoordinates("world", i, 0, 0), null, "a");
+        }
+        changeStream.flush();
+
+        // the buffered changes are dropped and the subscriber has to resynchronize
+        assertEquals(1, batches.size());
+        assertTrue(batches.get(0).isResync());
+        assertTrue(batches.get(0).getChanges().isEmpty());
+        assertEquals(5, subscription.getDroppedChanges());
+
+        // buffering continues normally afterwards
+        changeStream.onChange("world_0_0", BlockInfo.fromCoordinates("world", 0, 0, 0), "a", null);
+        changeStream.flush();
+        assertFalse(batches.get(1).isResync());
+        assertEquals(1, batches.get(1).getChanges().size());
+    }
+
+    @Test
+    void rejectedBatchRequestsResync() {
+        List<Runnable> pending = new ArrayList<>();
+        boolean[] reject = {true};
+        changeStream.subscribe(batches::add, (task) -> {
+            if (reject[0]) {
+                throw new RejectedExecutionException();
+            }
+            pending.add(task);
+        }, 10);
+        changeStream.onChange("world_0_0", BlockInfo.fromCoordinates("world", 0, 0, 0), null, "a");
+        changeStream.flush();
+
+        // the next batch should ask for a resync
+        reject[0] = false;
+        changeStream.flush();
+        pending.forEach(Runnable::run);
+        assertEquals(1, batches.size());
+        assertTrue(batches.get(0).isResync());
+    }
+
+    @Test
+    void cancelledSubscriptionReceivesNothing() {
+        ChangeSubscription<String> subscription = changeStream.subscribe(batches::add, Runnable::run, 10);
+        changeStream.onChange("world_0_0", BlockInfo.fromCoordinates("world", 0, 0, 0), null, "a");
+        subscription.cancel();
+        changeStream.flush();
+
+        assertTrue(batches.isEmpty());
+        assertFalse(changeStream.hasSubscriptions());
+    }
+}
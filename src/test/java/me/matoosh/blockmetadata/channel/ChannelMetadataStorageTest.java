@@ -0,0 +1,95 @@
+package me.matoosh.blockmetadata.channel;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.MockPlugin;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.block.Block;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelMetadataStorageTest {
+
+    private WorldMock world;
+    private Block sampleBlock;
+    private ChannelMetadataStorage channelMetadataStorage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ServerMock server = MockBukkit.mock();
+        MockPlugin mockPlugin = MockBukkit.createMockPlugin();
+        world = server.addSimpleWorld("test-world");
+
+        Path dataDir = Files.createTempDirectory("block-metadata-temp");
+        channelMetadataStorage = new ChannelMetadataStorage(mockPlugin, dataDir);
+
+        sampleBlock = world.getBlockAt(0, 0, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void channelsAreIndependent() throws ExecutionException, InterruptedException {
+        MetadataChannel<String> owners = channelMetadataStorage.registerChannel("owner", String.class);
+        MetadataChannel<Integer> levels = channelMetadataStorage.registerChannel("level", Integer.class);
+
+        // set metadata within both channels
+        assertNull(channelMetadataStorage.setMetadata(owners, sampleBlock, "Steve").get());
+        assertNull(channelMetadataStorage.setMetadata(levels, sampleBlock, 3).get());
+        assertEquals("Steve", channelMetadataStorage.getMetadata(owners, sampleBlock).get());
+        assertEquals(3, channelMetadataStorage.getMetadata(levels, sampleBlock).get());
+
+        // removing from one channel should keep the other
+        assertEquals("Steve", channelMetadataStorage.removeMetadata(owners, sampleBlock).get());
+        assertNull(channelMetadataStorage.getMetadata(owners, sampleBlock).get());
+        assertEquals(3, channelMetadataStorage.getMetadata(levels, sampleBlock).get());
+
+        // removing the last channel should remove the block
+        assertEquals(3, channelMetadataStorage.removeMetadata(levels, sampleBlock).get());
+        assertNull(channelMetadataStorage.getStorage().getMetadata(sampleBlock).get());
+    }
+
+    @Test
+    void channelsShareRegionFiles() throws ExecutionException, InterruptedException, IOException {
+        MetadataChannel<String> owners = channelMetadataStorage.registerChannel("owner", String.class);
+        MetadataChannel<List> tags = channelMetadataStorage.registerChannel("tags", List.class);
+        channelMetadataStorage.setMetadata(owners, sampleBlock, "Steve").get();
+        channelMetadataStorage.setMetadata(tags, sampleBlock, Arrays.asList("a", "b")).get();
+        assertEquals(Arrays.asList("a", "b"), channelMetadataStorage.getMetadata(tags, sampleBlock).get());
+
+        // both channels should be written to the same region file
+        BlockMetadataStorage<?> storage = channelMetadataStorage.getStorage();
+        ChunkInfo chunkInfo = ChunkInfo.fromChunk(sampleBlock.getChunk());
+        storage.saveDirtyRegions(Collections.singleton(world.getName()), Long.MAX_VALUE, Long.MAX_VALUE);
+        while (storage.isChunkSaving(chunkInfo)) {
+            Thread.sleep(10);
+        }
+        try (Stream<Path> files = Files.list(storage.getDataPath())) {
+            assertEquals(1, files.filter((file) -> file.toString().endsWith(".yml")).count());
+        }
+    }
+
+    @Test
+    void registerChannelTwice() {
+        channelMetadataStorage.registerChannel("owner", String.class);
+        assertThrows(IllegalArgumentException.class,
+                () -> channelMetadataStorage.registerChannel("owner", Integer.class));
+    }
+}
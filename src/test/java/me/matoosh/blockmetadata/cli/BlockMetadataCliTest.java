@@ -0,0 +1,217 @@
+package me.matoosh.blockmetadata.cli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockMetadataCliTest {
+
+    private Path dataDir;
+    private ByteArrayOutputStream output;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("block-metadata-cli");
+        output = new ByteArrayOutputStream();
+        write("world_0_0.yml", "\"1,1\":\n  \"0,64,0\": \"a\"\n  \"1,64,1\": \"b\"\n\"2,2\":\n  \"5,70,5\": \"c\"\n");
+        write("world_1_0.yml", "chunks:\n  \"16,0\":\n    \"0,1,0\": \"d\"\n    \"0,2,0\": \"e\"\n"
+                + "expiry:\n  \"16,0\":\n    \"0,1,0\": 1\n    \"0,3,0\": 1\n");
+    }
+
+    @Test
+    void stats() {
+        assertEquals(MaintenanceCommand.OK, run("stats", dataDir.toString()));
+        String result = output.toString();
+        assertTrue(result.contains("world"));
+        // 2 regions, 3 chunks, 5 entries, 2 expiring
+        assertTrue(result.matches("(?s).*world\\s+2\\s+3\\s+5\\s+2\\s.*"), result);
+    }
+
+    @Test
+    void verify() throws IOException {
+        // the orphaned expiry time is a problem
+        assertEquals(MaintenanceCommand.PROBLEMS, run("verify", dataDir.toString()));
+        assertTrue(output.toString().contains("without metadata"));
+
+        write("world_1_0.yml", "\"16,0\":\n  \"0,1,0\": \"d\"\n");
+        write("world_0_1.yml", "\"40,16\":\n  \"0,1,x\": \"d\"\n");
+        write("world_1_1.yml", "[not, a, region]");
+        output.reset();
+        assertEquals(MaintenanceCommand.PROBLEMS, run("verify", dataDir.toString()));
+        String result = output.toString();
+        assertTrue(result.contains("world_0_1: chunk 40,16 lies outside of the region"), result);
+        assertTrue(result.contains("world_0_1: malformed block key 0,1,x"), result);
+        assertTrue(result.contains("world_1_1: "), result);
+        assertFalse(result.contains("world_0_0: "), result);
+    }
+
+    @Test
+    void verifyChecksums() throws IOException {
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "chunked", "--write"));
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("verify", dataDir.toString(), "checksums"));
+
+        // flip a byte of the last chunk record
+        byte[] content = Files.readAllBytes(dataDir.resolve("world_0_0.bmr"));
+        content[content.length - 1] ^= 1;
+        Files.write(dataDir.resolve("world_0_0.bmr"), content);
+        output.reset();
+        assertEquals(MaintenanceCommand.PROBLEMS, run("verify", dataDir.toString(), "checksums"));
+        String result = output.toString();
+        assertTrue(result.contains("world_0_0: corrupt chunk "), result);
+        assertFalse(result.contains("world_1_0: "), result);
+
+        // the corrupt region mustn't be rewritten without its corrupt chunk
+        output.reset();
+        run("compact", dataDir.toString(), "--write");
+        assertArrayEquals(content, Files.readAllBytes(dataDir.resolve("world_0_0.bmr")));
+    }
+
+    @Test
+    void compactReadOnly() throws IOException {
+        String before = read("world_1_0.yml");
+        assertEquals(MaintenanceCommand.OK, run("compact", dataDir.toString()));
+        assertTrue(output.toString().contains("would remove 2"));
+        assertEquals(before, read("world_1_0.yml"));
+    }
+
+    @Test
+    void compact() throws IOException {
+        assertEquals(MaintenanceCommand.OK, run("compact", dataDir.toString(), "--write"));
+        assertTrue(output.toString().contains("removed 2"));
+        String compacted = read("world_1_0.yml");
+        assertTrue(compacted.contains("0,2,0"));
+        assertFalse(compacted.contains("0,1,0"));
+        assertFalse(compacted.contains("expiry"));
+
+        // a second pass finds nothing left to remove
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("verify", dataDir.toString()));
+    }
+
+    @Test
+    void prune() throws IOException {
+        // only chunk 1,1 was generated
+        Path worldFolder = Files.createTempDirectory("block-metadata-world");
+        Files.createDirectories(worldFolder.resolve("region"));
+        byte[] header = new byte[8192];
+        header[(1 + 32) * 4 + 2] = 2;
+        Files.write(worldFolder.resolve("region").resolve("r.0.0.mca"), header);
+
+        assertEquals(MaintenanceCommand.OK, run("prune", dataDir.toString(), "world", worldFolder.toString(), "--write"));
+        assertTrue(output.toString().contains("removed 3 entries of 2 missing chunks"), output.toString());
+        String pruned = read("world_0_0.yml");
+        assertTrue(pruned.contains("1,1"));
+        assertFalse(pruned.contains("2,2"));
+        // regions left without metadata are deleted
+        assertFalse(Files.exists(dataDir.resolve("world_1_0.yml")));
+    }
+
+    @Test
+    void pruneEmptyRegionFile() throws IOException {
+        // a freshly created region file has no location table yet
+        Path worldFolder = Files.createTempDirectory("block-metadata-world");
+        Files.createDirectories(worldFolder.resolve("region"));
+        Files.write(worldFolder.resolve("region").resolve("r.0.0.mca"), new byte[0]);
+
+        String before = read("world_0_0.yml");
+        assertEquals(MaintenanceCommand.OK, run("prune", dataDir.toString(), "world", worldFolder.toString(), "--write"));
+        assertEquals(before, read("world_0_0.yml"));
+        assertTrue(Files.exists(dataDir.resolve("world_1_0.yml")));
+    }
+
+    @Test
+    void pruneWithoutWorld() throws IOException {
+        Path emptyFolder = Files.createTempDirectory("block-metadata-world");
+        assertEquals(MaintenanceCommand.PROBLEMS, run("prune", dataDir.toString(), "world", emptyFolder.toString(), "--write"));
+        assertTrue(Files.exists(dataDir.resolve("world_1_0.yml")));
+    }
+
+    @Test
+    void convert() throws IOException {
+        Path outputDir = Files.createTempDirectory("block-metadata-json");
+        assertEquals(MaintenanceCommand.OK, run("convert", dataDir.toString(), outputDir.toString(), "json"));
+        String json = new String(Files.readAllBytes(outputDir.resolve("world_0_0.json")), StandardCharsets.UTF_8);
+        assertEquals("{\"1,1\":{\"0,64,0\":\"a\",\"1,64,1\":\"b\"},\"2,2\":{\"5,70,5\":\"c\"}}", json);
+    }
+
+    @Test
+    void migrate() throws IOException {
+        // a dry run shouldn't touch anything
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString()));
+        assertTrue(output.toString().contains("can migrate 2 regions"));
+        assertTrue(Files.exists(dataDir.resolve("world_0_0.yml")));
+        assertFalse(Files.exists(dataDir.resolve("world_0_0.bmr")));
+
+        // the regions should be converted without loss
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "chunked", "--write"));
+        assertTrue(output.toString().contains("migrated 2 regions"));
+        assertFalse(Files.exists(dataDir.resolve("world_0_0.yml")));
+        assertTrue(Files.exists(dataDir.resolve("world_0_0.bmr")));
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("stats", dataDir.toString()));
+        assertTrue(output.toString().matches("(?s).*world\\s+2\\s+3\\s+5\\s+2\\s.*"), output.toString());
+    }
+
+    @Test
+    void migrateResumes() throws IOException {
+        // an interrupted migration left both files of a region behind
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "--write"));
+        write("world_0_0.yml", "\"1,1\":\n  \"0,64,0\": \"stale\"\n");
+
+        // the converted file wins, and the original is removed
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "--write"));
+        assertFalse(Files.exists(dataDir.resolve("world_0_0.yml")));
+
+        // and the regions can be moved back
+        output.reset();
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "yaml", "--write"));
+        assertTrue(read("world_0_0.yml").contains("1,64,1"));
+        assertFalse(read("world_0_0.yml").contains("stale"));
+    }
+
+    @Test
+    void migrateKeepsOriginalOfCorruptRegion() throws IOException {
+        // an interrupted migration left both files of a region behind, and the converted one got corrupted
+        assertEquals(MaintenanceCommand.OK, run("migrate", dataDir.toString(), "--write"));
+        write("world_0_0.yml", "\"1,1\":\n  \"0,64,0\": \"a\"\n");
+        byte[] converted = Files.readAllBytes(dataDir.resolve("world_0_0.bmr"));
+        converted[converted.length - 1] ^= 0x20;
+        Files.write(dataDir.resolve("world_0_0.bmr"), converted);
+
+        // the original shouldn't be removed
+        output.reset();
+        assertEquals(MaintenanceCommand.PROBLEMS, run("migrate", dataDir.toString(), "--write"));
+        assertTrue(output.toString().contains("world_0_0: failed"), output.toString());
+        assertTrue(Files.exists(dataDir.resolve("world_0_0.yml")));
+    }
+
+    @Test
+    void usage() {
+        assertEquals(MaintenanceCommand.USAGE, run("unknown", dataDir.toString()));
+        assertEquals(MaintenanceCommand.USAGE, run("prune", dataDir.toString()));
+        assertEquals(MaintenanceCommand.USAGE, run("stats", dataDir.resolve("missing").toString()));
+    }
+
+    private int run(String... args) {
+        return BlockMetadataCli.run(args, new PrintStream(output, true));
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.write(dataDir.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String fileName) throws IOException {
+        return new String(Files.readAllBytes(dataDir.resolve(fileName)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+package me.matoosh.blockmetadata.clipboard;
+
+import org.bukkit.util.BlockVector;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaTransformTest {
+
+    @Test
+    void identity() {
+        assertTrue(AreaTransform.NONE.isIdentity());
+        assertTrue(AreaTransform.rotate(4).isIdentity());
+        assertEquals(new BlockVector(1, 2, 3), AreaTransform.NONE.apply(1, 2, 3, 5, 10));
+    }
+
+    @Test
+    void rotate() {
+        // an area 5 blocks wide and 10 blocks long
+        assertEquals(new BlockVector(6, 2, 1), AreaTransform.rotate(1).apply(1, 2, 3, 5, 10));
+        assertEquals(new BlockVector(3, 2, 6), AreaTransform.rotate(2).apply(1, 2, 3, 5, 10));
+        assertEquals(new BlockVector(3, 2, 3), AreaTransform.rotate(3).apply(1, 2, 3, 5, 10));
+        assertEquals(AreaTransform.rotate(3), AreaTransform.rotate(-1));
+    }
+
+    @Test
+    void mirror() {
+        assertEquals(new BlockVector(3, 2, 3), AreaTransform.of(0, true, false).apply(1, 2, 3, 5, 10));
+        assertEquals(new BlockVector(1, 2, 6), AreaTransform.of(0, false, true).apply(1, 2, 3, 5, 10));
+
+        // mirroring both axes equals a half turn
+        assertEquals(AreaTransform.rotate(2).apply(1, 2, 3, 5, 10),
+                AreaTransform.of(0, true, true).apply(1, 2, 3, 5, 10));
+    }
+}
@@ -0,0 +1,98 @@
+package me.matoosh.blockmetadata.command;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.MockPlugin;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import org.bukkit.Location;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticsCommandTest {
+
+    private ServerMock server;
+    private WorldMock world;
+    private PlayerMock player;
+    private BlockMetadataStorage<String> storage;
+    private DiagnosticsCommand command;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = MockBukkit.mock();
+        MockPlugin plugin = MockBukkit.createMockPlugin();
+        world = server.addSimpleWorld("test-world");
+        player = server.addPlayer();
+        player.setLocation(new Location(world, 0, 0, 0));
+        storage = new BlockMetadataStorage<>(plugin, Files.createTempDirectory("block-metadata-temp"));
+        command = new DiagnosticsCommand(plugin, storage);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void requiresPermission() {
+        assertTrue(command.onCommand(player, null, "blockmetadata", new String[0]));
+        assertTrue(player.nextMessage().contains("permission"));
+        assertTrue(command.onTabComplete(player, null, "blockmetadata", new String[] {""}).isEmpty());
+    }
+
+    @Test
+    void showsStatus() throws InterruptedException {
+        player.setOp(true);
+        assertTrue(command.onCommand(player, null, "blockmetadata", new String[] {"status"}));
+
+        // the reply should be sent from the main thread once the diagnostics are gathered
+        String message = awaitMessage();
+        assertNotNull(message);
+        assertTrue(message.contains("Block metadata storage"));
+    }
+
+    @Test
+    void verifiesRegionOfPlayer() throws ExecutionException, InterruptedException {
+        player.setOp(true);
+        storage.setMetadata(world.getBlockAt(0, 0, 0), "value").get();
+        storage.flushRegions(null).get();
+        assertTrue(command.onCommand(player, null, "blockmetadata", new String[] {"verify"}));
+
+        String message = awaitMessage();
+        assertNotNull(message);
+        assertTrue(message.contains("matches memory"));
+    }
+
+    @Test
+    void completesSubCommands() {
+        player.setOp(true);
+        List<String> completions = command.onTabComplete(player, null, "blockmetadata", new String[] {"v"});
+        assertEquals(1, completions.size());
+        assertEquals("verify", completions.get(0));
+    }
+
+    /**
+     * Runs server ticks until the player receives a message.
+     * @return The message. Null if none was received within a few seconds.
+     */
+    private String awaitMessage() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            server.getScheduler().performOneTick();
+            String message = player.nextMessage();
+            if (message != null) {
+                return message;
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+package me.matoosh.blockmetadata.format;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedRegionCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChunkedRegionCodec codec = new ChunkedRegionCodec();
+
+    @Test
+    void roundTrip() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree("{\"chunks\": {"
+                + "\"0,0\": {\"1,2,3\": \"a\", \"4,5,6\": {\"owner\": \"b\", \"level\": 3}},"
+                + "\"1,0\": {\"0,0,0\": 2.5}},"
+                + "\"expiry\": {\"0,0\": {\"1,2,3\": 1000}, \"2,0\": {\"0,0,0\": 5}}}"));
+
+        // chunks with only expiry times should survive as well
+        RegionTree decoded = codec.decode(codec.encode(tree));
+        assertTrue(tree.matches(decoded));
+        assertEquals(2, decoded.getChunks().size());
+        assertTrue(decoded.getExpiry().has("2,0"));
+    }
+
+    @Test
+    void roundTripWithoutExpiry() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree("{\"0,0\": {\"1,2,3\": 7}}"));
+        RegionTree decoded = codec.decode(codec.encode(tree));
+        assertTrue(tree.matches(decoded));
+        assertNull(decoded.getExpiry());
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        byte[] content = codec.encode(RegionTree.parse(mapper.readTree("{\"0,0\": {\"1,2,3\": 7}}")));
+
+        // yaml files, truncated files and trailing data aren't regions
+        assertThrows(IOException.class, () -> codec.decode("\"0,0\": {}".getBytes()));
+        assertThrows(IOException.class, () -> codec.decode(Arrays.copyOf(content, content.length - 3)));
+        assertThrows(IOException.class, () -> codec.decode(Arrays.copyOf(content, content.length + 1)));
+    }
+
+    @Test
+    void skipsCorruptChunks() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree("{\"0,0\": {\"1,2,3\": 7}, \"1,0\": {\"0,0,0\": 8}}"));
+        byte[] content = codec.encode(tree);
+        assertTrue(codec.verify(content).isEmpty());
+
+        // flip a byte of the last record's payload
+        content[content.length - 1] ^= 1;
+        assertEquals(Collections.singleton("1,0"), codec.verify(content).keySet());
+
+        // the intact chunks should still be decoded
+        RegionTree decoded = codec.decode(content);
+        assertEquals(Collections.singleton("1,0"), decoded.getCorruptChunks().keySet());
+        assertEquals(7, decoded.getChunks().get("0,0").get("1,2,3").asInt());
+        assertFalse(decoded.getChunks().has("1,0"));
+    }
+
+    @Test
+    void detectsCorruptKeys() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree("{\"0,0\": {\"1,2,3\": 7}, \"2,0\": {\"0,0,0\": 8}}"));
+        byte[] content = codec.encode(tree);
+
+        // turn the key of the first chunk from 0,0 into 1,0, after the 17 byte header and the key length
+        content[19] ^= 1;
+        RegionTree decoded = codec.decode(content);
+        assertEquals(Collections.singleton("1,0"), decoded.getCorruptChunks().keySet());
+        assertFalse(decoded.getChunks().has("1,0"));
+        assertFalse(decoded.getChunks().has("0,0"));
+        assertEquals(8, decoded.getChunks().get("2,0").get("0,0,0").asInt());
+    }
+
+    @Test
+    void rejectsCorruptHeaders() throws IOException {
+        byte[] content = codec.encode(RegionTree.parse(mapper.readTree("{\"0,0\": {\"1,2,3\": 7}}")));
+
+        // flip a bit of the schema version
+        content[8] ^= 1;
+        assertThrows(IOException.class, () -> codec.decode(content));
+        assertThrows(IOException.class, () -> codec.verify(content));
+    }
+}
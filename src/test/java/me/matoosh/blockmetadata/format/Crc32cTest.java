@@ -0,0 +1,31 @@
+package me.matoosh.blockmetadata.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Crc32cTest {
+
+    @Test
+    void checkValue() {
+        // standard check value of crc-32c
+        byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xE3069283, Crc32c.compute(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void incrementalUpdates() {
+        byte[] bytes = "block metadata".getBytes(StandardCharsets.US_ASCII);
+        Crc32c checksum = new Crc32c();
+        checksum.update(bytes, 0, 5);
+        for (int i = 5; i < bytes.length; i++) {
+            checksum.update(bytes[i]);
+        }
+        assertEquals(Crc32c.compute(bytes, 0, bytes.length), (int) checksum.getValue());
+
+        checksum.reset();
+        assertEquals(0, checksum.getValue());
+    }
+}
@@ -0,0 +1,70 @@
+package me.matoosh.blockmetadata.index;
+
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialIndexTest {
+
+    private SpatialIndex<String> spatialIndex;
+
+    @BeforeEach
+    void setUp() {
+        spatialIndex = new SpatialIndex<>(16);
+        index(0, 64, 0, "origin");
+        index(10, 64, 0, "near");
+        index(-40, 70, 25, "far");
+        index(500, 64, 500, "very far");
+    }
+
+    @Test
+    void findWithinRadius() {
+        Map<BlockInfo, String> found = spatialIndex.findWithinRadius("world", 0.5, 64.5, 0.5, 20);
+        assertEquals(2, found.size());
+        assertTrue(found.containsValue("origin"));
+        assertTrue(found.containsValue("near"));
+
+        // blocks in other worlds shouldn't be found
+        assertTrue(spatialIndex.findWithinRadius("other", 0.5, 64.5, 0.5, 20).isEmpty());
+    }
+
+    @Test
+    void findWithinLargeRadius() {
+        // more cells in the bounding box than occupied cells
+        Map<BlockInfo, String> found = spatialIndex.findWithinRadius("world", 0.5, 64.5, 0.5, 100);
+        assertEquals(3, found.size());
+        assertFalse(found.containsValue("very far"));
+
+        found = spatialIndex.findWithinRadius("world", -0.5, 64.5, -0.5, 1000);
+        assertEquals(4, found.size());
+    }
+
+    @Test
+    void findNearest() {
+        assertEquals("near", spatialIndex.findNearest("world", 12, 64, 0, 100).getValue());
+        assertEquals("far", spatialIndex.findNearest("world", -60, 64, 30, 100).getValue());
+
+        // nothing within the maximum distance
+        assertNull(spatialIndex.findNearest("world", 250, 64, 250, 50));
+    }
+
+    @Test
+    void removeBlock() {
+        BlockInfo near = BlockInfo.fromCoordinates("world", 10, 64, 0);
+        spatialIndex.onChange("world_0_0", near, "near", null);
+
+        assertEquals(3, spatialIndex.size());
+        assertEquals("origin", spatialIndex.findNearest("world", 12, 64, 0, 100).getValue());
+    }
+
+    /**
+     * Indexes a block with metadata.
+     */
+    private void index(int x, int y, int z, String data) {
+        spatialIndex.onChange("world_0_0", BlockInfo.fromCoordinates("world", x, y, z), null, data);
+    }
+}
@@ -0,0 +1,84 @@
+package me.matoosh.blockmetadata.index;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueIndexTest {
+
+    private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private Path indexFile;
+    private ValueIndex<String> valueIndex;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        indexFile = Files.createTempDirectory("block-metadata-index").resolve("owners.yml");
+        valueIndex = createIndex();
+    }
+
+    @Test
+    void trackRegionsByKey() {
+        BlockInfo block = BlockInfo.fromCoordinates("world", 1, 2, 3);
+        valueIndex.onChange("world_0_0", block, null, "alice:1");
+        valueIndex.onChange("world_1_0", block, null, "alice:2");
+        valueIndex.onChange("world_1_0", block, null, "bob:1");
+        assertEquals(new HashSet<>(Arrays.asList("world_0_0", "world_1_0")),
+                valueIndex.getRegions("alice"));
+
+        // change the owner of a block
+        valueIndex.onChange("world_0_0", block, "alice:1", "bob:2");
+        assertEquals(Collections.singleton("world_1_0"), valueIndex.getRegions("alice"));
+        assertEquals(new HashSet<>(Arrays.asList("world_0_0", "world_1_0")),
+                valueIndex.getRegions("bob"));
+        assertTrue(valueIndex.getRegions("carol").isEmpty());
+    }
+
+    @Test
+    void reconcileOnRegionLoad() {
+        valueIndex.onChange("world_0_0", BlockInfo.fromCoordinates("world", 1, 2, 3), null, "alice:1");
+
+        // the region turns out to contain only bob's blocks
+        Map<ChunkCoordinates, Map<BlockChunkCoordinates, String>> buffer = new HashMap<>();
+        buffer.put(new ChunkCoordinates(0, 0),
+                Collections.singletonMap(new BlockChunkCoordinates(1, 2, 3), "bob:1"));
+        valueIndex.onRegionLoad("world_0_0", "world", buffer);
+
+        assertTrue(valueIndex.getRegions("alice").isEmpty());
+        assertEquals(Collections.singleton("world_0_0"), valueIndex.getRegions("bob"));
+    }
+
+    @Test
+    void saveLoad() throws IOException {
+        valueIndex.onChange("world_0_0", BlockInfo.fromCoordinates("world", 1, 2, 3), null, "alice:1");
+        assertTrue(valueIndex.isDirty());
+        valueIndex.save();
+        assertFalse(valueIndex.isDirty());
+
+        // load the index from disk
+        ValueIndex<String> loaded = createIndex();
+        loaded.load();
+        assertEquals(Collections.singleton("world_0_0"), loaded.getRegions("alice"));
+    }
+
+    /**
+     * Creates an index of owners, stored as the part of the metadata before a colon.
+     */
+    private ValueIndex<String> createIndex() {
+        return new ValueIndex<>("owners", (data) -> data.split(":")[0], indexFile, mapper);
+    }
+}
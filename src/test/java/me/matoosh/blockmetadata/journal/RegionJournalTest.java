@@ -0,0 +1,56 @@
+package me.matoosh.blockmetadata.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionJournalTest {
+
+    private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private Path dataDir;
+    private RegionJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("block-metadata-journal");
+        journal = new RegionJournal(dataDir.resolve("journal.yml"), mapper);
+    }
+
+    @Test
+    void replayWithoutJournal() throws IOException {
+        // nothing should be replayed without a journal
+        assertEquals(0, journal.replay((key) -> dataDir.resolve(key + ".yml")));
+    }
+
+    @Test
+    void writeReplay() throws IOException {
+        // journal a region with data and an emptied region
+        Files.write(dataDir.resolve("world_1_1.yml"), "old".getBytes());
+        Map<String, Object> regions = new HashMap<>();
+        regions.put("world_0_0", Collections.singletonMap("0,0", Collections.singletonMap("1,2,3", "abc")));
+        regions.put("world_1_1", null);
+        journal.write(regions);
+        assertTrue(Files.exists(journal.getFilePath()));
+
+        // replay the journal
+        assertEquals(2, journal.replay((key) -> dataDir.resolve(key + ".yml")));
+
+        // journal should be consumed
+        assertFalse(Files.exists(journal.getFilePath()));
+        // region with data should be written back
+        Map<?, ?> region = mapper.readValue(dataDir.resolve("world_0_0.yml").toFile(), Map.class);
+        assertEquals(regions.get("world_0_0"), region);
+        // emptied region should be removed
+        assertFalse(Files.exists(dataDir.resolve("world_1_1.yml")));
+    }
+}
@@ -4,6 +4,9 @@ import be.seeseemelk.mockbukkit.MockBukkit;
 import be.seeseemelk.mockbukkit.ServerMock;
 import be.seeseemelk.mockbukkit.WorldMock;
 import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.BlockInfo;
+import me.matoosh.blockmetadata.transaction.MetadataTransaction;
+import me.matoosh.blockmetadata.transaction.TransactionOperation;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.event.block.BlockPistonExtendEvent;
@@ -13,6 +16,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -24,8 +28,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -61,12 +65,10 @@ abstract class BlockMoveHandlerTest<T extends Serializable> {
     @ParameterizedTest
     @MethodSource("directionGenerator")
     void extendSingleBlock(BlockFace direction) throws ExecutionException, InterruptedException {
-        // mock origin
-        Block origin = pistonBlock.getRelative(direction);
-        when(blockMetadataStorage.removeMetadata(origin))
-                .thenReturn(CompletableFuture.completedFuture(createSampleMetadata()));
+        mockTransaction();
 
-        // mock destination
+        // mock origin and destination
+        Block origin = pistonBlock.getRelative(direction);
         Block destination = origin.getRelative(direction);
 
         // fire the piston extend event
@@ -76,66 +78,85 @@ abstract class BlockMoveHandlerTest<T extends Serializable> {
                 new BlockPistonExtendEvent(pistonBlock, blocks, direction));
 
         // ensure the metadata was transferred
-        verify(blockMetadataStorage, times(1)).removeMetadata(origin);
-        verify(blockMetadataStorage, times(1)).setMetadata(eq(destination), any());
+        List<TransactionOperation<T>> operations = verifyCommitted();
+        assertEquals(1, operations.size());
+        assertMove(operations.get(0), origin, destination);
     }
 
     @ParameterizedTest
     @MethodSource("directionGenerator")
-    void extendSingleBlockNoMetadata(BlockFace direction) throws ExecutionException, InterruptedException {
-        // mock origin
-        Block origin = pistonBlock.getRelative(direction);
-        when(blockMetadataStorage.removeMetadata(origin))
-                .thenReturn(CompletableFuture.completedFuture(null));
+    void extendMultipleBlocks(BlockFace direction) throws ExecutionException, InterruptedException {
+        mockTransaction();
+
+        // mock a row of blocks in front of the piston
+        Block first = pistonBlock.getRelative(direction);
+        Block second = first.getRelative(direction);
 
         // fire the piston extend event
         List<Block> blocks = new ArrayList<>();
-        blocks.add(origin);
+        blocks.add(first);
+        blocks.add(second);
         blockMoveHandler.onBlockPistonExtend(
                 new BlockPistonExtendEvent(pistonBlock, blocks, direction));
 
-        // ensure the metadata was transferred
-        verify(blockMetadataStorage, times(1)).removeMetadata(origin);
+        // ensure the front block is moved first, so its metadata isn't overwritten
+        List<TransactionOperation<T>> operations = verifyCommitted();
+        assertEquals(2, operations.size());
+        assertMove(operations.get(0), second, second.getRelative(direction));
+        assertMove(operations.get(1), first, second);
     }
 
     @ParameterizedTest
     @MethodSource("directionGenerator")
     void retractSingleBlock(BlockFace direction) throws ExecutionException, InterruptedException {
-        // mock origin
-        Block origin = pistonBlock.getRelative(direction);
-        when(blockMetadataStorage.removeMetadata(origin))
-                .thenReturn(CompletableFuture.completedFuture(createSampleMetadata()));
+        mockTransaction();
 
-        // mock destination
+        // mock origin and destination
+        Block origin = pistonBlock.getRelative(direction);
         Block destination = origin.getRelative(direction);
 
-        // fire the piston extend event
+        // fire the piston retract event
         List<Block> blocks = new ArrayList<>();
         blocks.add(origin);
         blockMoveHandler.onBlockPistonRetract(
                 new BlockPistonRetractEvent(pistonBlock, blocks, direction));
 
         // ensure the metadata was transferred
-        verify(blockMetadataStorage, times(1)).removeMetadata(origin);
-        verify(blockMetadataStorage, times(1)).setMetadata(eq(destination), any());
+        List<TransactionOperation<T>> operations = verifyCommitted();
+        assertEquals(1, operations.size());
+        assertMove(operations.get(0), origin, destination);
     }
 
-    @ParameterizedTest
-    @MethodSource("directionGenerator")
-    void retractSingleBlockNoMetadata(BlockFace direction) throws ExecutionException, InterruptedException {
-        // mock origin
-        Block origin = pistonBlock.getRelative(direction);
-        when(blockMetadataStorage.removeMetadata(origin))
+    /**
+     * Mocks beginning and committing a transaction.
+     */
+    private void mockTransaction() {
+        when(blockMetadataStorage.beginTransaction())
+                .thenReturn(new MetadataTransaction<>(blockMetadataStorage));
+        when(blockMetadataStorage.commit(any()))
                 .thenReturn(CompletableFuture.completedFuture(null));
+    }
 
-        // fire the piston extend event
-        List<Block> blocks = new ArrayList<>();
-        blocks.add(origin);
-        blockMoveHandler.onBlockPistonRetract(
-                new BlockPistonRetractEvent(pistonBlock, blocks, direction));
+    /**
+     * Verifies that a single transaction was committed.
+     * @return Operations of the committed transaction.
+     */
+    private List<TransactionOperation<T>> verifyCommitted() {
+        ArgumentCaptor<MetadataTransaction<T>> transaction = ArgumentCaptor.forClass(MetadataTransaction.class);
+        verify(blockMetadataStorage, times(1)).commit(transaction.capture());
+        return transaction.getValue().getOperations();
+    }
 
-        // ensure the metadata was transferred
-        verify(blockMetadataStorage, times(1)).removeMetadata(origin);
+    /**
+     * Asserts that an operation moves metadata between two blocks.
+     * @param operation The operation.
+     * @param origin The block whose metadata should be moved.
+     * @param destination The block which should receive the metadata.
+     */
+    private static void assertMove(TransactionOperation<?> operation, Block origin, Block destination) {
+        assertEquals(TransactionOperation.Type.MOVE, operation.getType());
+        assertEquals(BlockInfo.fromBlock(origin), operation.getSource());
+        assertEquals(BlockInfo.fromBlock(destination), operation.getTarget());
     }
 
     /**
@@ -5,6 +5,7 @@ import be.seeseemelk.mockbukkit.WorldMock;
 import me.matoosh.blockmetadata.BlockMetadataStorage;
 import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
 import org.bukkit.Material;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.ChunkUnloadEvent;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -29,6 +30,19 @@ abstract class ChunkLoadHandlerTest<T extends Serializable> {
     private final WorldMock world = new WorldMock(Material.GRASS_BLOCK, 10);
     private final ChunkMock sampleChunk = world.getChunkAt(0, 0);
 
+    /**
+     * Verifies that a chunk load causes its metadata to be prefetched.
+     */
+    @Test
+    void onChunkLoad() {
+        // trigger chunk load event
+        chunkLoadHandler.onChunkLoad(new ChunkLoadEvent(sampleChunk, false));
+
+        // assert that the chunk load caused metadata load
+        verify(blockMetadataStorage, times(1))
+                .loadChunk(ChunkInfo.fromChunk(sampleChunk));
+    }
+
     /**
      * Verifies that a chunk load/unload causes metadata load/unload.
      */
@@ -0,0 +1,79 @@
+package me.matoosh.blockmetadata.listener;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.Location;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.Serializable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+abstract class PlayerMovePrefetchHandlerTest<T extends Serializable> {
+
+    @Mock
+    private BlockMetadataStorage<T> blockMetadataStorage;
+
+    private PlayerMovePrefetchHandler<T> prefetchHandler;
+
+    private WorldMock world;
+    private PlayerMock player;
+
+    @BeforeEach
+    void setUp() {
+        ServerMock server = MockBukkit.mock();
+        world = server.addSimpleWorld("test-world");
+        player = server.addPlayer();
+        prefetchHandler = new PlayerMovePrefetchHandler<>(blockMetadataStorage, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    /**
+     * Verifies that crossing a chunk border prefetches the chunks ahead of the player.
+     */
+    @Test
+    void prefetchOnChunkBorder() {
+        // move the player east, across a chunk border
+        Location from = new Location(world, 15.5, 5, 8.5);
+        Location to = new Location(world, 16.5, 5, 8.5);
+        prefetchHandler.onPlayerMove(new PlayerMoveEvent(player, from, to));
+
+        // assert that the chunks ahead were prefetched
+        String worldName = player.getWorld().getName();
+        verify(blockMetadataStorage, times(1))
+                .prefetchRegion(new ChunkInfo(worldName, new ChunkCoordinates(2, 0)));
+        verify(blockMetadataStorage, times(1))
+                .prefetchRegion(new ChunkInfo(worldName, new ChunkCoordinates(3, 0)));
+    }
+
+    /**
+     * Verifies that moving within a chunk doesn't prefetch anything.
+     */
+    @Test
+    void noPrefetchWithinChunk() {
+        // move the player within a chunk
+        Location from = new Location(world, 4.5, 5, 8.5);
+        Location to = new Location(world, 5.5, 5, 8.5);
+        prefetchHandler.onPlayerMove(new PlayerMoveEvent(player, from, to));
+
+        // assert that nothing was prefetched
+        verify(blockMetadataStorage, never()).prefetchRegion(any());
+    }
+}
@@ -0,0 +1,4 @@
+package me.matoosh.blockmetadata.listener;
+
+public class StringWorldSaveHandlerTest extends WorldSaveHandlerTest<String> {
+}
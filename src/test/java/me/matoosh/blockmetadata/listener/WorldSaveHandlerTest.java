@@ -0,0 +1,55 @@
+package me.matoosh.blockmetadata.listener;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import me.matoosh.blockmetadata.BlockMetadataStorage;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.Serializable;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+abstract class WorldSaveHandlerTest<T extends Serializable> {
+
+    @Mock
+    private BlockMetadataStorage<T> blockMetadataStorage;
+
+    @InjectMocks
+    private WorldSaveHandler<T> worldSaveHandler;
+
+    private WorldMock world;
+
+    @BeforeEach
+    void setUp() {
+        ServerMock server = MockBukkit.mock();
+        world = server.addSimpleWorld("test-world");
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    /**
+     * Verifies that a world save requests saving the world's metadata.
+     */
+    @Test
+    void onWorldSave() {
+        // trigger world save event
+        worldSaveHandler.onWorldSave(new WorldSaveEvent(world));
+
+        // assert that the world save requested a metadata save
+        verify(blockMetadataStorage, times(1))
+                .requestWorldSave(world.getName());
+    }
+}
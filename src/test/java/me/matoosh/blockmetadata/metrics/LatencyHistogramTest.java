@@ -0,0 +1,61 @@
+package me.matoosh.blockmetadata.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    void emptyHistogram() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void summarizesRecordedValues() {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+        assertEquals(1_000_000, histogram.getMax());
+
+        // percentiles should be within an eighth of the exact value
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 8.0);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 8.0);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void bucketsCoverAllValues() {
+        // each value should fall into the bucket which it bounds or the one after it
+        for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 1023, 1024, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.getBucket(value);
+            assertTrue(LatencyHistogram.getBucketUpperBound(bucket) >= value);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.getBucketUpperBound(bucket - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    void negativeDurationsRecordedAsZero() {
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
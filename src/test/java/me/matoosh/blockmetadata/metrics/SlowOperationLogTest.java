@@ -0,0 +1,32 @@
+package me.matoosh.blockmetadata.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowOperationLogTest {
+
+    @Test
+    void keepsSlowestOperations() {
+        SlowOperationLog slowLog = new SlowOperationLog(3);
+        slowLog.record("a", 10);
+        slowLog.record("b", 50);
+        slowLog.record("c", 30);
+        slowLog.record("d", 5);
+        slowLog.record("e", 40);
+
+        // only the three slowest should be kept, slowest first
+        List<SlowOperation> slowest = slowLog.getSlowest();
+        assertEquals(3, slowest.size());
+        assertEquals("b", slowest.get(0).getSubject());
+        assertEquals("e", slowest.get(1).getSubject());
+        assertEquals("c", slowest.get(2).getSubject());
+    }
+
+    @Test
+    void invalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SlowOperationLog(0));
+    }
+}
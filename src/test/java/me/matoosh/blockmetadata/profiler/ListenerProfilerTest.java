@@ -0,0 +1,108 @@
+package me.matoosh.blockmetadata.profiler;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.MockPlugin;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkCoordinates;
+import me.matoosh.blockmetadata.entity.chunkinfo.ChunkInfo;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListenerProfilerTest {
+
+    private ServerMock server;
+    private MockPlugin plugin;
+    private WorldMock world;
+    private ListenerProfiler profiler;
+
+    @BeforeEach
+    void setUp() {
+        server = MockBukkit.mock();
+        plugin = MockBukkit.createMockPlugin();
+        world = server.addSimpleWorld("test-world");
+        profiler = new ListenerProfiler(0, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void measuresRegisteredHandlers() {
+        // register a listener through the profiler
+        BurnListener listener = new BurnListener();
+        profiler.registerEvents(listener, plugin);
+
+        // the handler should still be called, and measured
+        Block block = world.getBlockAt(40, 0, 8);
+        server.getPluginManager().callEvent(new BlockBurnEvent(block, null));
+        assertEquals(1, listener.calls);
+        List<ProfiledCost> handlers = profiler.getHandlerCosts();
+        assertEquals(1, handlers.size());
+        assertEquals("BurnListener.onBlockBurn", handlers.get(0).getName());
+        assertEquals(1, handlers.get(0).getInvocations());
+
+        // the cost should be attributed to the chunk of the block once the tick ends
+        profiler.endTick();
+        List<ProfiledCost> chunks = profiler.getTopChunks(10);
+        assertEquals(1, chunks.size());
+        assertEquals("test-world (2, 0)", chunks.get(0).getName());
+        assertEquals(1, profiler.getTopRegions(10).size());
+    }
+
+    @Test
+    void countsTicksOverBudget() {
+        profiler.record("handler", null, 10, 0);
+        profiler.endTick();
+        profiler.endTick();
+        assertEquals(1, profiler.getOverBudgetTicks());
+    }
+
+    @Test
+    void chunkCostsLeaveWindow() {
+        ChunkInfo chunk = new ChunkInfo("test-world", new ChunkCoordinates(0, 0));
+        ChunkInfo otherChunk = new ChunkInfo("test-world", new ChunkCoordinates(1, 0));
+        profiler.record("handler", chunk, 100, 0);
+        profiler.endTick();
+        profiler.record("handler", otherChunk, 50, 0);
+        profiler.endTick();
+
+        // both chunks should be within the window, most expensive first
+        List<ProfiledCost> chunks = profiler.getTopChunks(10);
+        assertEquals(2, chunks.size());
+        assertEquals("test-world (0, 0)", chunks.get(0).getName());
+        assertEquals(1, profiler.getTopChunks(1).size());
+
+        // the first chunk should leave the window once three more ticks have ended
+        profiler.endTick();
+        assertEquals(2, profiler.getTopChunks(10).size());
+        profiler.endTick();
+        chunks = profiler.getTopChunks(10);
+        assertEquals(1, chunks.size());
+        assertEquals("test-world (1, 0)", chunks.get(0).getName());
+
+        // handler costs should be kept regardless of the window
+        assertEquals(2, profiler.getHandlerCosts().get(0).getInvocations());
+    }
+
+    public static class BurnListener implements Listener {
+
+        private int calls;
+
+        @EventHandler
+        public void onBlockBurn(BlockBurnEvent event) {
+            calls++;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package me.matoosh.blockmetadata.schema;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import me.matoosh.blockmetadata.format.RegionFormat;
+import me.matoosh.blockmetadata.format.RegionTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataSchemaTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void upgradesThroughEachVersion() throws IOException {
+        MetadataSchema schema = MetadataSchema.initial()
+                // version 1 stores owners as text
+                .withUpgrader((value) -> TextNode.valueOf(value.asText()))
+                // version 2 wraps them in objects, dropping unowned blocks
+                .withUpgrader((value) -> value.asText().isEmpty()
+                        ? null
+                        : mapper.createObjectNode().set("owner", value));
+        assertEquals(2, schema.getVersion());
+
+        RegionTree tree = RegionTree.parse(mapper.readTree("{\"chunks\": {\"0,0\": {\"1,2,3\": 7, \"4,5,6\": \"\"}},"
+                + "\"expiry\": {\"0,0\": {\"4,5,6\": 100}}}"));
+        assertTrue(schema.upgrade(tree));
+        assertEquals(2, tree.getSchemaVersion());
+        assertEquals("{\"0,0\":{\"1,2,3\":{\"owner\":\"7\"}}}", tree.getChunks().toString());
+        assertNull(tree.getExpiry());
+
+        // regions in the current version are left alone
+        assertFalse(schema.upgrade(tree));
+    }
+
+    @Test
+    void upgradesFromIntermediateVersion() throws IOException {
+        MetadataSchema schema = MetadataSchema.initial()
+                .withUpgrader((value) -> { throw new AssertionError("already upgraded"); })
+                .withUpgrader((value) -> mapper.createObjectNode().set("owner", value));
+        RegionTree tree = RegionTree.parse(mapper.readTree(
+                "{\"header\": {\"format\": 1, \"schema\": 1}, \"chunks\": {\"0,0\": {\"1,2,3\": \"a\"}}}"));
+        assertEquals(1, tree.getSchemaVersion());
+        assertTrue(schema.upgrade(tree));
+        assertEquals("a", tree.getChunks().get("0,0").get("1,2,3").get("owner").asText());
+    }
+
+    @Test
+    void rejectsNewerVersions() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree(
+                "{\"header\": {\"format\": 1, \"schema\": 3}, \"chunks\": {\"0,0\": {\"1,2,3\": \"a\"}}}"));
+        assertThrows(IOException.class, () -> MetadataSchema.initial().upgrade(tree));
+
+        // as well as regions written with a newer layout
+        assertThrows(IOException.class, () -> RegionTree.parse(mapper.readTree(
+                "{\"header\": {\"format\": 99, \"schema\": 0}, \"chunks\": {}}")));
+    }
+
+    @Test
+    void versionSurvivesEachFormat() throws IOException {
+        RegionTree tree = RegionTree.parse(mapper.readTree(
+                "{\"header\": {\"format\": 1, \"schema\": 4}, \"chunks\": {\"0,0\": {\"1,2,3\": \"a\"}}}"));
+        for (RegionFormat format : RegionFormat.values()) {
+            RegionTree decoded = format.getCodec().decode(format.getCodec().encode(tree));
+            assertEquals(4, decoded.getSchemaVersion());
+            assertTrue(tree.matches(decoded));
+        }
+    }
+}
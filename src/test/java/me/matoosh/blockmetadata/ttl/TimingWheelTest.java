@@ -0,0 +1,73 @@
+package me.matoosh.blockmetadata.ttl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long START = 1_000_000;
+
+    private TimingWheel<String> timingWheel;
+
+    @BeforeEach
+    void setUp() {
+        timingWheel = new TimingWheel<>(1000, START);
+    }
+
+    @Test
+    void expiresAfterDeadline() {
+        timingWheel.schedule("soon", START + 1500);
+        timingWheel.schedule("later", START + 5000);
+        assertEquals(2, timingWheel.getSize());
+
+        // nothing should expire before its deadline
+        assertTrue(advance(START + 1000).isEmpty());
+
+        // entries should expire once their deadline passes
+        List<String> expired = advance(START + 2000);
+        assertEquals(1, expired.size());
+        assertEquals("soon", expired.get(0));
+        assertEquals(1, timingWheel.getSize());
+        assertEquals("later", advance(START + 5000).get(0));
+        assertEquals(0, timingWheel.getSize());
+    }
+
+    @Test
+    void pastDeadlineExpiresOnNextAdvance() {
+        timingWheel.schedule("past", START - 5000);
+        assertEquals("past", advance(START + 1000).get(0));
+    }
+
+    @Test
+    void cascadesFromHigherLevels() {
+        // deadlines on every level of the wheel, and beyond its range
+        long[] deadlines = {
+                START + TimeUnit.MINUTES.toMillis(5),
+                START + TimeUnit.HOURS.toMillis(10),
+                START + TimeUnit.DAYS.toMillis(20),
+                START + TimeUnit.DAYS.toMillis(400)
+        };
+        for (long deadline : deadlines) {
+            timingWheel.schedule(String.valueOf(deadline), deadline);
+        }
+
+        // each entry should expire within a tick of its deadline
+        for (long deadline : deadlines) {
+            assertTrue(advance(deadline - 1000).isEmpty());
+            assertEquals(String.valueOf(deadline), advance(deadline + 1000).get(0));
+        }
+        assertEquals(0, timingWheel.getSize());
+    }
+
+    private List<String> advance(long now) {
+        List<String> expired = new ArrayList<>();
+        timingWheel.advance(now, expired::add);
+        return expired;
+    }
+}